@@ -25,10 +25,13 @@ import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiParam;
 import io.swagger.annotations.ApiResponse;
 import io.swagger.annotations.ApiResponses;
+import java.io.IOException;
 import javax.inject.Inject;
+import javax.ws.rs.DELETE;
 import javax.ws.rs.GET;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
 import javax.ws.rs.WebApplicationException;
@@ -146,8 +149,9 @@ public class PinotClientRequest {
   public void processSqlQueryPost(String query, @Suspended AsyncResponse asyncResponse) {
     try {
       JsonNode requestJson = JsonUtils.stringToJsonNode(query);
-      if (!requestJson.has(Request.SQL)) {
-        throw new IllegalStateException("Payload is missing the query string field 'sql'");
+      if (!requestJson.has(Request.SQL) && !requestJson.has(Request.PREPARED_STATEMENT_ID)) {
+        throw new IllegalStateException("Payload is missing the query string field 'sql' or the prepared statement "
+            + "field 'statementId'");
       }
       String queryOptions = constructSqlQueryOptions();
       // the only query options as of now are sql related. do not allow any custom query options in sql endpoint
@@ -161,6 +165,56 @@ public class PinotClientRequest {
     }
   }
 
+  @POST
+  @Produces(MediaType.APPLICATION_JSON)
+  @Path("query/sql/prepare")
+  @ApiOperation(value = "Preparing a sql query with '?' placeholders, which can be executed via the query/sql endpoint "
+      + "with the 'statementId' and 'parameters' fields")
+  @ApiResponses(value = {@ApiResponse(code = 200, message = "Prepared statement id"),
+      @ApiResponse(code = 400, message = "Bad request, or prepared statement not enabled"),
+      @ApiResponse(code = 500, message = "Internal Server Error")})
+  public String prepareSqlQuery(String query) {
+    JsonNode requestJson;
+    try {
+      requestJson = JsonUtils.stringToJsonNode(query);
+    } catch (IOException e) {
+      throw badRequest("Payload is not a valid JSON: " + e.getMessage());
+    }
+    if (!requestJson.has(Request.SQL)) {
+      throw badRequest("Payload is missing the query string field 'sql'");
+    }
+    try {
+      String statementId = requestHandler.prepareStatement(requestJson.get(Request.SQL).asText());
+      return JsonUtils.newObjectNode().put(Request.PREPARED_STATEMENT_ID, statementId).toString();
+    } catch (UnsupportedOperationException e) {
+      throw badRequest(e.getMessage());
+    } catch (Exception e) {
+      LOGGER.error("Caught exception while processing prepare request", e);
+      brokerMetrics.addMeteredGlobalValue(BrokerMeter.UNCAUGHT_POST_EXCEPTIONS, 1L);
+      throw new WebApplicationException(e, Response.Status.INTERNAL_SERVER_ERROR);
+    }
+  }
+
+  @DELETE
+  @Produces(MediaType.APPLICATION_JSON)
+  @Path("query/sql/prepare/{statementId}")
+  @ApiOperation(value = "Closing a prepared statement")
+  @ApiResponses(value = {@ApiResponse(code = 200, message = "Success"),
+      @ApiResponse(code = 404, message = "Prepared statement not found")})
+  public String closeSqlQuery(
+      @ApiParam(value = "Prepared statement id", required = true) @PathParam("statementId") String statementId) {
+    if (!requestHandler.closeStatement(statementId)) {
+      throw new WebApplicationException("Prepared statement: " + statementId + " not found",
+          Response.Status.NOT_FOUND);
+    }
+    return JsonUtils.newObjectNode().put("status", "Closed prepared statement: " + statementId).toString();
+  }
+
+  private static WebApplicationException badRequest(String message) {
+    return new WebApplicationException(message,
+        Response.status(Response.Status.BAD_REQUEST).entity(message).type(MediaType.TEXT_PLAIN).build());
+  }
+
   private String constructSqlQueryOptions() {
     return Request.QueryOptionKey.GROUP_BY_MODE + "=" + Request.SQL + ";" + Request.QueryOptionKey.RESPONSE_FORMAT + "="
         + Request.SQL;
@@ -76,6 +76,7 @@ import org.apache.pinot.common.utils.CommonConstants.Broker;
 import org.apache.pinot.common.utils.DataSchema;
 import org.apache.pinot.common.utils.helix.TableCache;
 import org.apache.pinot.common.utils.request.RequestUtils;
+import org.apache.pinot.core.common.datatable.DataTableCompressor;
 import org.apache.pinot.core.query.aggregation.function.AggregationFunctionUtils;
 import org.apache.pinot.core.query.reduce.BrokerReduceService;
 import org.apache.pinot.core.query.utils.idset.IdSets;
@@ -87,8 +88,11 @@ import org.apache.pinot.core.util.QueryOptions;
 import org.apache.pinot.spi.config.table.TableType;
 import org.apache.pinot.spi.env.PinotConfiguration;
 import org.apache.pinot.spi.utils.BytesUtils;
+import org.apache.pinot.pql.parsers.PinotQuery2BrokerRequestConverter;
 import org.apache.pinot.spi.utils.builder.TableNameBuilder;
 import org.apache.pinot.sql.parsers.CalciteSqlParser;
+import org.apache.pinot.sql.parsers.QueryTemplate;
+import org.apache.pinot.sql.parsers.QueryTemplateCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -98,6 +102,9 @@ import org.slf4j.LoggerFactory;
 public abstract class BaseBrokerRequestHandler implements BrokerRequestHandler {
   private static final Logger LOGGER = LoggerFactory.getLogger(BaseBrokerRequestHandler.class);
   private static final String IN_SUBQUERY = "inSubquery";
+  private static final String PREPARED_STATEMENT_DISABLED_MESSAGE =
+      "Prepared statement is not enabled on the broker, set '" + Broker.CONFIG_OF_PREPARED_STATEMENT_MAX_SIZE
+          + "' to a positive value to enable it";
 
   protected final PinotConfiguration _config;
   protected final RoutingManager _routingManager;
@@ -123,6 +130,10 @@ public abstract class BaseBrokerRequestHandler implements BrokerRequestHandler {
   private final int _defaultHllLog2m;
   private final boolean _enableQueryLimitOverride;
   private final boolean _enableDistinctCountBitmapOverride;
+  private final String _responseCompression;
+  private final String _responseCompressionThresholdBytes;
+  private final QueryTemplateCache _queryTemplateCache;
+  private final PreparedStatementRegistry _preparedStatementRegistry;
 
   public BaseBrokerRequestHandler(PinotConfiguration config, RoutingManager routingManager,
       AccessControlFactory accessControlFactory, QueryQuotaManager queryQuotaManager, TableCache tableCache,
@@ -140,6 +151,20 @@ public abstract class BaseBrokerRequestHandler implements BrokerRequestHandler {
     _enableDistinctCountBitmapOverride =
         _config.getProperty(CommonConstants.Helix.ENABLE_DISTINCT_COUNT_BITMAP_OVERRIDE_KEY, false);
 
+    _responseCompression =
+        _config.getProperty(Broker.CONFIG_OF_RESPONSE_COMPRESSION, Broker.DEFAULT_RESPONSE_COMPRESSION);
+    // Validate the compression type
+    DataTableCompressor.CompressionType.fromName(_responseCompression);
+    _responseCompressionThresholdBytes = _config.getProperty(Broker.CONFIG_OF_RESPONSE_COMPRESSION_THRESHOLD_BYTES);
+    int queryTemplateCacheSize =
+        _config.getProperty(Broker.CONFIG_OF_QUERY_TEMPLATE_CACHE_SIZE, Broker.DEFAULT_QUERY_TEMPLATE_CACHE_SIZE);
+    _queryTemplateCache = queryTemplateCacheSize > 0 ? new QueryTemplateCache(queryTemplateCacheSize) : null;
+    int preparedStatementMaxSize =
+        _config.getProperty(Broker.CONFIG_OF_PREPARED_STATEMENT_MAX_SIZE, Broker.DEFAULT_PREPARED_STATEMENT_MAX_SIZE);
+    _preparedStatementRegistry = preparedStatementMaxSize > 0 ? new PreparedStatementRegistry(preparedStatementMaxSize,
+        _config.getProperty(Broker.CONFIG_OF_PREPARED_STATEMENT_EXPIRE_AFTER_ACCESS_MS,
+            Broker.DEFAULT_PREPARED_STATEMENT_EXPIRE_AFTER_ACCESS_MS)) : null;
+
     _brokerId = config.getProperty(Broker.CONFIG_OF_BROKER_ID, getDefaultBrokerId());
     _brokerTimeoutMs = config.getProperty(Broker.CONFIG_OF_BROKER_TIMEOUT_MS, Broker.DEFAULT_BROKER_TIMEOUT_MS);
     _queryResponseLimit =
@@ -157,6 +182,41 @@ public abstract class BaseBrokerRequestHandler implements BrokerRequestHandler {
             _brokerId, _brokerTimeoutMs, _queryResponseLimit, _queryLogLength, _queryLogRateLimiter.getRate());
   }
 
+  @Override
+  public String prepareStatement(String sql) {
+    if (_preparedStatementRegistry == null) {
+      throw new UnsupportedOperationException(PREPARED_STATEMENT_DISABLED_MESSAGE);
+    }
+    String statementId = _preparedStatementRegistry.register(sql);
+    _brokerMetrics.addMeteredGlobalValue(BrokerMeter.PREPARED_STATEMENTS_REGISTERED, 1);
+    return statementId;
+  }
+
+  @Override
+  public boolean closeStatement(String statementId) {
+    return _preparedStatementRegistry != null && _preparedStatementRegistry.remove(statementId);
+  }
+
+  /**
+   * Compiles the query into a {@link BrokerRequest}. SQL queries of the same shape as a cached template skip the
+   * parsing.
+   */
+  private BrokerRequest compileToBrokerRequest(PinotQueryRequest pinotQueryRequest) {
+    String query = pinotQueryRequest.getQuery();
+    if (_queryTemplateCache == null || !Broker.Request.SQL.equals(pinotQueryRequest.getQueryFormat())) {
+      return PinotQueryParserFactory.get(pinotQueryRequest.getQueryFormat()).compileToBrokerRequest(query);
+    }
+    PinotQuery pinotQuery = _queryTemplateCache.get(query);
+    if (pinotQuery != null) {
+      _brokerMetrics.addMeteredGlobalValue(BrokerMeter.QUERY_TEMPLATE_CACHE_HITS, 1);
+    } else {
+      _brokerMetrics.addMeteredGlobalValue(BrokerMeter.QUERY_TEMPLATE_CACHE_MISSES, 1);
+      pinotQuery = CalciteSqlParser.compileToPinotQuery(query);
+      _queryTemplateCache.put(query, pinotQuery);
+    }
+    return new PinotQuery2BrokerRequestConverter().convert(pinotQuery);
+  }
+
   private String getDefaultBrokerId() {
     try {
       return InetAddress.getLocalHost().getHostName();
@@ -175,16 +235,55 @@ public abstract class BaseBrokerRequestHandler implements BrokerRequestHandler {
     requestStatistics.setRequestId(requestId);
     requestStatistics.setRequestArrivalTimeMillis(System.currentTimeMillis());
 
-    PinotQueryRequest pinotQueryRequest = getPinotQueryRequest(request);
-    String query = pinotQueryRequest.getQuery();
-    LOGGER.debug("Query string for request {}: {}", requestId, pinotQueryRequest.getQuery());
+    String statementId = null;
+    PreparedStatementRegistry.PreparedStatement preparedStatement = null;
+    if (request.has(Broker.Request.PREPARED_STATEMENT_ID)) {
+      statementId = request.get(Broker.Request.PREPARED_STATEMENT_ID).asText();
+      if (_preparedStatementRegistry == null) {
+        requestStatistics.setErrorCode(QueryException.PREPARED_STATEMENT_NOT_FOUND_ERROR_CODE);
+        return new BrokerResponseNative(QueryException
+            .getException(QueryException.PREPARED_STATEMENT_NOT_FOUND_ERROR, PREPARED_STATEMENT_DISABLED_MESSAGE));
+      }
+      preparedStatement = _preparedStatementRegistry.get(statementId);
+      if (preparedStatement == null) {
+        LOGGER.info("Prepared statement: {} not found for request {}", statementId, requestId);
+        requestStatistics.setErrorCode(QueryException.PREPARED_STATEMENT_NOT_FOUND_ERROR_CODE);
+        return new BrokerResponseNative(QueryException
+            .getException(QueryException.PREPARED_STATEMENT_NOT_FOUND_ERROR, "Unknown statement id: " + statementId));
+      }
+    }
+    PinotQueryRequest pinotQueryRequest = null;
+    String query;
+    List<Literal> parameters = null;
+    if (preparedStatement != null) {
+      try {
+        parameters = PreparedStatementRegistry.getParameters(request.get(Broker.Request.PARAMETERS));
+        // NOTE: Log the SQL with the parameters bound (and the statement id) instead of the SQL with the placeholders
+        query = "/* statement: " + statementId + " */ " + QueryTemplate
+            .bindPlaceholders(preparedStatement.getSql(), parameters);
+      } catch (Exception e) {
+        LOGGER.info("Caught exception while binding parameters of prepared statement: {} for request {}: {}",
+            statementId, requestId, e.getMessage());
+        _brokerMetrics.addMeteredGlobalValue(BrokerMeter.REQUEST_COMPILATION_EXCEPTIONS, 1);
+        requestStatistics.setErrorCode(QueryException.PQL_PARSING_ERROR_CODE);
+        return new BrokerResponseNative(QueryException.getException(QueryException.PQL_PARSING_ERROR, e));
+      }
+    } else {
+      pinotQueryRequest = getPinotQueryRequest(request);
+      query = pinotQueryRequest.getQuery();
+    }
+    LOGGER.debug("Query string for request {}: {}", requestId, query);
     requestStatistics.setPql(query);
 
     // Compile the request
     long compilationStartTimeNs = System.nanoTime();
     BrokerRequest brokerRequest;
     try {
-      brokerRequest = PinotQueryParserFactory.get(pinotQueryRequest.getQueryFormat()).compileToBrokerRequest(query);
+      if (preparedStatement != null) {
+        brokerRequest = new PinotQuery2BrokerRequestConverter().convert(preparedStatement.bind(parameters));
+      } else {
+        brokerRequest = compileToBrokerRequest(pinotQueryRequest);
+      }
     } catch (Exception e) {
       LOGGER.info("Caught exception while compiling request {}: {}, {}", requestId, query, e.getMessage());
       _brokerMetrics.addMeteredGlobalValue(BrokerMeter.REQUEST_COMPILATION_EXCEPTIONS, 1);
@@ -192,6 +291,7 @@ public abstract class BaseBrokerRequestHandler implements BrokerRequestHandler {
       return new BrokerResponseNative(QueryException.getException(QueryException.PQL_PARSING_ERROR, e));
     }
     setOptions(requestId, query, request, brokerRequest);
+    setResponseCompression(brokerRequest.getQueryOptions());
 
     if (isLiteralOnlyQuery(brokerRequest)) {
       LOGGER.debug("Request {} contains only Literal, skipping server query: {}", requestId, query);
@@ -557,7 +657,11 @@ public abstract class BaseBrokerRequestHandler implements BrokerRequestHandler {
     // Make a copy of the query request to construct the subquery request so that they share the query options
     ObjectNode subqueryRequest = jsonRequest.deepCopy();
 
-    if (subqueryRequest.has(Broker.Request.SQL)) {
+    if (subqueryRequest.has(Broker.Request.PREPARED_STATEMENT_ID)) {
+      subqueryRequest.remove(Broker.Request.PREPARED_STATEMENT_ID);
+      subqueryRequest.remove(Broker.Request.PARAMETERS);
+      subqueryRequest.put(Broker.Request.SQL, subquery);
+    } else if (subqueryRequest.has(Broker.Request.SQL)) {
       subqueryRequest.put(Broker.Request.SQL, subquery);
     } else {
       subqueryRequest.put(Broker.Request.PQL, subquery);
@@ -1045,6 +1149,22 @@ public abstract class BaseBrokerRequestHandler implements BrokerRequestHandler {
     return totalTimeMs > 1000L;
   }
 
+  /**
+   * Sets the default response compression (from the broker config) into the query options if not set in the query.
+   * <p>NOTE: The compression type is sent to the servers in the InstanceRequest (see QueryRouter) so that the servers
+   *          only compress the response for the brokers that can decode it. The servers not supporting compression will
+   *          ignore it and send the uncompressed response.
+   */
+  private void setResponseCompression(Map<String, String> queryOptions) {
+    if (DataTableCompressor.CompressionType.fromName(_responseCompression) != null) {
+      queryOptions.putIfAbsent(Broker.Request.QueryOptionKey.RESPONSE_COMPRESSION, _responseCompression);
+      if (_responseCompressionThresholdBytes != null) {
+        queryOptions.putIfAbsent(Broker.Request.QueryOptionKey.RESPONSE_COMPRESSION_THRESHOLD_BYTES,
+            _responseCompressionThresholdBytes);
+      }
+    }
+  }
+
   /**
    * Sets brokerRequest extra options
    */
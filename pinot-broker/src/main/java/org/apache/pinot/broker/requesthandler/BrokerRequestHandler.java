@@ -36,4 +36,17 @@ public interface BrokerRequestHandler {
   BrokerResponse handleRequest(JsonNode request, @Nullable RequesterIdentity requesterIdentity,
       RequestStatistics requestStatistics)
       throws Exception;
+
+  /**
+   * Registers the SQL query with {@code ?} placeholders as prepared statement, and returns the id of the prepared
+   * statement, which can be executed with the parameters via {@link #handleRequest}.
+   *
+   * @throws UnsupportedOperationException if prepared statement is not enabled on the broker
+   */
+  String prepareStatement(String sql);
+
+  /**
+   * Removes the prepared statement, returns {@code true} if the prepared statement exists, {@code false} otherwise.
+   */
+  boolean closeStatement(String statementId);
 }
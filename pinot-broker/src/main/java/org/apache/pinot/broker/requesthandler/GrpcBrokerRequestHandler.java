@@ -0,0 +1,120 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pinot.broker.requesthandler;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import org.apache.pinot.broker.api.RequestStatistics;
+import org.apache.pinot.broker.broker.AccessControlFactory;
+import org.apache.pinot.broker.queryquota.QueryQuotaManager;
+import org.apache.pinot.broker.routing.RoutingManager;
+import org.apache.pinot.common.metrics.BrokerMeter;
+import org.apache.pinot.common.metrics.BrokerMetrics;
+import org.apache.pinot.common.metrics.BrokerQueryPhase;
+import org.apache.pinot.common.request.BrokerRequest;
+import org.apache.pinot.common.response.BrokerResponse;
+import org.apache.pinot.common.response.broker.BrokerResponseNative;
+import org.apache.pinot.common.utils.DataTable;
+import org.apache.pinot.common.utils.helix.TableCache;
+import org.apache.pinot.core.query.request.context.QueryContext;
+import org.apache.pinot.core.query.request.context.utils.BrokerRequestToQueryContextConverter;
+import org.apache.pinot.core.query.request.context.utils.QueryContextUtils;
+import org.apache.pinot.core.transport.ServerInstance;
+import org.apache.pinot.core.transport.ServerLatencyTracker;
+import org.apache.pinot.core.transport.ServerRoutingInstance;
+import org.apache.pinot.core.transport.grpc.StreamingQueryRouter;
+import org.apache.pinot.core.transport.grpc.StreamingQueryRouter.StreamingQueryResponse;
+import org.apache.pinot.spi.env.PinotConfiguration;
+import org.apache.pinot.spi.utils.builder.TableNameBuilder;
+
+
+/**
+ * The {@code GrpcBrokerRequestHandler} class is a thread-safe broker request handler which routes the selection only
+ * queries (without ORDER BY) to the servers via the gRPC streaming endpoint, where the servers stream the rows as they
+ * are produced and the streams are cancelled once LIMIT rows are gathered.
+ * <p>Other queries, or queries hitting servers without the gRPC query server enabled, are routed the same way as the
+ * {@link SingleConnectionBrokerRequestHandler}.
+ */
+@ThreadSafe
+public class GrpcBrokerRequestHandler extends SingleConnectionBrokerRequestHandler {
+  private final StreamingQueryRouter _streamingQueryRouter;
+
+  public GrpcBrokerRequestHandler(PinotConfiguration config, RoutingManager routingManager,
+      AccessControlFactory accessControlFactory, QueryQuotaManager queryQuotaManager, TableCache tableCache,
+      BrokerMetrics brokerMetrics, @Nullable ServerLatencyTracker serverLatencyTracker) {
+    super(config, routingManager, accessControlFactory, queryQuotaManager, tableCache, brokerMetrics,
+        serverLatencyTracker);
+    _streamingQueryRouter = new StreamingQueryRouter(_brokerId, brokerMetrics, serverLatencyTracker);
+  }
+
+  @Override
+  public synchronized void shutDown() {
+    super.shutDown();
+    _streamingQueryRouter.shutDown();
+  }
+
+  @Override
+  protected BrokerResponse processBrokerRequest(long requestId, BrokerRequest originalBrokerRequest,
+      @Nullable BrokerRequest offlineBrokerRequest, @Nullable Map<ServerInstance, List<String>> offlineRoutingTable,
+      @Nullable BrokerRequest realtimeBrokerRequest, @Nullable Map<ServerInstance, List<String>> realtimeRoutingTable,
+      long timeoutMs, ServerStats serverStats, RequestStatistics requestStatistics)
+      throws Exception {
+    QueryContext queryContext = BrokerRequestToQueryContextConverter.convert(originalBrokerRequest);
+    if (QueryContextUtils.isAggregationQuery(queryContext) || queryContext.getOrderByExpressions() != null
+        || !StreamingQueryRouter.isStreamingSupported(offlineRoutingTable) || !StreamingQueryRouter
+        .isStreamingSupported(realtimeRoutingTable)) {
+      return super.processBrokerRequest(requestId, originalBrokerRequest, offlineBrokerRequest, offlineRoutingTable,
+          realtimeBrokerRequest, realtimeRoutingTable, timeoutMs, serverStats, requestStatistics);
+    }
+    assert offlineBrokerRequest != null || realtimeBrokerRequest != null;
+
+    String rawTableName = TableNameBuilder.extractRawTableName(originalBrokerRequest.getQuerySource().getTableName());
+    long scatterGatherStartTimeNs = System.nanoTime();
+    StreamingQueryResponse streamingQueryResponse = _streamingQueryRouter
+        .submitQuery(requestId, rawTableName, offlineBrokerRequest, offlineRoutingTable, realtimeBrokerRequest,
+            realtimeRoutingTable, timeoutMs, queryContext.getLimit());
+    _brokerMetrics
+        .addPhaseTiming(rawTableName, BrokerQueryPhase.SCATTER_GATHER, System.nanoTime() - scatterGatherStartTimeNs);
+    serverStats.setServerStats(streamingQueryResponse.getStats());
+    Map<ServerRoutingInstance, DataTable> dataTableMap = streamingQueryResponse.getDataTableMap();
+
+    long reduceStartTimeNs = System.nanoTime();
+    long reduceTimeOutMs = timeoutMs - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - scatterGatherStartTimeNs);
+    BrokerResponseNative brokerResponse =
+        _brokerReduceService.reduceOnDataTable(originalBrokerRequest, dataTableMap, reduceTimeOutMs, _brokerMetrics);
+    long reduceTimeNanos = System.nanoTime() - reduceStartTimeNs;
+    requestStatistics.setReduceTimeNanos(reduceTimeNanos);
+    _brokerMetrics.addPhaseTiming(rawTableName, BrokerQueryPhase.REDUCE, reduceTimeNanos);
+
+    int numServersQueried = dataTableMap.size();
+    int numServersResponded = streamingQueryResponse.getNumServersResponded();
+    brokerResponse.setNumServersQueried(numServersQueried);
+    brokerResponse.setNumServersResponded(numServersResponded);
+    if (brokerResponse.getExceptionsSize() > 0) {
+      _brokerMetrics.addMeteredTableValue(rawTableName, BrokerMeter.BROKER_RESPONSES_WITH_PROCESSING_EXCEPTIONS, 1);
+    }
+    if (numServersQueried > numServersResponded) {
+      _brokerMetrics.addMeteredTableValue(rawTableName, BrokerMeter.BROKER_RESPONSES_WITH_PARTIAL_SERVERS_RESPONDED, 1);
+    }
+    return brokerResponse;
+  }
+}
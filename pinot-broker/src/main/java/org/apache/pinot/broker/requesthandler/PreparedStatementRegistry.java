@@ -0,0 +1,143 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pinot.broker.requesthandler;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+import org.apache.pinot.common.request.Literal;
+import org.apache.pinot.common.request.PinotQuery;
+import org.apache.pinot.sql.parsers.CalciteSqlParser;
+import org.apache.pinot.sql.parsers.QueryTemplate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Registry of the prepared statements on the broker. A prepared statement is a SQL query with {@code ?} placeholders,
+ * which is compiled once when registered, then the typed parameters of each execution are bound into the compiled
+ * query without parsing the SQL again.
+ * <p>The prepared statements are evicted when the registry exceeds the max size, or when they are not accessed for
+ * the configured period. Clients should prepare the statement again when it is not found.
+ */
+public class PreparedStatementRegistry {
+  private static final Logger LOGGER = LoggerFactory.getLogger(PreparedStatementRegistry.class);
+
+  private final Cache<String, PreparedStatement> _preparedStatements;
+
+  public PreparedStatementRegistry(int maxSize, long expireAfterAccessMs) {
+    Preconditions.checkArgument(maxSize > 0, "Invalid max size: %s for prepared statement registry", maxSize);
+    _preparedStatements = CacheBuilder.newBuilder().maximumSize(maxSize)
+        .expireAfterAccess(expireAfterAccessMs, TimeUnit.MILLISECONDS).build();
+  }
+
+  /**
+   * Registers the given SQL as prepared statement, and returns the id of the prepared statement.
+   */
+  public String register(String sql) {
+    PreparedStatement preparedStatement = new PreparedStatement(sql);
+    String statementId = UUID.randomUUID().toString();
+    _preparedStatements.put(statementId, preparedStatement);
+    if (preparedStatement._queryTemplate == null) {
+      LOGGER.info("Registered prepared statement: {} which requires compilation for each execution: {}", statementId,
+          sql);
+    }
+    return statementId;
+  }
+
+  @Nullable
+  public PreparedStatement get(String statementId) {
+    return _preparedStatements.getIfPresent(statementId);
+  }
+
+  /**
+   * Removes the prepared statement, returns {@code true} if the prepared statement exists, {@code false} otherwise.
+   */
+  public boolean remove(String statementId) {
+    return _preparedStatements.asMap().remove(statementId) != null;
+  }
+
+  public long size() {
+    return _preparedStatements.size();
+  }
+
+  /**
+   * Converts the JSON array of parameters into literals. Integral numbers are bound as LONG, other numbers as DOUBLE,
+   * and strings as STRING.
+   */
+  public static List<Literal> getParameters(@Nullable JsonNode parametersJson) {
+    if (parametersJson == null || parametersJson.isNull()) {
+      return new ArrayList<>();
+    }
+    Preconditions.checkArgument(parametersJson.isArray(), "Parameters must be a JSON array, got: %s", parametersJson);
+    List<Literal> parameters = new ArrayList<>(parametersJson.size());
+    for (JsonNode parameterJson : parametersJson) {
+      if (parameterJson.isIntegralNumber() && parameterJson.canConvertToLong()) {
+        parameters.add(Literal.longValue(parameterJson.asLong()));
+      } else if (parameterJson.isNumber()) {
+        parameters.add(Literal.doubleValue(parameterJson.asDouble()));
+      } else if (parameterJson.isTextual()) {
+        parameters.add(Literal.stringValue(parameterJson.asText()));
+      } else {
+        throw new IllegalArgumentException("Unsupported parameter: " + parameterJson);
+      }
+    }
+    return parameters;
+  }
+
+  public static class PreparedStatement {
+    private final String _sql;
+    private final int _numParameters;
+    // Null when the parameters cannot be bound into the compiled query
+    private final QueryTemplate _queryTemplate;
+
+    private PreparedStatement(String sql) {
+      _sql = sql;
+      _numParameters = QueryTemplate.getNumPlaceholders(sql);
+      _queryTemplate = QueryTemplate.compile(sql);
+    }
+
+    public String getSql() {
+      return _sql;
+    }
+
+    public int getNumParameters() {
+      return _numParameters;
+    }
+
+    /**
+     * Returns the compiled {@link PinotQuery} with the parameters bound.
+     */
+    public PinotQuery bind(List<Literal> parameters) {
+      Preconditions.checkArgument(parameters.size() == _numParameters, "Expect %s parameters, got: %s",
+          _numParameters, parameters.size());
+      if (_queryTemplate != null) {
+        return _queryTemplate.bind(parameters);
+      } else {
+        return CalciteSqlParser.compileToPinotQuery(QueryTemplate.bindPlaceholders(_sql, parameters));
+      }
+    }
+  }
+}
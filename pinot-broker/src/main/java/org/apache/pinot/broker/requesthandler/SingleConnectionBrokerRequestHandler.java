@@ -36,16 +36,22 @@ import org.apache.pinot.common.request.BrokerRequest;
 import org.apache.pinot.common.response.BrokerResponse;
 import org.apache.pinot.common.response.broker.BrokerResponseNative;
 import org.apache.pinot.common.response.broker.QueryProcessingException;
+import org.apache.pinot.common.utils.CommonConstants.Broker;
 import org.apache.pinot.common.utils.DataTable;
 import org.apache.pinot.common.utils.HashUtil;
 import org.apache.pinot.common.utils.helix.TableCache;
+import org.apache.pinot.core.query.reduce.IncrementalReduceHandler;
 import org.apache.pinot.core.transport.AsyncQueryResponse;
+import org.apache.pinot.core.transport.QueryHedger;
 import org.apache.pinot.core.transport.QueryRouter;
 import org.apache.pinot.core.transport.ServerInstance;
+import org.apache.pinot.core.transport.ServerLatencyTracker;
 import org.apache.pinot.core.transport.ServerResponse;
 import org.apache.pinot.core.transport.ServerRoutingInstance;
 import org.apache.pinot.spi.env.PinotConfiguration;
 import org.apache.pinot.spi.utils.builder.TableNameBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 
 /**
@@ -54,13 +60,42 @@ import org.apache.pinot.spi.utils.builder.TableNameBuilder;
  */
 @ThreadSafe
 public class SingleConnectionBrokerRequestHandler extends BaseBrokerRequestHandler {
+  private static final Logger LOGGER = LoggerFactory.getLogger(SingleConnectionBrokerRequestHandler.class);
+
   private final QueryRouter _queryRouter;
+  private final QueryHedger _queryHedger;
 
   public SingleConnectionBrokerRequestHandler(PinotConfiguration config, RoutingManager routingManager,
       AccessControlFactory accessControlFactory, QueryQuotaManager queryQuotaManager, TableCache tableCache,
       BrokerMetrics brokerMetrics) {
+    this(config, routingManager, accessControlFactory, queryQuotaManager, tableCache, brokerMetrics, null);
+  }
+
+  public SingleConnectionBrokerRequestHandler(PinotConfiguration config, RoutingManager routingManager,
+      AccessControlFactory accessControlFactory, QueryQuotaManager queryQuotaManager, TableCache tableCache,
+      BrokerMetrics brokerMetrics, @Nullable ServerLatencyTracker serverLatencyTracker) {
     super(config, routingManager, accessControlFactory, queryQuotaManager, tableCache, brokerMetrics);
-    _queryRouter = new QueryRouter(_brokerId, brokerMetrics);
+    if (config.getProperty(Broker.CONFIG_OF_ENABLE_QUERY_HEDGING, Broker.DEFAULT_ENABLE_QUERY_HEDGING)) {
+      double latencyPercentile = config.getProperty(Broker.CONFIG_OF_QUERY_HEDGING_LATENCY_PERCENTILE,
+          QueryHedger.DEFAULT_LATENCY_PERCENTILE);
+      long minDelayMs =
+          config.getProperty(Broker.CONFIG_OF_QUERY_HEDGING_MIN_DELAY_MS, QueryHedger.DEFAULT_MIN_DELAY_MS);
+      int maxInFlightHedgedRequests = config.getProperty(Broker.CONFIG_OF_QUERY_HEDGING_MAX_IN_FLIGHT_REQUESTS,
+          QueryHedger.DEFAULT_MAX_IN_FLIGHT_HEDGED_REQUESTS);
+      LOGGER.info("Enabling query hedging with latency percentile: {}, min delay: {}ms, max in-flight requests: {}",
+          latencyPercentile, minDelayMs, maxInFlightHedgedRequests);
+      _queryHedger =
+          new QueryHedger(routingManager::selectAlternateServerInstance, latencyPercentile, minDelayMs,
+              maxInFlightHedgedRequests);
+    } else {
+      _queryHedger = null;
+    }
+    int numChannelsPerServer = config.getProperty(Broker.CONFIG_OF_NETTY_NUM_CHANNELS_PER_SERVER,
+        Broker.DEFAULT_NETTY_NUM_CHANNELS_PER_SERVER);
+    boolean enableNativeTransport = config.getProperty(Broker.CONFIG_OF_NETTY_ENABLE_NATIVE_TRANSPORT,
+        Broker.DEFAULT_NETTY_ENABLE_NATIVE_TRANSPORT);
+    _queryRouter = new QueryRouter(_brokerId, brokerMetrics, serverLatencyTracker, _queryHedger, numChannelsPerServer,
+        enableNativeTransport);
   }
 
   @Override
@@ -83,10 +118,16 @@ public class SingleConnectionBrokerRequestHandler extends BaseBrokerRequestHandl
 
     String rawTableName = TableNameBuilder.extractRawTableName(originalBrokerRequest.getQuerySource().getTableName());
     long scatterGatherStartTimeNs = System.nanoTime();
+    IncrementalReduceHandler incrementalReduceHandler =
+        _brokerReduceService.getIncrementalReduceHandler(originalBrokerRequest);
     AsyncQueryResponse asyncQueryResponse = _queryRouter
         .submitQuery(requestId, rawTableName, offlineBrokerRequest, offlineRoutingTable, realtimeBrokerRequest,
-            realtimeRoutingTable, timeoutMs);
+            realtimeRoutingTable, timeoutMs, incrementalReduceHandler);
     Map<ServerRoutingInstance, ServerResponse> response = asyncQueryResponse.getResponse();
+    if (incrementalReduceHandler != null) {
+      // Close the handler before gathering the data tables so that all the merged data tables are gathered
+      incrementalReduceHandler.close();
+    }
     _brokerMetrics
         .addPhaseTiming(rawTableName, BrokerQueryPhase.SCATTER_GATHER, System.nanoTime() - scatterGatherStartTimeNs);
     // TODO Use scatterGatherStats as serverStats
@@ -101,6 +142,16 @@ public class SingleConnectionBrokerRequestHandler extends BaseBrokerRequestHandl
       if (dataTable != null) {
         dataTableMap.put(entry.getKey(), dataTable);
         totalResponseSize += serverResponse.getResponseSize();
+        if (_queryHedger != null) {
+          _queryHedger.recordLatency(rawTableName, serverResponse.getResponseDelayMs());
+        }
+      } else if (_queryHedger != null) {
+        // Also record the servers not responded (e.g. timed out) with the time elapsed since the request was submitted
+        // (lower bound of the actual latency), so that the hedge delay is not biased towards the successful responses
+        int elapsedSinceSubmitMs = serverResponse.getElapsedSinceSubmitMs();
+        if (elapsedSinceSubmitMs >= 0) {
+          _queryHedger.recordLatency(rawTableName, elapsedSinceSubmitMs);
+        }
       }
     }
     int numServersResponded = dataTableMap.size();
@@ -108,7 +159,8 @@ public class SingleConnectionBrokerRequestHandler extends BaseBrokerRequestHandl
     long reduceStartTimeNs = System.nanoTime();
     long reduceTimeOutMs = timeoutMs - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - scatterGatherStartTimeNs);
     BrokerResponseNative brokerResponse =
-        _brokerReduceService.reduceOnDataTable(originalBrokerRequest, dataTableMap, reduceTimeOutMs, _brokerMetrics);
+        _brokerReduceService.reduceOnDataTable(originalBrokerRequest, dataTableMap, reduceTimeOutMs, _brokerMetrics,
+            incrementalReduceHandler);
     final long reduceTimeNanos = System.nanoTime() - reduceStartTimeNs;
     requestStatistics.setReduceTimeNanos(reduceTimeNanos);
     _brokerMetrics.addPhaseTiming(rawTableName, BrokerQueryPhase.REDUCE, reduceTimeNanos);
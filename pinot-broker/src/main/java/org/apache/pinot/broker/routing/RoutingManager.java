@@ -57,6 +57,7 @@ import org.apache.pinot.common.utils.CommonConstants;
 import org.apache.pinot.common.utils.CommonConstants.Helix.StateModel.SegmentStateModel;
 import org.apache.pinot.common.utils.HashUtil;
 import org.apache.pinot.core.transport.ServerInstance;
+import org.apache.pinot.core.transport.ServerLatencyTracker;
 import org.apache.pinot.spi.config.table.QueryConfig;
 import org.apache.pinot.spi.config.table.TableConfig;
 import org.apache.pinot.spi.utils.builder.TableNameBuilder;
@@ -86,6 +87,7 @@ public class RoutingManager implements ClusterChangeHandler {
   private static final Logger LOGGER = LoggerFactory.getLogger(RoutingManager.class);
 
   private final BrokerMetrics _brokerMetrics;
+  private final ServerLatencyTracker _serverLatencyTracker;
   private final Map<String, RoutingEntry> _routingEntryMap = new ConcurrentHashMap<>();
   private final Map<String, ServerInstance> _enabledServerInstanceMap = new ConcurrentHashMap<>();
 
@@ -96,7 +98,16 @@ public class RoutingManager implements ClusterChangeHandler {
   private ZkHelixPropertyStore<ZNRecord> _propertyStore;
 
   public RoutingManager(BrokerMetrics brokerMetrics) {
+    this(brokerMetrics, null);
+  }
+
+  /**
+   * @param serverLatencyTracker Tracker for the server latency and in-flight requests for adaptive instance selection,
+   *                             {@code null} if adaptive instance selection is disabled
+   */
+  public RoutingManager(BrokerMetrics brokerMetrics, @Nullable ServerLatencyTracker serverLatencyTracker) {
     _brokerMetrics = brokerMetrics;
+    _serverLatencyTracker = serverLatencyTracker;
   }
 
   @Override
@@ -261,6 +272,12 @@ public class RoutingManager implements ClusterChangeHandler {
     // Remove new disabled instances from _enabledServerInstanceMap after updating all routing entries to ensure it
     // always contains the selected instances
     _enabledServerInstanceMap.keySet().removeAll(newDisabledInstances);
+    // Evict the latency stats for the disabled (or removed) instances, which are re-created when they are enabled again
+    if (_serverLatencyTracker != null) {
+      for (String instance : newDisabledInstances) {
+        _serverLatencyTracker.removeServer(instance);
+      }
+    }
 
     LOGGER.info(
         "Processed instance config change in {}ms (fetch {} instance configs: {}ms, calculate changed instances: {}ms, update {} routing entries: {}ms), new enabled instances: {}, new disabled instances: {}",
@@ -319,7 +336,8 @@ public class RoutingManager implements ClusterChangeHandler {
     for (SegmentPruner segmentPruner : segmentPruners) {
       segmentPruner.init(externalView, idealState, preSelectedOnlineSegments);
     }
-    InstanceSelector instanceSelector = InstanceSelectorFactory.getInstanceSelector(tableConfig, _brokerMetrics);
+    InstanceSelector instanceSelector =
+        InstanceSelectorFactory.getInstanceSelector(tableConfig, _brokerMetrics, _serverLatencyTracker);
     instanceSelector.init(_enabledServerInstanceMap.keySet(), externalView, idealState, preSelectedOnlineSegments);
 
     // Add time boundary manager if both offline and real-time part exist for a hybrid table
@@ -467,6 +485,22 @@ public class RoutingManager implements ClusterChangeHandler {
     return new RoutingTable(serverInstanceToSegmentsMap, selectionResult.getUnavailableSegments());
   }
 
+  /**
+   * Returns an alternate server instance hosting all the given segments of the given table which is not in the excluded
+   * instances, or {@code null} if there is no such server instance or the routing does not exist. This is used to send
+   * the hedged requests for the straggling servers.
+   */
+  @Nullable
+  public ServerInstance selectAlternateServerInstance(String tableNameWithType, List<String> segments,
+      Set<String> excludedInstances) {
+    RoutingEntry routingEntry = _routingEntryMap.get(tableNameWithType);
+    if (routingEntry == null) {
+      return null;
+    }
+    String alternateInstance = routingEntry.selectAlternateInstance(segments, excludedInstances);
+    return alternateInstance != null ? _enabledServerInstanceMap.get(alternateInstance) : null;
+  }
+
   /**
    * Returns the time boundary info for the given offline table, or {@code null} if the routing or time boundary does
    * not exist.
@@ -582,5 +616,10 @@ public class RoutingManager implements ClusterChangeHandler {
         return new InstanceSelector.SelectionResult(Collections.emptyMap(), Collections.emptyList());
       }
     }
+
+    @Nullable
+    String selectAlternateInstance(List<String> segments, Set<String> excludedInstances) {
+      return _instanceSelector.selectAlternateInstance(segments, excludedInstances);
+    }
   }
 }
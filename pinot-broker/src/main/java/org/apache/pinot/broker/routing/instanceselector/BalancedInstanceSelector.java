@@ -21,8 +21,11 @@ package org.apache.pinot.broker.routing.instanceselector;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import javax.annotation.Nullable;
 import org.apache.pinot.common.metrics.BrokerMetrics;
 import org.apache.pinot.common.utils.HashUtil;
+import org.apache.pinot.core.transport.ServerLatencyTracker;
 
 
 /**
@@ -30,11 +33,19 @@ import org.apache.pinot.common.utils.HashUtil;
  * <p>The selection algorithm will always evenly distribute the traffic to all replicas of each segment, and will try
  * to select different replica id for each segment. The algorithm is very light-weight and will do best effort to
  * balance the number of segments served by each selected server instance.
+ * <p>When the {@link ServerLatencyTracker} is provided (adaptive selection), the algorithm picks 2 random replicas for
+ * each segment and selects the one with the lower score (latency EWMA times the number of in-flight requests), so that
+ * the traffic is shifted away from the slow or overloaded servers (power of two choices).
  */
 public class BalancedInstanceSelector extends BaseInstanceSelector {
 
   public BalancedInstanceSelector(String tableNameWithType, BrokerMetrics brokerMetrics) {
-    super(tableNameWithType, brokerMetrics);
+    this(tableNameWithType, brokerMetrics, null);
+  }
+
+  public BalancedInstanceSelector(String tableNameWithType, BrokerMetrics brokerMetrics,
+      @Nullable ServerLatencyTracker serverLatencyTracker) {
+    super(tableNameWithType, brokerMetrics, serverLatencyTracker);
   }
 
   @Override
@@ -47,9 +58,27 @@ public class BalancedInstanceSelector extends BaseInstanceSelector {
       // has not been updated (we update all components for routing in sequence)
       if (enabledInstances != null) {
         int numEnabledInstances = enabledInstances.size();
-        segmentToSelectedInstanceMap.put(segment, enabledInstances.get(requestId++ % numEnabledInstances));
+        if (_serverLatencyTracker == null || numEnabledInstances == 1) {
+          segmentToSelectedInstanceMap.put(segment, enabledInstances.get(requestId++ % numEnabledInstances));
+        } else {
+          segmentToSelectedInstanceMap.put(segment, selectAdaptively(enabledInstances));
+        }
       }
     }
     return segmentToSelectedInstanceMap;
   }
+
+  /**
+   * Picks 2 distinct random instances and returns the one with the lower score.
+   */
+  private String selectAdaptively(List<String> enabledInstances) {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    int numEnabledInstances = enabledInstances.size();
+    int index1 = random.nextInt(numEnabledInstances);
+    int index2 = (index1 + 1 + random.nextInt(numEnabledInstances - 1)) % numEnabledInstances;
+    String instance1 = enabledInstances.get(index1);
+    String instance2 = enabledInstances.get(index2);
+    return _serverLatencyTracker.getScore(instance1) <= _serverLatencyTracker.getScore(instance2) ? instance1
+        : instance2;
+  }
 }
@@ -22,11 +22,13 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.atomic.AtomicLong;
 import javax.annotation.Nullable;
 import org.apache.helix.model.ExternalView;
@@ -36,6 +38,7 @@ import org.apache.pinot.common.metrics.BrokerMetrics;
 import org.apache.pinot.common.request.BrokerRequest;
 import org.apache.pinot.common.utils.CommonConstants.Helix.StateModel.SegmentStateModel;
 import org.apache.pinot.common.utils.HashUtil;
+import org.apache.pinot.core.transport.ServerLatencyTracker;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -54,6 +57,8 @@ abstract class BaseInstanceSelector implements InstanceSelector {
   private final AtomicLong _requestId = new AtomicLong();
   private final String _tableNameWithType;
   private final BrokerMetrics _brokerMetrics;
+  // Tracker for the server latency and in-flight requests, null if adaptive selection is disabled
+  final ServerLatencyTracker _serverLatencyTracker;
 
   // These 4 variables are the cached states to help accelerate the change processing
   private Set<String> _enabledInstances;
@@ -65,9 +70,11 @@ abstract class BaseInstanceSelector implements InstanceSelector {
   private volatile Map<String, List<String>> _segmentToEnabledInstancesMap;
   private volatile Set<String> _unavailableSegments;
 
-  BaseInstanceSelector(String tableNameWithType, BrokerMetrics brokerMetrics) {
+  BaseInstanceSelector(String tableNameWithType, BrokerMetrics brokerMetrics,
+      @Nullable ServerLatencyTracker serverLatencyTracker) {
     _tableNameWithType = tableNameWithType;
     _brokerMetrics = brokerMetrics;
+    _serverLatencyTracker = serverLatencyTracker;
   }
 
   @Override
@@ -267,4 +274,55 @@ abstract class BaseInstanceSelector implements InstanceSelector {
    */
   abstract Map<String, String> select(List<String> segments, int requestId,
       Map<String, List<String>> segmentToEnabledInstancesMap);
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>Picks among the enabled ONLINE/CONSUMING instances hosting all the given segments (excluding the given
+   * instances). When adaptive selection is enabled, picks the instance with the lowest latency score, otherwise picks a
+   * random one.
+   */
+  @Nullable
+  @Override
+  public String selectAlternateInstance(List<String> segments, Set<String> excludedInstances) {
+    // Copy the volatile reference so that the cached map won't be changed during the selection
+    Map<String, List<String>> segmentToEnabledInstancesMap = _segmentToEnabledInstancesMap;
+    Set<String> candidateInstances = null;
+    for (String segment : segments) {
+      List<String> enabledInstances = segmentToEnabledInstancesMap.get(segment);
+      if (enabledInstances == null) {
+        return null;
+      }
+      if (candidateInstances == null) {
+        candidateInstances = new HashSet<>(enabledInstances);
+        candidateInstances.removeAll(excludedInstances);
+      } else {
+        candidateInstances.retainAll(enabledInstances);
+      }
+      if (candidateInstances.isEmpty()) {
+        return null;
+      }
+    }
+    if (candidateInstances == null) {
+      return null;
+    }
+    String selectedInstance = null;
+    if (_serverLatencyTracker != null) {
+      double minScore = Double.MAX_VALUE;
+      for (String instance : candidateInstances) {
+        double score = _serverLatencyTracker.getScore(instance);
+        if (score < minScore) {
+          selectedInstance = instance;
+          minScore = score;
+        }
+      }
+    } else {
+      int index = ThreadLocalRandom.current().nextInt(candidateInstances.size());
+      Iterator<String> iterator = candidateInstances.iterator();
+      for (int i = 0; i <= index; i++) {
+        selectedInstance = iterator.next();
+      }
+    }
+    return selectedInstance;
+  }
 }
@@ -21,6 +21,7 @@ package org.apache.pinot.broker.routing.instanceselector;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import javax.annotation.Nullable;
 import org.apache.helix.model.ExternalView;
 import org.apache.helix.model.IdealState;
 import org.apache.pinot.common.request.BrokerRequest;
@@ -57,6 +58,14 @@ public interface InstanceSelector {
    */
   SelectionResult select(BrokerRequest brokerRequest, List<String> segments);
 
+  /**
+   * Selects an enabled server instance hosting all the given segments which is not in the excluded instances, or
+   * returns {@code null} if there is no such instance. This is used to pick the alternate instance for the hedged
+   * request.
+   */
+  @Nullable
+  String selectAlternateInstance(List<String> segments, Set<String> excludedInstances);
+
   class SelectionResult {
     private final Map<String, String> _segmentToInstanceMap;
     private final List<String> _unavailableSegments;
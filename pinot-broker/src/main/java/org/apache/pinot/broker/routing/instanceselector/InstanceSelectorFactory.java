@@ -18,7 +18,9 @@
  */
 package org.apache.pinot.broker.routing.instanceselector;
 
+import javax.annotation.Nullable;
 import org.apache.pinot.common.metrics.BrokerMetrics;
+import org.apache.pinot.core.transport.ServerLatencyTracker;
 import org.apache.pinot.spi.config.table.RoutingConfig;
 import org.apache.pinot.spi.config.table.TableConfig;
 import org.apache.pinot.spi.config.table.TableType;
@@ -36,6 +38,15 @@ public class InstanceSelectorFactory {
   public static final String LEGACY_REPLICA_GROUP_REALTIME_ROUTING = "PartitionAwareRealtime";
 
   public static InstanceSelector getInstanceSelector(TableConfig tableConfig, BrokerMetrics brokerMetrics) {
+    return getInstanceSelector(tableConfig, brokerMetrics, null);
+  }
+
+  /**
+   * Returns the instance selector for the table, which selects the instances adaptively based on the server latency and
+   * in-flight requests when the {@link ServerLatencyTracker} is provided.
+   */
+  public static InstanceSelector getInstanceSelector(TableConfig tableConfig, BrokerMetrics brokerMetrics,
+      @Nullable ServerLatencyTracker serverLatencyTracker) {
     String tableNameWithType = tableConfig.getTableName();
     RoutingConfig routingConfig = tableConfig.getRoutingConfig();
     if (routingConfig != null) {
@@ -45,14 +56,14 @@ public class InstanceSelectorFactory {
           tableConfig.getTableType() == TableType.REALTIME && LEGACY_REPLICA_GROUP_REALTIME_ROUTING
               .equalsIgnoreCase(routingConfig.getRoutingTableBuilderName()))) {
         LOGGER.info("Using ReplicaGroupInstanceSelector for table: {}", tableNameWithType);
-        return new ReplicaGroupInstanceSelector(tableNameWithType, brokerMetrics);
+        return new ReplicaGroupInstanceSelector(tableNameWithType, brokerMetrics, serverLatencyTracker);
       }
       if (RoutingConfig.STRICT_REPLICA_GROUP_INSTANCE_SELECTOR_TYPE
           .equalsIgnoreCase(routingConfig.getInstanceSelectorType())) {
         LOGGER.info("Using StrictReplicaGroupInstanceSelector for table: {}", tableNameWithType);
-        return new StrictReplicaGroupInstanceSelector(tableNameWithType, brokerMetrics);
+        return new StrictReplicaGroupInstanceSelector(tableNameWithType, brokerMetrics, serverLatencyTracker);
       }
     }
-    return new BalancedInstanceSelector(tableNameWithType, brokerMetrics);
+    return new BalancedInstanceSelector(tableNameWithType, brokerMetrics, serverLatencyTracker);
   }
 }
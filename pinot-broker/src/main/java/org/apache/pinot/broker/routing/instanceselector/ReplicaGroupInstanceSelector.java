@@ -19,10 +19,14 @@
 package org.apache.pinot.broker.routing.instanceselector;
 
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import javax.annotation.Nullable;
 import org.apache.pinot.common.metrics.BrokerMetrics;
 import org.apache.pinot.common.utils.HashUtil;
+import org.apache.pinot.core.transport.ServerLatencyTracker;
 
 
 /**
@@ -40,16 +44,44 @@ import org.apache.pinot.common.utils.HashUtil;
  * request (there is no guarantee on choosing servers from the same replica-group though). In transitioning/error
  * scenario (external view does not match ideal state), there is no guarantee on picking the least server instances, but
  * the traffic is guaranteed to be evenly distributed to all available instances to avoid overwhelming hotspot servers.
+ * <p>When the {@link ServerLatencyTracker} is provided (adaptive selection), the algorithm compares the index derived
+ * from the request id with a random index, and picks the one whose slowest selected server has the lower score (latency
+ * EWMA times the number of in-flight requests). The same index is still used for all segments, so the replica-group
+ * guarantee above is not affected.
  */
 public class ReplicaGroupInstanceSelector extends BaseInstanceSelector {
+  // Upper bound of the random index, which is a common multiple of the common replication numbers
+  private static final int MAX_RANDOM_INDEX = 5040;
 
   public ReplicaGroupInstanceSelector(String tableNameWithType, BrokerMetrics brokerMetrics) {
-    super(tableNameWithType, brokerMetrics);
+    this(tableNameWithType, brokerMetrics, null);
+  }
+
+  public ReplicaGroupInstanceSelector(String tableNameWithType, BrokerMetrics brokerMetrics,
+      @Nullable ServerLatencyTracker serverLatencyTracker) {
+    super(tableNameWithType, brokerMetrics, serverLatencyTracker);
   }
 
   @Override
   Map<String, String> select(List<String> segments, int requestId,
       Map<String, List<String>> segmentToEnabledInstancesMap) {
+    Map<String, String> segmentToSelectedInstanceMap =
+        selectWithIndex(segments, requestId, segmentToEnabledInstancesMap);
+    if (_serverLatencyTracker == null) {
+      return segmentToSelectedInstanceMap;
+    }
+    int randomIndex = ThreadLocalRandom.current().nextInt(MAX_RANDOM_INDEX);
+    Map<String, String> randomSegmentToSelectedInstanceMap =
+        selectWithIndex(segments, randomIndex, segmentToEnabledInstancesMap);
+    return getMaxScore(randomSegmentToSelectedInstanceMap) < getMaxScore(segmentToSelectedInstanceMap)
+        ? randomSegmentToSelectedInstanceMap : segmentToSelectedInstanceMap;
+  }
+
+  /**
+   * Selects the same index (modulo the number of enabled instances) of the enabled instances for all segments.
+   */
+  private Map<String, String> selectWithIndex(List<String> segments, int requestId,
+      Map<String, List<String>> segmentToEnabledInstancesMap) {
     Map<String, String> segmentToSelectedInstanceMap = new HashMap<>(HashUtil.getHashMapCapacity(segments.size()));
     for (String segment : segments) {
       List<String> enabledInstances = segmentToEnabledInstancesMap.get(segment);
@@ -62,4 +94,15 @@ public class ReplicaGroupInstanceSelector extends BaseInstanceSelector {
     }
     return segmentToSelectedInstanceMap;
   }
+
+  /**
+   * Returns the score of the slowest server selected, which dominates the latency of the query.
+   */
+  private double getMaxScore(Map<String, String> segmentToSelectedInstanceMap) {
+    double maxScore = 0;
+    for (String instance : new HashSet<>(segmentToSelectedInstanceMap.values())) {
+      maxScore = Math.max(maxScore, _serverLatencyTracker.getScore(instance));
+    }
+    return maxScore;
+  }
 }
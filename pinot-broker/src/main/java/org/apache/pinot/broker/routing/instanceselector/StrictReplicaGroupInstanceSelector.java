@@ -24,11 +24,13 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import javax.annotation.Nullable;
 import org.apache.helix.model.ExternalView;
 import org.apache.helix.model.IdealState;
 import org.apache.pinot.common.metrics.BrokerMetrics;
 import org.apache.pinot.common.utils.CommonConstants.Helix.StateModel.SegmentStateModel;
 import org.apache.pinot.common.utils.HashUtil;
+import org.apache.pinot.core.transport.ServerLatencyTracker;
 
 
 /**
@@ -61,7 +63,12 @@ import org.apache.pinot.common.utils.HashUtil;
 public class StrictReplicaGroupInstanceSelector extends ReplicaGroupInstanceSelector {
 
   public StrictReplicaGroupInstanceSelector(String tableNameWithType, BrokerMetrics brokerMetrics) {
-    super(tableNameWithType, brokerMetrics);
+    this(tableNameWithType, brokerMetrics, null);
+  }
+
+  public StrictReplicaGroupInstanceSelector(String tableNameWithType, BrokerMetrics brokerMetrics,
+      @Nullable ServerLatencyTracker serverLatencyTracker) {
+    super(tableNameWithType, brokerMetrics, serverLatencyTracker);
   }
 
   /**
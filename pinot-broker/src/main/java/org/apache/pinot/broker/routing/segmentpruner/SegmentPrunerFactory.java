@@ -25,11 +25,15 @@ import java.util.Map;
 import javax.annotation.Nullable;
 import org.apache.helix.ZNRecord;
 import org.apache.helix.store.zk.ZkHelixPropertyStore;
+import org.apache.pinot.common.metadata.ZKMetadataProvider;
 import org.apache.pinot.spi.config.table.ColumnPartitionConfig;
 import org.apache.pinot.spi.config.table.RoutingConfig;
 import org.apache.pinot.spi.config.table.SegmentPartitionConfig;
 import org.apache.pinot.spi.config.table.TableConfig;
 import org.apache.pinot.spi.config.table.TableType;
+import org.apache.pinot.spi.data.DateTimeFieldSpec;
+import org.apache.pinot.spi.data.DateTimeFormatSpec;
+import org.apache.pinot.spi.data.Schema;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -57,6 +61,12 @@ public class SegmentPrunerFactory {
               segmentPruners.add(partitionSegmentPruner);
             }
           }
+          if (RoutingConfig.TIME_SEGMENT_PRUNER_TYPE.equalsIgnoreCase(segmentPrunerType)) {
+            TimeSegmentPruner timeSegmentPruner = getTimeSegmentPruner(tableConfig, propertyStore);
+            if (timeSegmentPruner != null) {
+              segmentPruners.add(timeSegmentPruner);
+            }
+          }
         }
         return segmentPruners;
       } else {
@@ -97,4 +107,34 @@ public class SegmentPrunerFactory {
       return new PartitionSegmentPruner(tableNameWithType, partitionColumn, propertyStore);
     }
   }
+
+  @Nullable
+  private static TimeSegmentPruner getTimeSegmentPruner(TableConfig tableConfig,
+      ZkHelixPropertyStore<ZNRecord> propertyStore) {
+    String tableNameWithType = tableConfig.getTableName();
+    String timeColumn = tableConfig.getValidationConfig().getTimeColumnName();
+    if (timeColumn == null) {
+      LOGGER.warn("Cannot enable time pruning without time column for table: {}", tableNameWithType);
+      return null;
+    }
+    Schema schema = ZKMetadataProvider.getTableSchema(propertyStore, tableNameWithType);
+    if (schema == null) {
+      LOGGER.warn("Cannot enable time pruning without schema for table: {}", tableNameWithType);
+      return null;
+    }
+    DateTimeFieldSpec dateTimeSpec = schema.getSpecForTimeColumn(timeColumn);
+    if (dateTimeSpec == null) {
+      LOGGER.warn("Cannot enable time pruning without field spec for time column: {} of table: {}", timeColumn,
+          tableNameWithType);
+      return null;
+    }
+    DateTimeFormatSpec formatSpec = new DateTimeFormatSpec(dateTimeSpec.getFormat());
+    if (formatSpec.getTimeFormat() != DateTimeFieldSpec.TimeFormat.EPOCH || formatSpec.getColumnSize() != 1) {
+      LOGGER.warn("Cannot enable time pruning on time column: {} with format: {} for table: {}", timeColumn,
+          dateTimeSpec.getFormat(), tableNameWithType);
+      return null;
+    }
+    LOGGER.info("Using TimeSegmentPruner on time column: {} for table: {}", timeColumn, tableNameWithType);
+    return new TimeSegmentPruner(tableNameWithType, timeColumn, formatSpec.getColumnUnit(), propertyStore);
+  }
 }
@@ -0,0 +1,447 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pinot.broker.routing.segmentpruner;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+import org.apache.helix.AccessOption;
+import org.apache.helix.ZNRecord;
+import org.apache.helix.model.ExternalView;
+import org.apache.helix.model.IdealState;
+import org.apache.helix.store.zk.ZkHelixPropertyStore;
+import org.apache.pinot.common.metadata.ZKMetadataProvider;
+import org.apache.pinot.common.request.BrokerRequest;
+import org.apache.pinot.common.utils.CommonConstants.Helix.StateModel.SegmentStateModel;
+import org.apache.pinot.common.utils.CommonConstants.Segment;
+import org.apache.pinot.common.utils.request.FilterQueryTree;
+import org.apache.pinot.common.utils.request.RequestUtils;
+import org.apache.pinot.core.query.request.context.ExpressionContext;
+import org.apache.pinot.core.query.request.context.predicate.RangePredicate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * The {@code TimeSegmentPruner} prunes segments based on the start/end time stored in their ZK metadata. The pruner
+ * keeps an interval tree of the segment time ranges, and supports queries with filter (or nested filter) of EQUALITY,
+ * IN and RANGE predicates on the time column.
+ * <p>Segments without valid start/end time are never pruned. Consuming segments are not pruned either, and their time
+ * range is picked up once they are committed (no longer CONSUMING in the ideal state).
+ */
+public class TimeSegmentPruner implements SegmentPruner {
+  private static final Logger LOGGER = LoggerFactory.getLogger(TimeSegmentPruner.class);
+  private static final long MIN_START_TIME = Long.MIN_VALUE;
+  private static final long MAX_END_TIME = Long.MAX_VALUE;
+  private static final Interval DEFAULT_INTERVAL = new Interval(MIN_START_TIME, MAX_END_TIME);
+
+  private final String _tableNameWithType;
+  private final String _timeColumn;
+  private final TimeUnit _timeUnit;
+  private final ZkHelixPropertyStore<ZNRecord> _propertyStore;
+  private final String _segmentZKMetadataPathPrefix;
+  private final Map<String, Interval> _intervalMap = new HashMap<>();
+  private final Set<String> _consumingSegments = new HashSet<>();
+
+  private volatile IntervalTree _intervalTree = new IntervalTree(Collections.emptyMap());
+
+  public TimeSegmentPruner(String tableNameWithType, String timeColumn, TimeUnit timeUnit,
+      ZkHelixPropertyStore<ZNRecord> propertyStore) {
+    _tableNameWithType = tableNameWithType;
+    _timeColumn = timeColumn;
+    _timeUnit = timeUnit;
+    _propertyStore = propertyStore;
+    _segmentZKMetadataPathPrefix = ZKMetadataProvider.constructPropertyStorePathForResource(tableNameWithType) + "/";
+  }
+
+  @Override
+  public synchronized void init(ExternalView externalView, IdealState idealState, Set<String> onlineSegments) {
+    // Bulk load time info for all online segments
+    int numSegments = onlineSegments.size();
+    List<String> segments = new ArrayList<>(numSegments);
+    List<String> segmentZKMetadataPaths = new ArrayList<>(numSegments);
+    for (String segment : onlineSegments) {
+      segments.add(segment);
+      segmentZKMetadataPaths.add(_segmentZKMetadataPathPrefix + segment);
+    }
+    List<ZNRecord> znRecords = _propertyStore.get(segmentZKMetadataPaths, null, AccessOption.PERSISTENT);
+    for (int i = 0; i < numSegments; i++) {
+      updateSegment(segments.get(i), znRecords.get(i));
+    }
+    _intervalTree = new IntervalTree(_intervalMap);
+  }
+
+  /**
+   * Updates the time interval (or the consuming status) of the segment based on its segment ZK metadata.
+   */
+  private void updateSegment(String segment, @Nullable ZNRecord znRecord) {
+    if (znRecord != null && Segment.Realtime.Status.IN_PROGRESS.name()
+        .equals(znRecord.getSimpleField(Segment.Realtime.STATUS))) {
+      _intervalMap.remove(segment);
+      _consumingSegments.add(segment);
+      return;
+    }
+    _consumingSegments.remove(segment);
+    Interval interval = extractIntervalFromSegmentZKMetadataZNRecord(segment, znRecord);
+    if (interval != null) {
+      _intervalMap.put(segment, interval);
+    } else {
+      _intervalMap.remove(segment);
+    }
+  }
+
+  /**
+   * NOTE: Returns {@code null} when the ZNRecord is missing (could be transient Helix issue). Returns
+   *       {@link #DEFAULT_INTERVAL} when the segment does not have valid start/end time in its ZK metadata, in which
+   *       case we won't retry later.
+   */
+  @Nullable
+  private Interval extractIntervalFromSegmentZKMetadataZNRecord(String segment, @Nullable ZNRecord znRecord) {
+    if (znRecord == null) {
+      LOGGER.warn("Failed to find segment ZK metadata for segment: {}, table: {}", segment, _tableNameWithType);
+      return null;
+    }
+
+    // NOTE: Time unit is stored as "null" when the segment does not have time column
+    String timeUnitString = znRecord.getSimpleField(Segment.TIME_UNIT);
+    TimeUnit timeUnit;
+    try {
+      timeUnit = TimeUnit.valueOf(timeUnitString);
+    } catch (Exception e) {
+      LOGGER.debug("Failed to find valid time unit for segment: {}, table: {}", segment, _tableNameWithType);
+      return DEFAULT_INTERVAL;
+    }
+
+    // NOTE: Consuming segments do not have end time
+    long startTime = znRecord.getLongField(Segment.START_TIME, -1);
+    long endTime = znRecord.getLongField(Segment.END_TIME, -1);
+    if (startTime < 0 || endTime < 0 || startTime > endTime) {
+      LOGGER.debug("Failed to find valid start/end time for segment: {}, table: {}", segment, _tableNameWithType);
+      return DEFAULT_INTERVAL;
+    }
+
+    return new Interval(_timeUnit.convert(startTime, timeUnit), convertEndTime(endTime, timeUnit));
+  }
+
+  /**
+   * Converts the end time into the time unit of the pruner, rounding up so that the converted interval covers all the
+   * values within the segment (e.g. end time of 1 day 12 hours is converted to 2 days; end time of 1 day is converted
+   * to 1 day 23:59:59.999 in milliseconds).
+   */
+  private long convertEndTime(long endTime, TimeUnit timeUnit) {
+    if (timeUnit.compareTo(_timeUnit) > 0) {
+      // Converting to a finer time unit, use the last value within the end time unit
+      long nextEndTime = _timeUnit.convert(endTime + 1, timeUnit);
+      return nextEndTime != MAX_END_TIME ? nextEndTime - 1 : MAX_END_TIME;
+    } else {
+      // Converting to a coarser (or the same) time unit, round up the truncated value
+      long convertedEndTime = _timeUnit.convert(endTime, timeUnit);
+      return timeUnit.convert(convertedEndTime, _timeUnit) < endTime ? convertedEndTime + 1 : convertedEndTime;
+    }
+  }
+
+  @Override
+  public synchronized void onExternalViewChange(ExternalView externalView, IdealState idealState,
+      Set<String> onlineSegments) {
+    // NOTE: We don't update all the segment ZK metadata for every external view change, but only the new added/removed
+    //       ones and the committed consuming ones. The refreshed segment ZK metadata change won't be picked up.
+    boolean changed = false;
+    for (String segment : onlineSegments) {
+      boolean consuming = _consumingSegments.contains(segment);
+      if (consuming) {
+        // Consuming segment is committed when it is no longer CONSUMING in the ideal state
+        Map<String, String> instanceStateMap = idealState.getInstanceStateMap(segment);
+        if (instanceStateMap != null && instanceStateMap.containsValue(SegmentStateModel.CONSUMING)) {
+          continue;
+        }
+      }
+      if (consuming || !_intervalMap.containsKey(segment)) {
+        updateSegment(segment,
+            _propertyStore.get(_segmentZKMetadataPathPrefix + segment, null, AccessOption.PERSISTENT));
+        changed = true;
+      }
+    }
+    changed |= _intervalMap.keySet().retainAll(onlineSegments);
+    _consumingSegments.retainAll(onlineSegments);
+    if (changed) {
+      _intervalTree = new IntervalTree(_intervalMap);
+    }
+  }
+
+  @Override
+  public synchronized void refreshSegment(String segment) {
+    updateSegment(segment, _propertyStore.get(_segmentZKMetadataPathPrefix + segment, null, AccessOption.PERSISTENT));
+    _intervalTree = new IntervalTree(_intervalMap);
+  }
+
+  @Override
+  public List<String> prune(BrokerRequest brokerRequest, List<String> segments) {
+    FilterQueryTree filterQueryTree = RequestUtils.generateFilterQueryTree(brokerRequest);
+    if (filterQueryTree == null) {
+      return segments;
+    }
+    List<Interval> filterIntervals = getFilterTimeIntervals(filterQueryTree);
+    if (filterIntervals == null) {
+      return segments;
+    }
+    IntervalTree intervalTree = _intervalTree;
+    Set<String> matchingSegments = new HashSet<>();
+    for (Interval filterInterval : filterIntervals) {
+      intervalTree.search(filterInterval, matchingSegments);
+    }
+    List<String> selectedSegments = new ArrayList<>();
+    for (String segment : segments) {
+      // Segments without time info (not updated yet) should not be pruned
+      if (matchingSegments.contains(segment) || !intervalTree.contains(segment)) {
+        selectedSegments.add(segment);
+      }
+    }
+    return selectedSegments;
+  }
+
+  /**
+   * Returns the sorted non-overlapping time intervals matching the filter, or {@code null} if the filter cannot be
+   * used to prune segments on time (all segments match).
+   */
+  @Nullable
+  private List<Interval> getFilterTimeIntervals(FilterQueryTree filterQueryTree) {
+    switch (filterQueryTree.getOperator()) {
+      case AND:
+        List<Interval> intersection = null;
+        for (FilterQueryTree child : filterQueryTree.getChildren()) {
+          List<Interval> childIntervals = getFilterTimeIntervals(child);
+          if (childIntervals != null) {
+            intersection = intersection != null ? getIntersection(intersection, childIntervals) : childIntervals;
+          }
+        }
+        return intersection;
+      case OR:
+        List<Interval> intervals = new ArrayList<>();
+        for (FilterQueryTree child : filterQueryTree.getChildren()) {
+          List<Interval> childIntervals = getFilterTimeIntervals(child);
+          if (childIntervals == null) {
+            return null;
+          }
+          intervals.addAll(childIntervals);
+        }
+        return getUnion(intervals);
+      case EQUALITY:
+      case IN:
+        if (filterQueryTree.getColumn().equals(_timeColumn)) {
+          List<Interval> valueIntervals = new ArrayList<>();
+          for (String value : filterQueryTree.getValue()) {
+            Long timeValue = parseTimeValue(value);
+            if (timeValue == null) {
+              return null;
+            }
+            valueIntervals.add(new Interval(timeValue, timeValue));
+          }
+          return getUnion(valueIntervals);
+        }
+        return null;
+      case RANGE:
+        if (filterQueryTree.getColumn().equals(_timeColumn)) {
+          return getRangeIntervals(filterQueryTree.getValue().get(0));
+        }
+        return null;
+      default:
+        return null;
+    }
+  }
+
+  @Nullable
+  private List<Interval> getRangeIntervals(String range) {
+    RangePredicate rangePredicate = new RangePredicate(ExpressionContext.forIdentifier(_timeColumn), range);
+    long startTime = MIN_START_TIME;
+    String lowerBound = rangePredicate.getLowerBound();
+    if (!lowerBound.equals(RangePredicate.UNBOUNDED)) {
+      Long lowerValue = parseTimeValue(lowerBound);
+      if (lowerValue == null) {
+        return null;
+      }
+      if (!rangePredicate.isLowerInclusive()) {
+        if (lowerValue == MAX_END_TIME) {
+          return Collections.emptyList();
+        }
+        lowerValue++;
+      }
+      startTime = lowerValue;
+    }
+    long endTime = MAX_END_TIME;
+    String upperBound = rangePredicate.getUpperBound();
+    if (!upperBound.equals(RangePredicate.UNBOUNDED)) {
+      Long upperValue = parseTimeValue(upperBound);
+      if (upperValue == null) {
+        return null;
+      }
+      if (!rangePredicate.isUpperInclusive()) {
+        if (upperValue == MIN_START_TIME) {
+          return Collections.emptyList();
+        }
+        upperValue--;
+      }
+      endTime = upperValue;
+    }
+    return startTime <= endTime ? Collections.singletonList(new Interval(startTime, endTime))
+        : Collections.emptyList();
+  }
+
+  @Nullable
+  private static Long parseTimeValue(String value) {
+    try {
+      return Long.parseLong(value);
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Returns the intersection of 2 lists of sorted non-overlapping intervals.
+   */
+  private static List<Interval> getIntersection(List<Interval> intervals1, List<Interval> intervals2) {
+    List<Interval> intersection = new ArrayList<>();
+    int i = 0;
+    int j = 0;
+    while (i < intervals1.size() && j < intervals2.size()) {
+      Interval interval1 = intervals1.get(i);
+      Interval interval2 = intervals2.get(j);
+      long startTime = Math.max(interval1._startTime, interval2._startTime);
+      long endTime = Math.min(interval1._endTime, interval2._endTime);
+      if (startTime <= endTime) {
+        intersection.add(new Interval(startTime, endTime));
+      }
+      if (interval1._endTime < interval2._endTime) {
+        i++;
+      } else {
+        j++;
+      }
+    }
+    return intersection;
+  }
+
+  /**
+   * Returns the sorted non-overlapping intervals covering the union of the given intervals.
+   */
+  private static List<Interval> getUnion(List<Interval> intervals) {
+    intervals.sort((o1, o2) -> Long.compare(o1._startTime, o2._startTime));
+    List<Interval> union = new ArrayList<>();
+    Interval current = null;
+    for (Interval interval : intervals) {
+      if (current == null) {
+        current = interval;
+      } else if (interval._startTime <= current._endTime) {
+        current = new Interval(current._startTime, Math.max(current._endTime, interval._endTime));
+      } else {
+        union.add(current);
+        current = interval;
+      }
+    }
+    if (current != null) {
+      union.add(current);
+    }
+    return union;
+  }
+
+  private static class Interval {
+    final long _startTime;
+    final long _endTime;
+
+    Interval(long startTime, long endTime) {
+      _startTime = startTime;
+      _endTime = endTime;
+    }
+  }
+
+  /**
+   * Immutable interval tree of the segment time intervals, stored as an implicit balanced binary search tree over the
+   * intervals sorted by the start time, where each node also keeps the max end time within its subtree. Searching the
+   * segments overlapping an interval takes O(log(n) + k) time.
+   */
+  private static class IntervalTree {
+    final String[] _segments;
+    final long[] _startTimes;
+    final long[] _endTimes;
+    final long[] _maxEndTimes;
+    final Set<String> _segmentSet;
+
+    IntervalTree(Map<String, Interval> intervalMap) {
+      int numSegments = intervalMap.size();
+      List<Map.Entry<String, Interval>> entries = new ArrayList<>(intervalMap.entrySet());
+      entries.sort((o1, o2) -> Long.compare(o1.getValue()._startTime, o2.getValue()._startTime));
+      _segments = new String[numSegments];
+      _startTimes = new long[numSegments];
+      _endTimes = new long[numSegments];
+      _maxEndTimes = new long[numSegments];
+      for (int i = 0; i < numSegments; i++) {
+        Map.Entry<String, Interval> entry = entries.get(i);
+        _segments[i] = entry.getKey();
+        _startTimes[i] = entry.getValue()._startTime;
+        _endTimes[i] = entry.getValue()._endTime;
+      }
+      computeMaxEndTimes(0, numSegments - 1);
+      _segmentSet = new HashSet<>(intervalMap.keySet());
+    }
+
+    private long computeMaxEndTimes(int left, int right) {
+      if (left > right) {
+        return Long.MIN_VALUE;
+      }
+      int mid = (left + right) >>> 1;
+      long maxEndTime =
+          Math.max(_endTimes[mid], Math.max(computeMaxEndTimes(left, mid - 1), computeMaxEndTimes(mid + 1, right)));
+      _maxEndTimes[mid] = maxEndTime;
+      return maxEndTime;
+    }
+
+    boolean contains(String segment) {
+      return _segmentSet.contains(segment);
+    }
+
+    /**
+     * Adds the segments overlapping the given interval into the result.
+     */
+    void search(Interval interval, Set<String> result) {
+      search(0, _segments.length - 1, interval._startTime, interval._endTime, result);
+    }
+
+    private void search(int left, int right, long startTime, long endTime, Set<String> result) {
+      if (left > right) {
+        return;
+      }
+      int mid = (left + right) >>> 1;
+      if (_maxEndTimes[mid] < startTime) {
+        // No interval in the subtree ends after the start time
+        return;
+      }
+      search(left, mid - 1, startTime, endTime, result);
+      if (_startTimes[mid] <= endTime) {
+        if (_endTimes[mid] >= startTime) {
+          result.add(_segments[mid]);
+        }
+        search(mid + 1, right, startTime, endTime, result);
+      }
+    }
+  }
+}
@@ -0,0 +1,157 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pinot.broker.api.resources;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.yammer.metrics.core.MetricsRegistry;
+import java.lang.reflect.Field;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.core.Response;
+import org.apache.pinot.broker.requesthandler.BrokerRequestHandler;
+import org.apache.pinot.broker.requesthandler.SingleConnectionBrokerRequestHandler;
+import org.apache.pinot.common.exception.QueryException;
+import org.apache.pinot.common.metrics.BrokerMeter;
+import org.apache.pinot.common.metrics.BrokerMetrics;
+import org.apache.pinot.common.utils.CommonConstants.Broker;
+import org.apache.pinot.spi.env.PinotConfiguration;
+import org.apache.pinot.spi.utils.JsonUtils;
+import org.mockito.ArgumentCaptor;
+import org.testng.annotations.Test;
+
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+
+public class PinotClientRequestTest {
+
+  @Test
+  public void testPreparedStatementDisabled()
+      throws Exception {
+    BrokerMetrics brokerMetrics = mock(BrokerMetrics.class);
+    PinotClientRequest pinotClientRequest =
+        createPinotClientRequest(Broker.DEFAULT_PREPARED_STATEMENT_MAX_SIZE, brokerMetrics);
+    WebApplicationException exception = prepareExpectingException(pinotClientRequest, "{\"sql\": \"SELECT ? AS a\"}");
+    assertEquals(exception.getResponse().getStatus(), Response.Status.BAD_REQUEST.getStatusCode());
+    assertTrue(((String) exception.getResponse().getEntity()).contains(Broker.CONFIG_OF_PREPARED_STATEMENT_MAX_SIZE));
+    verify(brokerMetrics, never()).addMeteredGlobalValue(eq(BrokerMeter.UNCAUGHT_POST_EXCEPTIONS), anyLong());
+
+    // Closing should return not found
+    try {
+      pinotClientRequest.closeSqlQuery("foo");
+      fail();
+    } catch (WebApplicationException e) {
+      assertEquals(e.getResponse().getStatus(), Response.Status.NOT_FOUND.getStatusCode());
+    }
+  }
+
+  @Test
+  public void testInvalidPrepareRequest()
+      throws Exception {
+    BrokerMetrics brokerMetrics = mock(BrokerMetrics.class);
+    PinotClientRequest pinotClientRequest = createPinotClientRequest(10, brokerMetrics);
+    for (String invalidRequest : new String[]{"{\"pql\": \"SELECT ? AS a\"}", "{\"sql\": "}) {
+      WebApplicationException exception = prepareExpectingException(pinotClientRequest, invalidRequest);
+      assertEquals(exception.getResponse().getStatus(), Response.Status.BAD_REQUEST.getStatusCode());
+    }
+    verify(brokerMetrics, never()).addMeteredGlobalValue(eq(BrokerMeter.UNCAUGHT_POST_EXCEPTIONS), anyLong());
+  }
+
+  @Test
+  public void testPreparedStatement()
+      throws Exception {
+    BrokerMetrics brokerMetrics = mock(BrokerMetrics.class);
+    PinotClientRequest pinotClientRequest = createPinotClientRequest(10, brokerMetrics);
+    String statementId =
+        JsonUtils.stringToJsonNode(pinotClientRequest.prepareSqlQuery("{\"sql\": \"SELECT ? AS a, ? AS b\"}"))
+            .get(Broker.Request.PREPARED_STATEMENT_ID).asText();
+
+    // Execute via the sql endpoint with the statement id
+    AsyncResponse asyncResponse = mock(AsyncResponse.class);
+    pinotClientRequest.processSqlQueryPost(
+        String.format("{\"statementId\": \"%s\", \"parameters\": [5, \"foo\"]}", statementId), asyncResponse);
+    ArgumentCaptor<Object> responseCaptor = ArgumentCaptor.forClass(Object.class);
+    verify(asyncResponse).resume(responseCaptor.capture());
+    JsonNode response = JsonUtils.stringToJsonNode((String) responseCaptor.getValue());
+    JsonNode row = response.get("resultTable").get("rows").get(0);
+    assertEquals(row.get(0).asLong(), 5L);
+    assertEquals(row.get(1).asText(), "foo");
+
+    // Close the statement
+    pinotClientRequest.closeSqlQuery(statementId);
+    try {
+      pinotClientRequest.closeSqlQuery(statementId);
+      fail();
+    } catch (WebApplicationException e) {
+      assertEquals(e.getResponse().getStatus(), Response.Status.NOT_FOUND.getStatusCode());
+    }
+
+    // Executing the closed statement should return the prepared statement not found error
+    asyncResponse = mock(AsyncResponse.class);
+    pinotClientRequest.processSqlQueryPost(
+        String.format("{\"statementId\": \"%s\", \"parameters\": [5, \"foo\"]}", statementId), asyncResponse);
+    responseCaptor = ArgumentCaptor.forClass(Object.class);
+    verify(asyncResponse).resume(responseCaptor.capture());
+    response = JsonUtils.stringToJsonNode((String) responseCaptor.getValue());
+    assertEquals(response.get("exceptions").get(0).get("errorCode").asInt(),
+        QueryException.PREPARED_STATEMENT_NOT_FOUND_ERROR_CODE);
+    verify(brokerMetrics, never()).addMeteredGlobalValue(eq(BrokerMeter.UNCAUGHT_POST_EXCEPTIONS), anyLong());
+  }
+
+  private static WebApplicationException prepareExpectingException(PinotClientRequest pinotClientRequest,
+      String request) {
+    try {
+      pinotClientRequest.prepareSqlQuery(request);
+      fail();
+      return null;
+    } catch (WebApplicationException e) {
+      return e;
+    }
+  }
+
+  private static PinotClientRequest createPinotClientRequest(int preparedStatementMaxSize,
+      BrokerMetrics brokerMetrics)
+      throws Exception {
+    Map<String, Object> properties = new HashMap<>();
+    properties.put(Broker.CONFIG_OF_PREPARED_STATEMENT_MAX_SIZE, preparedStatementMaxSize);
+    BrokerRequestHandler requestHandler =
+        new SingleConnectionBrokerRequestHandler(new PinotConfiguration(properties), null, null, null, null,
+            new BrokerMetrics("", new MetricsRegistry(), true, Collections.emptySet()));
+    PinotClientRequest pinotClientRequest = new PinotClientRequest();
+    setField(pinotClientRequest, "requestHandler", requestHandler);
+    setField(pinotClientRequest, "brokerMetrics", brokerMetrics);
+    return pinotClientRequest;
+  }
+
+  private static void setField(PinotClientRequest pinotClientRequest, String fieldName, Object value)
+      throws Exception {
+    Field field = PinotClientRequest.class.getDeclaredField(fieldName);
+    field.setAccessible(true);
+    field.set(pinotClientRequest, value);
+  }
+}
@@ -0,0 +1,191 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pinot.broker.requesthandler;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.yammer.metrics.core.MetricsRegistry;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.pinot.broker.api.RequestStatistics;
+import org.apache.pinot.common.exception.QueryException;
+import org.apache.pinot.common.metrics.BrokerMetrics;
+import org.apache.pinot.common.request.Literal;
+import org.apache.pinot.common.response.broker.BrokerResponseNative;
+import org.apache.pinot.common.response.broker.QueryProcessingException;
+import org.apache.pinot.common.utils.CommonConstants.Broker;
+import org.apache.pinot.common.utils.DataSchema;
+import org.apache.pinot.spi.env.PinotConfiguration;
+import org.apache.pinot.spi.utils.JsonUtils;
+import org.apache.pinot.sql.parsers.CalciteSqlParser;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+
+public class PreparedStatementRegistryTest {
+
+  @Test
+  public void testRegistry() {
+    PreparedStatementRegistry registry = new PreparedStatementRegistry(10, 3_600_000L);
+    String statementId = registry.register("SELECT a FROM myTable WHERE b = ? AND c > ?");
+    PreparedStatementRegistry.PreparedStatement preparedStatement = registry.get(statementId);
+    assertNotNull(preparedStatement);
+    assertEquals(preparedStatement.getNumParameters(), 2);
+    assertEquals(preparedStatement.bind(Arrays.asList(Literal.stringValue("foo"), Literal.longValue(5))),
+        CalciteSqlParser.compileToPinotQuery("SELECT a FROM myTable WHERE b = 'foo' AND c > 5"));
+
+    // Wrong number of parameters
+    try {
+      preparedStatement.bind(Collections.singletonList(Literal.stringValue("foo")));
+      fail();
+    } catch (IllegalArgumentException e) {
+      // Expected
+    }
+
+    // Placeholder used as LIMIT cannot be bound into the compiled query, and should fall back to compiling the SQL
+    String fallbackStatementId = registry.register("SELECT a FROM myTable WHERE b = ? LIMIT ?");
+    preparedStatement = registry.get(fallbackStatementId);
+    assertNotNull(preparedStatement);
+    assertEquals(preparedStatement.bind(Arrays.asList(Literal.stringValue("foo"), Literal.longValue(5))),
+        CalciteSqlParser.compileToPinotQuery("SELECT a FROM myTable WHERE b = 'foo' LIMIT 5"));
+    assertEquals(registry.size(), 2);
+
+    assertTrue(registry.remove(statementId));
+    assertFalse(registry.remove(statementId));
+    assertNull(registry.get(statementId));
+    assertEquals(registry.size(), 1);
+  }
+
+  @Test
+  public void testMaxSize() {
+    PreparedStatementRegistry registry = new PreparedStatementRegistry(2, 3_600_000L);
+    for (int i = 0; i < 5; i++) {
+      registry.register("SELECT a FROM myTable WHERE b = ?");
+    }
+    assertTrue(registry.size() <= 2);
+  }
+
+  @Test
+  public void testGetParameters()
+      throws Exception {
+    assertEquals(PreparedStatementRegistry.getParameters(null), Collections.emptyList());
+    assertEquals(PreparedStatementRegistry.getParameters(JsonUtils.stringToJsonNode("[1, 1.5, \"foo\"]")),
+        Arrays.asList(Literal.longValue(1), Literal.doubleValue(1.5), Literal.stringValue("foo")));
+
+    // Integral number out of the LONG range should be bound as DOUBLE
+    List<Literal> parameters =
+        PreparedStatementRegistry.getParameters(JsonUtils.stringToJsonNode("[12345678901234567890]"));
+    assertEquals(parameters, Collections.singletonList(Literal.doubleValue(12345678901234567890.0)));
+
+    for (String invalidParameters : new String[]{"{\"a\": 1}", "[true]", "[null]", "[[1]]"}) {
+      try {
+        PreparedStatementRegistry.getParameters(JsonUtils.stringToJsonNode(invalidParameters));
+        fail();
+      } catch (IllegalArgumentException e) {
+        // Expected
+      }
+    }
+  }
+
+  @Test
+  public void testHandleRequestWithPreparedStatement()
+      throws Exception {
+    BrokerRequestHandler requestHandler = createRequestHandler(10);
+    String statementId = requestHandler.prepareStatement("SELECT ? AS a, ? AS b");
+    BrokerResponseNative brokerResponse = handleRequest(requestHandler, statementId, "[5, \"foo\"]");
+    assertTrue(brokerResponse.getProcessingExceptions().isEmpty());
+    DataSchema dataSchema = brokerResponse.getResultTable().getDataSchema();
+    assertEquals(dataSchema.getColumnNames(), new String[]{"a", "b"});
+    assertEquals(dataSchema.getColumnDataTypes(),
+        new DataSchema.ColumnDataType[]{DataSchema.ColumnDataType.LONG, DataSchema.ColumnDataType.STRING});
+    assertEquals(brokerResponse.getResultTable().getRows().get(0), new Object[]{5L, "foo"});
+
+    // Executing again with different parameters, where the query is logged with the parameters bound
+    RequestStatistics requestStatistics = new RequestStatistics();
+    brokerResponse = handleRequest(requestHandler, statementId, "[1.5, \"bar\"]", requestStatistics);
+    assertTrue(brokerResponse.getProcessingExceptions().isEmpty());
+    assertEquals(requestStatistics.getPql(), "/* statement: " + statementId + " */ SELECT 1.5 AS a, 'bar' AS b");
+    assertEquals(brokerResponse.getResultTable().getRows().get(0), new Object[]{1.5, "bar"});
+
+    // Wrong number of parameters
+    brokerResponse = handleRequest(requestHandler, statementId, "[5]");
+    assertErrorCode(brokerResponse, QueryException.PQL_PARSING_ERROR_CODE);
+
+    // Closed statement
+    assertTrue(requestHandler.closeStatement(statementId));
+    assertFalse(requestHandler.closeStatement(statementId));
+    brokerResponse = handleRequest(requestHandler, statementId, "[5, \"foo\"]");
+    assertErrorCode(brokerResponse, QueryException.PREPARED_STATEMENT_NOT_FOUND_ERROR_CODE);
+  }
+
+  @Test
+  public void testPreparedStatementDisabled()
+      throws Exception {
+    BrokerRequestHandler requestHandler = createRequestHandler(Broker.DEFAULT_PREPARED_STATEMENT_MAX_SIZE);
+    try {
+      requestHandler.prepareStatement("SELECT ? AS a");
+      fail();
+    } catch (UnsupportedOperationException e) {
+      assertTrue(e.getMessage().contains(Broker.CONFIG_OF_PREPARED_STATEMENT_MAX_SIZE));
+    }
+    assertFalse(requestHandler.closeStatement("foo"));
+    BrokerResponseNative brokerResponse = handleRequest(requestHandler, "foo", "[5]");
+    QueryProcessingException exception = assertErrorCode(brokerResponse,
+        QueryException.PREPARED_STATEMENT_NOT_FOUND_ERROR_CODE);
+    assertTrue(exception.getMessage().contains(Broker.CONFIG_OF_PREPARED_STATEMENT_MAX_SIZE));
+  }
+
+  private static BrokerRequestHandler createRequestHandler(int preparedStatementMaxSize) {
+    Map<String, Object> properties = new HashMap<>();
+    properties.put(Broker.CONFIG_OF_PREPARED_STATEMENT_MAX_SIZE, preparedStatementMaxSize);
+    PinotConfiguration config = new PinotConfiguration(properties);
+    return new SingleConnectionBrokerRequestHandler(config, null, null, null, null,
+        new BrokerMetrics("", new MetricsRegistry(), true, Collections.emptySet()));
+  }
+
+  private static BrokerResponseNative handleRequest(BrokerRequestHandler requestHandler, String statementId,
+      String parameters)
+      throws Exception {
+    return handleRequest(requestHandler, statementId, parameters, new RequestStatistics());
+  }
+
+  private static BrokerResponseNative handleRequest(BrokerRequestHandler requestHandler, String statementId,
+      String parameters, RequestStatistics requestStatistics)
+      throws Exception {
+    JsonNode request = JsonUtils.stringToJsonNode(
+        String.format("{\"%s\": \"%s\", \"%s\": %s}", Broker.Request.PREPARED_STATEMENT_ID, statementId,
+            Broker.Request.PARAMETERS, parameters));
+    return (BrokerResponseNative) requestHandler.handleRequest(request, null, requestStatistics);
+  }
+
+  private static QueryProcessingException assertErrorCode(BrokerResponseNative brokerResponse, int errorCode) {
+    List<QueryProcessingException> exceptions = brokerResponse.getProcessingExceptions();
+    assertEquals(exceptions.size(), 1);
+    assertEquals(exceptions.get(0).getErrorCode(), errorCode);
+    return exceptions.get(0);
+  }
+}
@@ -18,6 +18,7 @@
  */
 package org.apache.pinot.broker.routing.instanceselector;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
@@ -30,6 +31,7 @@ import org.apache.helix.model.ExternalView;
 import org.apache.helix.model.IdealState;
 import org.apache.pinot.common.metrics.BrokerMetrics;
 import org.apache.pinot.common.request.BrokerRequest;
+import org.apache.pinot.core.transport.ServerLatencyTracker;
 import org.apache.pinot.spi.config.table.RoutingConfig;
 import org.apache.pinot.spi.config.table.TableConfig;
 import org.apache.pinot.spi.config.table.TableType;
@@ -42,6 +44,7 @@ import static org.apache.pinot.common.utils.CommonConstants.Helix.StateModel.Seg
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
 import static org.testng.Assert.assertTrue;
 
 
@@ -842,4 +845,78 @@ public class InstanceSelectorTest {
       assertEquals(selectionResult.getUnavailableSegments(), Arrays.asList(segment0, segment1));
     }
   }
+
+  @Test
+  public void testAdaptiveSelection() {
+    String offlineTableName = "testTable_OFFLINE";
+    BrokerMetrics brokerMetrics = mock(BrokerMetrics.class);
+    ServerLatencyTracker serverLatencyTracker = new ServerLatencyTracker();
+    BalancedInstanceSelector balancedInstanceSelector =
+        new BalancedInstanceSelector(offlineTableName, brokerMetrics, serverLatencyTracker);
+    ReplicaGroupInstanceSelector replicaGroupInstanceSelector =
+        new ReplicaGroupInstanceSelector(offlineTableName, brokerMetrics, serverLatencyTracker);
+
+    String fastInstance = "fastInstance";
+    String slowInstance = "slowInstance";
+    Set<String> enabledInstances = new HashSet<>(Arrays.asList(fastInstance, slowInstance));
+    ExternalView externalView = new ExternalView(offlineTableName);
+    Map<String, Map<String, String>> segmentAssignment = externalView.getRecord().getMapFields();
+    Map<String, String> instanceStateMap = new TreeMap<>();
+    instanceStateMap.put(fastInstance, ONLINE);
+    instanceStateMap.put(slowInstance, ONLINE);
+    Set<String> onlineSegments = new HashSet<>();
+    int numSegments = 10;
+    List<String> segments = new ArrayList<>(numSegments);
+    for (int i = 0; i < numSegments; i++) {
+      String segment = "segment" + i;
+      segmentAssignment.put(segment, instanceStateMap);
+      onlineSegments.add(segment);
+      segments.add(segment);
+    }
+    IdealState idealState = new IdealState(offlineTableName);
+    idealState.getRecord().getMapFields().putAll(segmentAssignment);
+    balancedInstanceSelector.init(enabledInstances, externalView, idealState, onlineSegments);
+    replicaGroupInstanceSelector.init(enabledInstances, externalView, idealState, onlineSegments);
+
+    // The slow instance has higher latency and more in-flight requests
+    serverLatencyTracker.recordRequestFinished(fastInstance, 10);
+    serverLatencyTracker.recordRequestFinished(slowInstance, 1000);
+    for (int i = 0; i < 10; i++) {
+      serverLatencyTracker.recordRequestSent(slowInstance);
+    }
+    assertTrue(serverLatencyTracker.getScore(fastInstance) < serverLatencyTracker.getScore(slowInstance));
+
+    // BalancedInstanceSelector should always pick the fast instance when there are only 2 replicas
+    BrokerRequest brokerRequest = mock(BrokerRequest.class);
+    for (int i = 0; i < 10; i++) {
+      Map<String, String> segmentToInstanceMap =
+          balancedInstanceSelector.select(brokerRequest, segments).getSegmentToInstanceMap();
+      assertEquals(segmentToInstanceMap.size(), numSegments);
+      for (String instance : segmentToInstanceMap.values()) {
+        assertEquals(instance, fastInstance);
+      }
+    }
+
+    // ReplicaGroupInstanceSelector should pick the same instance for all segments, and prefer the fast instance
+    int numFastSelections = 0;
+    int numRequests = 100;
+    for (int i = 0; i < numRequests; i++) {
+      Map<String, String> segmentToInstanceMap =
+          replicaGroupInstanceSelector.select(brokerRequest, segments).getSegmentToInstanceMap();
+      assertEquals(segmentToInstanceMap.size(), numSegments);
+      Set<String> selectedInstances = new HashSet<>(segmentToInstanceMap.values());
+      assertEquals(selectedInstances.size(), 1);
+      if (selectedInstances.contains(fastInstance)) {
+        numFastSelections++;
+      }
+    }
+    assertTrue(numFastSelections > numRequests / 2);
+
+    // Alternate instance for the hedged request should not be in the excluded instances
+    assertEquals(balancedInstanceSelector.selectAlternateInstance(segments, Collections.singleton(fastInstance)),
+        slowInstance);
+    assertEquals(replicaGroupInstanceSelector.selectAlternateInstance(segments, Collections.singleton(slowInstance)),
+        fastInstance);
+    assertNull(balancedInstanceSelector.selectAlternateInstance(segments, enabledInstances));
+  }
 }
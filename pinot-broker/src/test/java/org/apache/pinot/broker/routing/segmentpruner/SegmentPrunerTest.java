@@ -25,6 +25,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import org.apache.helix.ZNRecord;
 import org.apache.helix.manager.zk.ZNRecordSerializer;
 import org.apache.helix.manager.zk.ZkBaseDataAccessor;
@@ -35,8 +36,11 @@ import org.apache.helix.store.zk.ZkHelixPropertyStore;
 import org.apache.pinot.common.metadata.ZKMetadataProvider;
 import org.apache.pinot.common.metadata.segment.ColumnPartitionMetadata;
 import org.apache.pinot.common.metadata.segment.OfflineSegmentZKMetadata;
+import org.apache.pinot.common.metadata.segment.RealtimeSegmentZKMetadata;
 import org.apache.pinot.common.metadata.segment.SegmentPartitionMetadata;
 import org.apache.pinot.common.request.BrokerRequest;
+import org.apache.pinot.common.utils.CommonConstants.Helix.StateModel.SegmentStateModel;
+import org.apache.pinot.common.utils.CommonConstants.Segment.Realtime.Status;
 import org.apache.pinot.common.utils.ZkStarter;
 import org.apache.pinot.pql.parsers.Pql2Compiler;
 import org.apache.pinot.spi.config.table.ColumnPartitionConfig;
@@ -58,10 +62,18 @@ import static org.testng.Assert.assertTrue;
 
 public class SegmentPrunerTest {
   private static final String OFFLINE_TABLE_NAME = "testTable_OFFLINE";
+  private static final String REALTIME_TABLE_NAME = "testTable_REALTIME";
   private static final String PARTITION_COLUMN = "memberId";
   private static final String QUERY_1 = "SELECT * FROM testTable";
   private static final String QUERY_2 = "SELECT * FROM testTable where memberId = 0";
   private static final String QUERY_3 = "SELECT * FROM testTable where memberId IN (1, 2)";
+  private static final String TIME_COLUMN = "daysSinceEpoch";
+  private static final String TIME_QUERY_1 = "SELECT * FROM testTable where daysSinceEpoch = 15";
+  private static final String TIME_QUERY_2 = "SELECT * FROM testTable where daysSinceEpoch BETWEEN 5 AND 25";
+  private static final String TIME_QUERY_3 = "SELECT * FROM testTable where daysSinceEpoch > 30";
+  private static final String TIME_QUERY_4 =
+      "SELECT * FROM testTable where daysSinceEpoch IN (1, 35) OR (daysSinceEpoch >= 12 AND daysSinceEpoch < 10)";
+  private static final String TIME_QUERY_5 = "SELECT * FROM testTable where daysSinceEpoch < 15 OR memberId = 0";
 
   private ZkStarter.ZookeeperInstance _zkInstance;
   private ZkClient _zkClient;
@@ -214,6 +226,145 @@ public class SegmentPrunerTest {
         Arrays.asList(segment0, segment1));
   }
 
+  @Test
+  public void testTimeSegmentPruner() {
+    Pql2Compiler compiler = new Pql2Compiler();
+    BrokerRequest brokerRequest1 = compiler.compileToBrokerRequest(QUERY_1);
+    BrokerRequest timeBrokerRequest1 = compiler.compileToBrokerRequest(TIME_QUERY_1);
+    BrokerRequest timeBrokerRequest2 = compiler.compileToBrokerRequest(TIME_QUERY_2);
+    BrokerRequest timeBrokerRequest3 = compiler.compileToBrokerRequest(TIME_QUERY_3);
+    BrokerRequest timeBrokerRequest4 = compiler.compileToBrokerRequest(TIME_QUERY_4);
+    BrokerRequest timeBrokerRequest5 = compiler.compileToBrokerRequest(TIME_QUERY_5);
+    // NOTE: External view and ideal state are not used in the current implementation.
+    ExternalView externalView = Mockito.mock(ExternalView.class);
+    IdealState idealState = Mockito.mock(IdealState.class);
+
+    TimeSegmentPruner segmentPruner = new TimeSegmentPruner(OFFLINE_TABLE_NAME, TIME_COLUMN, TimeUnit.DAYS,
+        _propertyStore);
+    Set<String> onlineSegments = new HashSet<>();
+    segmentPruner.init(externalView, idealState, onlineSegments);
+    assertEquals(segmentPruner.prune(timeBrokerRequest1, Collections.emptyList()), Collections.emptyList());
+
+    // Segments without metadata (not updated yet) should not be pruned
+    String newSegment = "newSegment";
+    assertEquals(segmentPruner.prune(timeBrokerRequest1, Collections.singletonList(newSegment)),
+        Collections.singletonList(newSegment));
+
+    // Segments without time metadata should not be pruned
+    String segmentWithoutTimeMetadata = "segmentWithoutTimeMetadata";
+    onlineSegments.add(segmentWithoutTimeMetadata);
+    OfflineSegmentZKMetadata segmentZKMetadataWithoutTimeMetadata = new OfflineSegmentZKMetadata();
+    segmentZKMetadataWithoutTimeMetadata.setSegmentName(segmentWithoutTimeMetadata);
+    ZKMetadataProvider
+        .setOfflineSegmentZKMetadata(_propertyStore, OFFLINE_TABLE_NAME, segmentZKMetadataWithoutTimeMetadata);
+    segmentPruner.onExternalViewChange(externalView, idealState, onlineSegments);
+    assertEquals(segmentPruner.prune(timeBrokerRequest1, Collections.singletonList(segmentWithoutTimeMetadata)),
+        Collections.singletonList(segmentWithoutTimeMetadata));
+
+    // segment0: [0, 10], segment1: [11, 20], segment2: [21, 30] (stored in hours)
+    List<String> segments = Arrays.asList("segment0", "segment1", "segment2");
+    for (int i = 0; i < 3; i++) {
+      String segment = segments.get(i);
+      onlineSegments.add(segment);
+      setSegmentZKMetadata(segment, TimeUnit.DAYS.toHours(i * 10 + (i > 0 ? 1 : 0)),
+          TimeUnit.DAYS.toHours(i * 10 + 10), TimeUnit.HOURS);
+    }
+    segmentPruner.onExternalViewChange(externalView, idealState, onlineSegments);
+    assertEquals(segmentPruner.prune(brokerRequest1, segments), segments);
+    assertEquals(segmentPruner.prune(timeBrokerRequest1, segments), Collections.singletonList("segment1"));
+    assertEquals(segmentPruner.prune(timeBrokerRequest2, segments), segments);
+    assertEquals(segmentPruner.prune(timeBrokerRequest3, segments), Collections.emptyList());
+    assertEquals(segmentPruner.prune(timeBrokerRequest4, segments), Collections.singletonList("segment0"));
+    assertEquals(segmentPruner.prune(timeBrokerRequest5, segments), segments);
+
+    // Update time metadata without refreshing should have no effect
+    setSegmentZKMetadata("segment2", 31, 40, TimeUnit.DAYS);
+    segmentPruner.onExternalViewChange(externalView, idealState, onlineSegments);
+    assertEquals(segmentPruner.prune(timeBrokerRequest3, segments), Collections.emptyList());
+
+    // Refresh the changed segment should update the segment pruner
+    segmentPruner.refreshSegment("segment2");
+    assertEquals(segmentPruner.prune(timeBrokerRequest3, segments), Collections.singletonList("segment2"));
+    assertEquals(segmentPruner.prune(timeBrokerRequest4, segments), Arrays.asList("segment0", "segment2"));
+  }
+
+  @Test
+  public void testTimeSegmentPrunerTimeUnitConversion() {
+    Pql2Compiler compiler = new Pql2Compiler();
+    BrokerRequest timeBrokerRequest1 = compiler.compileToBrokerRequest(TIME_QUERY_1);
+    ExternalView externalView = Mockito.mock(ExternalView.class);
+    IdealState idealState = Mockito.mock(IdealState.class);
+
+    // segment0: [0, 14 days 12 hours] (stored in hours), end time should be rounded up to 15 days
+    setSegmentZKMetadata("segment0", 0, TimeUnit.DAYS.toHours(14) + 12, TimeUnit.HOURS);
+    TimeSegmentPruner segmentPruner = new TimeSegmentPruner(OFFLINE_TABLE_NAME, TIME_COLUMN, TimeUnit.DAYS,
+        _propertyStore);
+    Set<String> onlineSegments = new HashSet<>(Collections.singletonList("segment0"));
+    segmentPruner.init(externalView, idealState, onlineSegments);
+    assertEquals(segmentPruner.prune(timeBrokerRequest1, Collections.singletonList("segment0")),
+        Collections.singletonList("segment0"));
+
+    // segment0: [10, 15] days, end time should cover the whole last day in hours
+    setSegmentZKMetadata("segment0", 10, 15, TimeUnit.DAYS);
+    segmentPruner = new TimeSegmentPruner(OFFLINE_TABLE_NAME, TIME_COLUMN, TimeUnit.HOURS, _propertyStore);
+    segmentPruner.init(externalView, idealState, onlineSegments);
+    BrokerRequest brokerRequest = compiler.compileToBrokerRequest(
+        "SELECT * FROM testTable where daysSinceEpoch = " + (TimeUnit.DAYS.toHours(15) + 23));
+    assertEquals(segmentPruner.prune(brokerRequest, Collections.singletonList("segment0")),
+        Collections.singletonList("segment0"));
+    brokerRequest = compiler.compileToBrokerRequest(
+        "SELECT * FROM testTable where daysSinceEpoch = " + TimeUnit.DAYS.toHours(16));
+    assertEquals(segmentPruner.prune(brokerRequest, Collections.singletonList("segment0")), Collections.emptyList());
+  }
+
+  @Test
+  public void testTimeSegmentPrunerWithConsumingSegment() {
+    Pql2Compiler compiler = new Pql2Compiler();
+    BrokerRequest timeBrokerRequest1 = compiler.compileToBrokerRequest(TIME_QUERY_1);
+    ExternalView externalView = Mockito.mock(ExternalView.class);
+    IdealState idealState = Mockito.mock(IdealState.class);
+    String segment = "consumingSegment";
+    List<String> segments = Collections.singletonList(segment);
+    when(idealState.getInstanceStateMap(segment))
+        .thenReturn(Collections.singletonMap("server", SegmentStateModel.CONSUMING));
+
+    RealtimeSegmentZKMetadata realtimeSegmentZKMetadata = new RealtimeSegmentZKMetadata();
+    realtimeSegmentZKMetadata.setSegmentName(segment);
+    realtimeSegmentZKMetadata.setStatus(Status.IN_PROGRESS);
+    realtimeSegmentZKMetadata.setStartTime(20);
+    ZKMetadataProvider.setRealtimeSegmentZKMetadata(_propertyStore, REALTIME_TABLE_NAME, realtimeSegmentZKMetadata);
+
+    // Consuming segment should not be pruned
+    TimeSegmentPruner segmentPruner = new TimeSegmentPruner(REALTIME_TABLE_NAME, TIME_COLUMN, TimeUnit.DAYS,
+        _propertyStore);
+    Set<String> onlineSegments = new HashSet<>(segments);
+    segmentPruner.init(externalView, idealState, onlineSegments);
+    assertEquals(segmentPruner.prune(timeBrokerRequest1, segments), segments);
+
+    // Committed segment ZK metadata should not be picked up while the segment is still CONSUMING in the ideal state
+    realtimeSegmentZKMetadata.setStatus(Status.DONE);
+    realtimeSegmentZKMetadata.setEndTime(30);
+    realtimeSegmentZKMetadata.setTimeUnit(TimeUnit.DAYS);
+    ZKMetadataProvider.setRealtimeSegmentZKMetadata(_propertyStore, REALTIME_TABLE_NAME, realtimeSegmentZKMetadata);
+    segmentPruner.onExternalViewChange(externalView, idealState, onlineSegments);
+    assertEquals(segmentPruner.prune(timeBrokerRequest1, segments), segments);
+
+    // Committed segment should be pruned once it becomes ONLINE in the ideal state
+    when(idealState.getInstanceStateMap(segment))
+        .thenReturn(Collections.singletonMap("server", SegmentStateModel.ONLINE));
+    segmentPruner.onExternalViewChange(externalView, idealState, onlineSegments);
+    assertEquals(segmentPruner.prune(timeBrokerRequest1, segments), Collections.emptyList());
+  }
+
+  private void setSegmentZKMetadata(String segment, long startTime, long endTime, TimeUnit timeUnit) {
+    OfflineSegmentZKMetadata offlineSegmentZKMetadata = new OfflineSegmentZKMetadata();
+    offlineSegmentZKMetadata.setSegmentName(segment);
+    offlineSegmentZKMetadata.setStartTime(startTime);
+    offlineSegmentZKMetadata.setEndTime(endTime);
+    offlineSegmentZKMetadata.setTimeUnit(timeUnit);
+    ZKMetadataProvider.setOfflineSegmentZKMetadata(_propertyStore, OFFLINE_TABLE_NAME, offlineSegmentZKMetadata);
+  }
+
   private void setSegmentZKMetadata(String segment, String partitionFunction, int numPartitions, int partitionId) {
     OfflineSegmentZKMetadata offlineSegmentZKMetadata = new OfflineSegmentZKMetadata();
     offlineSegmentZKMetadata.setSegmentName(segment);
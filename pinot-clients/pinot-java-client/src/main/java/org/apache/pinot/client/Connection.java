@@ -18,6 +18,7 @@
  */
 package org.apache.pinot.client;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import java.util.List;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
@@ -32,6 +33,9 @@ import org.slf4j.LoggerFactory;
  */
 public class Connection {
   private static final Logger LOGGER = LoggerFactory.getLogger(Connection.class);
+  // Same as QueryException.PREPARED_STATEMENT_NOT_FOUND_ERROR_CODE in pinot-common
+  private static final int PREPARED_STATEMENT_NOT_FOUND_ERROR_CODE = 155;
+
   private final PinotClientTransport _transport;
   private final BrokerSelector _brokerSelector;
   private List<String> _brokerList;
@@ -71,6 +75,99 @@ public class Connection {
     return new PreparedStatement(this, request);
   }
 
+  /**
+   * Creates a prepared statement, where the parameters can be bound on the broker (only supported for SQL). When bound
+   * on the broker, the query is prepared once on each broker, and only the typed parameters are sent for each
+   * execution.
+   *
+   * @param request The request for which to create a prepared statement.
+   * @param bindOnBroker Whether to bind the parameters on the broker instead of substituting them into the query
+   * @return A prepared statement for this connection.
+   */
+  public PreparedStatement prepareStatement(Request request, boolean bindOnBroker) {
+    return new PreparedStatement(this, request, bindOnBroker);
+  }
+
+  /**
+   * Prepares the SQL query on the given broker, and returns the id of the prepared statement.
+   */
+  String prepareStatementOnBroker(String brokerHostPort, String sql)
+      throws PinotClientException {
+    return _transport.prepareStatement(brokerHostPort, sql);
+  }
+
+  /**
+   * Executes the prepared statement with the parameters bound on the broker. The statement is prepared again if it is
+   * not found on the broker (e.g. evicted, or broker restarted).
+   */
+  ResultSetGroup executePreparedStatement(PreparedStatement preparedStatement, List<Object> parameters)
+      throws PinotClientException {
+    String brokerHostPort = selectBrokerForPreparedStatement();
+    try {
+      BrokerResponse response = _transport
+          .executePreparedStatementAsync(brokerHostPort, preparedStatement.getStatementId(brokerHostPort), parameters)
+          .get();
+      if (isPreparedStatementNotFound(response)) {
+        preparedStatement.invalidateStatementId(brokerHostPort);
+        response = _transport
+            .executePreparedStatementAsync(brokerHostPort, preparedStatement.getStatementId(brokerHostPort),
+                parameters).get();
+      }
+      if (response.hasExceptions()) {
+        throw new PinotClientException("Query had processing exceptions: \n" + response.getExceptions());
+      }
+      return new ResultSetGroup(response);
+    } catch (PinotClientException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new PinotClientException(e);
+    }
+  }
+
+  /**
+   * Executes the prepared statement asynchronously with the parameters bound on the broker. Different from the
+   * synchronous execution, the statement is not prepared again if it is not found on the broker, but will be prepared
+   * again for the next execution.
+   */
+  Future<ResultSetGroup> executePreparedStatementAsync(PreparedStatement preparedStatement, List<Object> parameters)
+      throws PinotClientException {
+    String brokerHostPort = selectBrokerForPreparedStatement();
+    Future<BrokerResponse> responseFuture = _transport
+        .executePreparedStatementAsync(brokerHostPort, preparedStatement.getStatementId(brokerHostPort), parameters);
+    return new ResultSetGroupFuture(responseFuture) {
+      @Override
+      public ResultSetGroup get(long timeout, TimeUnit unit)
+          throws InterruptedException, ExecutionException, TimeoutException {
+        BrokerResponse response = responseFuture.get(timeout, unit);
+        if (isPreparedStatementNotFound(response)) {
+          preparedStatement.invalidateStatementId(brokerHostPort);
+        }
+        return new ResultSetGroup(response);
+      }
+    };
+  }
+
+  private String selectBrokerForPreparedStatement() {
+    String brokerHostPort = _brokerSelector.selectBroker(null);
+    if (brokerHostPort == null) {
+      throw new PinotClientException("Could not find broker to execute the prepared statement");
+    }
+    return brokerHostPort;
+  }
+
+  private static boolean isPreparedStatementNotFound(BrokerResponse response) {
+    if (!response.hasExceptions()) {
+      return false;
+    }
+    for (JsonNode exception : response.getExceptions()) {
+      JsonNode errorCode = exception.get("errorCode");
+      if (errorCode != null && errorCode.asInt() == PREPARED_STATEMENT_NOT_FOUND_ERROR_CODE) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   /**
    * Executes a PQL query.
    *
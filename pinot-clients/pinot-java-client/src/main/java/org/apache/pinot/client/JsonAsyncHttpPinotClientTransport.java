@@ -19,12 +19,15 @@
 package org.apache.pinot.client;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.ning.http.client.AsyncHttpClient;
 import com.ning.http.client.Response;
 
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
@@ -111,6 +114,61 @@ class JsonAsyncHttpPinotClientTransport implements PinotClientTransport {
     return executePinotQueryAsync(brokerAddress, request);
   }
 
+  @Override
+  public String prepareStatement(String brokerAddress, String sql)
+      throws PinotClientException {
+    try {
+      ObjectNode json = JsonNodeFactory.instance.objectNode();
+      json.put("sql", sql);
+      String url = "http://" + brokerAddress + "/query/sql/prepare";
+      Response httpResponse = buildPostRequest(url, json).execute().get();
+      if (httpResponse.getStatusCode() != 200) {
+        throw new PinotClientException(
+            "Pinot returned HTTP status " + httpResponse.getStatusCode() + " while preparing statement, expected 200: "
+                + httpResponse.getResponseBody("UTF-8"));
+      }
+      JsonNode responseJson = OBJECT_READER.readTree(httpResponse.getResponseBody("UTF-8"));
+      return responseJson.get("statementId").asText();
+    } catch (PinotClientException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new PinotClientException(e);
+    }
+  }
+
+  @Override
+  public Future<BrokerResponse> executePreparedStatementAsync(String brokerAddress, String statementId,
+      List<Object> parameters)
+      throws PinotClientException {
+    try {
+      ObjectNode json = JsonNodeFactory.instance.objectNode();
+      json.put("statementId", statementId);
+      ArrayNode parametersJson = json.putArray("parameters");
+      for (Object parameter : parameters) {
+        if (parameter instanceof Long) {
+          parametersJson.add((Long) parameter);
+        } else if (parameter instanceof Double) {
+          parametersJson.add((Double) parameter);
+        } else {
+          parametersJson.add((String) parameter);
+        }
+      }
+      json.put("queryOptions", "groupByMode=sql;responseFormat=sql");
+      String url = "http://" + brokerAddress + "/query/sql";
+      return new BrokerResponseFuture(buildPostRequest(url, json).execute(), "prepared statement " + statementId, url);
+    } catch (Exception e) {
+      throw new PinotClientException(e);
+    }
+  }
+
+  private AsyncHttpClient.BoundRequestBuilder buildPostRequest(String url, ObjectNode json) {
+    AsyncHttpClient.BoundRequestBuilder requestBuilder = _httpClient.preparePost(url);
+    if (_headers != null) {
+      _headers.forEach((k, v) -> requestBuilder.addHeader(k, v));
+    }
+    return requestBuilder.addHeader("Content-Type", "application/json; charset=utf-8").setBody(json.toString());
+  }
+
   @Override
   public void close()
       throws PinotClientException {
@@ -18,6 +18,7 @@
  */
 package org.apache.pinot.client;
 
+import java.util.List;
 import java.util.concurrent.Future;
 
 
@@ -37,6 +38,23 @@ interface PinotClientTransport {
   Future<BrokerResponse> executeQueryAsync(String brokerAddress, Request request)
       throws PinotClientException;
 
+  /**
+   * Prepares the SQL query with '?' placeholders on the broker, and returns the id of the prepared statement.
+   */
+  default String prepareStatement(String brokerAddress, String sql)
+      throws PinotClientException {
+    throw new UnsupportedOperationException("Prepared statement on broker is not supported by: " + getClass());
+  }
+
+  /**
+   * Executes the prepared statement on the broker with the given parameters (String, Long or Double).
+   */
+  default Future<BrokerResponse> executePreparedStatementAsync(String brokerAddress, String statementId,
+      List<Object> parameters)
+      throws PinotClientException {
+    throw new UnsupportedOperationException("Prepared statement on broker is not supported by: " + getClass());
+  }
+
   void close()
       throws PinotClientException;
 }
@@ -18,17 +18,26 @@
  */
 package org.apache.pinot.client;
 
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Future;
 
 
 /**
  * A prepared statement, which is used to escape query parameters sent to Pinot.
+ * <p>When the parameters are bound on the broker, the SQL is prepared once on each broker, then only the id of the
+ * prepared statement and the typed parameters are sent for each execution, which saves the query parsing on the broker.
  */
 public class PreparedStatement {
   private final Connection _connection;
   private final String _statement;
   private final String[] _parameters;
   private final String _queryFormat;
+  private final boolean _bindOnBroker;
+  private final Object[] _parameterValues;
+  // Map from broker to the id of the statement prepared on the broker
+  private final Map<String, String> _statementIds = new ConcurrentHashMap<>();
 
   @Deprecated
   PreparedStatement(Connection connection, String query) {
@@ -36,13 +45,25 @@ public class PreparedStatement {
     _statement = query;
     _parameters = new String[getQuestionMarkCount(query)];
     _queryFormat = "pql";
+    _bindOnBroker = false;
+    _parameterValues = new Object[_parameters.length];
   }
 
   PreparedStatement(Connection connection, Request request) {
+    this(connection, request, false);
+  }
+
+  PreparedStatement(Connection connection, Request request, boolean bindOnBroker) {
+    if (bindOnBroker && !request.getQueryFormat().equalsIgnoreCase("sql")) {
+      throw new PinotClientException("Binding parameters on broker is only supported for SQL");
+    }
     _connection = connection;
     _statement = request.getQuery();
-    _parameters = new String[getQuestionMarkCount(request.getQuery())];
+    _parameters = new String[bindOnBroker ? getPlaceholderCount(request.getQuery())
+        : getQuestionMarkCount(request.getQuery())];
     _queryFormat = request.getQueryFormat();
+    _bindOnBroker = bindOnBroker;
+    _parameterValues = new Object[_parameters.length];
   }
 
   private int getQuestionMarkCount(String query) {
@@ -55,6 +76,44 @@ public class PreparedStatement {
     return questionMarkCount;
   }
 
+  /**
+   * Returns the number of {@code ?} placeholders outside of the string literals, quoted identifiers and comments, which
+   * matches the number of parameters expected by the broker (see QueryTemplate.getNumPlaceholders()).
+   */
+  private static int getPlaceholderCount(String sql) {
+    int placeholderCount = 0;
+    int length = sql.length();
+    int i = 0;
+    while (i < length) {
+      char c = sql.charAt(i);
+      if (c == '\'' || c == '"' || c == '`') {
+        // String literal or quoted identifier, where the quote is escaped by doubling it
+        i++;
+        while (i < length) {
+          if (sql.charAt(i++) == c) {
+            if (i < length && sql.charAt(i) == c) {
+              i++;
+            } else {
+              break;
+            }
+          }
+        }
+      } else if (c == '-' && i + 1 < length && sql.charAt(i + 1) == '-') {
+        int end = sql.indexOf('\n', i);
+        i = end < 0 ? length : end + 1;
+      } else if (c == '/' && i + 1 < length && sql.charAt(i + 1) == '*') {
+        int end = sql.indexOf("*/", i + 2);
+        i = end < 0 ? length : end + 2;
+      } else {
+        if (c == '?') {
+          placeholderCount++;
+        }
+        i++;
+      }
+    }
+    return placeholderCount;
+  }
+
   private String fillStatementWithParameters() {
     String statement = _statement;
     for (String parameter : _parameters) {
@@ -69,6 +128,9 @@ public class PreparedStatement {
    * @return The query results
    */
   public ResultSetGroup execute() {
+    if (_bindOnBroker) {
+      return _connection.executePreparedStatement(this, Arrays.asList(_parameterValues));
+    }
     return _connection.execute(new Request(_queryFormat, fillStatementWithParameters()));
   }
 
@@ -78,9 +140,26 @@ public class PreparedStatement {
    * @return The query results
    */
   public Future<ResultSetGroup> executeAsync() {
+    if (_bindOnBroker) {
+      return _connection.executePreparedStatementAsync(this, Arrays.asList(_parameterValues));
+    }
     return _connection.executeAsync(new Request(_queryFormat, fillStatementWithParameters()));
   }
 
+  /**
+   * Returns the id of the statement prepared on the given broker, prepares the statement if not yet.
+   */
+  String getStatementId(String brokerHostPort) {
+    return _statementIds.computeIfAbsent(brokerHostPort, k -> _connection.prepareStatementOnBroker(k, _statement));
+  }
+
+  /**
+   * Invalidates the id of the statement prepared on the given broker (e.g. evicted on the broker).
+   */
+  void invalidateStatementId(String brokerHostPort) {
+    _statementIds.remove(brokerHostPort);
+  }
+
   /**
    * Replaces the given parameter by its value.
    *
@@ -89,6 +168,7 @@ public class PreparedStatement {
    */
   public void setString(int parameterIndex, String value) {
     _parameters[parameterIndex] = "'" + value.replace("'", "''") + "'";
+    _parameterValues[parameterIndex] = value;
   }
 
   /**
@@ -99,6 +179,7 @@ public class PreparedStatement {
    */
   public void setInt(int parameterIndex, int value) {
     _parameters[parameterIndex] = String.valueOf(value);
+    _parameterValues[parameterIndex] = (long) value;
   }
 
   /**
@@ -109,6 +190,7 @@ public class PreparedStatement {
    */
   public void setLong(int parameterIndex, long value) {
     _parameters[parameterIndex] = String.valueOf(value);
+    _parameterValues[parameterIndex] = value;
   }
 
   /**
@@ -119,6 +201,7 @@ public class PreparedStatement {
    */
   public void setFloat(int parameterIndex, float value) {
     _parameters[parameterIndex] = String.valueOf(value);
+    _parameterValues[parameterIndex] = (double) value;
   }
 
   /**
@@ -129,5 +212,6 @@ public class PreparedStatement {
    */
   public void setDouble(int parameterIndex, double value) {
     _parameters[parameterIndex] = String.valueOf(value);
+    _parameterValues[parameterIndex] = value;
   }
 }
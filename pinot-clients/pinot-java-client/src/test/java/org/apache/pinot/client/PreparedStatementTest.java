@@ -18,6 +18,9 @@
  */
 package org.apache.pinot.client;
 
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Future;
 import org.testng.Assert;
 import org.testng.annotations.AfterClass;
@@ -45,6 +48,42 @@ public class PreparedStatementTest {
     Assert.assertEquals("SELECT foo FROM bar WHERE baz = '''hello'''", _dummyPinotClientTransport.getLastQuery());
   }
 
+  @Test
+  public void testPreparedStatementBindOnBroker() {
+    Connection connection = ConnectionFactory.fromHostList("dummy");
+    PreparedStatement preparedStatement =
+        connection.prepareStatement(new Request("sql", "SELECT foo FROM bar WHERE baz = ? AND qux > ?"), true);
+    preparedStatement.setString(0, "'hello'");
+    preparedStatement.setInt(1, 5);
+    preparedStatement.execute();
+    preparedStatement.setString(0, "world");
+    preparedStatement.setDouble(1, 1.5);
+    preparedStatement.execute();
+
+    // The statement should only be prepared once, then only the parameters are sent
+    Assert.assertEquals(_dummyPinotClientTransport.getNumPreparedStatements(), 1);
+    Assert.assertEquals(_dummyPinotClientTransport.getLastParameters(), Arrays.asList("world", 1.5));
+  }
+
+  @Test
+  public void testPreparedStatementBindOnBrokerWithQuestionMarkInLiteral() {
+    Connection connection = ConnectionFactory.fromHostList("dummy");
+    PreparedStatement preparedStatement = connection.prepareStatement(
+        new Request("sql", "SELECT foo FROM bar WHERE baz = 'what?' AND \"qu?x\" > ? -- why?\nLIMIT ?"), true);
+    preparedStatement.setInt(0, 5);
+    preparedStatement.setInt(1, 10);
+    preparedStatement.execute();
+
+    // Only the placeholders outside of the literals, quoted identifiers and comments should be counted
+    Assert.assertEquals(_dummyPinotClientTransport.getLastParameters(), Arrays.asList(5L, 10L));
+    try {
+      preparedStatement.setInt(2, 15);
+      Assert.fail();
+    } catch (ArrayIndexOutOfBoundsException e) {
+      // Expected
+    }
+  }
+
   @BeforeClass
   public void overridePinotClientTransport() {
     _previousTransportFactory = ConnectionFactory._transportFactory;
@@ -58,6 +97,8 @@ public class PreparedStatementTest {
 
   static class DummyPinotClientTransport implements PinotClientTransport {
     private String _lastQuery;
+    private int _numPreparedStatements;
+    private List<Object> _lastParameters;
 
     @Override
     public BrokerResponse executeQuery(String brokerAddress, String query)
@@ -87,10 +128,33 @@ public class PreparedStatementTest {
       return null;
     }
 
+    @Override
+    public String prepareStatement(String brokerAddress, String sql)
+        throws PinotClientException {
+      _numPreparedStatements++;
+      return "statement" + _numPreparedStatements;
+    }
+
+    @Override
+    public Future<BrokerResponse> executePreparedStatementAsync(String brokerAddress, String statementId,
+        List<Object> parameters)
+        throws PinotClientException {
+      _lastParameters = parameters;
+      return CompletableFuture.completedFuture(BrokerResponse.empty());
+    }
+
     public String getLastQuery() {
       return _lastQuery;
     }
 
+    public int getNumPreparedStatements() {
+      return _numPreparedStatements;
+    }
+
+    public List<Object> getLastParameters() {
+      return _lastParameters;
+    }
+
     @Override
     public void close()
         throws PinotClientException {
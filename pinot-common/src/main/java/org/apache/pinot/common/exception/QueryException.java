@@ -38,6 +38,7 @@ public class QueryException {
   public static final int JSON_PARSING_ERROR_CODE = 100;
   public static final int JSON_COMPILATION_ERROR_CODE = 101;
   public static final int PQL_PARSING_ERROR_CODE = 150;
+  public static final int PREPARED_STATEMENT_NOT_FOUND_ERROR_CODE = 155;
   public static final int SEGMENT_PLAN_EXECUTION_ERROR_CODE = 160;
   public static final int COMBINE_SEGMENT_PLAN_TIMEOUT_ERROR_CODE = 170;
   public static final int ACCESS_DENIED_ERROR_CODE = 180;
@@ -67,6 +68,8 @@ public class QueryException {
   public static final ProcessingException JSON_PARSING_ERROR = new ProcessingException(JSON_PARSING_ERROR_CODE);
   public static final ProcessingException JSON_COMPILATION_ERROR = new ProcessingException(JSON_COMPILATION_ERROR_CODE);
   public static final ProcessingException PQL_PARSING_ERROR = new ProcessingException(PQL_PARSING_ERROR_CODE);
+  public static final ProcessingException PREPARED_STATEMENT_NOT_FOUND_ERROR =
+      new ProcessingException(PREPARED_STATEMENT_NOT_FOUND_ERROR_CODE);
   public static final ProcessingException ACCESS_DENIED_ERROR = new ProcessingException(ACCESS_DENIED_ERROR_CODE);
   public static final ProcessingException SEGMENT_PLAN_EXECUTION_ERROR =
       new ProcessingException(SEGMENT_PLAN_EXECUTION_ERROR_CODE);
@@ -106,6 +109,7 @@ public class QueryException {
     JSON_PARSING_ERROR.setMessage("JsonParsingError");
     JSON_COMPILATION_ERROR.setMessage("JsonCompilationError");
     PQL_PARSING_ERROR.setMessage("PQLParsingError");
+    PREPARED_STATEMENT_NOT_FOUND_ERROR.setMessage("PreparedStatementNotFoundError");
     SEGMENT_PLAN_EXECUTION_ERROR.setMessage("SegmentPlanExecutionError");
     COMBINE_SEGMENT_PLAN_TIMEOUT_ERROR.setMessage("CombineSegmentPlanTimeoutError");
     QUERY_EXECUTION_ERROR.setMessage("QueryExecutionError");
@@ -169,6 +173,7 @@ public class QueryException {
       case QueryException.JSON_PARSING_ERROR_CODE:
       case QueryException.QUERY_VALIDATION_ERROR_CODE:
       case QueryException.PQL_PARSING_ERROR_CODE:
+      case QueryException.PREPARED_STATEMENT_NOT_FOUND_ERROR_CODE:
       case QueryException.TOO_MANY_REQUESTS_ERROR_CODE:
         return true;
       default:
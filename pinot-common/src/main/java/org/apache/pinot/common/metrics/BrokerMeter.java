@@ -34,6 +34,9 @@ public enum BrokerMeter implements AbstractMetrics.Meter {
   // These metrics track the exceptions caught during query execution in broker side.
   // PQL compile phase.
   REQUEST_COMPILATION_EXCEPTIONS("exceptions", true),
+  QUERY_TEMPLATE_CACHE_HITS("queries", true),
+  QUERY_TEMPLATE_CACHE_MISSES("queries", true),
+  PREPARED_STATEMENTS_REGISTERED("statements", true),
   // Get resource phase.
   RESOURCE_MISSING_EXCEPTIONS("exceptions", true),
   // Query validation phase.
@@ -94,6 +97,15 @@ public enum BrokerMeter implements AbstractMetrics.Meter {
   // Track the case where selected server is missing in RoutingManager
   SERVER_MISSING_FOR_ROUTING("badResponses", false),
 
+  // Hedged requests sent to the alternate servers for the straggling servers, and the ones skipped due to the cap of
+  // the in-flight hedged requests
+  HEDGED_REQUESTS_SENT("requests", false),
+  HEDGED_REQUESTS_THROTTLED("requests", false),
+
+  // Selection queries routed via the gRPC streaming endpoint, and the streams cancelled once the LIMIT is satisfied
+  STREAMING_QUERIES("queries", false),
+  STREAMING_REQUESTS_CANCELLED("requests", false),
+
   // Netty connection metrics
   NETTY_CONNECTION_REQUESTS_SENT("nettyConnection", true),
   NETTY_CONNECTION_BYTES_SENT("nettyConnection", true),
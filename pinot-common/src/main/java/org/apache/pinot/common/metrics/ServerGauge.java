@@ -42,6 +42,15 @@ public enum ServerGauge implements AbstractMetrics.Gauge {
   REALTIME_SEGMENT_NUM_PARTITIONS("realtimeSegmentNumPartitions", false),
   LLC_SIMULTANEOUS_SEGMENT_BUILDS("llcSimultaneousSegmentBuilds", true),
 
+  // Startup metrics
+  STARTUP_SEGMENT_BOOTSTRAP_TIME_MS("milliseconds", true),
+  STARTUP_SEGMENT_BOOTSTRAP_SEGMENTS_LOADED("segments", true),
+  STARTUP_SEGMENT_BOOTSTRAP_SEGMENTS_FAILED("segments", true),
+  STARTUP_TIME_TO_SERVE_MS("milliseconds", true),
+
+  // Netty metrics
+  NETTY_CONNECTION_QUEUED_RESPONSE_BYTES("bytes", true),
+
   // Upsert metrics
   UPSERT_PRIMARY_KEYS_COUNT("upsertPrimaryKeysCount", false);
 
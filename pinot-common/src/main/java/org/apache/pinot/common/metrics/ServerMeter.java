@@ -30,6 +30,7 @@ public enum ServerMeter implements AbstractMetrics.Meter {
   REQUEST_FETCH_EXCEPTIONS("exceptions", true),
   REQUEST_DESERIALIZATION_EXCEPTIONS("exceptions", true),
   RESPONSE_SERIALIZATION_EXCEPTIONS("exceptions", true),
+  RESPONSE_COMPRESSION_EXCEPTIONS("exceptions", true),
   SCHEDULING_TIMEOUT_EXCEPTIONS("exceptions", true),
   QUERY_EXECUTION_EXCEPTIONS("exceptions", false),
   HELIX_ZOOKEEPER_RECONNECTS("reconnects", true),
@@ -68,7 +69,14 @@ public enum ServerMeter implements AbstractMetrics.Meter {
   // Netty connection metrics
   NETTY_CONNECTION_BYTES_RECEIVED("nettyConnection", true),
   NETTY_CONNECTION_RESPONSES_SENT("nettyConnection", true),
-  NETTY_CONNECTION_BYTES_SENT("nettyConnection", true);
+  NETTY_CONNECTION_BYTES_SENT("nettyConnection", true),
+  NETTY_CONNECTION_RESPONSES_QUEUED("nettyConnection", true),
+  NETTY_CONNECTION_RESPONSES_REJECTED("nettyConnection", true),
+
+  // Response compression metrics (compression ratio = bytes after compression / bytes before compression)
+  RESPONSES_COMPRESSED("responses", true),
+  RESPONSE_BYTES_BEFORE_COMPRESSION("bytes", true),
+  RESPONSE_BYTES_AFTER_COMPRESSION("bytes", true);
 
   private final String meterName;
   private final String unit;
@@ -32,6 +32,7 @@ public enum ServerQueryPhase implements AbstractMetrics.QueryPhase {
   BUILD_QUERY_PLAN,
   QUERY_PLAN_EXECUTION,
   RESPONSE_SERIALIZATION,
+  RESPONSE_COMPRESSION,
   QUERY_PROCESSING,
   SCHEDULER_WAIT;
 
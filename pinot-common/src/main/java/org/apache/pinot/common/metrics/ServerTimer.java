@@ -29,6 +29,9 @@ public enum ServerTimer implements AbstractMetrics.Timer {
   // metric tracking the freshness lag for consuming segments
   FRESHNESS_LAG_MS("freshnessLagMs", false),
 
+  // metric tracking the time to load an OFFLINE segment into the server
+  SEGMENT_LOAD_TIME_MS("milliseconds", false),
+
   NETTY_CONNECTION_SEND_RESPONSE_LATENCY("nettyConnection", true);
 
   private final String timerName;
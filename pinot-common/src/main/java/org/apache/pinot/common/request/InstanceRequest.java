@@ -39,6 +39,7 @@ public class InstanceRequest implements org.apache.thrift.TBase<InstanceRequest,
   private static final org.apache.thrift.protocol.TField SEARCH_SEGMENTS_FIELD_DESC = new org.apache.thrift.protocol.TField("searchSegments", org.apache.thrift.protocol.TType.LIST, (short)3);
   private static final org.apache.thrift.protocol.TField ENABLE_TRACE_FIELD_DESC = new org.apache.thrift.protocol.TField("enableTrace", org.apache.thrift.protocol.TType.BOOL, (short)4);
   private static final org.apache.thrift.protocol.TField BROKER_ID_FIELD_DESC = new org.apache.thrift.protocol.TField("brokerId", org.apache.thrift.protocol.TType.STRING, (short)5);
+  private static final org.apache.thrift.protocol.TField RESPONSE_COMPRESSION_FIELD_DESC = new org.apache.thrift.protocol.TField("responseCompression", org.apache.thrift.protocol.TType.STRING, (short)6);
 
   private static final org.apache.thrift.scheme.SchemeFactory STANDARD_SCHEME_FACTORY = new InstanceRequestStandardSchemeFactory();
   private static final org.apache.thrift.scheme.SchemeFactory TUPLE_SCHEME_FACTORY = new InstanceRequestTupleSchemeFactory();
@@ -48,6 +49,7 @@ public class InstanceRequest implements org.apache.thrift.TBase<InstanceRequest,
   public @org.apache.thrift.annotation.Nullable java.util.List<java.lang.String> searchSegments; // optional
   public boolean enableTrace; // optional
   public @org.apache.thrift.annotation.Nullable java.lang.String brokerId; // optional
+  public @org.apache.thrift.annotation.Nullable java.lang.String responseCompression; // optional
 
   /** The set of fields this struct contains, along with convenience methods for finding and manipulating them. */
   public enum _Fields implements org.apache.thrift.TFieldIdEnum {
@@ -55,7 +57,8 @@ public class InstanceRequest implements org.apache.thrift.TBase<InstanceRequest,
     QUERY((short)2, "query"),
     SEARCH_SEGMENTS((short)3, "searchSegments"),
     ENABLE_TRACE((short)4, "enableTrace"),
-    BROKER_ID((short)5, "brokerId");
+    BROKER_ID((short)5, "brokerId"),
+    RESPONSE_COMPRESSION((short)6, "responseCompression");
 
     private static final java.util.Map<java.lang.String, _Fields> byName = new java.util.HashMap<java.lang.String, _Fields>();
 
@@ -81,6 +84,8 @@ public class InstanceRequest implements org.apache.thrift.TBase<InstanceRequest,
           return ENABLE_TRACE;
         case 5: // BROKER_ID
           return BROKER_ID;
+        case 6: // RESPONSE_COMPRESSION
+          return RESPONSE_COMPRESSION;
         default:
           return null;
       }
@@ -125,7 +130,7 @@ public class InstanceRequest implements org.apache.thrift.TBase<InstanceRequest,
   private static final int __REQUESTID_ISSET_ID = 0;
   private static final int __ENABLETRACE_ISSET_ID = 1;
   private byte __isset_bitfield = 0;
-  private static final _Fields optionals[] = {_Fields.SEARCH_SEGMENTS,_Fields.ENABLE_TRACE,_Fields.BROKER_ID};
+  private static final _Fields optionals[] = {_Fields.SEARCH_SEGMENTS,_Fields.ENABLE_TRACE,_Fields.BROKER_ID,_Fields.RESPONSE_COMPRESSION};
   public static final java.util.Map<_Fields, org.apache.thrift.meta_data.FieldMetaData> metaDataMap;
   static {
     java.util.Map<_Fields, org.apache.thrift.meta_data.FieldMetaData> tmpMap = new java.util.EnumMap<_Fields, org.apache.thrift.meta_data.FieldMetaData>(_Fields.class);
@@ -140,6 +145,8 @@ public class InstanceRequest implements org.apache.thrift.TBase<InstanceRequest,
         new org.apache.thrift.meta_data.FieldValueMetaData(org.apache.thrift.protocol.TType.BOOL)));
     tmpMap.put(_Fields.BROKER_ID, new org.apache.thrift.meta_data.FieldMetaData("brokerId", org.apache.thrift.TFieldRequirementType.OPTIONAL, 
         new org.apache.thrift.meta_data.FieldValueMetaData(org.apache.thrift.protocol.TType.STRING)));
+    tmpMap.put(_Fields.RESPONSE_COMPRESSION, new org.apache.thrift.meta_data.FieldMetaData("responseCompression", org.apache.thrift.TFieldRequirementType.OPTIONAL, 
+        new org.apache.thrift.meta_data.FieldValueMetaData(org.apache.thrift.protocol.TType.STRING)));
     metaDataMap = java.util.Collections.unmodifiableMap(tmpMap);
     org.apache.thrift.meta_data.FieldMetaData.addStructMetaDataMap(InstanceRequest.class, metaDataMap);
   }
@@ -174,6 +181,9 @@ public class InstanceRequest implements org.apache.thrift.TBase<InstanceRequest,
     if (other.isSetBrokerId()) {
       this.brokerId = other.brokerId;
     }
+    if (other.isSetResponseCompression()) {
+      this.responseCompression = other.responseCompression;
+    }
   }
 
   public InstanceRequest deepCopy() {
@@ -189,6 +199,7 @@ public class InstanceRequest implements org.apache.thrift.TBase<InstanceRequest,
     setEnableTraceIsSet(false);
     this.enableTrace = false;
     this.brokerId = null;
+    this.responseCompression = null;
   }
 
   public long getRequestId() {
@@ -328,6 +339,31 @@ public class InstanceRequest implements org.apache.thrift.TBase<InstanceRequest,
     }
   }
 
+  @org.apache.thrift.annotation.Nullable
+  public java.lang.String getResponseCompression() {
+    return this.responseCompression;
+  }
+
+  public InstanceRequest setResponseCompression(@org.apache.thrift.annotation.Nullable java.lang.String responseCompression) {
+    this.responseCompression = responseCompression;
+    return this;
+  }
+
+  public void unsetResponseCompression() {
+    this.responseCompression = null;
+  }
+
+  /** Returns true if field responseCompression is set (has been assigned a value) and false otherwise */
+  public boolean isSetResponseCompression() {
+    return this.responseCompression != null;
+  }
+
+  public void setResponseCompressionIsSet(boolean value) {
+    if (!value) {
+      this.responseCompression = null;
+    }
+  }
+
   public void setFieldValue(_Fields field, @org.apache.thrift.annotation.Nullable java.lang.Object value) {
     switch (field) {
     case REQUEST_ID:
@@ -370,6 +406,14 @@ public class InstanceRequest implements org.apache.thrift.TBase<InstanceRequest,
       }
       break;
 
+    case RESPONSE_COMPRESSION:
+      if (value == null) {
+        unsetResponseCompression();
+      } else {
+        setResponseCompression((java.lang.String)value);
+      }
+      break;
+
     }
   }
 
@@ -391,6 +435,9 @@ public class InstanceRequest implements org.apache.thrift.TBase<InstanceRequest,
     case BROKER_ID:
       return getBrokerId();
 
+    case RESPONSE_COMPRESSION:
+      return getResponseCompression();
+
     }
     throw new java.lang.IllegalStateException();
   }
@@ -412,6 +459,8 @@ public class InstanceRequest implements org.apache.thrift.TBase<InstanceRequest,
       return isSetEnableTrace();
     case BROKER_ID:
       return isSetBrokerId();
+    case RESPONSE_COMPRESSION:
+      return isSetResponseCompression();
     }
     throw new java.lang.IllegalStateException();
   }
@@ -476,6 +525,15 @@ public class InstanceRequest implements org.apache.thrift.TBase<InstanceRequest,
         return false;
     }
 
+    boolean this_present_responseCompression = true && this.isSetResponseCompression();
+    boolean that_present_responseCompression = true && that.isSetResponseCompression();
+    if (this_present_responseCompression || that_present_responseCompression) {
+      if (!(this_present_responseCompression && that_present_responseCompression))
+        return false;
+      if (!this.responseCompression.equals(that.responseCompression))
+        return false;
+    }
+
     return true;
   }
 
@@ -501,6 +559,10 @@ public class InstanceRequest implements org.apache.thrift.TBase<InstanceRequest,
     if (isSetBrokerId())
       hashCode = hashCode * 8191 + brokerId.hashCode();
 
+    hashCode = hashCode * 8191 + ((isSetResponseCompression()) ? 131071 : 524287);
+    if (isSetResponseCompression())
+      hashCode = hashCode * 8191 + responseCompression.hashCode();
+
     return hashCode;
   }
 
@@ -562,6 +624,16 @@ public class InstanceRequest implements org.apache.thrift.TBase<InstanceRequest,
         return lastComparison;
       }
     }
+    lastComparison = java.lang.Boolean.valueOf(isSetResponseCompression()).compareTo(other.isSetResponseCompression());
+    if (lastComparison != 0) {
+      return lastComparison;
+    }
+    if (isSetResponseCompression()) {
+      lastComparison = org.apache.thrift.TBaseHelper.compareTo(this.responseCompression, other.responseCompression);
+      if (lastComparison != 0) {
+        return lastComparison;
+      }
+    }
     return 0;
   }
 
@@ -620,6 +692,16 @@ public class InstanceRequest implements org.apache.thrift.TBase<InstanceRequest,
       }
       first = false;
     }
+    if (isSetResponseCompression()) {
+      if (!first) sb.append(", ");
+      sb.append("responseCompression:");
+      if (this.responseCompression == null) {
+        sb.append("null");
+      } else {
+        sb.append(this.responseCompression);
+      }
+      first = false;
+    }
     sb.append(")");
     return sb.toString();
   }
@@ -723,6 +805,14 @@ public class InstanceRequest implements org.apache.thrift.TBase<InstanceRequest,
               org.apache.thrift.protocol.TProtocolUtil.skip(iprot, schemeField.type);
             }
             break;
+          case 6: // RESPONSE_COMPRESSION
+            if (schemeField.type == org.apache.thrift.protocol.TType.STRING) {
+              struct.responseCompression = iprot.readString();
+              struct.setResponseCompressionIsSet(true);
+            } else { 
+              org.apache.thrift.protocol.TProtocolUtil.skip(iprot, schemeField.type);
+            }
+            break;
           default:
             org.apache.thrift.protocol.TProtocolUtil.skip(iprot, schemeField.type);
         }
@@ -775,6 +865,13 @@ public class InstanceRequest implements org.apache.thrift.TBase<InstanceRequest,
           oprot.writeFieldEnd();
         }
       }
+      if (struct.responseCompression != null) {
+        if (struct.isSetResponseCompression()) {
+          oprot.writeFieldBegin(RESPONSE_COMPRESSION_FIELD_DESC);
+          oprot.writeString(struct.responseCompression);
+          oprot.writeFieldEnd();
+        }
+      }
       oprot.writeFieldStop();
       oprot.writeStructEnd();
     }
@@ -804,7 +901,10 @@ public class InstanceRequest implements org.apache.thrift.TBase<InstanceRequest,
       if (struct.isSetBrokerId()) {
         optionals.set(2);
       }
-      oprot.writeBitSet(optionals, 3);
+      if (struct.isSetResponseCompression()) {
+        optionals.set(3);
+      }
+      oprot.writeBitSet(optionals, 4);
       if (struct.isSetSearchSegments()) {
         {
           oprot.writeI32(struct.searchSegments.size());
@@ -820,6 +920,9 @@ public class InstanceRequest implements org.apache.thrift.TBase<InstanceRequest,
       if (struct.isSetBrokerId()) {
         oprot.writeString(struct.brokerId);
       }
+      if (struct.isSetResponseCompression()) {
+        oprot.writeString(struct.responseCompression);
+      }
     }
 
     @Override
@@ -830,7 +933,7 @@ public class InstanceRequest implements org.apache.thrift.TBase<InstanceRequest,
       struct.query = new BrokerRequest();
       struct.query.read(iprot);
       struct.setQueryIsSet(true);
-      java.util.BitSet incoming = iprot.readBitSet(3);
+      java.util.BitSet incoming = iprot.readBitSet(4);
       if (incoming.get(0)) {
         {
           org.apache.thrift.protocol.TList _list135 = new org.apache.thrift.protocol.TList(org.apache.thrift.protocol.TType.STRING, iprot.readI32());
@@ -852,6 +955,10 @@ public class InstanceRequest implements org.apache.thrift.TBase<InstanceRequest,
         struct.brokerId = iprot.readString();
         struct.setBrokerIdIsSet(true);
       }
+      if (incoming.get(3)) {
+        struct.responseCompression = iprot.readString();
+        struct.setResponseCompressionIsSet(true);
+      }
     }
   }
 
@@ -149,6 +149,48 @@ public class CommonConstants {
     public static final boolean DEFAULT_ENABLE_TABLE_LEVEL_METRICS = true;
     public static final String CONFIG_OF_ALLOWED_TABLES_FOR_EMITTING_METRICS =
         "pinot.broker.allowedTablesForEmittingMetrics";
+    // Whether to select the server instances adaptively based on the server latency and in-flight requests
+    public static final String CONFIG_OF_ENABLE_ADAPTIVE_SERVER_SELECTION =
+        "pinot.broker.enableAdaptiveServerSelection";
+    public static final boolean DEFAULT_ENABLE_ADAPTIVE_SERVER_SELECTION = false;
+    // Whether to send hedged requests to the alternate servers for the servers not responded after the hedge delay,
+    // which is the configured percentile of the recent server response latency of the table
+    public static final String CONFIG_OF_ENABLE_QUERY_HEDGING = "pinot.broker.enableQueryHedging";
+    public static final boolean DEFAULT_ENABLE_QUERY_HEDGING = false;
+    public static final String CONFIG_OF_QUERY_HEDGING_LATENCY_PERCENTILE =
+        "pinot.broker.queryHedging.latencyPercentile";
+    public static final String CONFIG_OF_QUERY_HEDGING_MIN_DELAY_MS = "pinot.broker.queryHedging.minDelayMs";
+    public static final String CONFIG_OF_QUERY_HEDGING_MAX_IN_FLIGHT_REQUESTS =
+        "pinot.broker.queryHedging.maxInFlightRequests";
+    // Whether to merge the server responses incrementally as they arrive instead of after all of them are gathered
+    public static final String CONFIG_OF_ENABLE_INCREMENTAL_REDUCE = "pinot.broker.enableIncrementalReduce";
+    public static final boolean DEFAULT_ENABLE_INCREMENTAL_REDUCE = false;
+    // Number of Netty channels between the broker and each server, and whether to use the epoll native transport (Linux
+    // only, falls back to NIO if not available)
+    public static final String CONFIG_OF_NETTY_NUM_CHANNELS_PER_SERVER = "pinot.broker.netty.numChannelsPerServer";
+    public static final int DEFAULT_NETTY_NUM_CHANNELS_PER_SERVER = 1;
+    public static final String CONFIG_OF_NETTY_ENABLE_NATIVE_TRANSPORT = "pinot.broker.netty.enableNativeTransport";
+    public static final boolean DEFAULT_NETTY_ENABLE_NATIVE_TRANSPORT = false;
+    // Default compression type (NONE, LZ4 or ZSTD) of the server responses, and the min size of the server response to
+    // be compressed, which can be overridden by the query options
+    public static final String CONFIG_OF_RESPONSE_COMPRESSION = "pinot.broker.responseCompression";
+    public static final String DEFAULT_RESPONSE_COMPRESSION = "NONE";
+    public static final String CONFIG_OF_RESPONSE_COMPRESSION_THRESHOLD_BYTES =
+        "pinot.broker.responseCompressionThresholdBytes";
+    // Whether to route the selection only queries to the servers via the gRPC streaming endpoint (only for the servers
+    // with the gRPC query server enabled)
+    public static final String CONFIG_OF_ENABLE_STREAMING_SELECTION = "pinot.broker.enableStreamingSelection";
+    public static final boolean DEFAULT_ENABLE_STREAMING_SELECTION = false;
+    // Max number of SQL query templates cached to skip the parsing of the queries with the same shape (0 to disable)
+    public static final String CONFIG_OF_QUERY_TEMPLATE_CACHE_SIZE = "pinot.broker.queryTemplateCacheSize";
+    public static final int DEFAULT_QUERY_TEMPLATE_CACHE_SIZE = 0;
+    // Max number of prepared statements registered on the broker (0 to disable), and the period after which the
+    // prepared statements not accessed are evicted
+    public static final String CONFIG_OF_PREPARED_STATEMENT_MAX_SIZE = "pinot.broker.preparedStatement.maxSize";
+    public static final int DEFAULT_PREPARED_STATEMENT_MAX_SIZE = 0;
+    public static final String CONFIG_OF_PREPARED_STATEMENT_EXPIRE_AFTER_ACCESS_MS =
+        "pinot.broker.preparedStatement.expireAfterAccessMs";
+    public static final long DEFAULT_PREPARED_STATEMENT_EXPIRE_AFTER_ACCESS_MS = 3_600_000L;
 
     public static final String CONFIG_OF_BROKER_QUERY_RESPONSE_LIMIT = "pinot.broker.query.response.limit";
     public static final int DEFAULT_BROKER_QUERY_RESPONSE_LIMIT = Integer.MAX_VALUE;
@@ -176,6 +218,8 @@ public class CommonConstants {
     public static class Request {
       public static final String PQL = "pql";
       public static final String SQL = "sql";
+      public static final String PREPARED_STATEMENT_ID = "statementId";
+      public static final String PARAMETERS = "parameters";
       public static final String TRACE = "trace";
       public static final String DEBUG_OPTIONS = "debugOptions";
       public static final String QUERY_OPTIONS = "queryOptions";
@@ -186,6 +230,12 @@ public class CommonConstants {
         public static final String RESPONSE_FORMAT = "responseFormat";
         public static final String GROUP_BY_MODE = "groupByMode";
         public static final String SKIP_UPSERT = "skipUpsert";
+        // Compression type (LZ4 or ZSTD) of the server responses accepted by the broker, and the min size of the server
+        // response to be compressed
+        // NOTE: The broker sends the compression type to the servers in the InstanceRequest instead of the query
+        //       options
+        public static final String RESPONSE_COMPRESSION = "responseCompression";
+        public static final String RESPONSE_COMPRESSION_THRESHOLD_BYTES = "responseCompressionThresholdBytes";
       }
     }
   }
@@ -204,6 +254,16 @@ public class CommonConstants {
     public static final String CONFIG_OF_QUERY_EXECUTOR_CLASS = "pinot.server.query.executor.class";
     public static final String CONFIG_OF_REQUEST_HANDLER_FACTORY_CLASS = "pinot.server.requestHandlerFactory.class";
     public static final String CONFIG_OF_NETTY_PORT = "pinot.server.netty.port";
+    // Responses are queued when the outbound buffer of the broker connection exceeds the high water mark, until it
+    // drops below the low water mark. Responses exceeding the max queued bytes of the connection are rejected.
+    public static final String CONFIG_OF_NETTY_WRITE_BUFFER_LOW_WATER_MARK_BYTES =
+        "pinot.server.netty.writeBufferLowWaterMarkBytes";
+    public static final int DEFAULT_NETTY_WRITE_BUFFER_LOW_WATER_MARK_BYTES = 32 * 1024 * 1024;
+    public static final String CONFIG_OF_NETTY_WRITE_BUFFER_HIGH_WATER_MARK_BYTES =
+        "pinot.server.netty.writeBufferHighWaterMarkBytes";
+    public static final int DEFAULT_NETTY_WRITE_BUFFER_HIGH_WATER_MARK_BYTES = 64 * 1024 * 1024;
+    public static final String CONFIG_OF_NETTY_MAX_QUEUED_RESPONSE_BYTES = "pinot.server.netty.maxQueuedResponseBytes";
+    public static final long DEFAULT_NETTY_MAX_QUEUED_RESPONSE_BYTES = 256L * 1024 * 1024;
     public static final String CONFIG_OF_ENABLE_GRPC_SERVER = "pinot.server.grpc.enable";
     public static final boolean DEFAULT_ENABLE_GRPC_SERVER = false;
     public static final String CONFIG_OF_GRPC_PORT = "pinot.server.grpc.port";
@@ -258,6 +318,14 @@ public class CommonConstants {
     public static final String CONFIG_OF_STARTUP_SERVICE_STATUS_CHECK_INTERVAL_MS =
         "pinot.server.startup.serviceStatusCheckIntervalMs";
     public static final long DEFAULT_STARTUP_SERVICE_STATUS_CHECK_INTERVAL_MS = 10_000L;
+    // Startup: load the OFFLINE segments already on the local disk in parallel before joining the cluster
+    public static final String CONFIG_OF_STARTUP_ENABLE_SEGMENT_BOOTSTRAP =
+        "pinot.server.startup.enableSegmentBootstrap";
+    public static final boolean DEFAULT_STARTUP_ENABLE_SEGMENT_BOOTSTRAP = false;
+    // Startup: max number of segments loaded in parallel from the same disk during the segment bootstrap
+    public static final String CONFIG_OF_STARTUP_SEGMENT_BOOTSTRAP_PARALLELISM_PER_DISK =
+        "pinot.server.startup.segmentBootstrapParallelismPerDisk";
+    public static final int DEFAULT_STARTUP_SEGMENT_BOOTSTRAP_PARALLELISM_PER_DISK = 4;
     // Shutdown: timeout for the shutdown checks
     public static final String CONFIG_OF_SHUTDOWN_TIMEOUT_MS = "pinot.server.shutdown.timeoutMs";
     public static final long DEFAULT_SHUTDOWN_TIMEOUT_MS = 600_000L;
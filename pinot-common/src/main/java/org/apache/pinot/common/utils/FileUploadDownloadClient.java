@@ -684,6 +684,46 @@ public class FileUploadDownloadClient implements Closeable {
     return downloadFile(uri, DEFAULT_SOCKET_TIMEOUT_MS, dest);
   }
 
+  /**
+   * Download a tar.gz file and untar it into the given directory on the fly without storing the tar.gz file locally.
+   *
+   * @param uri URI
+   * @param socketTimeoutMs Socket timeout in milliseconds
+   * @param dest Directory to untar the file into
+   * @return The untarred files/directories
+   * @throws IOException
+   * @throws HttpErrorStatusException
+   */
+  public List<File> downloadUntarFileStreamed(URI uri, int socketTimeoutMs, File dest)
+      throws IOException, HttpErrorStatusException {
+    HttpUriRequest request = getDownloadFileRequest(uri, socketTimeoutMs);
+    try (CloseableHttpResponse response = _httpClient.execute(request)) {
+      StatusLine statusLine = response.getStatusLine();
+      int statusCode = statusLine.getStatusCode();
+      if (statusCode >= 300) {
+        throw new HttpErrorStatusException(getErrorMessage(request, response), statusCode);
+      }
+
+      // NOTE: Do not close the content stream explicitly because that will read all the remaining content on failure.
+      //       Closing the response will close the underlying connection.
+      return TarGzCompressionUtils.untar(response.getEntity().getContent(), dest);
+    }
+  }
+
+  /**
+   * Download a tar.gz file and untar it into the given directory on the fly using default settings.
+   *
+   * @param uri URI
+   * @param dest Directory to untar the file into
+   * @return The untarred files/directories
+   * @throws IOException
+   * @throws HttpErrorStatusException
+   */
+  public List<File> downloadUntarFileStreamed(URI uri, File dest)
+      throws IOException, HttpErrorStatusException {
+    return downloadUntarFileStreamed(uri, DEFAULT_SOCKET_TIMEOUT_MS, dest);
+  }
+
   @Override
   public void close()
       throws IOException {
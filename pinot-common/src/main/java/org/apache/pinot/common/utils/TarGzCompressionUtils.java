@@ -37,6 +37,7 @@ import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
 import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
 import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.CloseShieldInputStream;
 import org.apache.commons.lang3.StringUtils;
 
 
@@ -99,12 +100,25 @@ public class TarGzCompressionUtils {
    */
   public static List<File> untar(File inputFile, File outputDir)
       throws IOException {
+    try (InputStream fileIn = Files.newInputStream(inputFile.toPath())) {
+      return untar(fileIn, outputDir);
+    }
+  }
+
+  /**
+   * Un-tars a tar.gz input stream into a directory on the fly, returns all the untarred files/directories. The input
+   * stream is read to the end of the gzip data so that the CRC in the gzip trailer is verified, and an
+   * {@link IOException} is thrown if the data is corrupted. The input stream is not closed by this method.
+   * <p>For security reason, the untarred files must reside in the output directory.
+   */
+  public static List<File> untar(InputStream inputStream, File outputDir)
+      throws IOException {
     String outputDirCanonicalPath = outputDir.getCanonicalPath();
     List<File> untarredFiles = new ArrayList<>();
-    try (InputStream fileIn = Files.newInputStream(inputFile.toPath());
-        InputStream bufferedIn = new BufferedInputStream(fileIn);
-        InputStream gzipIn = new GzipCompressorInputStream(bufferedIn);
-        ArchiveInputStream tarGzIn = new TarArchiveInputStream(gzipIn)) {
+    // NOTE: Shield the input stream from being closed when closing the tar.gz input stream.
+    InputStream bufferedIn = new BufferedInputStream(new CloseShieldInputStream(inputStream));
+    InputStream gzipIn = new GzipCompressorInputStream(bufferedIn);
+    try (ArchiveInputStream tarGzIn = new TarArchiveInputStream(gzipIn)) {
       ArchiveEntry entry;
       while ((entry = tarGzIn.getNextEntry()) != null) {
         String entryName = entry.getName();
@@ -136,6 +150,8 @@ public class TarGzCompressionUtils {
         }
         untarredFiles.add(outputFile);
       }
+      // Read the remaining tar padding and the gzip trailer to verify the CRC
+      IOUtils.skip(gzipIn, Long.MAX_VALUE);
     }
     return untarredFiles;
   }
@@ -22,7 +22,10 @@ import java.io.File;
 import java.net.URI;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
 
+import org.apache.commons.io.FileUtils;
+import org.apache.pinot.common.utils.TarGzCompressionUtils;
 import org.apache.pinot.spi.env.PinotConfiguration;
 import org.apache.pinot.spi.utils.retry.RetryPolicies;
 import org.slf4j.Logger;
@@ -98,6 +101,56 @@ public abstract class BaseSegmentFetcher implements SegmentFetcher {
     });
   }
 
+  @Override
+  public File fetchUntarSegmentToLocalStreamed(URI uri, File dest)
+      throws Exception {
+    AtomicReference<File> segmentDir = new AtomicReference<>();
+    RetryPolicies.exponentialBackoffRetryPolicy(_retryCount, _retryWaitMs, _retryDelayScaleFactor).attempt(() -> {
+      try {
+        segmentDir.set(fetchUntarSegmentToLocalStreamedWithoutRetry(uri, dest));
+        _logger.info("Fetched and untarred segment from: {} to: {}", uri, segmentDir.get());
+        return true;
+      } catch (Exception e) {
+        // Clean up the partially untarred segment before retrying
+        FileUtils.deleteQuietly(dest);
+        if (isRetriable(e)) {
+          _logger.warn("Caught exception while fetching and untarring segment from: {} to: {}", uri, dest, e);
+          return false;
+        } else {
+          _logger.error("Caught permanent exception while fetching and untarring segment from: {} to: {}, won't retry",
+              uri, dest, e);
+          throw e;
+        }
+      }
+    });
+    return segmentDir.get();
+  }
+
+  /**
+   * Returns whether the fetch should be retried on the given exception. Sub-class can override this to fail fast on
+   * the permanent errors.
+   */
+  protected boolean isRetriable(Exception e) {
+    return true;
+  }
+
+  /**
+   * Fetches a tarred segment from URI location, and untars it into the given directory without retry. Returns the
+   * untarred segment directory. Sub-class should override this to untar the segment on the fly, the default
+   * implementation fetches the tarred segment into a temporary file with
+   * {@link #fetchSegmentToLocalWithoutRetry(URI, File)} before untarring it.
+   */
+  protected File fetchUntarSegmentToLocalStreamedWithoutRetry(URI uri, File dest)
+      throws Exception {
+    File tarFile = new File(dest.getParentFile(), dest.getName() + TarGzCompressionUtils.TAR_GZ_FILE_EXTENSION);
+    try {
+      fetchSegmentToLocalWithoutRetry(uri, tarFile);
+      return TarGzCompressionUtils.untar(tarFile, dest).get(0);
+    } finally {
+      FileUtils.deleteQuietly(tarFile);
+    }
+  }
+
   /**
    * Fetches a segment from URI location to local without retry. Sub-class should override this or
    * {@link #fetchSegmentToLocal(URI, File)}.
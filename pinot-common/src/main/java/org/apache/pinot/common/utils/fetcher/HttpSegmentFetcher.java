@@ -79,4 +79,18 @@ public class HttpSegmentFetcher extends BaseSegmentFetcher {
       throw e;
     }
   }
+
+  @Override
+  protected File fetchUntarSegmentToLocalStreamedWithoutRetry(URI uri, File dest)
+      throws Exception {
+    return _httpClient.downloadUntarFileStreamed(uri, dest).get(0);
+  }
+
+  /**
+   * Error status code below 500 is permanent, and should not be retried.
+   */
+  @Override
+  protected boolean isRetriable(Exception e) {
+    return !(e instanceof HttpErrorStatusException) || ((HttpErrorStatusException) e).getStatusCode() >= 500;
+  }
 }
@@ -22,6 +22,8 @@ import java.io.File;
 import java.net.URI;
 import java.util.List;
 
+import org.apache.commons.io.FileUtils;
+import org.apache.pinot.common.utils.TarGzCompressionUtils;
 import org.apache.pinot.spi.env.PinotConfiguration;
 
 
@@ -43,4 +45,21 @@ public interface SegmentFetcher {
    */
   void fetchSegmentToLocal(List<URI> uri, File dest)
       throws Exception;
+
+  /**
+   * Fetches a tarred segment from URI location, and untars it into the given directory. Returns the untarred segment
+   * directory.
+   * <p>Segment fetchers that can read the segment as a stream should untar it on the fly without storing the tarred
+   * segment locally. The default implementation fetches the tarred segment into a temporary file before untarring it.
+   */
+  default File fetchUntarSegmentToLocalStreamed(URI uri, File dest)
+      throws Exception {
+    File tarFile = new File(dest.getParentFile(), dest.getName() + TarGzCompressionUtils.TAR_GZ_FILE_EXTENSION);
+    try {
+      fetchSegmentToLocal(uri, tarFile);
+      return TarGzCompressionUtils.untar(tarFile, dest).get(0);
+    } finally {
+      FileUtils.deleteQuietly(tarFile);
+    }
+  }
 }
@@ -25,7 +25,11 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import javax.annotation.Nullable;
+
+import org.apache.commons.io.FileUtils;
 import org.apache.pinot.common.utils.CommonConstants;
+import org.apache.pinot.common.utils.TarGzCompressionUtils;
 import org.apache.pinot.spi.crypt.PinotCrypter;
 import org.apache.pinot.spi.crypt.PinotCrypterFactory;
 import org.apache.pinot.spi.env.PinotConfiguration;
@@ -40,11 +44,17 @@ public class SegmentFetcherFactory {
   static final String SEGMENT_FETCHER_CLASS_KEY_SUFFIX = ".class";
   private static final String PROTOCOLS_KEY = "protocols";
   private static final String ENCODED_SUFFIX = ".enc";
+  private static final String TAR_GZ_SUFFIX = ".tar.gz";
+  // Configs for the local segment tar cache, which is disabled if the cache directory is not configured
+  public static final String TAR_CACHE_DIR_KEY = "tarCache.dir";
+  public static final String TAR_CACHE_MAX_SIZE_BYTES_KEY = "tarCache.maxSizeBytes";
+  public static final long DEFAULT_TAR_CACHE_MAX_SIZE_BYTES = 10L * 1024 * 1024 * 1024;
 
   private static final Logger LOGGER = LoggerFactory.getLogger(SegmentFetcherFactory.class);
   private static final Map<String, SegmentFetcher> SEGMENT_FETCHER_MAP = new HashMap<>();
   private static final SegmentFetcher DEFAULT_HTTP_SEGMENT_FETCHER = new HttpSegmentFetcher();
   private static final SegmentFetcher DEFAULT_PINOT_FS_SEGMENT_FETCHER = new PinotFSSegmentFetcher();
+  private static SegmentTarCache _segmentTarCache;
 
   static {
     PinotConfiguration emptyConfig = new PinotConfiguration();
@@ -80,6 +90,21 @@ public class SegmentFetcherFactory {
       segmentFetcher.init(config.subset(protocol));
       SEGMENT_FETCHER_MAP.put(protocol, segmentFetcher);
     }
+
+    String tarCacheDir = config.getProperty(TAR_CACHE_DIR_KEY);
+    if (tarCacheDir != null) {
+      long tarCacheMaxSizeBytes = config.getProperty(TAR_CACHE_MAX_SIZE_BYTES_KEY, DEFAULT_TAR_CACHE_MAX_SIZE_BYTES);
+      LOGGER.info("Enabling segment tar cache under: {} with max size: {} bytes", tarCacheDir, tarCacheMaxSizeBytes);
+      _segmentTarCache = new SegmentTarCache(new File(tarCacheDir), tarCacheMaxSizeBytes);
+    }
+  }
+
+  /**
+   * Returns the local segment tar cache, or {@code null} if it is not enabled.
+   */
+  @Nullable
+  public static SegmentTarCache getSegmentTarCache() {
+    return _segmentTarCache;
   }
 
   /**
@@ -118,6 +143,66 @@ public class SegmentFetcherFactory {
     fetchSegmentToLocal(new URI(uri), dest);
   }
 
+  /**
+   * Fetches a segment with the given CRC from URI location to local. The local segment tar cache (if enabled) is
+   * consulted before fetching from the URI location, and the fetched segment is added into the cache.
+   * <p>The cache is keyed by the segment CRC only, so this method should only be used to fetch plain tarred segments,
+   * not encrypted ones.
+   */
+  public static void fetchSegmentToLocal(String uri, File dest, long crc)
+      throws Exception {
+    SegmentTarCache segmentTarCache = _segmentTarCache;
+    if (segmentTarCache == null) {
+      fetchSegmentToLocal(uri, dest);
+      return;
+    }
+    if (segmentTarCache.get(crc, dest)) {
+      return;
+    }
+    fetchSegmentToLocal(uri, dest);
+    try {
+      segmentTarCache.put(crc, dest);
+    } catch (Exception e) {
+      LOGGER.warn("Failed to cache segment fetched from: {} with CRC: {}", uri, crc, e);
+    }
+  }
+
+  /**
+   * Fetches a tarred segment from URI location, and untars it into the given directory on the fly if supported by the
+   * segment fetcher. Returns the untarred segment directory.
+   */
+  public static File fetchUntarSegmentToLocalStreamed(String uri, File dest)
+      throws Exception {
+    URI segmentUri = new URI(uri);
+    return getSegmentFetcher(segmentUri.getScheme()).fetchUntarSegmentToLocalStreamed(segmentUri, dest);
+  }
+
+  /**
+   * Fetches a tarred segment with the given CRC from URI location, and untars it into the given directory. Returns the
+   * untarred segment directory.
+   * <p>When the local segment tar cache is enabled, the tarred segment is fetched into the cache (or taken from the
+   * cache) then untarred, otherwise it is untarred on the fly if supported by the segment fetcher.
+   */
+  public static File fetchUntarSegmentToLocalStreamed(String uri, File dest, long crc)
+      throws Exception {
+    if (_segmentTarCache == null) {
+      return fetchUntarSegmentToLocalStreamed(uri, dest);
+    }
+    File tarFile = new File(dest.getPath() + TAR_GZ_SUFFIX);
+    try {
+      fetchSegmentToLocal(uri, tarFile, crc);
+      try {
+        return TarGzCompressionUtils.untar(tarFile, dest).get(0);
+      } catch (Exception e) {
+        // Do not keep serving the broken tarball from the cache
+        _segmentTarCache.invalidate(crc);
+        throw e;
+      }
+    } finally {
+      FileUtils.deleteQuietly(tarFile);
+    }
+  }
+
   /**
    * Fetches a segment from a URI location to a local file and decrypts it if needed
    * @param uri remote segment location
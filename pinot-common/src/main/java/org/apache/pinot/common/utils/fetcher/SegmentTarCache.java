@@ -0,0 +1,215 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pinot.common.utils.fetcher;
+
+import com.google.common.base.Preconditions;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import javax.annotation.Nullable;
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Local on-disk cache of the fetched segment tarballs, keyed by the segment CRC and bounded by a disk quota with LRU
+ * eviction. The cache directory should be outside of the server data directory so that the cached tarballs survive the
+ * data directory being wiped.
+ * <p>The cached tarballs are stored as {@code <crc>.tar.gz} under the cache directory, and are reloaded (in the order
+ * of their last access time) when the cache is created.
+ */
+public class SegmentTarCache {
+  private static final Logger LOGGER = LoggerFactory.getLogger(SegmentTarCache.class);
+  private static final String TAR_GZ_SUFFIX = ".tar.gz";
+  private static final String TMP_SUFFIX = ".tmp";
+
+  private final File _cacheDir;
+  private final long _maxSizeBytes;
+  // Map from CRC to cached tarball in access order
+  private final LinkedHashMap<Long, File> _cachedFiles = new LinkedHashMap<>(16, 0.75f, true);
+  private long _sizeBytes;
+  private long _numHits;
+  private long _numMisses;
+
+  public SegmentTarCache(File cacheDir, long maxSizeBytes)
+      throws IOException {
+    Preconditions.checkArgument(maxSizeBytes > 0, "Invalid max size: %s for segment tar cache", maxSizeBytes);
+    _cacheDir = cacheDir;
+    _maxSizeBytes = maxSizeBytes;
+    FileUtils.forceMkdir(cacheDir);
+
+    File[] files = cacheDir.listFiles();
+    Preconditions.checkState(files != null, "Failed to list files under segment tar cache directory: %s", cacheDir);
+    Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+    for (File file : files) {
+      Long crc = getCrc(file);
+      if (crc != null) {
+        _cachedFiles.put(crc, file);
+        _sizeBytes += file.length();
+      } else {
+        // Leftover of an interrupted put
+        FileUtils.deleteQuietly(file);
+      }
+    }
+    evictIfNeeded();
+    LOGGER.info("Initialized segment tar cache under: {} with {} tarballs of {} bytes, max size: {} bytes", cacheDir,
+        _cachedFiles.size(), _sizeBytes, maxSizeBytes);
+  }
+
+  @Nullable
+  private static Long getCrc(File file) {
+    String fileName = file.getName();
+    if (!file.isFile() || !fileName.endsWith(TAR_GZ_SUFFIX)) {
+      return null;
+    }
+    try {
+      return Long.parseLong(fileName.substring(0, fileName.length() - TAR_GZ_SUFFIX.length()));
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Copies the cached tarball for the given CRC into the destination file (hard link is used when possible, so the
+   * destination file should not be modified in place). Returns {@code true} if the tarball is cached, {@code false}
+   * otherwise.
+   */
+  public boolean get(long crc, File dest)
+      throws IOException {
+    File cachedFile;
+    synchronized (this) {
+      cachedFile = _cachedFiles.get(crc);
+      if (cachedFile == null) {
+        _numMisses++;
+        return false;
+      }
+      _numHits++;
+    }
+    // Persist the access time so that the LRU order is kept across restarts
+    cachedFile.setLastModified(System.currentTimeMillis());
+    FileUtils.deleteQuietly(dest);
+    try {
+      linkOrCopy(cachedFile, dest);
+    } catch (IOException e) {
+      // The cached tarball might be evicted concurrently
+      LOGGER.warn("Failed to get cached tarball: {} for CRC: {}", cachedFile, crc, e);
+      FileUtils.deleteQuietly(dest);
+      return false;
+    }
+    LOGGER.info("Got cached tarball for CRC: {} into: {}", crc, dest);
+    return true;
+  }
+
+  /**
+   * Adds the given tarball into the cache for the given CRC, and evicts the least recently used tarballs if the cache
+   * exceeds the max size. The given file might be hard linked into the cache, so it should not be modified in place
+   * afterwards (deleting it is fine).
+   */
+  public void put(long crc, File tarFile)
+      throws IOException {
+    long fileSize = tarFile.length();
+    if (fileSize > _maxSizeBytes) {
+      LOGGER.info("Skip caching tarball: {} of size: {} larger than the max cache size: {}", tarFile, fileSize,
+          _maxSizeBytes);
+      return;
+    }
+    synchronized (this) {
+      if (_cachedFiles.containsKey(crc)) {
+        return;
+      }
+    }
+    File tempFile = new File(_cacheDir, crc + "-" + UUID.randomUUID() + TMP_SUFFIX);
+    File cachedFile = new File(_cacheDir, crc + TAR_GZ_SUFFIX);
+    try {
+      linkOrCopy(tarFile, tempFile);
+      synchronized (this) {
+        if (_cachedFiles.containsKey(crc)) {
+          return;
+        }
+        Files.move(tempFile.toPath(), cachedFile.toPath(), StandardCopyOption.ATOMIC_MOVE,
+            StandardCopyOption.REPLACE_EXISTING);
+        _cachedFiles.put(crc, cachedFile);
+        _sizeBytes += fileSize;
+        evictIfNeeded();
+      }
+      LOGGER.info("Cached tarball: {} for CRC: {}", tarFile, crc);
+    } finally {
+      FileUtils.deleteQuietly(tempFile);
+    }
+  }
+
+  /**
+   * Removes the cached tarball for the given CRC if exists (e.g. when the cached tarball is found broken).
+   */
+  public synchronized void invalidate(long crc) {
+    File cachedFile = _cachedFiles.remove(crc);
+    if (cachedFile != null) {
+      _sizeBytes -= cachedFile.length();
+      FileUtils.deleteQuietly(cachedFile);
+      LOGGER.info("Invalidated cached tarball: {}", cachedFile);
+    }
+  }
+
+  private void evictIfNeeded() {
+    Iterator<Map.Entry<Long, File>> iterator = _cachedFiles.entrySet().iterator();
+    while (_sizeBytes > _maxSizeBytes && iterator.hasNext()) {
+      File file = iterator.next().getValue();
+      long fileSize = file.length();
+      // Deleting a file being read is fine as the open file handle is still valid
+      FileUtils.deleteQuietly(file);
+      iterator.remove();
+      _sizeBytes -= fileSize;
+      LOGGER.info("Evicted cached tarball: {} of size: {}", file, fileSize);
+    }
+  }
+
+  private static void linkOrCopy(File srcFile, File destFile)
+      throws IOException {
+    try {
+      Files.createLink(destFile.toPath(), srcFile.toPath());
+    } catch (IOException | UnsupportedOperationException e) {
+      // Hard link is not supported (e.g. across file systems), copy the file instead
+      FileUtils.copyFile(srcFile, destFile);
+    }
+  }
+
+  public synchronized int getNumCachedTarballs() {
+    return _cachedFiles.size();
+  }
+
+  public synchronized long getSizeBytes() {
+    return _sizeBytes;
+  }
+
+  public synchronized long getNumHits() {
+    return _numHits;
+  }
+
+  public synchronized long getNumMisses() {
+    return _numMisses;
+  }
+}
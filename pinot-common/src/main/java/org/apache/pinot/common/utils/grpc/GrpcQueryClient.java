@@ -18,24 +18,54 @@
  */
 package org.apache.pinot.common.utils.grpc;
 
-import io.grpc.Channel;
+import io.grpc.ManagedChannel;
 import io.grpc.ManagedChannelBuilder;
+import io.grpc.stub.StreamObserver;
 import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
 import org.apache.pinot.common.proto.PinotQueryServerGrpc;
 import org.apache.pinot.common.proto.Server;
 
 
 public class GrpcQueryClient {
+  private final ManagedChannel _channel;
   private final PinotQueryServerGrpc.PinotQueryServerBlockingStub _blockingStub;
+  private final PinotQueryServerGrpc.PinotQueryServerStub _asyncStub;
 
   public GrpcQueryClient(String host, int port) {
     // Set max message size to 128MB
-    Channel channel =
+    _channel =
         ManagedChannelBuilder.forAddress(host, port).maxInboundMessageSize(128 * 1024 * 1024).usePlaintext().build();
-    _blockingStub = PinotQueryServerGrpc.newBlockingStub(channel);
+    _blockingStub = PinotQueryServerGrpc.newBlockingStub(_channel);
+    _asyncStub = PinotQueryServerGrpc.newStub(_channel);
   }
 
+  /**
+   * Submits the request and returns the iterator of the responses.
+   * <p>NOTE: The responses are requested from the server one at a time as the iterator is consumed, which provides flow
+   * control for the streaming responses. The call can be cancelled by cancelling the {@link io.grpc.Context} within
+   * which this method is invoked.
+   */
   public Iterator<Server.ServerResponse> submit(Server.ServerRequest request) {
     return _blockingStub.submit(request);
   }
+
+  /**
+   * Submits the request asynchronously, and passes the responses to the given observer without blocking any thread.
+   * <p>NOTE: Use a {@link io.grpc.stub.ClientResponseObserver} and disable the auto inbound flow control to request the
+   * responses from the server one at a time. The call can be cancelled by cancelling the {@link io.grpc.Context} within
+   * which this method is invoked.
+   */
+  public void submit(Server.ServerRequest request, StreamObserver<Server.ServerResponse> responseObserver) {
+    _asyncStub.submit(request, responseObserver);
+  }
+
+  public void close() {
+    _channel.shutdown();
+    try {
+      _channel.awaitTermination(10, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
 }
@@ -0,0 +1,221 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pinot.sql.parsers;
+
+import com.google.common.base.Preconditions;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import javax.annotation.Nullable;
+import org.apache.pinot.common.request.Expression;
+import org.apache.pinot.common.request.Function;
+import org.apache.pinot.common.request.Literal;
+import org.apache.pinot.common.request.PinotQuery;
+
+
+/**
+ * Compiled {@link PinotQuery} with some of the literals being parameters, which can be bound to different values to get
+ * the {@link PinotQuery} for the queries of the same shape without compiling them again.
+ * <p>The parameters are identified by their indexes in the literals of the query, in the order of SELECT, WHERE,
+ * GROUP BY, HAVING, ORDER BY clauses (the same order as they appear in the SQL), then operands of each expression.
+ */
+public class QueryTemplate {
+  public static final char PLACEHOLDER = '?';
+
+  private final PinotQuery _pinotQuery;
+  private final int[] _parameterIndexes;
+
+  /**
+   * Compiles the SQL with {@code ?} placeholders as parameters into a template, or returns {@code null} if the
+   * placeholders cannot be bound without compiling the SQL again (e.g. used as LIMIT, or as argument of a function
+   * invoked at compile time), in which case {@link #bindPlaceholders(String, List)} should be used instead.
+   */
+  @Nullable
+  public static QueryTemplate compile(String sql) {
+    List<Integer> placeholderPositions = getPlaceholderPositions(sql);
+    int numPlaceholders = placeholderPositions.size();
+    // Compile the SQL with unique string literals in place of the placeholders, then find them in the compiled query
+    String prefix = "__pinotParameter_" + UUID.randomUUID() + "_";
+    List<Literal> uniqueLiterals = new ArrayList<>(numPlaceholders);
+    for (int i = 0; i < numPlaceholders; i++) {
+      uniqueLiterals.add(Literal.stringValue(prefix + i));
+    }
+    String sqlWithLiterals = replacePlaceholders(sql, placeholderPositions, uniqueLiterals);
+    QueryTemplateCache.ParameterizedSql parameterizedSql = QueryTemplateCache.parameterize(sqlWithLiterals);
+    if (parameterizedSql == null) {
+      return null;
+    }
+    PinotQuery pinotQuery;
+    try {
+      pinotQuery = CalciteSqlParser.compileToPinotQuery(sqlWithLiterals);
+    } catch (Exception e) {
+      return null;
+    }
+    if (!QueryTemplateCache.isParameterizable(parameterizedSql, pinotQuery)) {
+      return null;
+    }
+    int[] parameterIndexes = new int[numPlaceholders];
+    for (int i = 0; i < numPlaceholders; i++) {
+      int index = parameterizedSql._parameters.indexOf(uniqueLiterals.get(i));
+      if (index < 0) {
+        return null;
+      }
+      parameterIndexes[i] = index;
+    }
+    return new QueryTemplate(pinotQuery, parameterIndexes);
+  }
+
+  /**
+   * Returns the number of {@code ?} placeholders (outside of the string literals, quoted identifiers and comments) in
+   * the given SQL.
+   */
+  public static int getNumPlaceholders(String sql) {
+    return getPlaceholderPositions(sql).size();
+  }
+
+  /**
+   * Returns the SQL with the {@code ?} placeholders replaced with the given literals.
+   */
+  public static String bindPlaceholders(String sql, List<Literal> parameters) {
+    List<Integer> placeholderPositions = getPlaceholderPositions(sql);
+    Preconditions.checkArgument(parameters.size() == placeholderPositions.size(), "Expect %s parameters, got: %s",
+        placeholderPositions.size(), parameters.size());
+    return replacePlaceholders(sql, placeholderPositions, parameters);
+  }
+
+  private static String replacePlaceholders(String sql, List<Integer> placeholderPositions, List<Literal> literals) {
+    StringBuilder stringBuilder = new StringBuilder();
+    int start = 0;
+    for (int i = 0; i < placeholderPositions.size(); i++) {
+      int position = placeholderPositions.get(i);
+      stringBuilder.append(sql, start, position).append(toSql(literals.get(i)));
+      start = position + 1;
+    }
+    return stringBuilder.append(sql, start, sql.length()).toString();
+  }
+
+  static String toSql(Literal literal) {
+    switch (literal.getSetField()) {
+      case LONG_VALUE:
+        return Long.toString(literal.getLongValue());
+      case DOUBLE_VALUE:
+        return Double.toString(literal.getDoubleValue());
+      case STRING_VALUE:
+        return "'" + literal.getStringValue().replace("'", "''") + "'";
+      default:
+        throw new IllegalArgumentException("Unsupported parameter type: " + literal.getSetField());
+    }
+  }
+
+  private static List<Integer> getPlaceholderPositions(String sql) {
+    List<Integer> placeholderPositions = new ArrayList<>();
+    int length = sql.length();
+    int i = 0;
+    while (i < length) {
+      char c = sql.charAt(i);
+      if (c == '\'' || c == '"' || c == '`') {
+        // String literal or quoted identifier, where the quote is escaped by doubling it
+        i++;
+        while (i < length) {
+          if (sql.charAt(i++) == c) {
+            if (i < length && sql.charAt(i) == c) {
+              i++;
+            } else {
+              break;
+            }
+          }
+        }
+      } else if (c == '-' && i + 1 < length && sql.charAt(i + 1) == '-') {
+        int end = sql.indexOf('\n', i);
+        i = end < 0 ? length : end + 1;
+      } else if (c == '/' && i + 1 < length && sql.charAt(i + 1) == '*') {
+        int end = sql.indexOf("*/", i + 2);
+        i = end < 0 ? length : end + 2;
+      } else {
+        if (c == PLACEHOLDER) {
+          placeholderPositions.add(i);
+        }
+        i++;
+      }
+    }
+    return placeholderPositions;
+  }
+
+  /**
+   * NOTE: The given query is copied so that it can still be modified by the caller.
+   */
+  public QueryTemplate(PinotQuery pinotQuery, int[] parameterIndexes) {
+    _pinotQuery = pinotQuery.deepCopy();
+    _parameterIndexes = parameterIndexes;
+  }
+
+  public int getNumParameters() {
+    return _parameterIndexes.length;
+  }
+
+  /**
+   * Returns a new {@link PinotQuery} with the parameters bound to the given values.
+   */
+  public PinotQuery bind(List<Literal> parameters) {
+    Preconditions.checkArgument(parameters.size() == _parameterIndexes.length,
+        "Expect %s parameters, got: %s", _parameterIndexes.length, parameters.size());
+    PinotQuery pinotQuery = _pinotQuery.deepCopy();
+    List<Expression> literalExpressions = getLiteralExpressions(pinotQuery);
+    for (int i = 0; i < _parameterIndexes.length; i++) {
+      literalExpressions.get(_parameterIndexes[i]).setLiteral(parameters.get(i));
+    }
+    return pinotQuery;
+  }
+
+  /**
+   * Returns the literal expressions of the given query in the order described in the class javadoc.
+   */
+  public static List<Expression> getLiteralExpressions(PinotQuery pinotQuery) {
+    List<Expression> literalExpressions = new ArrayList<>();
+    addLiteralExpressions(pinotQuery.getSelectList(), literalExpressions);
+    addLiteralExpressions(pinotQuery.getFilterExpression(), literalExpressions);
+    addLiteralExpressions(pinotQuery.getGroupByList(), literalExpressions);
+    addLiteralExpressions(pinotQuery.getHavingExpression(), literalExpressions);
+    addLiteralExpressions(pinotQuery.getOrderByList(), literalExpressions);
+    return literalExpressions;
+  }
+
+  private static void addLiteralExpressions(@Nullable List<Expression> expressions,
+      List<Expression> literalExpressions) {
+    if (expressions != null) {
+      for (Expression expression : expressions) {
+        addLiteralExpressions(expression, literalExpressions);
+      }
+    }
+  }
+
+  private static void addLiteralExpressions(@Nullable Expression expression, List<Expression> literalExpressions) {
+    if (expression == null) {
+      return;
+    }
+    if (expression.getLiteral() != null) {
+      literalExpressions.add(expression);
+      return;
+    }
+    Function function = expression.getFunctionCall();
+    if (function != null) {
+      addLiteralExpressions(function.getOperands(), literalExpressions);
+    }
+  }
+}
@@ -0,0 +1,438 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pinot.sql.parsers;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import javax.annotation.Nullable;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.pinot.common.function.FunctionRegistry;
+import org.apache.pinot.common.request.Expression;
+import org.apache.pinot.common.request.Function;
+import org.apache.pinot.common.request.Literal;
+import org.apache.pinot.common.request.PinotQuery;
+
+
+/**
+ * Size bounded cache from the parameterized SQL to the compiled {@link QueryTemplate}, so that the queries of the same
+ * shape but different literal values can skip the SQL parsing.
+ * <p>The SQL is parameterized by replacing the numeric and string literals with placeholders (except for the LIMIT,
+ * OFFSET and OPTION clauses, and the ordinals in the GROUP BY and ORDER BY clauses). A query is only cached as template
+ * when the literals of the compiled query match the literals in the SQL one by one, and compiling the SQL with unique
+ * sentinel values as the literals puts each sentinel value at the same position, which guarantees that no literal is
+ * rewritten, removed or duplicated during the compilation (e.g. by the compile time function invocation, or the
+ * ordinal replacement). Queries that cannot be parameterized are also cached to skip the check.
+ */
+public class QueryTemplateCache {
+  private static final String STRING_PLACEHOLDER = "?s";
+  private static final String LONG_PLACEHOLDER = "?l";
+  private static final String DOUBLE_PLACEHOLDER = "?d";
+  private static final long SENTINEL_LONG_BASE = 987654321987L;
+  private static final double SENTINEL_DOUBLE_BASE = 987654321.5;
+  private static final String SENTINEL_STRING_PREFIX = "__pinotSentinel_";
+
+  private final Cache<String, Optional<QueryTemplate>> _cache;
+
+  public QueryTemplateCache(int maxSize) {
+    Preconditions.checkArgument(maxSize > 0, "Invalid max size: %s for query template cache", maxSize);
+    _cache = CacheBuilder.newBuilder().maximumSize(maxSize).build();
+  }
+
+  /**
+   * Returns the compiled {@link PinotQuery} for the given SQL using the cached template, or {@code null} if there is
+   * no template cached for the shape of the SQL.
+   */
+  @Nullable
+  public PinotQuery get(String sql) {
+    ParameterizedSql parameterizedSql = parameterize(sql);
+    if (parameterizedSql == null) {
+      return null;
+    }
+    Optional<QueryTemplate> queryTemplate = _cache.getIfPresent(parameterizedSql._key);
+    if (queryTemplate == null || !queryTemplate.isPresent()) {
+      return null;
+    }
+    return queryTemplate.get().bind(parameterizedSql._parameters);
+  }
+
+  /**
+   * Caches the template for the given SQL and its compiled {@link PinotQuery}. The compiled query is copied so that it
+   * can still be modified by the caller.
+   */
+  public void put(String sql, PinotQuery pinotQuery) {
+    ParameterizedSql parameterizedSql = parameterize(sql);
+    if (parameterizedSql == null || _cache.getIfPresent(parameterizedSql._key) != null) {
+      return;
+    }
+    _cache.put(parameterizedSql._key, Optional.ofNullable(buildTemplate(parameterizedSql, pinotQuery)));
+  }
+
+  public long size() {
+    return _cache.size();
+  }
+
+  @Nullable
+  private static QueryTemplate buildTemplate(ParameterizedSql parameterizedSql, PinotQuery pinotQuery) {
+    if (!isParameterizable(parameterizedSql, pinotQuery) || !isVerifiedWithSentinels(parameterizedSql)) {
+      return null;
+    }
+    int numParameters = parameterizedSql._parameters.size();
+    int[] parameterIndexes = new int[numParameters];
+    for (int i = 0; i < numParameters; i++) {
+      parameterIndexes[i] = i;
+    }
+    return new QueryTemplate(pinotQuery, parameterIndexes);
+  }
+
+  /**
+   * Returns {@code true} if the literals of the compiled query match the literals in the SQL one by one (in the same
+   * order), and no literal is rewritten during the compilation, {@code false} otherwise.
+   */
+  static boolean isParameterizable(ParameterizedSql parameterizedSql, PinotQuery pinotQuery) {
+    List<Expression> literalExpressions = QueryTemplate.getLiteralExpressions(pinotQuery);
+    int numParameters = parameterizedSql._parameters.size();
+    if (literalExpressions.size() != numParameters) {
+      return false;
+    }
+    for (int i = 0; i < numParameters; i++) {
+      if (!literalExpressions.get(i).getLiteral().equals(parameterizedSql._parameters.get(i))) {
+        return false;
+      }
+    }
+    // Scalar functions with only literal arguments are invoked during the compilation, and the result cannot be reused
+    // (e.g. now()). Ensure all the scalar function calls in the SQL still exist in the compiled query.
+    if (!parameterizedSql._scalarFunctionCounts.isEmpty()) {
+      Map<String, Integer> scalarFunctionCounts = new HashMap<>();
+      addScalarFunctionCounts(pinotQuery.getSelectList(), scalarFunctionCounts);
+      addScalarFunctionCounts(pinotQuery.getFilterExpression(), scalarFunctionCounts);
+      addScalarFunctionCounts(pinotQuery.getGroupByList(), scalarFunctionCounts);
+      addScalarFunctionCounts(pinotQuery.getHavingExpression(), scalarFunctionCounts);
+      addScalarFunctionCounts(pinotQuery.getOrderByList(), scalarFunctionCounts);
+      for (Map.Entry<String, Integer> entry : parameterizedSql._scalarFunctionCounts.entrySet()) {
+        if (scalarFunctionCounts.getOrDefault(entry.getKey(), 0) < entry.getValue()) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Compiles the SQL again with unique sentinel values (of the same type) in place of the parameters, and returns
+   * {@code true} if the literals of the compiled query are exactly the sentinel values in the same order, {@code false}
+   * otherwise. This detects the literals being rewritten, removed or duplicated during the compilation, which cannot be
+   * detected by comparing the literal values when some parameters have the same value.
+   */
+  @VisibleForTesting
+  static boolean isVerifiedWithSentinels(ParameterizedSql parameterizedSql) {
+    int numParameters = parameterizedSql._parameters.size();
+    if (numParameters == 0) {
+      return true;
+    }
+    String prefix = SENTINEL_STRING_PREFIX + UUID.randomUUID() + "_";
+    List<Literal> sentinels = new ArrayList<>(numParameters);
+    StringBuilder sqlWithSentinels = new StringBuilder();
+    int start = 0;
+    for (int i = 0; i < numParameters; i++) {
+      Literal sentinel;
+      switch (parameterizedSql._parameters.get(i).getSetField()) {
+        case LONG_VALUE:
+          sentinel = Literal.longValue(SENTINEL_LONG_BASE + i);
+          break;
+        case DOUBLE_VALUE:
+          sentinel = Literal.doubleValue(SENTINEL_DOUBLE_BASE + i);
+          break;
+        default:
+          sentinel = Literal.stringValue(prefix + i);
+          break;
+      }
+      sentinels.add(sentinel);
+      int[] position = parameterizedSql._parameterPositions.get(i);
+      sqlWithSentinels.append(parameterizedSql._sql, start, position[0]).append(QueryTemplate.toSql(sentinel));
+      start = position[1];
+    }
+    sqlWithSentinels.append(parameterizedSql._sql, start, parameterizedSql._sql.length());
+    PinotQuery pinotQuery;
+    try {
+      pinotQuery = CalciteSqlParser.compileToPinotQuery(sqlWithSentinels.toString());
+    } catch (Exception e) {
+      return false;
+    }
+    List<Expression> literalExpressions = QueryTemplate.getLiteralExpressions(pinotQuery);
+    if (literalExpressions.size() != numParameters) {
+      return false;
+    }
+    for (int i = 0; i < numParameters; i++) {
+      if (!literalExpressions.get(i).getLiteral().equals(sentinels.get(i))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static void addScalarFunctionCounts(@Nullable List<Expression> expressions,
+      Map<String, Integer> scalarFunctionCounts) {
+    if (expressions != null) {
+      for (Expression expression : expressions) {
+        addScalarFunctionCounts(expression, scalarFunctionCounts);
+      }
+    }
+  }
+
+  private static void addScalarFunctionCounts(@Nullable Expression expression,
+      Map<String, Integer> scalarFunctionCounts) {
+    if (expression == null) {
+      return;
+    }
+    Function function = expression.getFunctionCall();
+    if (function != null) {
+      String functionName = function.getOperator();
+      if (FunctionRegistry.containsFunction(functionName)) {
+        scalarFunctionCounts.merge(canonicalize(functionName), 1, Integer::sum);
+      }
+      addScalarFunctionCounts(function.getOperands(), scalarFunctionCounts);
+    }
+  }
+
+  private static String canonicalize(String functionName) {
+    return StringUtils.remove(functionName, '_').toLowerCase();
+  }
+
+  /**
+   * Parameterizes the given SQL, or returns {@code null} if the SQL contains syntax not handled by the parameterization
+   * (e.g. comments, prefixed string literals, question marks).
+   */
+  @VisibleForTesting
+  @Nullable
+  static ParameterizedSql parameterize(String sql) {
+    StringBuilder key = new StringBuilder(sql.length());
+    List<Literal> parameters = new ArrayList<>();
+    List<int[]> parameterPositions = new ArrayList<>();
+    Map<String, Integer> scalarFunctionCounts = new HashMap<>();
+    String previousWord = null;
+    // Track the GROUP BY/ORDER BY list so that the ordinals (bare integers as the list items) are kept in the key
+    boolean inOrdinalList = false;
+    int ordinalListDepth = 0;
+    boolean expectOrdinal = false;
+    int length = sql.length();
+    int i = 0;
+    while (i < length) {
+      char c = sql.charAt(i);
+      if (Character.isWhitespace(c)) {
+        while (i < length && Character.isWhitespace(sql.charAt(i))) {
+          i++;
+        }
+        key.append(' ');
+        continue;
+      }
+      if (c == '\'') {
+        // String literal, where quote is escaped as ''
+        StringBuilder value = new StringBuilder();
+        int start = i;
+        i++;
+        while (true) {
+          if (i >= length) {
+            return null;
+          }
+          char ch = sql.charAt(i++);
+          if (ch == '\'') {
+            if (i < length && sql.charAt(i) == '\'') {
+              value.append('\'');
+              i++;
+            } else {
+              break;
+            }
+          } else {
+            value.append(ch);
+          }
+        }
+        key.append(STRING_PLACEHOLDER);
+        parameters.add(Literal.stringValue(value.toString()));
+        parameterPositions.add(new int[]{start, i});
+        previousWord = null;
+        expectOrdinal = false;
+        continue;
+      }
+      if (c == '"' || c == '`') {
+        // Quoted identifier
+        int end = sql.indexOf(c, i + 1);
+        if (end < 0) {
+          return null;
+        }
+        key.append(sql, i, end + 1);
+        i = end + 1;
+        previousWord = null;
+        expectOrdinal = false;
+        continue;
+      }
+      if (Character.isLetter(c) || c == '_' || c == '$') {
+        int start = i;
+        while (i < length && isWordPart(sql.charAt(i))) {
+          i++;
+        }
+        String word = sql.substring(start, i);
+        if (i < length && sql.charAt(i) == '\'') {
+          // Prefixed string literal (e.g. X'...')
+          return null;
+        }
+        key.append(word);
+        if (word.equalsIgnoreCase("by") && previousWord != null && (previousWord.equalsIgnoreCase("group")
+            || previousWord.equalsIgnoreCase("order"))) {
+          inOrdinalList = true;
+          ordinalListDepth = 0;
+          expectOrdinal = true;
+        } else {
+          if (isClauseKeyword(word)) {
+            inOrdinalList = false;
+          }
+          expectOrdinal = false;
+        }
+        int next = i;
+        while (next < length && Character.isWhitespace(sql.charAt(next))) {
+          next++;
+        }
+        if (next < length && sql.charAt(next) == '(') {
+          if (word.equalsIgnoreCase("option")) {
+            // Query options are extracted from the SQL before parsing, keep them as is
+            int end = sql.indexOf(')', next);
+            if (end < 0) {
+              return null;
+            }
+            key.append(sql, i, end + 1);
+            i = end + 1;
+            previousWord = null;
+            continue;
+          }
+          if (FunctionRegistry.containsFunction(word)) {
+            scalarFunctionCounts.merge(canonicalize(word), 1, Integer::sum);
+          }
+        }
+        previousWord = word;
+        continue;
+      }
+      if (Character.isDigit(c) || (c == '.' && i + 1 < length && Character.isDigit(sql.charAt(i + 1)))) {
+        int start = i;
+        boolean isInteger = true;
+        while (i < length && Character.isDigit(sql.charAt(i))) {
+          i++;
+        }
+        if (i < length && sql.charAt(i) == '.') {
+          isInteger = false;
+          i++;
+          while (i < length && Character.isDigit(sql.charAt(i))) {
+            i++;
+          }
+        }
+        if (i < length && (sql.charAt(i) == 'e' || sql.charAt(i) == 'E')) {
+          isInteger = false;
+          i++;
+          if (i < length && (sql.charAt(i) == '+' || sql.charAt(i) == '-')) {
+            i++;
+          }
+          while (i < length && Character.isDigit(sql.charAt(i))) {
+            i++;
+          }
+        }
+        if (i < length && isWordPart(sql.charAt(i))) {
+          return null;
+        }
+        String number = sql.substring(start, i);
+        if (previousWord != null && (previousWord.equalsIgnoreCase("limit") || previousWord.equalsIgnoreCase(
+            "offset"))) {
+          // LIMIT and OFFSET are not stored as literals
+          key.append(number);
+        } else if (isInteger && inOrdinalList && ordinalListDepth == 0 && expectOrdinal) {
+          // Ordinals in GROUP BY/ORDER BY are replaced with the SELECT expressions during the compilation
+          key.append(number);
+        } else {
+          try {
+            if (isInteger) {
+              parameters.add(Literal.longValue(Long.parseLong(number)));
+              key.append(LONG_PLACEHOLDER);
+            } else {
+              parameters.add(Literal.doubleValue(Double.parseDouble(number)));
+              key.append(DOUBLE_PLACEHOLDER);
+            }
+          } catch (NumberFormatException e) {
+            return null;
+          }
+          parameterPositions.add(new int[]{start, i});
+        }
+        previousWord = null;
+        expectOrdinal = false;
+        continue;
+      }
+      if (c == '?' || (c == '-' && i + 1 < length && sql.charAt(i + 1) == '-') || (c == '/' && i + 1 < length
+          && sql.charAt(i + 1) == '*')) {
+        return null;
+      }
+      if (inOrdinalList) {
+        if (c == '(') {
+          ordinalListDepth++;
+        } else if (c == ')') {
+          if (--ordinalListDepth < 0) {
+            // End of the sub-query
+            inOrdinalList = false;
+          }
+        }
+      }
+      expectOrdinal = inOrdinalList && ordinalListDepth == 0 && c == ',';
+      key.append(c);
+      previousWord = null;
+      i++;
+    }
+    return new ParameterizedSql(sql, key.toString(), parameters, parameterPositions, scalarFunctionCounts);
+  }
+
+  private static boolean isClauseKeyword(String word) {
+    return word.equalsIgnoreCase("having") || word.equalsIgnoreCase("limit") || word.equalsIgnoreCase("offset")
+        || word.equalsIgnoreCase("group") || word.equalsIgnoreCase("order") || word.equalsIgnoreCase("option");
+  }
+
+  private static boolean isWordPart(char c) {
+    return Character.isLetterOrDigit(c) || c == '_' || c == '$' || c == '.';
+  }
+
+  @VisibleForTesting
+  static class ParameterizedSql {
+    final String _sql;
+    final String _key;
+    final List<Literal> _parameters;
+    // Start (inclusive) and end (exclusive) index of each parameter in the SQL
+    final List<int[]> _parameterPositions;
+    final Map<String, Integer> _scalarFunctionCounts;
+
+    ParameterizedSql(String sql, String key, List<Literal> parameters, List<int[]> parameterPositions,
+        Map<String, Integer> scalarFunctionCounts) {
+      _sql = sql;
+      _key = key;
+      _parameters = parameters;
+      _parameterPositions = parameterPositions;
+      _scalarFunctionCounts = scalarFunctionCounts;
+    }
+  }
+}
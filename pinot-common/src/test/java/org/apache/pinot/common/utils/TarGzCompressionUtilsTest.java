@@ -233,4 +233,39 @@ public class TarGzCompressionUtilsTest {
     TarGzCompressionUtils.untarOneFile(badTarGzFile, fileName, untarredFile);
     assertEquals(FileUtils.readFileToString(untarredFile), fileContent);
   }
+
+  @Test
+  public void testUntarInputStream()
+      throws IOException {
+    String dirName = "dir";
+    File dir = new File(DATA_DIR, dirName);
+    String fileName = "data";
+    String fileContent = "fileContent";
+    FileUtils.write(new File(dir, fileName), fileContent);
+
+    File tarGzFile = new File(TAR_DIR, dirName + TarGzCompressionUtils.TAR_GZ_FILE_EXTENSION);
+    TarGzCompressionUtils.createTarGzFile(dir, tarGzFile);
+
+    try (InputStream inputStream = Files.newInputStream(tarGzFile.toPath())) {
+      List<File> untarredFiles = TarGzCompressionUtils.untar(inputStream, UNTAR_DIR);
+      assertEquals(untarredFiles.size(), 2);
+      File untarredFile = untarredFiles.get(0);
+      assertEquals(untarredFile, new File(UNTAR_DIR, dirName));
+      assertEquals(FileUtils.readFileToString(new File(untarredFile, fileName)), fileContent);
+      // The whole input stream should be consumed
+      assertEquals(inputStream.read(), -1);
+    }
+
+    // Corrupt the CRC in the gzip trailer
+    FileUtils.deleteDirectory(UNTAR_DIR);
+    byte[] bytes = FileUtils.readFileToByteArray(tarGzFile);
+    bytes[bytes.length - 8] ^= 0xFF;
+    FileUtils.writeByteArrayToFile(tarGzFile, bytes);
+    try (InputStream inputStream = Files.newInputStream(tarGzFile.toPath())) {
+      TarGzCompressionUtils.untar(inputStream, UNTAR_DIR);
+      fail();
+    } catch (IOException e) {
+      // Expected
+    }
+  }
 }
@@ -472,5 +472,7 @@ public class TableConfigSerDeTest {
     assertNotNull(upsertConfig);
 
     assertEquals(upsertConfig.getMode(), UpsertConfig.Mode.FULL);
+    assertFalse(upsertConfig.isOffHeapPrimaryKeyIndex());
+    assertFalse(upsertConfig.isEnableValidDocIdsSnapshot());
   }
 }
@@ -0,0 +1,94 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pinot.common.utils.fetcher;
+
+import java.io.File;
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
+import org.apache.commons.io.FileUtils;
+import org.apache.pinot.common.exception.HttpErrorStatusException;
+import org.apache.pinot.common.utils.FileUploadDownloadClient;
+import org.apache.pinot.spi.env.PinotConfiguration;
+import org.apache.pinot.spi.utils.retry.AttemptsExceededException;
+import org.apache.pinot.spi.utils.retry.RetriableOperationException;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.Test;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+
+public class HttpSegmentFetcherTest {
+  private static final File TEMP_DIR = new File(FileUtils.getTempDirectory(), "HttpSegmentFetcherTest");
+  private static final int RETRY_COUNT = 3;
+
+  @Test
+  public void testFetchUntarSegmentToLocalStreamedWithPermanentError()
+      throws Exception {
+    HttpSegmentFetcher segmentFetcher = createSegmentFetcher(404);
+    URI uri = new URI("http://localhost:1234/segments/myTable/mySegment");
+    try {
+      segmentFetcher.fetchUntarSegmentToLocalStreamed(uri, new File(TEMP_DIR, "permanent"));
+      fail();
+    } catch (RetriableOperationException e) {
+      assertTrue(e.getCause() instanceof HttpErrorStatusException);
+    }
+    // Should not retry on the permanent error
+    verify(segmentFetcher._httpClient, times(1)).downloadUntarFileStreamed(any(URI.class), any(File.class));
+  }
+
+  @Test
+  public void testFetchUntarSegmentToLocalStreamedWithTemporaryError()
+      throws Exception {
+    HttpSegmentFetcher segmentFetcher = createSegmentFetcher(503);
+    URI uri = new URI("http://localhost:1234/segments/myTable/mySegment");
+    try {
+      segmentFetcher.fetchUntarSegmentToLocalStreamed(uri, new File(TEMP_DIR, "temporary"));
+      fail();
+    } catch (AttemptsExceededException e) {
+      // Expected
+    }
+    verify(segmentFetcher._httpClient, times(RETRY_COUNT)).downloadUntarFileStreamed(any(URI.class), any(File.class));
+  }
+
+  private static HttpSegmentFetcher createSegmentFetcher(int errorStatusCode)
+      throws Exception {
+    Map<String, Object> properties = new HashMap<>();
+    properties.put(BaseSegmentFetcher.RETRY_COUNT_CONFIG_KEY, RETRY_COUNT);
+    properties.put(BaseSegmentFetcher.RETRY_WAIT_MS_CONFIG_KEY, 1);
+    HttpSegmentFetcher segmentFetcher = new HttpSegmentFetcher();
+    segmentFetcher.init(new PinotConfiguration(properties));
+    FileUploadDownloadClient httpClient = mock(FileUploadDownloadClient.class);
+    when(httpClient.downloadUntarFileStreamed(any(URI.class), any(File.class)))
+        .thenThrow(new HttpErrorStatusException("Error", errorStatusCode));
+    segmentFetcher._httpClient = httpClient;
+    return segmentFetcher;
+  }
+
+  @AfterClass
+  public void tearDown() {
+    FileUtils.deleteQuietly(TEMP_DIR);
+  }
+}
@@ -0,0 +1,110 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pinot.common.utils.fetcher;
+
+import java.io.File;
+import java.io.IOException;
+import org.apache.commons.io.FileUtils;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+
+public class SegmentTarCacheTest {
+  private static final File TEMP_DIR = new File(FileUtils.getTempDirectory(), "SegmentTarCacheTest");
+  private static final File CACHE_DIR = new File(TEMP_DIR, "cache");
+  private static final int FILE_SIZE = 100;
+
+  @BeforeClass
+  public void setUp()
+      throws IOException {
+    FileUtils.deleteDirectory(TEMP_DIR);
+    FileUtils.forceMkdir(TEMP_DIR);
+  }
+
+  @Test
+  public void testSegmentTarCache()
+      throws Exception {
+    SegmentTarCache segmentTarCache = new SegmentTarCache(CACHE_DIR, 3 * FILE_SIZE);
+    File dest = new File(TEMP_DIR, "dest.tar.gz");
+    assertFalse(segmentTarCache.get(1L, dest));
+    assertEquals(segmentTarCache.getNumMisses(), 1);
+
+    for (long crc = 1; crc <= 3; crc++) {
+      segmentTarCache.put(crc, createFile(crc));
+    }
+    assertEquals(segmentTarCache.getNumCachedTarballs(), 3);
+    assertEquals(segmentTarCache.getSizeBytes(), 3 * FILE_SIZE);
+
+    // Access 1 so that 2 becomes the least recently used one
+    assertTrue(segmentTarCache.get(1L, dest));
+    assertEquals(segmentTarCache.getNumHits(), 1);
+    assertEquals(FileUtils.readFileToByteArray(dest), getContent(1L));
+
+    segmentTarCache.put(4L, createFile(4L));
+    assertEquals(segmentTarCache.getNumCachedTarballs(), 3);
+    assertEquals(segmentTarCache.getSizeBytes(), 3 * FILE_SIZE);
+    assertFalse(segmentTarCache.get(2L, dest));
+    assertTrue(segmentTarCache.get(3L, dest));
+    assertEquals(FileUtils.readFileToByteArray(dest), getContent(3L));
+    assertTrue(segmentTarCache.get(4L, dest));
+    assertEquals(FileUtils.readFileToByteArray(dest), getContent(4L));
+
+    // Putting an existing CRC should be no-op
+    segmentTarCache.put(4L, createFile(4L));
+    assertEquals(segmentTarCache.getNumCachedTarballs(), 3);
+
+    segmentTarCache.invalidate(1L);
+    assertEquals(segmentTarCache.getNumCachedTarballs(), 2);
+    assertEquals(segmentTarCache.getSizeBytes(), 2 * FILE_SIZE);
+    assertFalse(segmentTarCache.get(1L, dest));
+
+    // Cached tarballs should be reloaded, and the ones exceeding the max size should be evicted
+    SegmentTarCache reloadedSegmentTarCache = new SegmentTarCache(CACHE_DIR, FILE_SIZE);
+    assertEquals(reloadedSegmentTarCache.getNumCachedTarballs(), 1);
+    assertEquals(reloadedSegmentTarCache.getSizeBytes(), FILE_SIZE);
+  }
+
+  private static File createFile(long crc)
+      throws IOException {
+    File file = new File(TEMP_DIR, crc + ".src");
+    // The file might be hard linked into the cache, delete it instead of overwriting it
+    FileUtils.deleteQuietly(file);
+    FileUtils.writeByteArrayToFile(file, getContent(crc));
+    return file;
+  }
+
+  private static byte[] getContent(long crc) {
+    byte[] content = new byte[FILE_SIZE];
+    for (int i = 0; i < FILE_SIZE; i++) {
+      content[i] = (byte) (crc + i);
+    }
+    return content;
+  }
+
+  @AfterClass
+  public void tearDown()
+      throws IOException {
+    FileUtils.deleteDirectory(TEMP_DIR);
+  }
+}
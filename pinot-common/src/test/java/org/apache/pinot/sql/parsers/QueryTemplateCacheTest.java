@@ -0,0 +1,139 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pinot.sql.parsers;
+
+import java.util.Arrays;
+import org.apache.pinot.common.request.Literal;
+import org.apache.pinot.common.request.PinotQuery;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+
+public class QueryTemplateCacheTest {
+
+  @Test
+  public void testParameterize() {
+    QueryTemplateCache.ParameterizedSql parameterizedSql = QueryTemplateCache
+        .parameterize("SELECT a,  b FROM myTable WHERE c = 'it''s' AND d > 1.5 AND e IN (1, 2) LIMIT 10");
+    assertNotNull(parameterizedSql);
+    assertEquals(parameterizedSql._key, "SELECT a, b FROM myTable WHERE c = ?s AND d > ?d AND e IN (?l, ?l) LIMIT 10");
+    assertEquals(parameterizedSql._parameters,
+        Arrays.asList(Literal.stringValue("it's"), Literal.doubleValue(1.5), Literal.longValue(1),
+            Literal.longValue(2)));
+
+    // Query options should be kept as is
+    parameterizedSql = QueryTemplateCache.parameterize("SELECT a FROM myTable WHERE b = 1 OPTION(timeoutMs=100)");
+    assertNotNull(parameterizedSql);
+    assertEquals(parameterizedSql._key, "SELECT a FROM myTable WHERE b = ?l OPTION(timeoutMs=100)");
+
+    // Ordinals in GROUP BY and ORDER BY should be kept as is
+    parameterizedSql = QueryTemplateCache
+        .parameterize("SELECT ADD(a, 1), COUNT(*) FROM myTable GROUP BY 1, SUB(b, 2) ORDER BY 2 DESC, 1 LIMIT 5");
+    assertNotNull(parameterizedSql);
+    assertEquals(parameterizedSql._key,
+        "SELECT ADD(a, ?l), COUNT(*) FROM myTable GROUP BY 1, SUB(b, ?l) ORDER BY 2 DESC, 1 LIMIT 5");
+    assertEquals(parameterizedSql._parameters, Arrays.asList(Literal.longValue(1), Literal.longValue(2)));
+
+    // Comments are not supported
+    assertNull(QueryTemplateCache.parameterize("SELECT a FROM myTable -- comment"));
+  }
+
+  @Test
+  public void testQueryTemplateCache() {
+    QueryTemplateCache queryTemplateCache = new QueryTemplateCache(10);
+    String query = "SELECT a, SUM(b) FROM myTable WHERE c = 'foo' AND d BETWEEN 1 AND 10 GROUP BY a LIMIT 10";
+    assertNull(queryTemplateCache.get(query));
+    queryTemplateCache.put(query, CalciteSqlParser.compileToPinotQuery(query));
+    assertEquals(queryTemplateCache.size(), 1);
+
+    // Queries of the same shape should be bound from the template
+    String sameShapeQuery = "SELECT a, SUM(b) FROM myTable WHERE c = 'bar' AND d BETWEEN 5 AND 20 GROUP BY a LIMIT 10";
+    PinotQuery pinotQuery = queryTemplateCache.get(sameShapeQuery);
+    assertNotNull(pinotQuery);
+    assertEquals(pinotQuery, CalciteSqlParser.compileToPinotQuery(sameShapeQuery));
+
+    // Different LIMIT or literal type should not match the template
+    assertNull(queryTemplateCache
+        .get("SELECT a, SUM(b) FROM myTable WHERE c = 'bar' AND d BETWEEN 5 AND 20 GROUP BY a LIMIT 20"));
+    assertNull(queryTemplateCache
+        .get("SELECT a, SUM(b) FROM myTable WHERE c = 'bar' AND d BETWEEN 5.0 AND 20 GROUP BY a LIMIT 10"));
+  }
+
+  @Test
+  public void testOrdinals() {
+    QueryTemplateCache queryTemplateCache = new QueryTemplateCache(10);
+
+    // The ordinal is replaced with the SELECT expression, which duplicates the literal, so the query should not be
+    // bound from the template (binding would only replace the literal in the SELECT expression)
+    String query = "SELECT ADD(a, 1), COUNT(*) FROM myTable GROUP BY 1";
+    queryTemplateCache.put(query, CalciteSqlParser.compileToPinotQuery(query));
+    assertEquals(queryTemplateCache.size(), 1);
+    assertNull(queryTemplateCache.get("SELECT ADD(a, 5), COUNT(*) FROM myTable GROUP BY 1"));
+    assertNull(queryTemplateCache.get("SELECT ADD(a, 1), COUNT(*) FROM myTable GROUP BY 2"));
+
+    // Different ordinal should not match the template
+    query = "SELECT a, b, COUNT(*) FROM myTable WHERE c > 10 GROUP BY 1, 2 ORDER BY 1";
+    queryTemplateCache.put(query, CalciteSqlParser.compileToPinotQuery(query));
+    String sameShapeQuery = "SELECT a, b, COUNT(*) FROM myTable WHERE c > 20 GROUP BY 1, 2 ORDER BY 1";
+    PinotQuery pinotQuery = queryTemplateCache.get(sameShapeQuery);
+    assertNotNull(pinotQuery);
+    assertEquals(pinotQuery, CalciteSqlParser.compileToPinotQuery(sameShapeQuery));
+    assertNull(queryTemplateCache.get("SELECT a, b, COUNT(*) FROM myTable WHERE c > 20 GROUP BY 1, 2 ORDER BY 2"));
+  }
+
+  @Test
+  public void testVerifyWithSentinels() {
+    // Each parameter maps to exactly one literal
+    QueryTemplateCache.ParameterizedSql parameterizedSql =
+        QueryTemplateCache.parameterize("SELECT a FROM myTable WHERE b = 'foo' AND c > 1 AND d < 1.5");
+    assertNotNull(parameterizedSql);
+    assertTrue(QueryTemplateCache.isVerifiedWithSentinels(parameterizedSql));
+
+    // The literal is duplicated by the ORDER BY ordinal
+    parameterizedSql = QueryTemplateCache.parameterize("SELECT ADD(a, 1) FROM myTable ORDER BY 1");
+    assertNotNull(parameterizedSql);
+    assertFalse(QueryTemplateCache.isVerifiedWithSentinels(parameterizedSql));
+
+    // The literal is rewritten by the compile time function invocation
+    parameterizedSql = QueryTemplateCache.parameterize("SELECT a FROM myTable WHERE b = upper('FOO')");
+    assertNotNull(parameterizedSql);
+    assertFalse(QueryTemplateCache.isVerifiedWithSentinels(parameterizedSql));
+  }
+
+  @Test
+  public void testCompileTimeFunctions() {
+    QueryTemplateCache queryTemplateCache = new QueryTemplateCache(10);
+
+    // Function without argument invoked at compile time
+    String query = "SELECT a FROM myTable WHERE b > now() - 1000";
+    queryTemplateCache.put(query, CalciteSqlParser.compileToPinotQuery(query));
+    assertEquals(queryTemplateCache.size(), 1);
+    assertNull(queryTemplateCache.get("SELECT a FROM myTable WHERE b > now() - 2000"));
+
+    // Function invoked at compile time where the result is the same as the argument
+    query = "SELECT a FROM myTable WHERE b = upper('FOO')";
+    queryTemplateCache.put(query, CalciteSqlParser.compileToPinotQuery(query));
+    assertNull(queryTemplateCache.get("SELECT a FROM myTable WHERE b = upper('bar')"));
+  }
+}
@@ -0,0 +1,60 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pinot.sql.parsers;
+
+import java.util.Arrays;
+import java.util.Collections;
+import org.apache.pinot.common.request.Literal;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+
+
+public class QueryTemplateTest {
+
+  @Test
+  public void testCompile() {
+    String sql = "SELECT a, 'what?' FROM myTable WHERE b = ? AND c IN (?, 'x') AND d > ? LIMIT 10";
+    assertEquals(QueryTemplate.getNumPlaceholders(sql), 3);
+    QueryTemplate queryTemplate = QueryTemplate.compile(sql);
+    assertNotNull(queryTemplate);
+    assertEquals(queryTemplate.getNumParameters(), 3);
+    assertEquals(queryTemplate
+            .bind(Arrays.asList(Literal.stringValue("it's"), Literal.longValue(5), Literal.doubleValue(1.5))),
+        CalciteSqlParser.compileToPinotQuery(
+            "SELECT a, 'what?' FROM myTable WHERE b = 'it''s' AND c IN (5, 'x') AND d > 1.5 LIMIT 10"));
+  }
+
+  @Test
+  public void testBindPlaceholders() {
+    // Placeholder used as LIMIT cannot be bound into the compiled query
+    String sql = "SELECT a FROM myTable WHERE b = ? LIMIT ?";
+    assertNull(QueryTemplate.compile(sql));
+    assertEquals(QueryTemplate.bindPlaceholders(sql, Arrays.asList(Literal.stringValue("it's"), Literal.longValue(5))),
+        "SELECT a FROM myTable WHERE b = 'it''s' LIMIT 5");
+
+    // Placeholder used as argument of a function invoked at compile time cannot be bound into the compiled query
+    sql = "SELECT a FROM myTable WHERE b = upper(?)";
+    assertNull(QueryTemplate.compile(sql));
+    assertEquals(QueryTemplate.bindPlaceholders(sql, Collections.singletonList(Literal.stringValue("foo"))),
+        "SELECT a FROM myTable WHERE b = upper('foo')");
+  }
+}
@@ -0,0 +1,147 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pinot.core.common.datatable;
+
+import com.github.luben.zstd.Zstd;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import javax.annotation.Nullable;
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4FastDecompressor;
+
+
+/**
+ * Compresses the serialized data table sent from the server to the broker.
+ * <p>The compressed data table is framed as: [compressed flag | compression type id] (int), uncompressed size (int),
+ * compressed bytes. The first int takes the place of the data table version so that the broker can tell whether the
+ * data table is compressed. The server only compresses the data table when the broker asks for it (via the query
+ * options), so the brokers not supporting compression never receive the compressed data table.
+ */
+public class DataTableCompressor {
+  private DataTableCompressor() {
+  }
+
+  public static final int COMPRESSED_FLAG = 1 << 30;
+  public static final int DEFAULT_THRESHOLD_BYTES = 64 * 1024;
+
+  private static final int HEADER_SIZE = 2 * Integer.BYTES;
+  private static final int ZSTD_COMPRESSION_LEVEL = 3;
+  private static final LZ4Compressor LZ4_COMPRESSOR = LZ4Factory.fastestInstance().fastCompressor();
+  private static final LZ4FastDecompressor LZ4_DECOMPRESSOR = LZ4Factory.fastestInstance().fastDecompressor();
+
+  public enum CompressionType {
+    LZ4(1), ZSTD(2);
+
+    private final int _id;
+
+    CompressionType(int id) {
+      _id = id;
+    }
+
+    public int getId() {
+      return _id;
+    }
+
+    /**
+     * Returns the compression type for the given name (case insensitive), or {@code null} if the name is {@code null},
+     * empty or {@code NONE}.
+     */
+    @Nullable
+    public static CompressionType fromName(@Nullable String name) {
+      if (name == null || name.isEmpty() || name.equalsIgnoreCase("NONE")) {
+        return null;
+      }
+      return valueOf(name.toUpperCase());
+    }
+
+    static CompressionType fromId(int id) {
+      for (CompressionType compressionType : values()) {
+        if (compressionType._id == id) {
+          return compressionType;
+        }
+      }
+      throw new UnsupportedOperationException("Unsupported data table compression type id: " + id);
+    }
+  }
+
+  public static boolean isCompressed(int version) {
+    return (version & COMPRESSED_FLAG) != 0;
+  }
+
+  /**
+   * Compresses the serialized data table into the compressed data table frame.
+   */
+  public static byte[] compress(byte[] bytes, CompressionType compressionType)
+      throws IOException {
+    int uncompressedSize = bytes.length;
+    byte[] compressedBytes;
+    int compressedSize;
+    switch (compressionType) {
+      case LZ4:
+        compressedBytes = new byte[HEADER_SIZE + LZ4_COMPRESSOR.maxCompressedLength(uncompressedSize)];
+        compressedSize = LZ4_COMPRESSOR
+            .compress(bytes, 0, uncompressedSize, compressedBytes, HEADER_SIZE, compressedBytes.length - HEADER_SIZE);
+        break;
+      case ZSTD:
+        compressedBytes = new byte[HEADER_SIZE + (int) Zstd.compressBound(uncompressedSize)];
+        long result = Zstd.compressByteArray(compressedBytes, HEADER_SIZE, compressedBytes.length - HEADER_SIZE, bytes,
+            0, uncompressedSize, ZSTD_COMPRESSION_LEVEL);
+        if (Zstd.isError(result)) {
+          throw new IOException("Caught exception while compressing data table: " + Zstd.getErrorName(result));
+        }
+        compressedSize = (int) result;
+        break;
+      default:
+        throw new IllegalStateException();
+    }
+    ByteBuffer.wrap(compressedBytes).putInt(COMPRESSED_FLAG | compressionType._id).putInt(uncompressedSize);
+    return Arrays.copyOf(compressedBytes, HEADER_SIZE + compressedSize);
+  }
+
+  /**
+   * Decompresses the compressed data table frame, where the version (the first int) is already read from the buffer.
+   * Returns the buffer of the serialized data table.
+   */
+  public static ByteBuffer decompress(int version, ByteBuffer byteBuffer)
+      throws IOException {
+    CompressionType compressionType = CompressionType.fromId(version & ~COMPRESSED_FLAG);
+    int uncompressedSize = byteBuffer.getInt();
+    byte[] uncompressedBytes = new byte[uncompressedSize];
+    switch (compressionType) {
+      case LZ4:
+        LZ4_DECOMPRESSOR.decompress(byteBuffer, byteBuffer.position(), ByteBuffer.wrap(uncompressedBytes), 0,
+            uncompressedSize);
+        break;
+      case ZSTD:
+        byte[] compressedBytes = new byte[byteBuffer.remaining()];
+        byteBuffer.get(compressedBytes);
+        long result = Zstd.decompressByteArray(uncompressedBytes, 0, uncompressedSize, compressedBytes, 0,
+            compressedBytes.length);
+        if (Zstd.isError(result) || result != uncompressedSize) {
+          throw new IOException("Caught exception while decompressing data table: " + Zstd.getErrorName(result));
+        }
+        break;
+      default:
+        throw new IllegalStateException();
+    }
+    return ByteBuffer.wrap(uncompressedBytes);
+  }
+}
@@ -30,6 +30,9 @@ public class DataTableFactory {
   public static DataTable getDataTable(ByteBuffer byteBuffer)
       throws IOException {
     int version = byteBuffer.getInt();
+    if (DataTableCompressor.isCompressed(version)) {
+      return getDataTable(DataTableCompressor.decompress(version, byteBuffer));
+    }
     switch (version) {
       case 2:
         return new DataTableImplV2(byteBuffer);
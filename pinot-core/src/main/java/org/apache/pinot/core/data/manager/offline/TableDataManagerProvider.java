@@ -18,8 +18,10 @@
  */
 package org.apache.pinot.core.data.manager.offline;
 
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.Semaphore;
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import org.apache.helix.HelixManager;
 import org.apache.helix.ZNRecord;
 import org.apache.helix.store.zk.ZkHelixPropertyStore;
@@ -36,15 +38,27 @@ import org.apache.pinot.spi.config.table.TableType;
  */
 public class TableDataManagerProvider {
   private static Semaphore _segmentBuildSemaphore;
+  private static ScheduledExecutorService _sharedConsumerExecutor;
 
   private TableDataManagerProvider() {
   }
 
   public static void init(InstanceDataManagerConfig instanceDataManagerConfig) {
+    init(instanceDataManagerConfig, null);
+  }
+
+  /**
+   * Initializes the provider with the consumer executor shared by the consuming segments of all the realtime tables on
+   * the server, or {@code null} if shared consumption is disabled. The caller owns the executor and should shut it down
+   * after shutting down the table data managers.
+   */
+  public static void init(InstanceDataManagerConfig instanceDataManagerConfig,
+      @Nullable ScheduledExecutorService sharedConsumerExecutor) {
     int maxParallelBuilds = instanceDataManagerConfig.getMaxParallelSegmentBuilds();
     if (maxParallelBuilds > 0) {
       _segmentBuildSemaphore = new Semaphore(maxParallelBuilds, true);
     }
+    _sharedConsumerExecutor = sharedConsumerExecutor;
   }
 
   public static TableDataManager getTableDataManager(@Nonnull TableDataManagerConfig tableDataManagerConfig,
@@ -56,7 +70,7 @@ public class TableDataManagerProvider {
         tableDataManager = new OfflineTableDataManager();
         break;
       case REALTIME:
-        tableDataManager = new RealtimeTableDataManager(_segmentBuildSemaphore);
+        tableDataManager = new RealtimeTableDataManager(_segmentBuildSemaphore, _sharedConsumerExecutor);
         break;
       default:
         throw new IllegalStateException();
@@ -26,11 +26,16 @@ import java.io.File;
 import java.io.IOException;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
@@ -48,6 +53,7 @@ import org.apache.pinot.common.protocols.SegmentCompletionProtocol;
 import org.apache.pinot.common.utils.CommonConstants.Segment.Realtime.CompletionMode;
 import org.apache.pinot.common.utils.LLCSegmentName;
 import org.apache.pinot.common.utils.TarGzCompressionUtils;
+import org.apache.pinot.core.data.manager.realtime.ParallelMessageDecoder.TransformedMessage;
 import org.apache.pinot.core.data.partition.PartitionFunctionFactory;
 import org.apache.pinot.core.data.recordtransformer.CompositeTransformer;
 import org.apache.pinot.core.data.recordtransformer.RecordTransformer;
@@ -201,6 +207,15 @@ public class LLRealtimeSegmentDataManager extends RealtimeSegmentDataManager {
   private static final int MSG_COUNT_THRESHOLD_FOR_LOG = 100000;
   private static final int BUILD_TIME_LEASE_SECONDS = 30;
   private static final int MAX_CONSECUTIVE_ERROR_COUNT = 5;
+  private static final long IDLE_PIPE_SLEEP_TIME_MILLIS = 100;
+  // Fetch timeout on the shared consumer executor, which should be short to not block the other partitions
+  private static final int SHARED_CONSUMER_FETCH_TIMEOUT_MILLIS = 100;
+  // Interval to log a warning while waiting for the consumption on the shared consumer executor to stop. Each task on
+  // the executor only consumes one message batch, so it should stop within one fetch and one round of indexing.
+  private static final long SHARED_CONSUMER_STOP_WARN_INTERVAL_MILLIS = 30_000L;
+  // Fetch timeout when prefetching while the segment is being built and committed, which should be short to not delay
+  // the commit
+  private static final int PREFETCH_FETCH_TIMEOUT_MILLIS = 100;
 
   private final LLCRealtimeSegmentZKMetadata _segmentZKMetadata;
   private final TableConfig _tableConfig;
@@ -244,12 +259,29 @@ public class LLRealtimeSegmentDataManager extends RealtimeSegmentDataManager {
   // For now, we let 31s pass for this state transition.
   private static final int MAX_TIME_FOR_CONSUMING_TO_ONLINE_IN_SECONDS = 31;
 
-  private Thread _consumerThread;
+  private volatile Thread _consumerThread;
+  // Executor shared by the consuming segments of the table to multiplex the initial consumption, null if each segment
+  // consumes with its own thread
+  private final ScheduledExecutorService _sharedConsumerExecutor;
+  private volatile boolean _consumingOnSharedExecutor = false;
+  private final CountDownLatch _sharedConsumptionDone = new CountDownLatch(1);
+
+  // States of the consume loop
+  private long _maxIdleCountBeforeStatUpdate;
+  private StreamPartitionMsgOffset _lastUpdatedOffset;
+  private long _consecutiveIdleCount;
   private final String _streamTopic;
   private final int _streamPartitionId;
   final String _clientId;
   private final LLCSegmentName _llcSegmentName;
   private final RecordTransformer _recordTransformer;
+  // Decodes and transforms the messages in parallel on the decode executor of the table, null if parallel decoding is
+  // disabled
+  private final ParallelMessageDecoder _parallelMessageDecoder;
+  // Messages prefetched by the previous segment of the partition, null if there is no more prefetched message
+  private PrefetchedMessages _prefetchedMessages;
+  // Whether the consumer thread keeps prefetching with the stream consumer while the segment is being built
+  private volatile boolean _prefetchingDuringBuild = false;
   private PartitionLevelConsumer _partitionLevelConsumer = null;
   private StreamMetadataProvider _streamMetadataProvider = null;
   private final File _resourceTmpDir;
@@ -276,6 +308,9 @@ public class LLRealtimeSegmentDataManager extends RealtimeSegmentDataManager {
   private final boolean _isOffHeap;
   private final boolean _nullHandlingEnabled;
   private final SegmentCommitterFactory _segmentCommitterFactory;
+  // Rows (and their metadata) buffered for batch indexing, null if batch indexing is not enabled
+  private final List<GenericRow> _pendingRows;
+  private final List<RowMetadata> _pendingRowMetadataList;
 
   // TODO each time this method is called, we print reason for stop. Good to print only once.
   private boolean endCriteriaReached() {
@@ -361,32 +396,48 @@ public class LLRealtimeSegmentDataManager extends RealtimeSegmentDataManager {
 
   protected boolean consumeLoop()
       throws Exception {
+    startConsumeLoop(_partitionLevelStreamConfig.getFetchTimeoutMillis(), IDLE_PIPE_SLEEP_TIME_MILLIS);
+    while (!_shouldStop && !endCriteriaReached()) {
+      consumeOnce(_partitionLevelStreamConfig.getFetchTimeoutMillis(), IDLE_PIPE_SLEEP_TIME_MILLIS);
+    }
+    finishConsumeLoop();
+    return true;
+  }
+
+  private void startConsumeLoop(int fetchTimeoutMillis, long idlePipeSleepTimeMillis) {
     _numRowsErrored = 0;
-    final long idlePipeSleepTimeMillis = 100;
-    final long maxIdleCountBeforeStatUpdate = (3 * 60 * 1000) / (idlePipeSleepTimeMillis + _partitionLevelStreamConfig
-        .getFetchTimeoutMillis());  // 3 minute count
-    StreamPartitionMsgOffset lastUpdatedOffset = _streamPartitionMsgOffsetFactory
+    _maxIdleCountBeforeStatUpdate =
+        (3 * 60 * 1000) / (idlePipeSleepTimeMillis + fetchTimeoutMillis);  // 3 minute count
+    _lastUpdatedOffset = _streamPartitionMsgOffsetFactory
         .create(_currentOffset);  // so that we always update the metric when we enter this method.
-    long consecutiveIdleCount = 0;
+    _consecutiveIdleCount = 0;
     // At this point, we know that we can potentially move the offset, so the old saved segment file is not valid
     // anymore. Remove the file if it exists.
     removeSegmentFile();
 
     segmentLogger.info("Starting consumption loop start offset {}, finalOffset {}", _currentOffset, _finalOffset);
-    while (!_shouldStop && !endCriteriaReached()) {
-      // Consume for the next readTime ms, or we get to final offset, whichever happens earlier,
-      // Update _currentOffset upon return from this method
-      MessageBatch messageBatch;
+  }
+
+  /**
+   * Fetches and processes one batch of messages from the stream.
+   *
+   * @return Whether any message is consumed (i.e. the current offset moved)
+   */
+  private boolean consumeOnce(int fetchTimeoutMillis, long idlePipeSleepTimeMillis)
+      throws Exception {
+    // Consume for the next readTime ms, or we get to final offset, whichever happens earlier,
+    // Update _currentOffset upon return from this method
+    MessageBatch messageBatch = pollPrefetchedMessages();
+    if (messageBatch == null) {
       try {
-        messageBatch = _partitionLevelConsumer
-            .fetchMessages(_currentOffset, null, _partitionLevelStreamConfig.getFetchTimeoutMillis());
+        messageBatch = _partitionLevelConsumer.fetchMessages(_currentOffset, null, fetchTimeoutMillis);
         consecutiveErrorCount = 0;
       } catch (TimeoutException e) {
         handleTransientStreamErrors(e);
-        continue;
+        return false;
       } catch (TransientConsumerException e) {
         handleTransientStreamErrors(e);
-        continue;
+        return false;
       } catch (PermanentConsumerException e) {
         segmentLogger.warn("Permanent exception from stream when fetching messages, stopping consumption", e);
         throw e;
@@ -394,35 +445,98 @@ public class LLRealtimeSegmentDataManager extends RealtimeSegmentDataManager {
         // Unknown exception from stream. Treat as a transient exception.
         // One such exception seen so far is java.net.SocketTimeoutException
         handleTransientStreamErrors(e);
-        continue;
+        return false;
       }
+    }
 
-      processStreamEvents(messageBatch, idlePipeSleepTimeMillis);
-
-      if (_currentOffset.compareTo(lastUpdatedOffset) != 0) {
-        consecutiveIdleCount = 0;
-        // We consumed something. Update the highest stream offset as well as partition-consuming metric.
-        // TODO Issue 5359 Need to find a way to bump metrics without getting actual offset value.
-//        _serverMetrics.setValueOfTableGauge(_metricKeyName, ServerGauge.HIGHEST_KAFKA_OFFSET_CONSUMED, _currentOffset.getOffset());
-//        _serverMetrics.setValueOfTableGauge(_metricKeyName, ServerGauge.HIGHEST_STREAM_OFFSET_CONSUMED, _currentOffset.getOffset());
+    processStreamEvents(messageBatch, idlePipeSleepTimeMillis);
+
+    if (_currentOffset.compareTo(_lastUpdatedOffset) != 0) {
+      _consecutiveIdleCount = 0;
+      // We consumed something. Update the highest stream offset as well as partition-consuming metric.
+      // TODO Issue 5359 Need to find a way to bump metrics without getting actual offset value.
+//      _serverMetrics.setValueOfTableGauge(_metricKeyName, ServerGauge.HIGHEST_KAFKA_OFFSET_CONSUMED, _currentOffset.getOffset());
+//      _serverMetrics.setValueOfTableGauge(_metricKeyName, ServerGauge.HIGHEST_STREAM_OFFSET_CONSUMED, _currentOffset.getOffset());
+      _serverMetrics.setValueOfTableGauge(_metricKeyName, ServerGauge.LLC_PARTITION_CONSUMING, 1);
+      _lastUpdatedOffset = _streamPartitionMsgOffsetFactory.create(_currentOffset);
+      return true;
+    } else {
+      // We did not consume any rows. Update the partition-consuming metric only if we have been idling for a long time.
+      // Create a new stream consumer wrapper, in case we are stuck on something.
+      if (++_consecutiveIdleCount > _maxIdleCountBeforeStatUpdate) {
         _serverMetrics.setValueOfTableGauge(_metricKeyName, ServerGauge.LLC_PARTITION_CONSUMING, 1);
-        lastUpdatedOffset = _streamPartitionMsgOffsetFactory.create(_currentOffset);
-      } else {
-        // We did not consume any rows. Update the partition-consuming metric only if we have been idling for a long time.
-        // Create a new stream consumer wrapper, in case we are stuck on something.
-        if (++consecutiveIdleCount > maxIdleCountBeforeStatUpdate) {
-          _serverMetrics.setValueOfTableGauge(_metricKeyName, ServerGauge.LLC_PARTITION_CONSUMING, 1);
-          consecutiveIdleCount = 0;
-          makeStreamConsumer("Idle for too long");
-        }
+        _consecutiveIdleCount = 0;
+        makeStreamConsumer("Idle for too long");
       }
+      return false;
+    }
+  }
+
+  /**
+   * Returns the next message batch prefetched by the previous segment of the partition if it starts from the current
+   * offset, or {@code null} if the messages should be fetched from the stream.
+   */
+  @Nullable
+  private MessageBatch pollPrefetchedMessages() {
+    if (_prefetchedMessages == null) {
+      return null;
+    }
+    MessageBatch messageBatch = _prefetchedMessages.poll(_currentOffset);
+    if (messageBatch == null) {
+      segmentLogger.info("Finished processing prefetched messages at offset {}", _currentOffset);
+      _prefetchedMessages = null;
     }
+    return messageBatch;
+  }
 
+  private void finishConsumeLoop() {
     if (_numRowsErrored > 0) {
       _serverMetrics.addMeteredTableValue(_metricKeyName, ServerMeter.ROWS_WITH_ERRORS, _numRowsErrored);
       _serverMetrics.addMeteredTableValue(_tableStreamName, ServerMeter.ROWS_WITH_ERRORS, _numRowsErrored);
     }
-    return true;
+  }
+
+  /**
+   * Consumes one batch of messages on the shared consumer executor, then re-submits itself so that the executor threads
+   * round-robin across the consuming partitions on the server. Once the initial consumption is done, hands off to a
+   * dedicated consumer thread to run the segment completion protocol, which might block for a long time. If the
+   * consumption is stopped, there is no segment to complete, so no consumer thread is started.
+   */
+  private void consumeOnSharedExecutor() {
+    try {
+      if (!_shouldStop && !endCriteriaReached()) {
+        // NOTE: Do not sleep within the executor threads when idle, re-schedule with a delay instead.
+        boolean consumed = consumeOnce(Math.min(_partitionLevelStreamConfig.getFetchTimeoutMillis(),
+            SHARED_CONSUMER_FETCH_TIMEOUT_MILLIS), 0L);
+        try {
+          if (consumed) {
+            _sharedConsumerExecutor.execute(this::consumeOnSharedExecutor);
+          } else {
+            _sharedConsumerExecutor
+                .schedule(this::consumeOnSharedExecutor, IDLE_PIPE_SLEEP_TIME_MILLIS, TimeUnit.MILLISECONDS);
+          }
+          return;
+        } catch (RejectedExecutionException e) {
+          segmentLogger.warn("Shared consumer executor is shut down, stopping consumption on it");
+        }
+      }
+      finishConsumeLoop();
+      if (_shouldStop) {
+        _serverMetrics.setValueOfTableGauge(_metricKeyName, ServerGauge.LLC_PARTITION_CONSUMING, 0);
+      } else {
+        startConsumerThread();
+      }
+    } catch (Exception e) {
+      handleConsumerException(e);
+    }
+    _sharedConsumptionDone.countDown();
+  }
+
+  private void handleConsumerException(Exception e) {
+    segmentLogger.error("Exception while in work", e);
+    postStopConsumedMsg(e.getClass().getName());
+    _state = State.ERROR;
+    _serverMetrics.setValueOfTableGauge(_metricKeyName, ServerGauge.LLC_PARTITION_CONSUMING, 0);
   }
 
   private void processStreamEvents(MessageBatch messagesAndOffsets, long idlePipeSleepTimeMillis) {
@@ -434,85 +548,96 @@ public class LLRealtimeSegmentDataManager extends RealtimeSegmentDataManager {
     boolean canTakeMore = true;
 
     GenericRow reuse = new GenericRow();
-    for (int index = 0; index < messagesAndOffsets.getMessageCount(); index++) {
-      if (_shouldStop || endCriteriaReached()) {
-        break;
-      }
-      if (!canTakeMore) {
-        // The RealtimeSegmentImpl that we are pushing rows into has indicated that it cannot accept any more
-        // rows. This can happen in one of two conditions:
-        // 1. We are in INITIAL_CONSUMING state, and we somehow exceeded the max number of rows we are allowed to consume
-        //    for this row. Something is seriously wrong, because endCriteriaReached() should have returned true when
-        //    we hit the row limit.
-        //    Throw an exception.
-        //
-        // 2. We are in CATCHING_UP state, and we legally hit this error due to unclean leader election where
-        //    offsets get changed with higher generation numbers for some pinot servers but not others. So, if another
-        //    server (who got a larger stream offset) asked us to catch up to that offset, but we are connected to a
-        //    broker who has smaller offsets, then we may try to push more rows into the buffer than maximum. This
-        //    is a rare case, and we really don't know how to handle this at this time.
-        //    Throw an exception.
-        //
-        segmentLogger
-            .error("Buffer full with {} rows consumed (row limit {}, indexed {})", _numRowsConsumed, _numRowsIndexed,
-                _segmentMaxRowCount);
-        throw new RuntimeException("Realtime segment full");
-      }
+    TransformedMessage reuseTransformedMessage = new TransformedMessage();
+
+    // Decode and transform the messages in parallel if configured, and index them on the consumer thread in order
+    int messageCount = messagesAndOffsets.getMessageCount();
+    boolean decodeInParallel =
+        _parallelMessageDecoder != null && ParallelMessageDecoder.shouldDecodeInParallel(messagesAndOffsets);
+    if (decodeInParallel) {
+      _parallelMessageDecoder.start(messagesAndOffsets);
+    }
 
-      // Index each message
-      reuse.clear();
-      // retrieve metadata from the message batch if available
-      // this can be overridden by the decoder if there is a better indicator in the message payload
-      RowMetadata msgMetadata = messagesAndOffsets.getMetadataAtIndex(index);
+    try {
+      for (int index = 0; index < messageCount; index++) {
+        if (_shouldStop || endCriteriaReached()) {
+          break;
+        }
+        if (!canTakeMore) {
+          // The RealtimeSegmentImpl that we are pushing rows into has indicated that it cannot accept any more
+          // rows. This can happen in one of two conditions:
+          // 1. We are in INITIAL_CONSUMING state, and we somehow exceeded the max number of rows we are allowed to
+          //    consume for this row. Something is seriously wrong, because endCriteriaReached() should have returned
+          //    true when we hit the row limit.
+          //    Throw an exception.
+          //
+          // 2. We are in CATCHING_UP state, and we legally hit this error due to unclean leader election where
+          //    offsets get changed with higher generation numbers for some pinot servers but not others. So, if
+          //    another server (who got a larger stream offset) asked us to catch up to that offset, but we are
+          //    connected to a broker who has smaller offsets, then we may try to push more rows into the buffer than
+          //    maximum. This is a rare case, and we really don't know how to handle this at this time.
+          //    Throw an exception.
+          //
+          segmentLogger
+              .error("Buffer full with {} rows consumed (row limit {}, indexed {})", _numRowsConsumed, _numRowsIndexed,
+                  _segmentMaxRowCount);
+          throw new RuntimeException("Realtime segment full");
+        }
 
-      GenericRow decodedRow = _messageDecoder
-          .decode(messagesAndOffsets.getMessageAtIndex(index), messagesAndOffsets.getMessageOffsetAtIndex(index),
-              messagesAndOffsets.getMessageLengthAtIndex(index), reuse);
-      if (decodedRow != null) {
-        try {
-          if (decodedRow.getValue(GenericRow.MULTIPLE_RECORDS_KEY) != null) {
-            for (Object singleRow : (Collection) decodedRow.getValue(GenericRow.MULTIPLE_RECORDS_KEY)) {
-              GenericRow transformedRow = _recordTransformer.transform((GenericRow) singleRow);
-              if (transformedRow != null && IngestionUtils.shouldIngestRow(transformedRow)) {
-                realtimeRowsConsumedMeter = _serverMetrics
-                    .addMeteredTableValue(_metricKeyName, ServerMeter.REALTIME_ROWS_CONSUMED, 1,
-                        realtimeRowsConsumedMeter);
-                indexedMessageCount++;
-                canTakeMore = _realtimeSegment.index(transformedRow, msgMetadata);
-              } else {
-                realtimeRowsDroppedMeter = _serverMetrics
-                    .addMeteredTableValue(_metricKeyName, ServerMeter.INVALID_REALTIME_ROWS_DROPPED, 1,
-                        realtimeRowsDroppedMeter);
-              }
-            }
+        // Index each message
+        TransformedMessage transformedMessage;
+        if (decodeInParallel) {
+          transformedMessage = _parallelMessageDecoder.getTransformedMessage(index);
+        } else {
+          if (_pendingRows != null) {
+            // NOTE: With batch indexing, the decoded rows are buffered until the end of the message batch, so the row
+            //       cannot be reused.
+            reuse = new GenericRow();
           } else {
-            GenericRow transformedRow = _recordTransformer.transform(decodedRow);
-            if (transformedRow != null && IngestionUtils.shouldIngestRow(transformedRow)) {
-              realtimeRowsConsumedMeter = _serverMetrics
-                  .addMeteredTableValue(_metricKeyName, ServerMeter.REALTIME_ROWS_CONSUMED, 1,
-                      realtimeRowsConsumedMeter);
-              indexedMessageCount++;
-              canTakeMore = _realtimeSegment.index(transformedRow, msgMetadata);
-            } else {
-              realtimeRowsDroppedMeter = _serverMetrics
-                  .addMeteredTableValue(_metricKeyName, ServerMeter.INVALID_REALTIME_ROWS_DROPPED, 1,
-                      realtimeRowsDroppedMeter);
-            }
+            reuse.clear();
           }
-        } catch (Exception e) {
-          segmentLogger.error("Caught exception while transforming the record: {}", decodedRow, e);
-          _numRowsErrored++;
+          transformedMessage = reuseTransformedMessage;
+          transformedMessage.clear();
+          ParallelMessageDecoder
+              .decodeAndTransform(_messageDecoder, _recordTransformer, messagesAndOffsets, index, reuse,
+                  transformedMessage, segmentLogger);
         }
-      } else {
-        realtimeRowsDroppedMeter = _serverMetrics
-            .addMeteredTableValue(_metricKeyName, ServerMeter.INVALID_REALTIME_ROWS_DROPPED, 1,
-                realtimeRowsDroppedMeter);
-      }
+        // retrieve metadata from the message batch if available
+        // this can be overridden by the decoder if there is a better indicator in the message payload
+        RowMetadata msgMetadata = messagesAndOffsets.getMetadataAtIndex(index);
+        for (GenericRow transformedRow : transformedMessage._rows) {
+          realtimeRowsConsumedMeter = _serverMetrics
+              .addMeteredTableValue(_metricKeyName, ServerMeter.REALTIME_ROWS_CONSUMED, 1,
+                  realtimeRowsConsumedMeter);
+          indexedMessageCount++;
+          try {
+            canTakeMore = index(transformedRow, msgMetadata);
+          } catch (Exception e) {
+            segmentLogger.error("Caught exception while indexing the record: {}", transformedRow, e);
+            _numRowsErrored++;
+          }
+        }
+        if (transformedMessage._numRowsDropped > 0) {
+          realtimeRowsDroppedMeter = _serverMetrics
+              .addMeteredTableValue(_metricKeyName, ServerMeter.INVALID_REALTIME_ROWS_DROPPED,
+                  transformedMessage._numRowsDropped, realtimeRowsDroppedMeter);
+        }
+        _numRowsErrored += transformedMessage._numRowsErrored;
 
-      _currentOffset = messagesAndOffsets.getNextStreamParitionMsgOffsetAtIndex(index);
-      _numRowsIndexed = _realtimeSegment.getNumDocsIndexed();
-      _numRowsConsumed++;
-      streamMessageCount++;
+        _currentOffset = messagesAndOffsets.getNextStreamParitionMsgOffsetAtIndex(index);
+        _numRowsIndexed = getNumRowsIndexedAndPending();
+        _numRowsConsumed++;
+        streamMessageCount++;
+      }
+    } finally {
+      // NOTE: Wait for all the decode tasks to finish before returning because the decoders are not thread-safe and
+      //       will be reused for the next message batch.
+      if (decodeInParallel) {
+        _parallelMessageDecoder.finish();
+      }
+    }
+    if (_pendingRows != null && !_pendingRows.isEmpty()) {
+      indexPendingRows();
     }
     updateCurrentDocumentCountMetrics();
     if (streamMessageCount != 0) {
@@ -524,16 +649,82 @@ public class LLRealtimeSegmentDataManager extends RealtimeSegmentDataManager {
     }
   }
 
+  /**
+   * Indexes the row into the realtime segment, or buffers it if batch indexing is enabled.
+   */
+  private boolean index(GenericRow row, @Nullable RowMetadata rowMetadata) {
+    if (_pendingRows == null) {
+      return _realtimeSegment.index(row, rowMetadata);
+    }
+    _pendingRows.add(row);
+    _pendingRowMetadataList.add(rowMetadata);
+    if (getNumRowsIndexedAndPending() >= _segmentMaxRowCount) {
+      return indexPendingRows();
+    } else {
+      return true;
+    }
+  }
+
+  private int getNumRowsIndexedAndPending() {
+    int numRowsIndexed = _realtimeSegment.getNumDocsIndexed();
+    return _pendingRows != null ? numRowsIndexed + _pendingRows.size() : numRowsIndexed;
+  }
+
+  /**
+   * Indexes the buffered rows as a batch. If the batch cannot be fully indexed, indexes the rows not indexed by the
+   * batch one by one so that only the bad rows are skipped.
+   */
+  private boolean indexPendingRows() {
+    boolean canTakeMore;
+    int numRows = _pendingRows.size();
+    int numDocsIndexedBefore = _realtimeSegment.getNumDocsIndexed();
+    try {
+      canTakeMore = _realtimeSegment.index(_pendingRows, _pendingRowMetadataList);
+    } catch (Exception e) {
+      // NOTE: The rows before the bad row are already indexed and must not be indexed again.
+      int numRowsIndexed = _realtimeSegment.getNumDocsIndexed() - numDocsIndexedBefore;
+      segmentLogger.warn("Caught exception while indexing a batch of {} rows with {} rows indexed, indexing the rest "
+          + "one by one", numRows, numRowsIndexed, e);
+      canTakeMore = true;
+      if (numRowsIndexed == numRows) {
+        // All the rows are indexed, but the upsert metadata of some rows cannot be updated
+        _numRowsErrored++;
+      }
+      for (int i = numRowsIndexed; i < numRows; i++) {
+        GenericRow row = _pendingRows.get(i);
+        try {
+          canTakeMore = _realtimeSegment.index(row, _pendingRowMetadataList.get(i));
+        } catch (Exception e1) {
+          segmentLogger.error("Caught exception while indexing the record: {}", row, e1);
+          _numRowsErrored++;
+        }
+      }
+    }
+    _pendingRows.clear();
+    _pendingRowMetadataList.clear();
+    _numRowsIndexed = _realtimeSegment.getNumDocsIndexed();
+    return canTakeMore;
+  }
+
   public class PartitionConsumer implements Runnable {
     public void run() {
       long initialConsumptionEnd = 0L;
       long lastCatchUpStart = 0L;
       long catchUpTimeMillis = 0L;
-      _startTimeMs = now();
+      // NOTE: Start time is already set and the initial consumption is already done if the consumption is handed off
+      //       from the shared consumer executor.
+      if (_startTimeMs == 0) {
+        _startTimeMs = now();
+      }
+      boolean initialConsumptionDone = _consumingOnSharedExecutor;
       try {
         while (!_state.isFinal()) {
           if (_state.shouldConsume()) {
-            consumeLoop();  // Consume until we reached the end criteria, or we are stopped.
+            if (initialConsumptionDone) {
+              initialConsumptionDone = false;
+            } else {
+              consumeLoop();  // Consume until we reached the end criteria, or we are stopped.
+            }
           }
           _serverMetrics.setValueOfTableGauge(_metricKeyName, ServerGauge.LLC_PARTITION_CONSUMING, 0);
           if (_shouldStop) {
@@ -605,6 +796,12 @@ public class LLRealtimeSegmentDataManager extends RealtimeSegmentDataManager {
             case COMMIT:
               _state = State.COMMITTING;
               long buildTimeSeconds = response.getBuildTimeSeconds();
+              if (_realtimeTableDataManager.tryAcquirePipelinedSegmentBuild()) {
+                // NOTE: The pipelined segment build permit is released once the segment is built.
+                buildAndCommitSegmentWhilePrefetching(buildTimeSeconds * 1000L, response.getControllerVipUrl(),
+                    response.isSplitCommit() && _indexLoadingConfig.isEnableSplitCommit());
+                break;
+              }
               buildSegmentForCommit(buildTimeSeconds * 1000L);
               if (_segmentBuildDescriptor == null) {
                 // We could not build the segment. Go into error state.
@@ -630,10 +827,7 @@ public class LLRealtimeSegmentDataManager extends RealtimeSegmentDataManager {
           }
         }
       } catch (Exception e) {
-        segmentLogger.error("Exception while in work", e);
-        postStopConsumedMsg(e.getClass().getName());
-        _state = State.ERROR;
-        _serverMetrics.setValueOfTableGauge(_metricKeyName, ServerGauge.LLC_PARTITION_CONSUMING, 0);
+        handleConsumerException(e);
         return;
       }
 
@@ -700,6 +894,98 @@ public class LLRealtimeSegmentDataManager extends RealtimeSegmentDataManager {
     }
   }
 
+  /**
+   * Builds and commits the segment on the pipelined segment build executor, and keeps prefetching the messages after
+   * the committing offset from the stream on the consumer thread in the meantime. Once the segment is committed, hands
+   * off the prefetched messages to the next consuming segment of the partition before releasing the stream consumer, so
+   * that the next consuming segment does not need to fetch them again.
+   * The caller should have acquired a pipelined segment build permit, which is released once the segment is built so
+   * that the permits only bound the concurrent segment builds, not the commits.
+   * NOTE: The segment completion protocol is not changed: the segment is committed at the offset agreed with the
+   *       controller, and the next consuming segment is still created by the controller after the commit succeeds. The
+   *       prefetched messages are not queryable until they are indexed by the next consuming segment, so this only saves
+   *       the time to fetch them again after the commit, and does not reduce the data freshness lag during the commit.
+   */
+  private void buildAndCommitSegmentWhilePrefetching(long buildTimeLeaseMs, String controllerVipUrl,
+      boolean isSplitCommit) {
+    PrefetchedMessages prefetchedMessages = new PrefetchedMessages(_segmentNameStr, _currentOffset,
+        _realtimeTableDataManager.getMaxPrefetchedBytesPerPartition());
+    SegmentCompletionProtocol.Response commitResponse;
+    _prefetchingDuringBuild = true;
+    try {
+      Future<SegmentCompletionProtocol.Response> commitFuture;
+      try {
+        commitFuture = _realtimeTableDataManager.getPipelinedSegmentBuildExecutor().submit(() -> {
+          try {
+            buildSegmentForCommit(buildTimeLeaseMs);
+          } finally {
+            _realtimeTableDataManager.releasePipelinedSegmentBuild();
+          }
+          if (_segmentBuildDescriptor == null) {
+            return null;
+          }
+          checkSegmentTarFile();
+          return commit(controllerVipUrl, isSplitCommit);
+        });
+      } catch (RejectedExecutionException e) {
+        _realtimeTableDataManager.releasePipelinedSegmentBuild();
+        throw e;
+      }
+      prefetch(prefetchedMessages, commitFuture);
+      commitResponse = Uninterruptibles.getUninterruptibly(commitFuture);
+    } catch (ExecutionException e) {
+      throw new RuntimeException("Caught exception while building and committing the segment", e.getCause());
+    } finally {
+      _prefetchingDuringBuild = false;
+    }
+
+    if (commitResponse == null) {
+      // We could not build the segment. Go into error state.
+      _state = State.ERROR;
+      return;
+    }
+    if (commitResponse.getStatus() != SegmentCompletionProtocol.ControllerResponseStatus.COMMIT_SUCCESS) {
+      // If for any reason commit failed, we don't want to be in COMMITTING state when we hold.
+      // Change the state to HOLDING before looping around.
+      _state = State.HOLDING;
+      segmentLogger.info("Could not commit segment. Retrying after hold");
+      hold();
+      return;
+    }
+    if (!prefetchedMessages.isEmpty()) {
+      segmentLogger.info("Handing off {} prefetched messages ({} bytes) from offset {} to the next consuming segment",
+          prefetchedMessages.getNumMessages(), prefetchedMessages.getNumBytes(), prefetchedMessages.getStartOffset());
+      _realtimeTableDataManager.addPrefetchedMessages(_streamPartitionId, prefetchedMessages);
+    }
+    closeKafkaConsumers();
+    _realtimeTableDataManager.replaceLLSegment(_segmentNameStr, _indexLoadingConfig);
+    removeSegmentFile();
+    _state = State.COMMITTED;
+  }
+
+  /**
+   * Fetches the messages from the stream into the given prefetched messages until the given future is done, the max
+   * size of the prefetched messages is reached, or the consumer is stopped.
+   */
+  private void prefetch(PrefetchedMessages prefetchedMessages, Future<?> future) {
+    while (!future.isDone() && !_shouldStop && !prefetchedMessages.isFull()) {
+      MessageBatch messageBatch;
+      try {
+        messageBatch = _partitionLevelConsumer
+            .fetchMessages(prefetchedMessages.getNextOffset(), null, PREFETCH_FETCH_TIMEOUT_MILLIS);
+      } catch (Exception e) {
+        segmentLogger.warn("Caught exception while prefetching messages at offset {}, stopping prefetching",
+            prefetchedMessages.getNextOffset(), e);
+        return;
+      }
+      if (messageBatch.getMessageCount() > 0) {
+        prefetchedMessages.add(messageBatch);
+      } else {
+        Uninterruptibles.sleepUninterruptibly(IDLE_PIPE_SLEEP_TIME_MILLIS, TimeUnit.MILLISECONDS);
+      }
+    }
+  }
+
   @VisibleForTesting
   protected StreamPartitionMsgOffset getCurrentOffset() {
     return _currentOffset;
@@ -721,7 +1007,10 @@ public class LLRealtimeSegmentDataManager extends RealtimeSegmentDataManager {
   }
 
   protected SegmentBuildDescriptor buildSegmentInternal(boolean forCommit) {
-    closeKafkaConsumers();
+    // NOTE: When prefetching during the build, the stream consumer is closed by the consumer thread after the commit.
+    if (!_prefetchingDuringBuild) {
+      closeKafkaConsumers();
+    }
     try {
       final long startTimeMillis = now();
       if (_segBuildSemaphore != null) {
@@ -821,11 +1110,15 @@ public class LLRealtimeSegmentDataManager extends RealtimeSegmentDataManager {
     }
   }
 
-  protected boolean commitSegment(String controllerVipUrl, boolean isSplitCommit) {
+  private void checkSegmentTarFile() {
     File segmentTarFile = _segmentBuildDescriptor.getSegmentTarFile();
     if (segmentTarFile == null || !segmentTarFile.exists()) {
       throw new RuntimeException("Segment file does not exist: " + segmentTarFile);
     }
+  }
+
+  protected boolean commitSegment(String controllerVipUrl, boolean isSplitCommit) {
+    checkSegmentTarFile();
     SegmentCompletionProtocol.Response commitResponse = commit(controllerVipUrl, isSplitCommit);
 
     if (!commitResponse.getStatus().equals(SegmentCompletionProtocol.ControllerResponseStatus.COMMIT_SUCCESS)) {
@@ -1056,6 +1349,19 @@ public class LLRealtimeSegmentDataManager extends RealtimeSegmentDataManager {
   }
 
   protected void start() {
+    if (_sharedConsumerExecutor != null && _state == State.INITIAL_CONSUMING) {
+      segmentLogger.info("Starting consumption on the shared consumer executor for {}", this.toString());
+      _consumingOnSharedExecutor = true;
+      _startTimeMs = now();
+      startConsumeLoop(Math.min(_partitionLevelStreamConfig.getFetchTimeoutMillis(),
+          SHARED_CONSUMER_FETCH_TIMEOUT_MILLIS), IDLE_PIPE_SLEEP_TIME_MILLIS);
+      _sharedConsumerExecutor.execute(this::consumeOnSharedExecutor);
+    } else {
+      startConsumerThread();
+    }
+  }
+
+  private void startConsumerThread() {
     _consumerThread = new Thread(new PartitionConsumer(), _segmentNameStr);
     segmentLogger.info("Created new consumer thread {} for {}", _consumerThread, this.toString());
     _consumerThread.start();
@@ -1067,6 +1373,21 @@ public class LLRealtimeSegmentDataManager extends RealtimeSegmentDataManager {
   public void stop()
       throws InterruptedException {
     _shouldStop = true;
+    if (_consumingOnSharedExecutor) {
+      // Wait for the consumption on the shared consumer executor to finish, or hand off to the consumer thread
+      // NOTE: Each task only consumes one message batch and the next task checks the stop flag before consuming, so the
+      //       wait is bounded by the time of consuming one message batch instead of the whole segment. Do not return
+      //       before the consumption is stopped because the caller might destroy the segment or consume it afterwards.
+      while (!Uninterruptibles.awaitUninterruptibly(_sharedConsumptionDone, SHARED_CONSUMER_STOP_WARN_INTERVAL_MILLIS,
+          TimeUnit.MILLISECONDS)) {
+        segmentLogger.warn("Consumption on the shared consumer executor is not stopped after {}ms, keep waiting",
+            SHARED_CONSUMER_STOP_WARN_INTERVAL_MILLIS);
+      }
+      if (_consumerThread == null) {
+        // Consumption stopped or failed on the shared consumer executor
+        return;
+      }
+    }
     // This method could be called either when we get an ONLINE transition or
     // when we commit a segment and replace the realtime segment with a committed
     // one. In the latter case, we don't want to call join.
@@ -1086,6 +1407,7 @@ public class LLRealtimeSegmentDataManager extends RealtimeSegmentDataManager {
       Schema schema, LLCSegmentName llcSegmentName, Semaphore partitionConsumerSemaphore, ServerMetrics serverMetrics,
       @Nullable PartitionUpsertMetadataManager partitionUpsertMetadataManager) {
     _segBuildSemaphore = realtimeTableDataManager.getSegmentBuildSemaphore();
+    _sharedConsumerExecutor = realtimeTableDataManager.getSharedConsumerExecutor();
     _segmentZKMetadata = (LLCRealtimeSegmentZKMetadata) segmentZKMetadata;
     _tableConfig = tableConfig;
     _tableNameWithType = _tableConfig.getTableName();
@@ -1164,6 +1486,16 @@ public class LLRealtimeSegmentDataManager extends RealtimeSegmentDataManager {
 
     _nullHandlingEnabled = indexingConfig.isNullHandlingEnabled();
 
+    // NOTE: Batch indexing is not applied with metrics aggregation because the aggregated rows do not generate new
+    //       docs.
+    if (indexingConfig.isRealtimeBatchIndexing() && !indexingConfig.isAggregateMetrics()) {
+      _pendingRows = new ArrayList<>();
+      _pendingRowMetadataList = new ArrayList<>();
+    } else {
+      _pendingRows = null;
+      _pendingRowMetadataList = null;
+    }
+
     Set<String> textIndexColumns = indexLoadingConfig.getTextIndexColumns();
     _textIndexColumns = new ArrayList<>(textIndexColumns);
 
@@ -1190,6 +1522,24 @@ public class LLRealtimeSegmentDataManager extends RealtimeSegmentDataManager {
     // Create record transformer
     _recordTransformer = CompositeTransformer.getDefaultTransformer(tableConfig, schema);
 
+    // Create decoders and transformers for parallel decoding
+    // NOTE: The decode executor is shared by all the consuming segments of the table.
+    int numDecodeThreads = indexingConfig.getRealtimeDecodeThreads();
+    ExecutorService decodeExecutor = numDecodeThreads > 1 ? realtimeTableDataManager.getDecodeExecutor() : null;
+    if (decodeExecutor != null) {
+      segmentLogger.info("Decoding messages with {} decoders", numDecodeThreads);
+      StreamMessageDecoder[] messageDecoders = new StreamMessageDecoder[numDecodeThreads];
+      RecordTransformer[] recordTransformers = new RecordTransformer[numDecodeThreads];
+      for (int i = 0; i < numDecodeThreads; i++) {
+        messageDecoders[i] = StreamDecoderProvider.create(_partitionLevelStreamConfig, fieldsToRead);
+        recordTransformers[i] = CompositeTransformer.getDefaultTransformer(tableConfig, schema);
+      }
+      _parallelMessageDecoder =
+          new ParallelMessageDecoder(decodeExecutor, messageDecoders, recordTransformers, segmentLogger);
+    } else {
+      _parallelMessageDecoder = null;
+    }
+
     // Acquire semaphore to create Kafka consumers
     try {
       _partitionConsumerSemaphore.acquire();
@@ -1245,6 +1595,13 @@ public class LLRealtimeSegmentDataManager extends RealtimeSegmentDataManager {
     _realtimeSegment = new MutableSegmentImpl(realtimeSegmentConfigBuilder.build(), serverMetrics);
     _startOffset = _streamPartitionMsgOffsetFactory.create(_segmentZKMetadata.getStartOffset());
     _currentOffset = _streamPartitionMsgOffsetFactory.create(_startOffset);
+    // NOTE: The messages prefetched by the previous segment are handed off before the partition consumer semaphore is
+    //       released, so they are already available after acquiring the semaphore.
+    _prefetchedMessages = _realtimeTableDataManager.takePrefetchedMessages(_streamPartitionId, _startOffset);
+    if (_prefetchedMessages != null) {
+      segmentLogger.info("Took over {} prefetched messages from offset {}", _prefetchedMessages.getNumMessages(),
+          _startOffset);
+    }
     _resourceTmpDir = new File(resourceDataDir, "_tmp");
     if (!_resourceTmpDir.exists()) {
       _resourceTmpDir.mkdirs();
@@ -0,0 +1,190 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pinot.core.data.manager.realtime;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import javax.annotation.Nullable;
+import org.apache.pinot.core.data.recordtransformer.RecordTransformer;
+import org.apache.pinot.core.util.IngestionUtils;
+import org.apache.pinot.spi.data.readers.GenericRow;
+import org.apache.pinot.spi.stream.MessageBatch;
+import org.apache.pinot.spi.stream.StreamMessageDecoder;
+import org.slf4j.Logger;
+
+
+/**
+ * Decodes and transforms the messages of a {@link MessageBatch} in parallel, and hands them out in the order of the
+ * messages.
+ * <p>The messages are split into contiguous ranges, and each range is decoded and transformed by one task on the decode
+ * executor shared by the consuming segments of the table. Decoders and transformers are not thread-safe, so each task
+ * uses its own instance, and {@link #finish()} must be called before decoding the next message batch.
+ * <p>This class is not thread-safe, and should only be accessed by the consumer thread.
+ */
+class ParallelMessageDecoder {
+  // Minimum number of messages in a message batch to decode them in parallel
+  static final int MIN_MESSAGE_COUNT_FOR_PARALLEL_DECODE = 16;
+
+  private final ExecutorService _decodeExecutor;
+  private final StreamMessageDecoder[] _messageDecoders;
+  private final RecordTransformer[] _recordTransformers;
+  private final Logger _logger;
+
+  private TransformedMessage[] _transformedMessages;
+  private List<Future<?>> _decodeFutures;
+  private int _numMessagesPerTask;
+  private int _numTasksDone;
+
+  ParallelMessageDecoder(ExecutorService decodeExecutor, StreamMessageDecoder[] messageDecoders,
+      RecordTransformer[] recordTransformers, Logger logger) {
+    _decodeExecutor = decodeExecutor;
+    _messageDecoders = messageDecoders;
+    _recordTransformers = recordTransformers;
+    _logger = logger;
+  }
+
+  /**
+   * Returns whether the message batch has enough messages to be decoded in parallel.
+   */
+  static boolean shouldDecodeInParallel(MessageBatch messageBatch) {
+    return messageBatch.getMessageCount() >= MIN_MESSAGE_COUNT_FOR_PARALLEL_DECODE;
+  }
+
+  /**
+   * Submits the tasks to decode and transform the messages of the given message batch.
+   */
+  void start(MessageBatch messageBatch) {
+    int messageCount = messageBatch.getMessageCount();
+    int numTasks = Math.min(_messageDecoders.length,
+        (messageCount + MIN_MESSAGE_COUNT_FOR_PARALLEL_DECODE - 1) / MIN_MESSAGE_COUNT_FOR_PARALLEL_DECODE);
+    _numMessagesPerTask = (messageCount + numTasks - 1) / numTasks;
+    _numTasksDone = 0;
+    TransformedMessage[] transformedMessages = new TransformedMessage[messageCount];
+    _transformedMessages = transformedMessages;
+    _decodeFutures = new ArrayList<>(numTasks);
+    for (int i = 0; i < numTasks; i++) {
+      StreamMessageDecoder messageDecoder = _messageDecoders[i];
+      RecordTransformer recordTransformer = _recordTransformers[i];
+      int startIndex = i * _numMessagesPerTask;
+      int endIndex = Math.min(startIndex + _numMessagesPerTask, messageCount);
+      _decodeFutures.add(_decodeExecutor.submit(() -> {
+        for (int index = startIndex; index < endIndex; index++) {
+          TransformedMessage transformedMessage = new TransformedMessage();
+          decodeAndTransform(messageDecoder, recordTransformer, messageBatch, index, new GenericRow(),
+              transformedMessage, _logger);
+          transformedMessages[index] = transformedMessage;
+        }
+      }));
+    }
+  }
+
+  /**
+   * Returns the decoded and transformed message at the given index, waits for the task of the message to finish if
+   * necessary. The messages should be accessed in order.
+   */
+  TransformedMessage getTransformedMessage(int index) {
+    int taskId = index / _numMessagesPerTask;
+    if (taskId >= _numTasksDone) {
+      try {
+        _decodeFutures.get(taskId).get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new RuntimeException("Interrupted while waiting for the messages to be decoded", e);
+      } catch (ExecutionException e) {
+        throw new RuntimeException("Caught exception while decoding the messages", e.getCause());
+      }
+      _numTasksDone = taskId + 1;
+    }
+    return _transformedMessages[index];
+  }
+
+  /**
+   * Waits for all the tasks of the current message batch to finish, so that the decoders and transformers can be reused
+   * for the next message batch.
+   */
+  void finish() {
+    if (_decodeFutures == null) {
+      return;
+    }
+    for (Future<?> decodeFuture : _decodeFutures) {
+      try {
+        decodeFuture.get();
+      } catch (Exception e) {
+        // Ignore
+      }
+    }
+    _transformedMessages = null;
+    _decodeFutures = null;
+  }
+
+  /**
+   * Decodes and transforms the message at the given index, and puts the rows to be indexed into the given
+   * {@link TransformedMessage}.
+   */
+  @SuppressWarnings("unchecked")
+  static void decodeAndTransform(StreamMessageDecoder messageDecoder, RecordTransformer recordTransformer,
+      MessageBatch messageBatch, int index, GenericRow reuse, TransformedMessage transformedMessage, Logger logger) {
+    GenericRow decodedRow = messageDecoder
+        .decode(messageBatch.getMessageAtIndex(index), messageBatch.getMessageOffsetAtIndex(index),
+            messageBatch.getMessageLengthAtIndex(index), reuse);
+    if (decodedRow == null) {
+      transformedMessage._numRowsDropped++;
+      return;
+    }
+    try {
+      if (decodedRow.getValue(GenericRow.MULTIPLE_RECORDS_KEY) != null) {
+        for (Object singleRow : (Collection) decodedRow.getValue(GenericRow.MULTIPLE_RECORDS_KEY)) {
+          transformedMessage.addRow(recordTransformer.transform((GenericRow) singleRow));
+        }
+      } else {
+        transformedMessage.addRow(recordTransformer.transform(decodedRow));
+      }
+    } catch (Exception e) {
+      logger.error("Caught exception while transforming the record: {}", decodedRow, e);
+      transformedMessage._numRowsErrored++;
+    }
+  }
+
+  /**
+   * The rows decoded and transformed from a stream message.
+   */
+  static class TransformedMessage {
+    final List<GenericRow> _rows = new ArrayList<>(1);
+    int _numRowsDropped;
+    int _numRowsErrored;
+
+    void addRow(@Nullable GenericRow transformedRow) {
+      if (transformedRow != null && IngestionUtils.shouldIngestRow(transformedRow)) {
+        _rows.add(transformedRow);
+      } else {
+        _numRowsDropped++;
+      }
+    }
+
+    void clear() {
+      _rows.clear();
+      _numRowsDropped = 0;
+      _numRowsErrored = 0;
+    }
+  }
+}
@@ -0,0 +1,135 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pinot.core.data.manager.realtime;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import javax.annotation.Nullable;
+import org.apache.pinot.spi.stream.MessageBatch;
+import org.apache.pinot.spi.stream.StreamPartitionMsgOffset;
+
+
+/**
+ * The message batches fetched from a stream partition by a committing segment while it is being built and committed,
+ * which are handed off to the next consuming segment of the partition so that it does not need to fetch them again.
+ * <p>The message batches are contiguous, starting from the end offset of the committing segment (i.e. the start offset
+ * of the next consuming segment). The size of the messages is bounded by the payload length reported by the message
+ * batches. This class is not thread-safe: the messages are added by the consumer thread of the committing segment, then
+ * polled by the consumer thread of the next consuming segment after the hand-off.
+ */
+public class PrefetchedMessages {
+  private final String _segmentName;
+  private final StreamPartitionMsgOffset _startOffset;
+  private final long _maxNumBytes;
+  private final Deque<MessageBatch> _messageBatches = new ArrayDeque<>();
+  private final Deque<StreamPartitionMsgOffset> _messageBatchStartOffsets = new ArrayDeque<>();
+  private StreamPartitionMsgOffset _nextOffset;
+  private int _numMessages;
+  private long _numBytes;
+
+  public PrefetchedMessages(String segmentName, StreamPartitionMsgOffset startOffset, long maxNumBytes) {
+    _segmentName = segmentName;
+    _startOffset = startOffset;
+    _maxNumBytes = maxNumBytes;
+    _nextOffset = startOffset;
+  }
+
+  /**
+   * Returns the name of the committing segment that prefetched the messages.
+   */
+  public String getSegmentName() {
+    return _segmentName;
+  }
+
+  public StreamPartitionMsgOffset getStartOffset() {
+    return _startOffset;
+  }
+
+  /**
+   * Returns the offset to fetch the next message batch from.
+   */
+  public StreamPartitionMsgOffset getNextOffset() {
+    return _nextOffset;
+  }
+
+  public int getNumMessages() {
+    return _numMessages;
+  }
+
+  public long getNumBytes() {
+    return _numBytes;
+  }
+
+  public boolean isFull() {
+    return _numBytes >= _maxNumBytes;
+  }
+
+  public boolean isEmpty() {
+    return _messageBatches.isEmpty();
+  }
+
+  /**
+   * Adds a non-empty message batch fetched from the next offset.
+   */
+  public void add(MessageBatch messageBatch) {
+    int messageCount = messageBatch.getMessageCount();
+    _messageBatches.addLast(messageBatch);
+    _messageBatchStartOffsets.addLast(_nextOffset);
+    _nextOffset = messageBatch.getNextStreamParitionMsgOffsetAtIndex(messageCount - 1);
+    _numMessages += messageCount;
+    _numBytes += getNumBytes(messageBatch);
+  }
+
+  /**
+   * Polls the next message batch if it starts from the given offset. Returns {@code null} and drops all the remaining
+   * message batches if there is no more message batch, or the next message batch does not start from the given offset
+   * (e.g. the consuming segment stopped in the middle of the previous message batch).
+   */
+  @Nullable
+  public MessageBatch poll(StreamPartitionMsgOffset offset) {
+    if (_messageBatches.isEmpty()) {
+      return null;
+    }
+    if (_messageBatchStartOffsets.peekFirst().compareTo(offset) != 0) {
+      clear();
+      return null;
+    }
+    _messageBatchStartOffsets.pollFirst();
+    MessageBatch messageBatch = _messageBatches.pollFirst();
+    _numMessages -= messageBatch.getMessageCount();
+    _numBytes -= getNumBytes(messageBatch);
+    return messageBatch;
+  }
+
+  public void clear() {
+    _messageBatches.clear();
+    _messageBatchStartOffsets.clear();
+    _numMessages = 0;
+    _numBytes = 0;
+  }
+
+  private static long getNumBytes(MessageBatch messageBatch) {
+    long numBytes = 0;
+    int messageCount = messageBatch.getMessageCount();
+    for (int i = 0; i < messageCount; i++) {
+      numBytes += Math.max(messageBatch.getMessageLengthAtIndex(i), 0);
+    }
+    return numBytes;
+  }
+}
@@ -31,8 +31,10 @@ import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
 import javax.annotation.concurrent.ThreadSafe;
 import org.apache.commons.collections.CollectionUtils;
 import org.apache.commons.io.FileUtils;
@@ -52,6 +54,7 @@ import org.apache.pinot.common.utils.fetcher.SegmentFetcherFactory;
 import org.apache.pinot.core.data.manager.BaseTableDataManager;
 import org.apache.pinot.core.data.manager.SegmentDataManager;
 import org.apache.pinot.core.data.readers.PinotSegmentColumnReader;
+import org.apache.pinot.core.indexsegment.IndexSegment;
 import org.apache.pinot.core.indexsegment.immutable.ImmutableSegment;
 import org.apache.pinot.core.indexsegment.immutable.ImmutableSegmentImpl;
 import org.apache.pinot.core.indexsegment.immutable.ImmutableSegmentLoader;
@@ -59,10 +62,13 @@ import org.apache.pinot.core.realtime.impl.RealtimeSegmentStatsHistory;
 import org.apache.pinot.core.realtime.impl.ThreadSafeMutableRoaringBitmap;
 import org.apache.pinot.core.segment.index.loader.IndexLoadingConfig;
 import org.apache.pinot.core.segment.index.loader.LoaderUtils;
+import org.apache.pinot.core.segment.index.metadata.SegmentMetadataImpl;
 import org.apache.pinot.core.segment.virtualcolumn.VirtualColumnProviderFactory;
 import org.apache.pinot.core.upsert.PartitionUpsertMetadataManager;
 import org.apache.pinot.core.upsert.PartitionUpsertMetadataManager.RecordInfo;
+import org.apache.pinot.core.upsert.PrimaryKeySnapshot;
 import org.apache.pinot.core.upsert.TableUpsertMetadataManager;
+import org.apache.pinot.core.upsert.ValidDocIdsSnapshot;
 import org.apache.pinot.core.util.IngestionUtils;
 import org.apache.pinot.core.util.PeerServerSegmentFinder;
 import org.apache.pinot.core.util.SchemaUtils;
@@ -72,7 +78,10 @@ import org.apache.pinot.spi.config.table.UpsertConfig;
 import org.apache.pinot.spi.data.FieldSpec;
 import org.apache.pinot.spi.data.Schema;
 import org.apache.pinot.spi.data.readers.PrimaryKey;
+import org.apache.pinot.spi.stream.StreamPartitionMsgOffset;
 import org.apache.pinot.spi.utils.ByteArray;
+import org.roaringbitmap.IntIterator;
+import org.roaringbitmap.buffer.MutableRoaringBitmap;
 
 import static org.apache.pinot.common.utils.CommonConstants.Segment.METADATA_URI_FOR_PEER_DOWNLOAD;
 
@@ -95,6 +104,8 @@ public class RealtimeTableDataManager extends BaseTableDataManager {
   // from com.linkedin to org.apache because of not being able to deserialize the old files using the newer classes
   private static final String STATS_FILE_NAME = "segment-stats.ser";
   private static final String CONSUMERS_DIR = "consumers";
+  // Default max size of the messages each partition can prefetch while its completed segment is built and committed
+  private static final long DEFAULT_MAX_PREFETCHED_BYTES_PER_PARTITION = 32 * 1024 * 1024L;
 
   // Topics tend to have similar cardinality for values across partitions consumed during the same time.
   // Multiple partitions of a topic are likely to be consumed in each server, and these will tend to
@@ -113,9 +124,32 @@ public class RealtimeTableDataManager extends BaseTableDataManager {
   private TableUpsertMetadataManager _tableUpsertMetadataManager;
   private List<String> _primaryKeyColumns;
   private String _timeColumnName;
+  private boolean _enableValidDocIdsSnapshot;
+  // Executor shared by the consuming segments of all the tables on the server to multiplex the consumption, null if
+  // shared consumption is disabled on the server
+  private final ScheduledExecutorService _sharedConsumerExecutor;
+  // Whether the consuming segments of the table consume on the shared consumer executor
+  private boolean _consumeOnSharedExecutor;
+  // Executor shared by the consuming segments to decode and transform the consumed messages in parallel, null if
+  // parallel decoding is disabled
+  private ExecutorService _decodeExecutor;
+  // Executor to build and commit the completed segments in the background while their partitions prefetch the messages
+  // for the next consuming segments, and permits to bound the concurrent segment builds on it, null if pipelined
+  // segment commit is disabled
+  private ExecutorService _pipelinedSegmentBuildExecutor;
+  private Semaphore _pipelinedSegmentBuildPermits;
+  private long _maxPrefetchedBytesPerPartition;
+  // Messages prefetched by the committed segments to be handed off to the next consuming segments of the partitions
+  private final Map<Integer, PrefetchedMessages> _partitionIdToPrefetchedMessagesMap = new ConcurrentHashMap<>();
 
   public RealtimeTableDataManager(Semaphore segmentBuildSemaphore) {
+    this(segmentBuildSemaphore, null);
+  }
+
+  public RealtimeTableDataManager(Semaphore segmentBuildSemaphore,
+      @Nullable ScheduledExecutorService sharedConsumerExecutor) {
     _segmentBuildSemaphore = segmentBuildSemaphore;
+    _sharedConsumerExecutor = sharedConsumerExecutor;
   }
 
   @Override
@@ -158,11 +192,41 @@ public class RealtimeTableDataManager extends BaseTableDataManager {
     if (isUpsertEnabled()) {
       Schema schema = ZKMetadataProvider.getTableSchema(_propertyStore, _tableNameWithType);
       Preconditions.checkState(schema != null, "Failed to find schema for table: %s", _tableNameWithType);
-      _tableUpsertMetadataManager = new TableUpsertMetadataManager(_tableNameWithType, _serverMetrics);
+      // NOTE: The memory-mapped files for the off-heap upsert metadata are put under the consumer directory so that
+      //       they are cleaned up on restart.
+      _tableUpsertMetadataManager = new TableUpsertMetadataManager(_tableNameWithType, _serverMetrics,
+          tableConfig.getUpsertConfig().isOffHeapPrimaryKeyIndex(), consumerDir);
       _primaryKeyColumns = schema.getPrimaryKeyColumns();
       Preconditions.checkState(!CollectionUtils.isEmpty(_primaryKeyColumns),
           "Primary key columns must be configured for upsert");
       _timeColumnName = tableConfig.getValidationConfig().getTimeColumnName();
+      _enableValidDocIdsSnapshot = tableConfig.getUpsertConfig().isEnableValidDocIdsSnapshot();
+    }
+
+    if (tableConfig.getIndexingConfig().isRealtimeSharedConsumption()) {
+      if (_sharedConsumerExecutor != null) {
+        _logger.info("Consuming on the consumer threads shared by the server");
+        _consumeOnSharedExecutor = true;
+      } else {
+        _logger.warn("Shared consumption is enabled in the table config but not on the server, consuming with one "
+            + "thread per partition");
+      }
+    }
+    int numDecodeThreads = tableConfig.getIndexingConfig().getRealtimeDecodeThreads();
+    if (numDecodeThreads > 1) {
+      _logger.info("Decoding consumed messages with {} threads", numDecodeThreads);
+      _decodeExecutor =
+          Executors.newFixedThreadPool(numDecodeThreads, new NamedThreadFactory(_tableNameWithType + "-decoder"));
+    }
+    int maxPipelinedSegmentBuilds = tableConfig.getIndexingConfig().getRealtimeMaxPipelinedSegmentBuilds();
+    if (maxPipelinedSegmentBuilds > 0) {
+      _logger.info("Pipelining segment commit with at most {} outstanding segment builds", maxPipelinedSegmentBuilds);
+      _pipelinedSegmentBuildExecutor = Executors
+          .newFixedThreadPool(maxPipelinedSegmentBuilds, new NamedThreadFactory(_tableNameWithType + "-segment-build"));
+      _pipelinedSegmentBuildPermits = new Semaphore(maxPipelinedSegmentBuilds);
+      long maxPrefetchedBytesPerPartition = tableConfig.getIndexingConfig().getRealtimeMaxPrefetchedBytesPerPartition();
+      _maxPrefetchedBytesPerPartition = maxPrefetchedBytesPerPartition > 0 ? maxPrefetchedBytesPerPartition
+          : DEFAULT_MAX_PREFETCHED_BYTES_PER_PARTITION;
     }
 
     if (consumerDir.exists()) {
@@ -189,12 +253,25 @@ public class RealtimeTableDataManager extends BaseTableDataManager {
   @Override
   protected void doShutdown() {
     _segmentAsyncExecutorService.shutdown();
+    if (_enableValidDocIdsSnapshot) {
+      persistValidDocIdsSnapshots();
+    }
     for (SegmentDataManager segmentDataManager : _segmentDataManagerMap.values()) {
       segmentDataManager.destroy();
     }
+    if (_decodeExecutor != null) {
+      _decodeExecutor.shutdownNow();
+    }
+    if (_pipelinedSegmentBuildExecutor != null) {
+      _pipelinedSegmentBuildExecutor.shutdownNow();
+    }
+    _partitionIdToPrefetchedMessagesMap.clear();
     if (_leaseExtender != null) {
       _leaseExtender.shutDown();
     }
+    if (_tableUpsertMetadataManager != null) {
+      _tableUpsertMetadataManager.close();
+    }
   }
 
   public RealtimeSegmentStatsHistory getStatsHistory() {
@@ -205,6 +282,91 @@ public class RealtimeTableDataManager extends BaseTableDataManager {
     return _segmentBuildSemaphore;
   }
 
+  /**
+   * Returns the consumer executor shared by the server if the table consumes on it, or {@code null} if each consuming
+   * segment should consume with its own thread.
+   */
+  @Nullable
+  public ScheduledExecutorService getSharedConsumerExecutor() {
+    return _consumeOnSharedExecutor ? _sharedConsumerExecutor : null;
+  }
+
+  @Nullable
+  public ExecutorService getDecodeExecutor() {
+    return _decodeExecutor;
+  }
+
+  /**
+   * Tries to acquire a permit to build and commit a completed segment on the pipelined segment build executor. Returns
+   * {@code false} if pipelined segment commit is disabled, or the max number of outstanding segment builds is reached,
+   * in which case the segment should be built and committed on the consumer thread. The permit should be released once
+   * the segment is built.
+   */
+  public boolean tryAcquirePipelinedSegmentBuild() {
+    return _pipelinedSegmentBuildPermits != null && _pipelinedSegmentBuildPermits.tryAcquire();
+  }
+
+  public void releasePipelinedSegmentBuild() {
+    _pipelinedSegmentBuildPermits.release();
+  }
+
+  public ExecutorService getPipelinedSegmentBuildExecutor() {
+    return _pipelinedSegmentBuildExecutor;
+  }
+
+  /**
+   * Returns the max size in bytes of the messages each partition can prefetch while its completed segment is built and
+   * committed on the pipelined segment build executor.
+   */
+  public long getMaxPrefetchedBytesPerPartition() {
+    return _maxPrefetchedBytesPerPartition;
+  }
+
+  /**
+   * Hands off the messages prefetched by a committed segment to the next consuming segment of the partition.
+   * NOTE: This method should be called before releasing the partition consumer semaphore so that the next consuming
+   *       segment can pick up the messages when it is created.
+   */
+  public void addPrefetchedMessages(int partitionId, PrefetchedMessages prefetchedMessages) {
+    _partitionIdToPrefetchedMessagesMap.put(partitionId, prefetchedMessages);
+  }
+
+  /**
+   * Takes the messages prefetched for the given partition if they start from the given offset, or returns
+   * {@code null} otherwise. The prefetched messages are removed in both cases.
+   */
+  @Nullable
+  public PrefetchedMessages takePrefetchedMessages(int partitionId, StreamPartitionMsgOffset startOffset) {
+    PrefetchedMessages prefetchedMessages = _partitionIdToPrefetchedMessagesMap.remove(partitionId);
+    if (prefetchedMessages != null && prefetchedMessages.getStartOffset().compareTo(startOffset) == 0) {
+      return prefetchedMessages;
+    } else {
+      return null;
+    }
+  }
+
+  /**
+   * Drops the messages prefetched for the partition of the given segment if they are prefetched by the segment or an
+   * earlier segment of the partition, so that they are not held in memory once the partition moves off the server, or
+   * the segment is taken OFFLINE or DROPPED before the next consuming segment takes them.
+   */
+  private void dropPrefetchedMessages(String segmentName) {
+    if (!SegmentName.isLowLevelConsumerSegmentName(segmentName)) {
+      return;
+    }
+    LLCSegmentName llcSegmentName = new LLCSegmentName(segmentName);
+    _partitionIdToPrefetchedMessagesMap.computeIfPresent(llcSegmentName.getPartitionId(), (k, prefetchedMessages) -> {
+      if (new LLCSegmentName(prefetchedMessages.getSegmentName()).getSequenceNumber() <= llcSegmentName
+          .getSequenceNumber()) {
+        _logger.info("Dropping {} messages prefetched by segment: {} on removal of segment: {}",
+            prefetchedMessages.getNumMessages(), prefetchedMessages.getSegmentName(), segmentName);
+        return null;
+      } else {
+        return prefetchedMessages;
+      }
+    });
+  }
+
   public String getConsumerDir() {
     String consumerDirPath = _tableDataManagerConfig.getConsumerDir();
     File consumerDir;
@@ -328,19 +490,152 @@ public class RealtimeTableDataManager extends BaseTableDataManager {
     super.addSegment(immutableSegment);
   }
 
+  @Override
+  public void removeSegment(String segmentName) {
+    super.removeSegment(segmentName);
+    dropPrefetchedMessages(segmentName);
+  }
+
   private void handleUpsert(ImmutableSegmentImpl immutableSegment) {
-    Map<String, PinotSegmentColumnReader> columnToReaderMap = new HashMap<>();
-    for (String primaryKeyColumn : _primaryKeyColumns) {
-      columnToReaderMap.put(primaryKeyColumn, new PinotSegmentColumnReader(immutableSegment, primaryKeyColumn));
-    }
-    columnToReaderMap.put(_timeColumnName, new PinotSegmentColumnReader(immutableSegment, _timeColumnName));
-    int numTotalDocs = immutableSegment.getSegmentMetadata().getTotalDocs();
     String segmentName = immutableSegment.getSegmentName();
-    int partitionId = new LLCSegmentName(immutableSegment.getSegmentName()).getPartitionId();
+    int partitionId = new LLCSegmentName(segmentName).getPartitionId();
     PartitionUpsertMetadataManager partitionUpsertMetadataManager =
         _tableUpsertMetadataManager.getOrCreatePartitionManager(partitionId);
-    int numPrimaryKeyColumns = _primaryKeyColumns.size();
-    Iterator<RecordInfo> recordInfoIterator = new Iterator<RecordInfo>() {
+    SegmentMetadataImpl segmentMetadata = immutableSegment.getSegmentMetadata();
+    File indexDir = segmentMetadata.getIndexDir();
+    Long crc = getCrc(segmentMetadata);
+
+    // The snapshots are only used when the segment directory and the segment CRC are available
+    ThreadSafeMutableRoaringBitmap validDocIds;
+    if (indexDir == null || crc == null) {
+      validDocIds = partitionUpsertMetadataManager
+          .addSegment(segmentName, getRecordInfoIterator(immutableSegment, getAllDocIdIterator(segmentMetadata)));
+    } else {
+      MutableRoaringBitmap snapshotValidDocIds =
+          _enableValidDocIdsSnapshot ? ValidDocIdsSnapshot.loadAndDelete(indexDir, crc) : null;
+      if (snapshotValidDocIds != null) {
+        validDocIds = addSegmentWithValidDocIdsSnapshot(immutableSegment, partitionUpsertMetadataManager, indexDir, crc,
+            snapshotValidDocIds);
+      } else if (partitionUpsertMetadataManager.isOffHeap()) {
+        validDocIds = addSegmentWithPrimaryKeySnapshot(immutableSegment, partitionUpsertMetadataManager, indexDir, crc);
+      } else {
+        validDocIds = partitionUpsertMetadataManager
+            .addSegment(segmentName, getRecordInfoIterator(immutableSegment, getAllDocIdIterator(segmentMetadata)));
+      }
+    }
+    immutableSegment.enableUpsert(partitionUpsertMetadataManager, validDocIds, _primaryKeyColumns);
+  }
+
+  /**
+   * Adds the segment to the upsert metadata with only the valid docs from the valid doc ids snapshot persisted on the
+   * last graceful shutdown. The invalid docs are skipped because they have already been replaced by other records.
+   */
+  private ThreadSafeMutableRoaringBitmap addSegmentWithValidDocIdsSnapshot(ImmutableSegmentImpl immutableSegment,
+      PartitionUpsertMetadataManager partitionUpsertMetadataManager, File indexDir, long crc,
+      MutableRoaringBitmap snapshotValidDocIds) {
+    String segmentName = immutableSegment.getSegmentName();
+    int numTotalDocs = immutableSegment.getSegmentMetadata().getTotalDocs();
+    _logger.info("Adding upsert metadata for segment: {} with {} valid docs out of {} docs from the valid doc ids "
+        + "snapshot", segmentName, snapshotValidDocIds.getCardinality(), numTotalDocs);
+    if (partitionUpsertMetadataManager.isOffHeap()) {
+      PrimaryKeySnapshot primaryKeySnapshot = PrimaryKeySnapshot.load(indexDir, crc, numTotalDocs);
+      if (primaryKeySnapshot != null) {
+        try (PrimaryKeySnapshot snapshot = primaryKeySnapshot) {
+          return partitionUpsertMetadataManager.addSegment(segmentName, snapshot.iterator(snapshotValidDocIds));
+        } catch (IOException e) {
+          throw new RuntimeException("Failed to close the primary key snapshot for segment: " + segmentName, e);
+        }
+      }
+    }
+    return partitionUpsertMetadataManager
+        .addSegment(segmentName, getRecordInfoIterator(immutableSegment, snapshotValidDocIds.getIntIterator()));
+  }
+
+  /**
+   * Adds the segment to the off-heap upsert metadata from the primary key snapshot inside the segment directory if it
+   * is available, or from the segment and then persists the primary key snapshot for the next load.
+   */
+  private ThreadSafeMutableRoaringBitmap addSegmentWithPrimaryKeySnapshot(ImmutableSegmentImpl immutableSegment,
+      PartitionUpsertMetadataManager partitionUpsertMetadataManager, File indexDir, long crc) {
+    String segmentName = immutableSegment.getSegmentName();
+    SegmentMetadataImpl segmentMetadata = immutableSegment.getSegmentMetadata();
+    int numTotalDocs = segmentMetadata.getTotalDocs();
+
+    PrimaryKeySnapshot primaryKeySnapshot = PrimaryKeySnapshot.load(indexDir, crc, numTotalDocs);
+    if (primaryKeySnapshot != null) {
+      _logger.info("Adding upsert metadata for segment: {} from the primary key snapshot", segmentName);
+      try (PrimaryKeySnapshot snapshot = primaryKeySnapshot) {
+        return partitionUpsertMetadataManager.addSegment(segmentName, snapshot.iterator());
+      } catch (IOException e) {
+        throw new RuntimeException("Failed to close the primary key snapshot for segment: " + segmentName, e);
+      }
+    }
+
+    Iterator<RecordInfo> recordInfoIterator =
+        getRecordInfoIterator(immutableSegment, getAllDocIdIterator(segmentMetadata));
+    try (PrimaryKeySnapshot.Writer snapshotWriter = new PrimaryKeySnapshot.Writer(indexDir, crc, numTotalDocs)) {
+      return partitionUpsertMetadataManager.addSegment(segmentName, new Iterator<RecordInfo>() {
+        @Override
+        public boolean hasNext() {
+          return recordInfoIterator.hasNext();
+        }
+
+        @Override
+        public RecordInfo next() {
+          RecordInfo recordInfo = recordInfoIterator.next();
+          try {
+            snapshotWriter.add(recordInfo.getPrimaryKeyHash(), recordInfo.getTimestamp());
+          } catch (IOException e) {
+            throw new RuntimeException("Failed to write the primary key snapshot for segment: " + segmentName, e);
+          }
+          return recordInfo;
+        }
+      });
+    } catch (IOException e) {
+      throw new RuntimeException("Failed to write the primary key snapshot for segment: " + segmentName, e);
+    }
+  }
+
+  /**
+   * Persists the valid doc ids snapshots for all the immutable segments. Should be called on graceful shutdown only,
+   * where the consuming segments will be re-consumed on the next start.
+   */
+  private void persistValidDocIdsSnapshots() {
+    int numSnapshotsPersisted = 0;
+    for (SegmentDataManager segmentDataManager : _segmentDataManagerMap.values()) {
+      IndexSegment segment = segmentDataManager.getSegment();
+      if (!(segment instanceof ImmutableSegmentImpl) || segment.getValidDocIndex() == null) {
+        continue;
+      }
+      SegmentMetadataImpl segmentMetadata = ((ImmutableSegmentImpl) segment).getSegmentMetadata();
+      File indexDir = segmentMetadata.getIndexDir();
+      Long crc = getCrc(segmentMetadata);
+      if (indexDir == null || crc == null) {
+        continue;
+      }
+      try {
+        ValidDocIdsSnapshot.persist(indexDir, crc, segment.getValidDocIndex().getValidDocBitmap());
+        numSnapshotsPersisted++;
+      } catch (Exception e) {
+        _logger.warn("Failed to persist valid doc ids snapshot for segment: {}", segment.getSegmentName(), e);
+      }
+    }
+    _logger.info("Persisted {} valid doc ids snapshots for table: {}", numSnapshotsPersisted, _tableNameWithType);
+  }
+
+  @Nullable
+  private Long getCrc(SegmentMetadataImpl segmentMetadata) {
+    try {
+      return Long.parseLong(segmentMetadata.getCrc());
+    } catch (Exception e) {
+      _logger.warn("Failed to parse CRC for segment: {}, skipping the upsert snapshots", segmentMetadata.getName());
+      return null;
+    }
+  }
+
+  private static IntIterator getAllDocIdIterator(SegmentMetadataImpl segmentMetadata) {
+    int numTotalDocs = segmentMetadata.getTotalDocs();
+    return new IntIterator() {
       private int _docId = 0;
 
       @Override
@@ -348,26 +643,53 @@ public class RealtimeTableDataManager extends BaseTableDataManager {
         return _docId < numTotalDocs;
       }
 
+      @Override
+      public int next() {
+        return _docId++;
+      }
+
+      @Override
+      public IntIterator clone() {
+        throw new UnsupportedOperationException();
+      }
+    };
+  }
+
+  /**
+   * Returns an iterator of the record infos for the given doc ids, which must be in ascending order.
+   */
+  private Iterator<RecordInfo> getRecordInfoIterator(ImmutableSegmentImpl immutableSegment,
+      IntIterator docIdIterator) {
+    Map<String, PinotSegmentColumnReader> columnToReaderMap = new HashMap<>();
+    for (String primaryKeyColumn : _primaryKeyColumns) {
+      columnToReaderMap.put(primaryKeyColumn, new PinotSegmentColumnReader(immutableSegment, primaryKeyColumn));
+    }
+    columnToReaderMap.put(_timeColumnName, new PinotSegmentColumnReader(immutableSegment, _timeColumnName));
+    int numPrimaryKeyColumns = _primaryKeyColumns.size();
+    return new Iterator<RecordInfo>() {
+      @Override
+      public boolean hasNext() {
+        return docIdIterator.hasNext();
+      }
+
       @Override
       public RecordInfo next() {
+        int docId = docIdIterator.next();
         Object[] values = new Object[numPrimaryKeyColumns];
         for (int i = 0; i < numPrimaryKeyColumns; i++) {
-          Object value = columnToReaderMap.get(_primaryKeyColumns.get(i)).getValue(_docId);
+          Object value = columnToReaderMap.get(_primaryKeyColumns.get(i)).getValue(docId);
           if (value instanceof byte[]) {
             value = new ByteArray((byte[]) value);
           }
           values[i] = value;
         }
         PrimaryKey primaryKey = new PrimaryKey(values);
-        Object timeValue = columnToReaderMap.get(_timeColumnName).getValue(_docId);
+        Object timeValue = columnToReaderMap.get(_timeColumnName).getValue(docId);
         Preconditions.checkArgument(timeValue instanceof Comparable, "time column shall be comparable");
         long timestamp = IngestionUtils.extractTimeValue((Comparable) timeValue);
-        return new RecordInfo(primaryKey, _docId++, timestamp);
+        return new RecordInfo(primaryKey, docId, timestamp);
       }
     };
-    ThreadSafeMutableRoaringBitmap validDocIds =
-        partitionUpsertMetadataManager.addSegment(segmentName, recordInfoIterator);
-    immutableSegment.enableUpsert(partitionUpsertMetadataManager, validDocIds);
   }
 
   public void downloadAndReplaceSegment(String segmentName, LLCRealtimeSegmentZKMetadata llcSegmentMetadata,
@@ -98,6 +98,11 @@ public class SegmentGeneratorConfig {
   private boolean _onHeap = false;
   private boolean _skipTimeValueCheck = false;
   private boolean _nullHandlingEnabled = false;
+  // Number of threads to create the column indexes (1 means creating the column indexes on the caller thread)
+  // NOTE: This only applies to the indexes created with the segment (dictionary, forward index, inverted index, text
+  //       index, null value vector). Bloom filters and range indexes are created when the segment is loaded (see
+  //       SegmentPreProcessor), which is still single-threaded.
+  private int _indexCreationParallelism = 1;
 
   // constructed from FieldConfig
   private Map<String, Map<String, String>> _columnProperties = new HashMap<>();
@@ -543,6 +548,16 @@ public class SegmentGeneratorConfig {
     _onHeap = onHeap;
   }
 
+  public int getIndexCreationParallelism() {
+    return _indexCreationParallelism;
+  }
+
+  public void setIndexCreationParallelism(int indexCreationParallelism) {
+    Preconditions.checkArgument(indexCreationParallelism > 0, "Invalid index creation parallelism: %s",
+        indexCreationParallelism);
+    _indexCreationParallelism = indexCreationParallelism;
+  }
+
   public boolean isSkipTimeValueCheck() {
     return _skipTimeValueCheck;
   }
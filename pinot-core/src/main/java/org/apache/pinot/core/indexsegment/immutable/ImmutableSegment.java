@@ -56,4 +56,18 @@ public interface ImmutableSegment extends IndexSegment {
    * @return Size of the segment in bytes
    */
   long getSegmentSizeBytes();
+
+  /**
+   * Marks the start of a query on the segment. The index readers accessed by the query stay valid until
+   * {@link #releaseAfterQuery()} is invoked, even if the segment unloads them in the meantime (e.g. cold tier segment
+   * evicting the downloaded indexes).
+   */
+  default void acquireForQuery() {
+  }
+
+  /**
+   * Marks the end of a query on the segment started with {@link #acquireForQuery()}.
+   */
+  default void releaseAfterQuery() {
+  }
 }
@@ -20,13 +20,17 @@ package org.apache.pinot.core.indexsegment.immutable;
 
 import com.google.common.base.Preconditions;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import javax.annotation.Nullable;
 import org.apache.pinot.core.common.DataSource;
+import org.apache.pinot.core.data.readers.PinotSegmentColumnReader;
 import org.apache.pinot.core.realtime.impl.ThreadSafeMutableRoaringBitmap;
+import org.apache.pinot.core.segment.index.column.ColdColumnIndexContainer;
 import org.apache.pinot.core.segment.index.column.ColumnIndexContainer;
+import org.apache.pinot.core.segment.index.datasource.ColdDataSource;
 import org.apache.pinot.core.segment.index.datasource.ImmutableDataSource;
 import org.apache.pinot.core.segment.index.metadata.ColumnMetadata;
 import org.apache.pinot.core.segment.index.metadata.SegmentMetadataImpl;
@@ -35,11 +39,14 @@ import org.apache.pinot.core.segment.index.readers.ForwardIndexReader;
 import org.apache.pinot.core.segment.index.readers.InvertedIndexReader;
 import org.apache.pinot.core.segment.index.readers.ValidDocIndexReader;
 import org.apache.pinot.core.segment.index.readers.ValidDocIndexReaderImpl;
+import org.apache.pinot.core.segment.store.ColdTierSegmentDirectory;
 import org.apache.pinot.core.segment.store.SegmentDirectory;
 import org.apache.pinot.core.startree.v2.StarTreeV2;
 import org.apache.pinot.core.startree.v2.store.StarTreeIndexContainer;
 import org.apache.pinot.core.upsert.PartitionUpsertMetadataManager;
 import org.apache.pinot.spi.data.readers.GenericRow;
+import org.apache.pinot.spi.data.readers.PrimaryKey;
+import org.apache.pinot.spi.utils.ByteArray;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -56,6 +63,7 @@ public class ImmutableSegmentImpl implements ImmutableSegment {
   private PartitionUpsertMetadataManager _partitionUpsertMetadataManager;
   private ThreadSafeMutableRoaringBitmap _validDocIds;
   private ValidDocIndexReader _validDocIndex;
+  private List<String> _primaryKeyColumns;
 
   public ImmutableSegmentImpl(SegmentDirectory segmentDirectory, SegmentMetadataImpl segmentMetadata,
       Map<String, ColumnIndexContainer> columnIndexContainerMap,
@@ -71,9 +79,19 @@ public class ImmutableSegmentImpl implements ImmutableSegment {
    */
   public void enableUpsert(PartitionUpsertMetadataManager partitionUpsertMetadataManager,
       ThreadSafeMutableRoaringBitmap validDocIds) {
+    enableUpsert(partitionUpsertMetadataManager, validDocIds, null);
+  }
+
+  /**
+   * Enables upsert for this segment. It should be called before the segment getting queried. The primary key columns
+   * are used to look up the upsert metadata of the valid docs when the segment is destroyed.
+   */
+  public void enableUpsert(PartitionUpsertMetadataManager partitionUpsertMetadataManager,
+      ThreadSafeMutableRoaringBitmap validDocIds, @Nullable List<String> primaryKeyColumns) {
     _partitionUpsertMetadataManager = partitionUpsertMetadataManager;
     _validDocIds = validDocIds;
     _validDocIndex = new ValidDocIndexReaderImpl(validDocIds);
+    _primaryKeyColumns = primaryKeyColumns;
   }
 
   @Override
@@ -115,7 +133,11 @@ public class ImmutableSegmentImpl implements ImmutableSegment {
     ColumnMetadata columnMetadata = _segmentMetadata.getColumnMetadataFor(column);
     Preconditions.checkNotNull(columnMetadata,
         "ColumnMetadata for " + column + " should not be null. " + "Potentially invalid column name specified.");
-    return new ImmutableDataSource(columnMetadata, _indexContainerMap.get(column));
+    ColumnIndexContainer columnIndexContainer = _indexContainerMap.get(column);
+    if (columnIndexContainer instanceof ColdColumnIndexContainer) {
+      return new ColdDataSource(columnMetadata, (ColdColumnIndexContainer) columnIndexContainer);
+    }
+    return new ImmutableDataSource(columnMetadata, columnIndexContainer);
   }
 
   @Override
@@ -128,10 +150,28 @@ public class ImmutableSegmentImpl implements ImmutableSegment {
     return _segmentMetadata.getSchema().getPhysicalColumnNames();
   }
 
+  @Override
+  public void acquireForQuery() {
+    if (_segmentDirectory instanceof ColdTierSegmentDirectory) {
+      ((ColdTierSegmentDirectory) _segmentDirectory).acquireForQuery();
+    }
+  }
+
+  @Override
+  public void releaseAfterQuery() {
+    if (_segmentDirectory instanceof ColdTierSegmentDirectory) {
+      ((ColdTierSegmentDirectory) _segmentDirectory).releaseAfterQuery();
+    }
+  }
+
   @Override
   public void destroy() {
     String segmentName = getSegmentName();
     LOGGER.info("Trying to destroy segment : {}", segmentName);
+    // NOTE: Remove the upsert metadata before closing the indexes because the primary keys are read from the segment
+    if (_partitionUpsertMetadataManager != null) {
+      removeUpsertMetadata(segmentName);
+    }
     for (Map.Entry<String, ColumnIndexContainer> entry : _indexContainerMap.entrySet()) {
       try {
         entry.getValue().close();
@@ -151,8 +191,50 @@ public class ImmutableSegmentImpl implements ImmutableSegment {
         LOGGER.error("Failed to close star-tree. Continuing with error.", e);
       }
     }
-    if (_partitionUpsertMetadataManager != null) {
+  }
+
+  private void removeUpsertMetadata(String segmentName) {
+    if (_primaryKeyColumns == null || !_partitionUpsertMetadataManager.isOffHeap()) {
+      _partitionUpsertMetadataManager.removeSegment(segmentName, _validDocIds);
+      return;
+    }
+    int numPrimaryKeyColumns = _primaryKeyColumns.size();
+    List<PinotSegmentColumnReader> primaryKeyReaders = new ArrayList<>(numPrimaryKeyColumns);
+    try {
+      for (String primaryKeyColumn : _primaryKeyColumns) {
+        primaryKeyReaders.add(new PinotSegmentColumnReader(this, primaryKeyColumn));
+      }
+    } catch (Exception e) {
+      LOGGER.warn("Failed to create primary key readers for segment: {}, removing upsert metadata without them",
+          segmentName, e);
+      closePrimaryKeyReaders(segmentName, primaryKeyReaders);
       _partitionUpsertMetadataManager.removeSegment(segmentName, _validDocIds);
+      return;
+    }
+    try {
+      _partitionUpsertMetadataManager.removeSegment(segmentName, _validDocIds, docId -> {
+        Object[] values = new Object[numPrimaryKeyColumns];
+        for (int i = 0; i < numPrimaryKeyColumns; i++) {
+          Object value = primaryKeyReaders.get(i).getValue(docId);
+          if (value instanceof byte[]) {
+            value = new ByteArray((byte[]) value);
+          }
+          values[i] = value;
+        }
+        return new PrimaryKey(values);
+      });
+    } finally {
+      closePrimaryKeyReaders(segmentName, primaryKeyReaders);
+    }
+  }
+
+  private static void closePrimaryKeyReaders(String segmentName, List<PinotSegmentColumnReader> primaryKeyReaders) {
+    for (PinotSegmentColumnReader primaryKeyReader : primaryKeyReaders) {
+      try {
+        primaryKeyReader.close();
+      } catch (IOException e) {
+        LOGGER.error("Failed to close primary key reader for segment: {}. Continuing with error.", segmentName, e);
+      }
     }
   }
 
@@ -20,11 +20,15 @@ package org.apache.pinot.core.indexsegment.immutable;
 
 import com.google.common.base.Preconditions;
 import java.io.File;
+import java.net.URI;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import javax.annotation.Nullable;
 import org.apache.pinot.common.segment.ReadMode;
 import org.apache.pinot.core.indexsegment.generator.SegmentVersion;
+import org.apache.pinot.core.segment.index.column.ColdColumnIndexContainer;
 import org.apache.pinot.core.segment.index.column.ColumnIndexContainer;
 import org.apache.pinot.core.segment.index.column.PhysicalColumnIndexContainer;
 import org.apache.pinot.core.segment.index.converter.SegmentFormatConverter;
@@ -33,12 +37,14 @@ import org.apache.pinot.core.segment.index.loader.IndexLoadingConfig;
 import org.apache.pinot.core.segment.index.loader.SegmentPreProcessor;
 import org.apache.pinot.core.segment.index.metadata.ColumnMetadata;
 import org.apache.pinot.core.segment.index.metadata.SegmentMetadataImpl;
+import org.apache.pinot.core.segment.store.ColdTierSegmentDirectory;
 import org.apache.pinot.core.segment.store.SegmentDirectory;
 import org.apache.pinot.core.segment.store.SegmentDirectoryPaths;
 import org.apache.pinot.core.segment.virtualcolumn.VirtualColumnContext;
 import org.apache.pinot.core.segment.virtualcolumn.VirtualColumnProvider;
 import org.apache.pinot.core.segment.virtualcolumn.VirtualColumnProviderFactory;
 import org.apache.pinot.core.startree.v2.store.StarTreeIndexContainer;
+import org.apache.pinot.spi.config.table.StarTreeIndexConfig;
 import org.apache.pinot.spi.data.FieldSpec;
 import org.apache.pinot.spi.data.Schema;
 import org.slf4j.Logger;
@@ -74,9 +80,121 @@ public class ImmutableSegmentLoader {
     Preconditions
         .checkArgument(indexDir.isDirectory(), "Index directory: %s does not exist or is not a directory", indexDir);
 
+    String segmentName = indexDir.getName();
+    boolean coldTierSupported = isColdTierSupported(indexLoadingConfig);
+    if (ColdTierSegmentDirectory.isColdTierSegment(indexDir)) {
+      // NOTE: Throw exception so that the segment is downloaded again as a regular segment.
+      Preconditions.checkState(coldTierSupported,
+          "Segment: %s only has the resident files of the cold tier, but cannot be served from the cold tier",
+          segmentName);
+      return loadFromColdTier(indexDir, indexLoadingConfig);
+    }
+
+    convertAndPreprocess(indexDir, indexLoadingConfig, schema);
+
+    // Load the metadata again since converter and pre-processor may have changed it
+    SegmentMetadataImpl segmentMetadata = new SegmentMetadataImpl(indexDir);
+
+    // Move the segment to the cold tier if supported
+    if (coldTierSupported && segmentMetadata.getStarTreeV2MetadataList() == null) {
+      URI remoteDir = getColdTierSegmentDir(indexLoadingConfig, segmentMetadata);
+      if (!ColdTierSegmentDirectory.isUploaded(remoteDir)) {
+        ColdTierSegmentDirectory.upload(indexDir, segmentMetadata, remoteDir);
+      }
+      ColdTierSegmentDirectory.downloadResidentFiles(remoteDir, indexDir);
+      return loadFromColdTier(indexDir, indexLoadingConfig);
+    }
+
+    // Load the segment
+    ReadMode readMode = indexLoadingConfig.getReadMode();
+    SegmentDirectory segmentDirectory = SegmentDirectory.createFromLocalFS(indexDir, segmentMetadata, readMode);
+    SegmentDirectory.Reader segmentReader = segmentDirectory.createReader();
+    Map<String, ColumnIndexContainer> indexContainerMap = new HashMap<>();
+    for (Map.Entry<String, ColumnMetadata> entry : segmentMetadata.getColumnMetadataMap().entrySet()) {
+      indexContainerMap.put(entry.getKey(),
+          new PhysicalColumnIndexContainer(segmentReader, entry.getValue(), indexLoadingConfig, indexDir));
+    }
+
+    // Instantiate virtual columns
+    addVirtualColumns(segmentName, segmentMetadata, indexContainerMap);
+
+    // Load star-tree index if it exists
+    StarTreeIndexContainer starTreeIndexContainer = null;
+    if (segmentMetadata.getStarTreeV2MetadataList() != null) {
+      starTreeIndexContainer =
+          new StarTreeIndexContainer(SegmentDirectoryPaths.findSegmentDirectory(indexDir), segmentMetadata,
+              indexContainerMap, readMode);
+    }
+
+    ImmutableSegmentImpl segment =
+        new ImmutableSegmentImpl(segmentDirectory, segmentMetadata, indexContainerMap, starTreeIndexContainer);
+    LOGGER.info("Successfully loaded segment {} with readMode: {}", segmentName, readMode);
+    return segment;
+  }
+
+  /**
+   * Returns whether the segments can be served from the cold tier with the given index loading config, i.e. the table
+   * is on the cold tier, and does not have text index or star-tree index configured, which are not supported on the
+   * cold tier. The segments with text index or star-tree index are served from the local disk as regular segments.
+   * <p>NOTE: The segments built with star-tree index are also served from the local disk, which can only be checked
+   *          after the segment is pre-processed.
+   */
+  private static boolean isColdTierSupported(IndexLoadingConfig indexLoadingConfig) {
+    if (indexLoadingConfig.getColdTierRemoteDir() == null || !indexLoadingConfig.getTextIndexColumns().isEmpty()) {
+      return false;
+    }
+    if (indexLoadingConfig.isEnableDynamicStarTreeCreation()) {
+      List<StarTreeIndexConfig> starTreeIndexConfigs = indexLoadingConfig.getStarTreeIndexConfigs();
+      return !indexLoadingConfig.isEnableDefaultStarTree() && (starTreeIndexConfigs == null || starTreeIndexConfigs
+          .isEmpty());
+    }
+    return true;
+  }
+
+  /**
+   * Loads the segment from the cold tier, where the local segment directory only contains the resident files of the
+   * cold tier segment. The remote directory is keyed by the segment CRC so that a refreshed segment does not read the
+   * index files of the previous version.
+   * <p>The columns are prefetched in the background when the column cache has room for them, so that the queries do not
+   * need to download them.
+   */
+  private static ImmutableSegment loadFromColdTier(File indexDir, IndexLoadingConfig indexLoadingConfig)
+      throws Exception {
+    String segmentName = indexDir.getName();
+    SegmentMetadataImpl segmentMetadata = new SegmentMetadataImpl(indexDir);
+    ReadMode readMode = indexLoadingConfig.getReadMode();
+    ColdTierSegmentDirectory segmentDirectory = SegmentDirectory
+        .createFromColdTier(indexDir, getColdTierSegmentDir(indexLoadingConfig, segmentMetadata), segmentMetadata,
+            readMode);
+    Map<String, ColumnIndexContainer> indexContainerMap = new HashMap<>();
+    List<ColdColumnIndexContainer> coldColumnIndexContainers = new ArrayList<>();
+    for (Map.Entry<String, ColumnMetadata> entry : segmentMetadata.getColumnMetadataMap().entrySet()) {
+      ColdColumnIndexContainer coldColumnIndexContainer =
+          new ColdColumnIndexContainer(segmentDirectory, entry.getValue(), indexLoadingConfig, indexDir);
+      indexContainerMap.put(entry.getKey(), coldColumnIndexContainer);
+      coldColumnIndexContainers.add(coldColumnIndexContainer);
+    }
+    addVirtualColumns(segmentName, segmentMetadata, indexContainerMap);
+
+    ImmutableSegmentImpl segment = new ImmutableSegmentImpl(segmentDirectory, segmentMetadata, indexContainerMap, null);
+    LOGGER.info("Successfully loaded segment {} from cold tier: {}", segmentName, segmentDirectory.getRemoteDir());
+    for (ColdColumnIndexContainer coldColumnIndexContainer : coldColumnIndexContainers) {
+      coldColumnIndexContainer.prefetch();
+    }
+    return segment;
+  }
+
+  private static URI getColdTierSegmentDir(IndexLoadingConfig indexLoadingConfig, SegmentMetadataImpl segmentMetadata) {
+    return URI.create(
+        indexLoadingConfig.getColdTierRemoteDir() + "/" + segmentMetadata.getName() + "/" + segmentMetadata.getCrc());
+  }
+
+  private static void convertAndPreprocess(File indexDir, IndexLoadingConfig indexLoadingConfig,
+      @Nullable Schema schema)
+      throws Exception {
+    String segmentName = indexDir.getName();
     // Convert segment version if necessary
     // NOTE: this step may modify the segment metadata
-    String segmentName = indexDir.getName();
     SegmentVersion segmentVersionToLoad = indexLoadingConfig.getSegmentVersion();
     if (segmentVersionToLoad != null && !SegmentDirectoryPaths.segmentDirectoryFor(indexDir, segmentVersionToLoad)
         .isDirectory()) {
@@ -98,21 +216,10 @@ public class ImmutableSegmentLoader {
     try (SegmentPreProcessor preProcessor = new SegmentPreProcessor(indexDir, indexLoadingConfig, schema)) {
       preProcessor.process();
     }
+  }
 
-    // Load the metadata again since converter and pre-processor may have changed it
-    SegmentMetadataImpl segmentMetadata = new SegmentMetadataImpl(indexDir);
-
-    // Load the segment
-    ReadMode readMode = indexLoadingConfig.getReadMode();
-    SegmentDirectory segmentDirectory = SegmentDirectory.createFromLocalFS(indexDir, segmentMetadata, readMode);
-    SegmentDirectory.Reader segmentReader = segmentDirectory.createReader();
-    Map<String, ColumnIndexContainer> indexContainerMap = new HashMap<>();
-    for (Map.Entry<String, ColumnMetadata> entry : segmentMetadata.getColumnMetadataMap().entrySet()) {
-      indexContainerMap.put(entry.getKey(),
-          new PhysicalColumnIndexContainer(segmentReader, entry.getValue(), indexLoadingConfig, indexDir));
-    }
-
-    // Instantiate virtual columns
+  private static void addVirtualColumns(String segmentName, SegmentMetadataImpl segmentMetadata,
+      Map<String, ColumnIndexContainer> indexContainerMap) {
     Schema segmentSchema = segmentMetadata.getSchema();
     VirtualColumnProviderFactory.addBuiltInVirtualColumnsToSegmentSchema(segmentSchema, segmentName);
     for (FieldSpec fieldSpec : segmentSchema.getAllFieldSpecs()) {
@@ -124,18 +231,5 @@ public class ImmutableSegmentLoader {
         segmentMetadata.getColumnMetadataMap().put(columnName, provider.buildMetadata(context));
       }
     }
-
-    // Load star-tree index if it exists
-    StarTreeIndexContainer starTreeIndexContainer = null;
-    if (segmentMetadata.getStarTreeV2MetadataList() != null) {
-      starTreeIndexContainer =
-          new StarTreeIndexContainer(SegmentDirectoryPaths.findSegmentDirectory(indexDir), segmentMetadata,
-              indexContainerMap, readMode);
-    }
-
-    ImmutableSegmentImpl segment =
-        new ImmutableSegmentImpl(segmentDirectory, segmentMetadata, indexContainerMap, starTreeIndexContainer);
-    LOGGER.info("Successfully loaded segment {} with readMode: {}", segmentName, readMode);
-    return segment;
   }
 }
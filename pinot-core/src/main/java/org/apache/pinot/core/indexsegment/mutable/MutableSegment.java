@@ -18,6 +18,7 @@
  */
 package org.apache.pinot.core.indexsegment.mutable;
 
+import java.util.List;
 import javax.annotation.Nullable;
 import org.apache.pinot.core.indexsegment.IndexSegment;
 import org.apache.pinot.core.upsert.PartitionUpsertMetadataManager;
@@ -37,6 +38,25 @@ public interface MutableSegment extends IndexSegment {
    */
   boolean index(GenericRow row, @Nullable RowMetadata rowMetadata);
 
+  /**
+   * Indexes a batch of records into the segment with optionally provided metadata for each record. The default
+   * implementation indexes the records one by one.
+   * <p>If a record cannot be indexed, the exception is thrown after indexing the records before it, and the records
+   * after it are not indexed. The caller can tell how many records are indexed from {@link #getNumDocsIndexed()}.
+   *
+   * @param rows Records represented as {@link GenericRow}s
+   * @param rowMetadataList the metadata associated with the messages, in the same order as the records
+   * @return Whether the segment can index more records after indexing the batch
+   */
+  default boolean index(List<GenericRow> rows, @Nullable List<RowMetadata> rowMetadataList) {
+    boolean canTakeMore = true;
+    int numRows = rows.size();
+    for (int i = 0; i < numRows; i++) {
+      canTakeMore = index(rows.get(i), rowMetadataList != null ? rowMetadataList.get(i) : null);
+    }
+    return canTakeMore;
+  }
+
   /**
    * Returns the number of records already indexed into the segment.
    *
@@ -474,6 +474,191 @@ public class MutableSegmentImpl implements MutableSegment {
     return canTakeMore;
   }
 
+  /**
+   * {@inheritDoc}
+   * <p>The records are indexed in two passes. The first pass goes column by column and resolves the value of each
+   * record into a dictionary id, or checks the raw value for no-dictionary columns. This is where a bad value fails.
+   * The dictionaries are the only state updated by the first pass, and indexing the same value again returns the same
+   * dictionary id. The second pass updates the forward indexes, inverted indexes, text indexes and null value vectors
+   * for the resolved records, and makes them queryable with a single update of the number of documents indexed.
+   * <p>If a value cannot be resolved, only the records before it are indexed, and then the exception is thrown. The
+   * records after it are left untouched so that they can be indexed again.
+   * <p>Falls back to indexing the records one by one when metrics aggregation is enabled (each record might be
+   * aggregated into an existing doc), or when the batch does not fit into the remaining capacity of the segment.
+   */
+  // NOTE: Okay for single-writer
+  @SuppressWarnings("NonAtomicOperationOnVolatileField")
+  @Override
+  public boolean index(List<GenericRow> rows, @Nullable List<RowMetadata> rowMetadataList) {
+    int numRows = rows.size();
+    int startDocId = _numDocsIndexed;
+    if (_aggregateMetrics || numRows == 0 || startDocId + numRows > _capacity) {
+      return MutableSegment.super.index(rows, rowMetadataList);
+    }
+
+    // Resolve the dictionary ids, partitions and text values for each column
+    int numColumns = _indexContainerMap.size();
+    IndexContainer[] indexContainers = new IndexContainer[numColumns];
+    Object[] dictIdsPerColumn = new Object[numColumns];
+    String[][] textValuesPerColumn = new String[numColumns][];
+    int[] partitions = null;
+    int numRowsResolved = numRows;
+    RuntimeException exception = null;
+    int columnIndex = 0;
+    for (Map.Entry<String, IndexContainer> entry : _indexContainerMap.entrySet()) {
+      String column = entry.getKey();
+      IndexContainer indexContainer = entry.getValue();
+      indexContainers[columnIndex] = indexContainer;
+      FieldSpec fieldSpec = indexContainer._fieldSpec;
+      MutableDictionary dictionary = indexContainer._dictionary;
+      boolean isSingleValue = fieldSpec.isSingleValueField();
+      boolean isPartitionColumn = column.equals(_partitionColumn);
+      int[] dictIds = null;
+      int[][] dictIdsMV = null;
+      if (isSingleValue) {
+        if (dictionary != null) {
+          dictIds = new int[numRowsResolved];
+          dictIdsPerColumn[columnIndex] = dictIds;
+        }
+      } else {
+        dictIdsMV = new int[numRowsResolved][];
+        dictIdsPerColumn[columnIndex] = dictIdsMV;
+      }
+      if (isPartitionColumn) {
+        partitions = new int[numRowsResolved];
+      }
+      String[] textValues = null;
+      if (indexContainer._textIndex != null) {
+        textValues = new String[numRowsResolved];
+        textValuesPerColumn[columnIndex] = textValues;
+      }
+      for (int i = 0; i < numRowsResolved; i++) {
+        Object value = rows.get(i).getValue(column);
+        try {
+          if (isSingleValue) {
+            if (dictIds != null) {
+              dictIds[i] = dictionary.index(value);
+            } else {
+              checkRawValue(fieldSpec, value);
+            }
+            if (isPartitionColumn) {
+              partitions[i] = _partitionFunction.getPartition(value);
+            }
+            if (textValues != null) {
+              textValues[i] = (String) value;
+            }
+          } else {
+            dictIdsMV[i] = dictionary.index((Object[]) value);
+          }
+        } catch (RuntimeException e) {
+          // Stop resolving at the bad record, only the records before it will be indexed
+          numRowsResolved = i;
+          exception = e;
+          break;
+        }
+      }
+      columnIndex++;
+    }
+
+    if (numRowsResolved > 0) {
+      // Update forward indexes, inverted indexes, text indexes and null value vectors
+      for (int i = 0; i < numColumns; i++) {
+        IndexContainer indexContainer = indexContainers[i];
+        FieldSpec fieldSpec = indexContainer._fieldSpec;
+        String column = fieldSpec.getName();
+        MutableDictionary dictionary = indexContainer._dictionary;
+        MutableForwardIndex forwardIndex = indexContainer._forwardIndex;
+        RealtimeInvertedIndexReader invertedIndex = indexContainer._invertedIndex;
+        if (fieldSpec.isSingleValueField()) {
+          // Single-value column
+          if (column.equals(_partitionColumn)) {
+            for (int j = 0; j < numRowsResolved; j++) {
+              addPartition(indexContainer, partitions[j], rows.get(j).getValue(column));
+            }
+          }
+          int[] dictIds = (int[]) dictIdsPerColumn[i];
+          for (int j = 0; j < numRowsResolved; j++) {
+            int docId = startDocId + j;
+            indexContainer._numValuesInfo.updateSVEntry();
+            if (dictIds != null) {
+              forwardIndex.setDictId(docId, dictIds[j]);
+              if (invertedIndex != null) {
+                invertedIndex.add(dictIds[j], docId);
+              }
+            } else {
+              addRawValue(indexContainer, docId, rows.get(j).getValue(column));
+            }
+          }
+        } else {
+          // Multi-value column (always dictionary-encoded)
+          int[][] dictIds = (int[][]) dictIdsPerColumn[i];
+          for (int j = 0; j < numRowsResolved; j++) {
+            int docId = startDocId + j;
+            indexContainer._numValuesInfo.updateMVEntry(dictIds[j].length);
+            forwardIndex.setDictIdMV(docId, dictIds[j]);
+            if (invertedIndex != null) {
+              for (int dictId : dictIds[j]) {
+                invertedIndex.add(dictId, docId);
+              }
+            }
+          }
+        }
+        if (dictionary != null) {
+          indexContainer._minValue = dictionary.getMinVal();
+          indexContainer._maxValue = dictionary.getMaxVal();
+        }
+        String[] textValues = textValuesPerColumn[i];
+        if (textValues != null) {
+          for (int j = 0; j < numRowsResolved; j++) {
+            indexContainer._textIndex.add(textValues[j]);
+          }
+        }
+        if (_nullHandlingEnabled) {
+          for (int j = 0; j < numRowsResolved; j++) {
+            if (rows.get(j).isNullValue(column)) {
+              indexContainer._nullValueVector.setNull(startDocId + j);
+            }
+          }
+        }
+      }
+
+      // Update number of documents indexed at last to make the resolved records queryable
+      _numDocsIndexed = startDocId + numRowsResolved;
+
+      if (isUpsertEnabled()) {
+        // NOTE: Same as indexing the records one by one, a record stays indexed when its upsert metadata cannot be
+        //       updated.
+        for (int i = 0; i < numRowsResolved; i++) {
+          try {
+            handleUpsert(rows.get(i), startDocId + i);
+          } catch (RuntimeException e) {
+            if (exception == null) {
+              exception = e;
+            } else {
+              exception.addSuppressed(e);
+            }
+          }
+        }
+      }
+
+      // Update last indexed time and latest ingestion time
+      _lastIndexedTimeMs = System.currentTimeMillis();
+      if (rowMetadataList != null) {
+        for (int i = 0; i < numRowsResolved; i++) {
+          RowMetadata rowMetadata = rowMetadataList.get(i);
+          if (rowMetadata != null) {
+            _latestIngestionTimeMs = Math.max(_latestIngestionTimeMs, rowMetadata.getIngestionTimeMs());
+          }
+        }
+      }
+    }
+
+    if (exception != null) {
+      throw exception;
+    }
+    return true;
+  }
+
   private boolean isUpsertEnabled() {
     return _upsertMode != UpsertConfig.Mode.NONE;
   }
@@ -519,13 +704,7 @@ public class MutableSegmentImpl implements MutableSegment {
 
         // Check partitions
         if (column.equals(_partitionColumn)) {
-          int partition = _partitionFunction.getPartition(value);
-          if (indexContainer._partitions.add(partition)) {
-            _logger.warn("Found new partition: {} from partition column: {}, value: {}", partition, column, value);
-            if (_serverMetrics != null) {
-              _serverMetrics.addMeteredTableValue(_tableNameWithType, ServerMeter.REALTIME_PARTITION_MISMATCH, 1);
-            }
-          }
+          checkPartition(indexContainer, value);
         }
 
         // Update numValues info
@@ -547,54 +726,7 @@ public class MutableSegmentImpl implements MutableSegment {
           }
         } else {
           // Single-value column with raw index
-
-          // Update forward index
-          DataType dataType = fieldSpec.getDataType();
-          switch (dataType) {
-            case INT:
-              forwardIndex.setInt(docId, (Integer) value);
-              break;
-            case LONG:
-              forwardIndex.setLong(docId, (Long) value);
-              break;
-            case FLOAT:
-              forwardIndex.setFloat(docId, (Float) value);
-              break;
-            case DOUBLE:
-              forwardIndex.setDouble(docId, (Double) value);
-              break;
-            case STRING:
-              forwardIndex.setString(docId, (String) value);
-              break;
-            case BYTES:
-              forwardIndex.setBytes(docId, (byte[]) value);
-              break;
-            default:
-              throw new UnsupportedOperationException(
-                  "Unsupported data type: " + dataType + " for no-dictionary column: " + column);
-          }
-
-          // Update min/max value from raw value
-          // NOTE: Skip updating min/max value for aggregated metrics because the value will change over time.
-          if (!_aggregateMetrics || fieldSpec.getFieldType() != FieldSpec.FieldType.METRIC) {
-            Comparable comparable;
-            if (dataType == DataType.BYTES) {
-              comparable = new ByteArray((byte[]) value);
-            } else {
-              comparable = (Comparable) value;
-            }
-            if (indexContainer._minValue == null) {
-              indexContainer._minValue = comparable;
-              indexContainer._maxValue = comparable;
-            } else {
-              if (comparable.compareTo(indexContainer._minValue) < 0) {
-                indexContainer._minValue = comparable;
-              }
-              if (comparable.compareTo(indexContainer._maxValue) > 0) {
-                indexContainer._maxValue = comparable;
-              }
-            }
-          }
+          addRawValue(indexContainer, docId, value);
         }
 
         // Update text index
@@ -629,6 +761,109 @@ public class MutableSegmentImpl implements MutableSegment {
     }
   }
 
+  private void checkPartition(IndexContainer indexContainer, Object value) {
+    addPartition(indexContainer, _partitionFunction.getPartition(value), value);
+  }
+
+  private void addPartition(IndexContainer indexContainer, int partition, Object value) {
+    if (indexContainer._partitions.add(partition)) {
+      _logger.warn("Found new partition: {} from partition column: {}, value: {}", partition, _partitionColumn, value);
+      if (_serverMetrics != null) {
+        _serverMetrics.addMeteredTableValue(_tableNameWithType, ServerMeter.REALTIME_PARTITION_MISMATCH, 1);
+      }
+    }
+  }
+
+  /**
+   * Checks that the raw value can be set into the forward index of a single-value no-dictionary column.
+   */
+  private static void checkRawValue(FieldSpec fieldSpec, Object value) {
+    DataType dataType = fieldSpec.getDataType();
+    Class<?> valueClass;
+    switch (dataType) {
+      case INT:
+        valueClass = Integer.class;
+        break;
+      case LONG:
+        valueClass = Long.class;
+        break;
+      case FLOAT:
+        valueClass = Float.class;
+        break;
+      case DOUBLE:
+        valueClass = Double.class;
+        break;
+      case STRING:
+        valueClass = String.class;
+        break;
+      case BYTES:
+        valueClass = byte[].class;
+        break;
+      default:
+        throw new UnsupportedOperationException(
+            "Unsupported data type: " + dataType + " for no-dictionary column: " + fieldSpec.getName());
+    }
+    Preconditions
+        .checkArgument(valueClass.isInstance(value), "Illegal value: %s for no-dictionary column: %s of type: %s",
+            value, fieldSpec.getName(), dataType);
+  }
+
+  /**
+   * Sets the raw value into the forward index of a single-value no-dictionary column, and updates the min/max value.
+   */
+  private void addRawValue(IndexContainer indexContainer, int docId, Object value) {
+    FieldSpec fieldSpec = indexContainer._fieldSpec;
+    MutableForwardIndex forwardIndex = indexContainer._forwardIndex;
+
+    // Update forward index
+    DataType dataType = fieldSpec.getDataType();
+    switch (dataType) {
+      case INT:
+        forwardIndex.setInt(docId, (Integer) value);
+        break;
+      case LONG:
+        forwardIndex.setLong(docId, (Long) value);
+        break;
+      case FLOAT:
+        forwardIndex.setFloat(docId, (Float) value);
+        break;
+      case DOUBLE:
+        forwardIndex.setDouble(docId, (Double) value);
+        break;
+      case STRING:
+        forwardIndex.setString(docId, (String) value);
+        break;
+      case BYTES:
+        forwardIndex.setBytes(docId, (byte[]) value);
+        break;
+      default:
+        throw new UnsupportedOperationException(
+            "Unsupported data type: " + dataType + " for no-dictionary column: " + fieldSpec.getName());
+    }
+
+    // Update min/max value from raw value
+    // NOTE: Skip updating min/max value for aggregated metrics because the value will change over time.
+    if (!_aggregateMetrics || fieldSpec.getFieldType() != FieldSpec.FieldType.METRIC) {
+      Comparable comparable;
+      if (dataType == DataType.BYTES) {
+        comparable = new ByteArray((byte[]) value);
+      } else {
+        comparable = (Comparable) value;
+      }
+      if (indexContainer._minValue == null) {
+        indexContainer._minValue = comparable;
+        indexContainer._maxValue = comparable;
+      } else {
+        if (comparable.compareTo(indexContainer._minValue) < 0) {
+          indexContainer._minValue = comparable;
+        }
+        if (comparable.compareTo(indexContainer._maxValue) > 0) {
+          indexContainer._maxValue = comparable;
+        }
+      }
+    }
+  }
+
   private void aggregateMetrics(GenericRow row, int docId) {
     for (MetricFieldSpec metricFieldSpec : _physicalMetricFieldSpecs) {
       String column = metricFieldSpec.getName();
@@ -18,6 +18,7 @@
  */
 package org.apache.pinot.core.operator.streaming;
 
+import io.grpc.StatusRuntimeException;
 import io.grpc.stub.StreamObserver;
 import java.util.Collection;
 import java.util.Collections;
@@ -172,6 +173,11 @@ public class StreamingSelectionOnlyCombineOperator extends BaseOperator<Intermed
       IntermediateResultsBlock metadataBlock = new IntermediateResultsBlock();
       CombineOperatorUtils.setExecutionStatistics(metadataBlock, _operators);
       return metadataBlock;
+    } catch (StatusRuntimeException e) {
+      // The call is cancelled by the client (e.g. the client has received enough rows), skip streaming the remaining
+      // results blocks
+      LOGGER.debug("Stream is closed while streaming results blocks (query: {})", _queryContext, e);
+      return new IntermediateResultsBlock(QueryException.QUERY_EXECUTION_ERROR, e);
     } catch (Exception e) {
       LOGGER.error("Caught exception while streaming results blocks (query: {})", _queryContext, e);
       return new IntermediateResultsBlock(QueryException.INTERNAL_ERROR, e);
@@ -43,6 +43,7 @@ import org.apache.pinot.core.data.manager.InstanceDataManager;
 import org.apache.pinot.core.data.manager.SegmentDataManager;
 import org.apache.pinot.core.data.manager.TableDataManager;
 import org.apache.pinot.core.indexsegment.IndexSegment;
+import org.apache.pinot.core.indexsegment.immutable.ImmutableSegment;
 import org.apache.pinot.core.indexsegment.mutable.MutableSegment;
 import org.apache.pinot.core.plan.Plan;
 import org.apache.pinot.core.plan.maker.InstancePlanMakerImplV2;
@@ -172,7 +173,11 @@ public class ServerQueryExecutorV1Impl implements QueryExecutor {
     }
     List<IndexSegment> indexSegments = new ArrayList<>(numSegmentsAcquired);
     for (SegmentDataManager segmentDataManager : segmentDataManagers) {
-      indexSegments.add(segmentDataManager.getSegment());
+      IndexSegment indexSegment = segmentDataManager.getSegment();
+      if (indexSegment instanceof ImmutableSegment) {
+        ((ImmutableSegment) indexSegment).acquireForQuery();
+      }
+      indexSegments.add(indexSegment);
     }
 
     // Gather stats for realtime consuming segments
@@ -228,6 +233,10 @@ public class ServerQueryExecutorV1Impl implements QueryExecutor {
       dataTable.addException(QueryException.getException(QueryException.QUERY_EXECUTION_ERROR, e));
     } finally {
       for (SegmentDataManager segmentDataManager : segmentDataManagers) {
+        IndexSegment indexSegment = segmentDataManager.getSegment();
+        if (indexSegment instanceof ImmutableSegment) {
+          ((ImmutableSegment) indexSegment).releaseAfterQuery();
+        }
         tableDataManager.releaseSegment(segmentDataManager);
       }
       if (enableTrace) {
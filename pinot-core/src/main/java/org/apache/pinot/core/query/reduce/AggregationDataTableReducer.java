@@ -41,12 +41,15 @@ import org.apache.pinot.core.util.QueryOptions;
  * Helper class to reduce and set Aggregation results into the BrokerResponseNative
  */
 @SuppressWarnings({"rawtypes", "unchecked"})
-public class AggregationDataTableReducer implements DataTableReducer {
+public class AggregationDataTableReducer implements IncrementalDataTableReducer {
   private final QueryContext _queryContext;
   private final AggregationFunction[] _aggregationFunctions;
   private final boolean _preserveType;
   private final boolean _responseFormatSql;
 
+  // Intermediate results merged incrementally, guarded by the object lock
+  private Object[] _mergedIntermediateResults;
+
   AggregationDataTableReducer(QueryContext queryContext) {
     _queryContext = queryContext;
     _aggregationFunctions = queryContext.getAggregationFunctions();
@@ -55,6 +58,57 @@ public class AggregationDataTableReducer implements DataTableReducer {
     _responseFormatSql = queryOptions.isResponseFormatSQL();
   }
 
+  @Override
+  public boolean isIncrementalMergeSupported() {
+    return true;
+  }
+
+  @Override
+  public void merge(DataSchema dataSchema, DataTable dataTable) {
+    // Extract the intermediate results outside of the lock because de-serializing the objects can be expensive
+    Object[] intermediateResults = extractIntermediateResults(dataSchema, dataTable);
+    synchronized (this) {
+      if (_mergedIntermediateResults == null) {
+        _mergedIntermediateResults = intermediateResults;
+      } else {
+        mergeIntermediateResults(_mergedIntermediateResults, intermediateResults);
+      }
+    }
+  }
+
+  private Object[] extractIntermediateResults(DataSchema dataSchema, DataTable dataTable) {
+    int numAggregationFunctions = _aggregationFunctions.length;
+    Object[] intermediateResults = new Object[numAggregationFunctions];
+    for (int i = 0; i < numAggregationFunctions; i++) {
+      ColumnDataType columnDataType = dataSchema.getColumnDataType(i);
+      switch (columnDataType) {
+        case LONG:
+          intermediateResults[i] = dataTable.getLong(0, i);
+          break;
+        case DOUBLE:
+          intermediateResults[i] = dataTable.getDouble(0, i);
+          break;
+        case OBJECT:
+          intermediateResults[i] = dataTable.getObject(0, i);
+          break;
+        default:
+          throw new IllegalStateException("Illegal column data type in aggregation results: " + columnDataType);
+      }
+    }
+    return intermediateResults;
+  }
+
+  /**
+   * Merges the intermediate results to merge into the merged intermediate results (in-place).
+   */
+  private void mergeIntermediateResults(Object[] mergedIntermediateResults, Object[] intermediateResultsToMerge) {
+    int numAggregationFunctions = _aggregationFunctions.length;
+    for (int i = 0; i < numAggregationFunctions; i++) {
+      mergedIntermediateResults[i] =
+          _aggregationFunctions[i].merge(mergedIntermediateResults[i], intermediateResultsToMerge[i]);
+    }
+  }
+
   /**
    * Reduces data tables and sets aggregations results into
    * 1. ResultTable if _responseFormatSql is true
@@ -64,7 +118,11 @@ public class AggregationDataTableReducer implements DataTableReducer {
   public void reduceAndSetResults(String tableName, DataSchema dataSchema,
       Map<ServerRoutingInstance, DataTable> dataTableMap, BrokerResponseNative brokerResponseNative,
       DataTableReducerContext reducerContext, BrokerMetrics brokerMetrics) {
-    if (dataTableMap.isEmpty()) {
+    Object[] intermediateResults;
+    synchronized (this) {
+      intermediateResults = _mergedIntermediateResults;
+    }
+    if (dataTableMap.isEmpty() && intermediateResults == null) {
       if (_responseFormatSql) {
         DataSchema resultTableSchema =
             new PostAggregationHandler(_queryContext, getPrePostAggregationDataSchema()).getResultDataSchema();
@@ -73,32 +131,14 @@ public class AggregationDataTableReducer implements DataTableReducer {
       return;
     }
 
-    // Merge results from all data tables
+    // Merge results from all data tables (on top of the intermediate results merged incrementally if exist)
     int numAggregationFunctions = _aggregationFunctions.length;
-    Object[] intermediateResults = new Object[numAggregationFunctions];
     for (DataTable dataTable : dataTableMap.values()) {
-      for (int i = 0; i < numAggregationFunctions; i++) {
-        Object intermediateResultToMerge;
-        ColumnDataType columnDataType = dataSchema.getColumnDataType(i);
-        switch (columnDataType) {
-          case LONG:
-            intermediateResultToMerge = dataTable.getLong(0, i);
-            break;
-          case DOUBLE:
-            intermediateResultToMerge = dataTable.getDouble(0, i);
-            break;
-          case OBJECT:
-            intermediateResultToMerge = dataTable.getObject(0, i);
-            break;
-          default:
-            throw new IllegalStateException("Illegal column data type in aggregation results: " + columnDataType);
-        }
-        Object mergedIntermediateResult = intermediateResults[i];
-        if (mergedIntermediateResult == null) {
-          intermediateResults[i] = intermediateResultToMerge;
-        } else {
-          intermediateResults[i] = _aggregationFunctions[i].merge(mergedIntermediateResult, intermediateResultToMerge);
-        }
+      Object[] intermediateResultsToMerge = extractIntermediateResults(dataSchema, dataTable);
+      if (intermediateResults == null) {
+        intermediateResults = intermediateResultsToMerge;
+      } else {
+        mergeIntermediateResults(intermediateResults, intermediateResultsToMerge);
       }
     }
     Serializable[] finalResults = new Serializable[numAggregationFunctions];
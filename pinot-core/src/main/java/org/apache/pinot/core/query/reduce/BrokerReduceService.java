@@ -26,8 +26,10 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.ThreadSafe;
+import org.apache.pinot.common.exception.QueryException;
 import org.apache.pinot.common.metrics.BrokerMeter;
 import org.apache.pinot.common.metrics.BrokerMetrics;
 import org.apache.pinot.common.metrics.BrokerTimer;
@@ -66,10 +68,13 @@ public class BrokerReduceService {
 
   private final ExecutorService _reduceExecutorService;
   private final int _maxReduceThreadsPerQuery;
+  private final boolean _enableIncrementalReduce;
 
   public BrokerReduceService(PinotConfiguration config) {
     _maxReduceThreadsPerQuery = config.getProperty(CommonConstants.Broker.CONFIG_OF_MAX_REDUCE_THREADS_PER_QUERY,
         CommonConstants.Broker.DEFAULT_MAX_REDUCE_THREADS_PER_QUERY);
+    _enableIncrementalReduce = config.getProperty(CommonConstants.Broker.CONFIG_OF_ENABLE_INCREMENTAL_REDUCE,
+        CommonConstants.Broker.DEFAULT_ENABLE_INCREMENTAL_REDUCE);
 
     int numThreadsInExecutorService = Runtime.getRuntime().availableProcessors();
     LOGGER.info("Initializing BrokerReduceService with {} threads, and {} max reduce threads.",
@@ -83,13 +88,44 @@ public class BrokerReduceService {
     _reduceExecutorService = Executors.newFixedThreadPool(numThreadsInExecutorService, reduceThreadFactory);
   }
 
+  /**
+   * Returns the handler to merge the data tables incrementally as the server responses arrive, or {@code null} if
+   * incremental reduce is disabled or not supported for the query.
+   */
+  @Nullable
+  public IncrementalReduceHandler getIncrementalReduceHandler(BrokerRequest brokerRequest) {
+    if (!_enableIncrementalReduce) {
+      return null;
+    }
+    QueryContext queryContext = BrokerRequestToQueryContextConverter.convert(brokerRequest);
+    DataTableReducer dataTableReducer = ResultReducerFactory.getResultReducer(queryContext);
+    if (dataTableReducer instanceof IncrementalDataTableReducer
+        && ((IncrementalDataTableReducer) dataTableReducer).isIncrementalMergeSupported()) {
+      return new IncrementalReduceHandler(queryContext, (IncrementalDataTableReducer) dataTableReducer,
+          _reduceExecutorService);
+    } else {
+      return null;
+    }
+  }
+
   public BrokerResponseNative reduceOnDataTable(BrokerRequest brokerRequest,
       Map<ServerRoutingInstance, DataTable> dataTableMap, long reduceTimeOutMs, @Nullable BrokerMetrics brokerMetrics) {
+    return reduceOnDataTable(brokerRequest, dataTableMap, reduceTimeOutMs, brokerMetrics, null);
+  }
+
+  /**
+   * Reduces the data tables into the broker response. When the incremental reduce handler is provided, it should be
+   * closed before gathering the data tables, and the data tables already merged by the handler are not merged again.
+   */
+  public BrokerResponseNative reduceOnDataTable(BrokerRequest brokerRequest,
+      Map<ServerRoutingInstance, DataTable> dataTableMap, long reduceTimeOutMs, @Nullable BrokerMetrics brokerMetrics,
+      @Nullable IncrementalReduceHandler incrementalReduceHandler) {
     if (dataTableMap.size() == 0) {
       // Empty response.
       return BrokerResponseNative.empty();
     }
 
+    long startTimeMs = System.currentTimeMillis();
     BrokerResponseNative brokerResponseNative = new BrokerResponseNative();
     List<QueryProcessingException> processingExceptions = brokerResponseNative.getProcessingExceptions();
     long numDocsScanned = 0L;
@@ -183,6 +219,10 @@ public class BrokerReduceService {
           iterator.remove();
         } else {
           cachedDataSchema = dataSchema;
+          // Remove the data tables already merged incrementally
+          if (incrementalReduceHandler != null && incrementalReduceHandler.isMerged(dataTable)) {
+            iterator.remove();
+          }
         }
       }
     }
@@ -223,8 +263,23 @@ public class BrokerReduceService {
       return brokerResponseNative;
     }
 
-    QueryContext queryContext = BrokerRequestToQueryContextConverter.convert(brokerRequest);
-    DataTableReducer dataTableReducer = ResultReducerFactory.getResultReducer(queryContext);
+    QueryContext queryContext;
+    DataTableReducer dataTableReducer;
+    if (incrementalReduceHandler != null) {
+      try {
+        incrementalReduceHandler.waitForMerges(reduceTimeOutMs);
+      } catch (TimeoutException | InterruptedException e) {
+        processingExceptions.add(new QueryProcessingException(QueryException.BROKER_TIMEOUT_ERROR_CODE,
+            "Timed out while waiting for the incremental merge in broker reduce phase."));
+        return brokerResponseNative;
+      }
+      queryContext = incrementalReduceHandler.getQueryContext();
+      dataTableReducer = incrementalReduceHandler.getDataTableReducer();
+      reduceTimeOutMs -= System.currentTimeMillis() - startTimeMs;
+    } else {
+      queryContext = BrokerRequestToQueryContextConverter.convert(brokerRequest);
+      dataTableReducer = ResultReducerFactory.getResultReducer(queryContext);
+    }
     dataTableReducer.reduceAndSetResults(tableName, cachedDataSchema, dataTableMap, brokerResponseNative,
         new DataTableReducerContext(_reduceExecutorService, _maxReduceThreadsPerQuery, reduceTimeOutMs), brokerMetrics);
     updateAlias(queryContext, brokerResponseNative);
@@ -62,7 +62,7 @@ import org.apache.pinot.core.util.trace.TraceRunnable;
  * Helper class to reduce data tables and set group by results into the BrokerResponseNative
  */
 @SuppressWarnings({"rawtypes", "unchecked"})
-public class GroupByDataTableReducer implements DataTableReducer {
+public class GroupByDataTableReducer implements IncrementalDataTableReducer {
   private static final int MIN_DATA_TABLES_FOR_CONCURRENT_REDUCE = 2; // TBD, find a better value.
 
   private final QueryContext _queryContext;
@@ -76,6 +76,9 @@ public class GroupByDataTableReducer implements DataTableReducer {
   private final boolean _responseFormatSql;
   private final boolean _sqlQuery;
 
+  // Indexed table for the incremental merge, created when merging the first data table
+  private volatile IndexedTable _indexedTable;
+
   GroupByDataTableReducer(QueryContext queryContext) {
     _queryContext = queryContext;
     _aggregationFunctions = queryContext.getAggregationFunctions();
@@ -92,6 +95,31 @@ public class GroupByDataTableReducer implements DataTableReducer {
     _sqlQuery = queryContext.getBrokerRequest().getPinotQuery() != null;
   }
 
+  /**
+   * Incremental merge is supported for SQL group-by mode with SQL response format, where the data tables are merged
+   * into the {@link ConcurrentIndexedTable}.
+   */
+  @Override
+  public boolean isIncrementalMergeSupported() {
+    return _groupByModeSql && _responseFormatSql;
+  }
+
+  @Override
+  public void merge(DataSchema dataSchema, DataTable dataTable) {
+    IndexedTable indexedTable = _indexedTable;
+    if (indexedTable == null) {
+      synchronized (this) {
+        indexedTable = _indexedTable;
+        if (indexedTable == null) {
+          indexedTable =
+              new ConcurrentIndexedTable(dataSchema, _queryContext, GroupByUtils.getTableCapacity(_queryContext));
+          _indexedTable = indexedTable;
+        }
+      }
+    }
+    upsertRows(indexedTable, dataTable, dataSchema.getColumnDataTypes());
+  }
+
   /**
    * Reduces and sets group by results into ResultTable, if responseFormat = sql
    * By default, sets group by results into GroupByResults
@@ -265,10 +293,14 @@ public class GroupByDataTableReducer implements DataTableReducer {
     int numReduceThreadsToUse = getNumReduceThreadsToUse(numDataTables, reducerContext.getMaxReduceThreadsPerQuery());
 
     // In case of single reduce thread, fall back to SimpleIndexedTable to avoid redundant locking/unlocking calls.
-    int capacity = GroupByUtils.getTableCapacity(_queryContext);
-    IndexedTable indexedTable =
-        (numReduceThreadsToUse > 1) ? new ConcurrentIndexedTable(dataSchema, _queryContext, capacity)
-            : new SimpleIndexedTable(dataSchema, _queryContext, capacity);
+    // Reuse the indexed table if some data tables are already merged incrementally.
+    IndexedTable indexedTable = _indexedTable;
+    if (indexedTable == null) {
+      int capacity = GroupByUtils.getTableCapacity(_queryContext);
+      indexedTable = (numReduceThreadsToUse > 1) ? new ConcurrentIndexedTable(dataSchema, _queryContext, capacity)
+          : new SimpleIndexedTable(dataSchema, _queryContext, capacity);
+    }
+    IndexedTable finalIndexedTable = indexedTable;
 
     Future[] futures = new Future[numDataTables];
     CountDownLatch countDownLatch = new CountDownLatch(numDataTables);
@@ -292,41 +324,8 @@ public class GroupByDataTableReducer implements DataTableReducer {
         @Override
         public void runJob() {
           for (DataTable dataTable : reduceGroup) {
-            int numRows = dataTable.getNumberOfRows();
-
             try {
-              for (int rowId = 0; rowId < numRows; rowId++) {
-                Object[] values = new Object[_numColumns];
-                for (int colId = 0; colId < _numColumns; colId++) {
-                  switch (columnDataTypes[colId]) {
-                    case INT:
-                      values[colId] = dataTable.getInt(rowId, colId);
-                      break;
-                    case LONG:
-                      values[colId] = dataTable.getLong(rowId, colId);
-                      break;
-                    case FLOAT:
-                      values[colId] = dataTable.getFloat(rowId, colId);
-                      break;
-                    case DOUBLE:
-                      values[colId] = dataTable.getDouble(rowId, colId);
-                      break;
-                    case STRING:
-                      values[colId] = dataTable.getString(rowId, colId);
-                      break;
-                    case BYTES:
-                      values[colId] = dataTable.getBytes(rowId, colId);
-                      break;
-                    case OBJECT:
-                      values[colId] = dataTable.getObject(rowId, colId);
-                      break;
-                    // Add other aggregation intermediate result / group-by column type supports here
-                    default:
-                      throw new IllegalStateException();
-                  }
-                }
-                indexedTable.upsert(new Record(values));
-              }
+              upsertRows(finalIndexedTable, dataTable, columnDataTypes);
             } finally {
               countDownLatch.countDown();
             }
@@ -351,6 +350,45 @@ public class GroupByDataTableReducer implements DataTableReducer {
     return indexedTable;
   }
 
+  /**
+   * Upserts all the rows of the given data table into the given indexed table.
+   */
+  private void upsertRows(IndexedTable indexedTable, DataTable dataTable, ColumnDataType[] columnDataTypes) {
+    int numRows = dataTable.getNumberOfRows();
+    for (int rowId = 0; rowId < numRows; rowId++) {
+      Object[] values = new Object[_numColumns];
+      for (int colId = 0; colId < _numColumns; colId++) {
+        switch (columnDataTypes[colId]) {
+          case INT:
+            values[colId] = dataTable.getInt(rowId, colId);
+            break;
+          case LONG:
+            values[colId] = dataTable.getLong(rowId, colId);
+            break;
+          case FLOAT:
+            values[colId] = dataTable.getFloat(rowId, colId);
+            break;
+          case DOUBLE:
+            values[colId] = dataTable.getDouble(rowId, colId);
+            break;
+          case STRING:
+            values[colId] = dataTable.getString(rowId, colId);
+            break;
+          case BYTES:
+            values[colId] = dataTable.getBytes(rowId, colId);
+            break;
+          case OBJECT:
+            values[colId] = dataTable.getObject(rowId, colId);
+            break;
+          // Add other aggregation intermediate result / group-by column type supports here
+          default:
+            throw new IllegalStateException();
+        }
+      }
+      indexedTable.upsert(new Record(values));
+    }
+  }
+
   /**
    * Computes the number of reduce threads to use per query.
    * <ul>
@@ -0,0 +1,43 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pinot.core.query.reduce;
+
+import org.apache.pinot.common.utils.DataSchema;
+import org.apache.pinot.common.utils.DataTable;
+
+
+/**
+ * Interface for data table reducers which can merge the data tables incrementally as the server responses arrive, so
+ * that the merge overlaps with waiting for the slower servers. The data tables already merged are not passed to
+ * {@link #reduceAndSetResults}, which only merges the remaining data tables and performs the final steps (e.g. trim,
+ * post-aggregation, HAVING filter).
+ */
+public interface IncrementalDataTableReducer extends DataTableReducer {
+
+  /**
+   * Returns {@code true} if the reducer supports incremental merge for the query, {@code false} otherwise.
+   */
+  boolean isIncrementalMergeSupported();
+
+  /**
+   * Merges the given data table (with data schema and rows) into the intermediate results. This method can be invoked
+   * concurrently.
+   */
+  void merge(DataSchema dataSchema, DataTable dataTable);
+}
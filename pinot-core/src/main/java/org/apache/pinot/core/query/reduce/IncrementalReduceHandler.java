@@ -0,0 +1,121 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pinot.core.query.reduce;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import javax.annotation.concurrent.ThreadSafe;
+import org.apache.pinot.common.utils.DataSchema;
+import org.apache.pinot.common.utils.DataTable;
+import org.apache.pinot.core.query.request.context.QueryContext;
+import org.apache.pinot.core.transport.DataTableListener;
+
+
+/**
+ * The {@code IncrementalReduceHandler} class merges the data tables into the {@link IncrementalDataTableReducer} on the
+ * broker reduce threads as the server responses arrive.
+ * <p>The handler should be closed once the query is done before gathering the data tables to reduce, so that the data
+ * tables merged are always a subset of the data tables gathered (a data table is set into the server response before
+ * being passed to the listener). The data tables not merged before the handler is closed are merged during the final
+ * reduce.
+ */
+@ThreadSafe
+public class IncrementalReduceHandler implements DataTableListener {
+  private final QueryContext _queryContext;
+  private final IncrementalDataTableReducer _dataTableReducer;
+  private final ExecutorService _executorService;
+
+  // Guarded by the object lock
+  private final Set<DataTable> _mergedDataTables = Collections.newSetFromMap(new IdentityHashMap<>());
+  private final List<Future<?>> _futures = new ArrayList<>();
+  private boolean _closed;
+
+  IncrementalReduceHandler(QueryContext queryContext, IncrementalDataTableReducer dataTableReducer,
+      ExecutorService executorService) {
+    _queryContext = queryContext;
+    _dataTableReducer = dataTableReducer;
+    _executorService = executorService;
+  }
+
+  @Override
+  public synchronized void onDataTable(DataTable dataTable) {
+    if (_closed) {
+      return;
+    }
+    // Data tables without data rows are removed during the final reduce
+    DataSchema dataSchema = dataTable.getDataSchema();
+    if (dataSchema == null || dataTable.getNumberOfRows() == 0) {
+      return;
+    }
+    _mergedDataTables.add(dataTable);
+    _futures.add(_executorService.submit(() -> _dataTableReducer.merge(dataSchema, dataTable)));
+  }
+
+  /**
+   * Stops accepting new data tables.
+   */
+  public synchronized void close() {
+    _closed = true;
+  }
+
+  QueryContext getQueryContext() {
+    return _queryContext;
+  }
+
+  IncrementalDataTableReducer getDataTableReducer() {
+    return _dataTableReducer;
+  }
+
+  synchronized boolean isMerged(DataTable dataTable) {
+    return _mergedDataTables.contains(dataTable);
+  }
+
+  /**
+   * Waits for all the submitted merges to finish. Should be called after the handler is closed.
+   */
+  void waitForMerges(long timeoutMs)
+      throws TimeoutException, InterruptedException {
+    List<Future<?>> futures;
+    synchronized (this) {
+      futures = new ArrayList<>(_futures);
+    }
+    long endTimeMs = System.currentTimeMillis() + timeoutMs;
+    try {
+      for (Future<?> future : futures) {
+        future.get(endTimeMs - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+      }
+    } catch (ExecutionException e) {
+      throw new RuntimeException("Caught exception while merging data table", e.getCause());
+    } finally {
+      for (Future<?> future : futures) {
+        if (!future.isDone()) {
+          future.cancel(true);
+        }
+      }
+    }
+  }
+}
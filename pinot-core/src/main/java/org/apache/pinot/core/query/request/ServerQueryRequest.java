@@ -20,6 +20,7 @@ package org.apache.pinot.core.query.request;
 
 import java.util.List;
 import java.util.Map;
+import javax.annotation.Nullable;
 import org.apache.pinot.common.metrics.ServerMetrics;
 import org.apache.pinot.common.proto.Server;
 import org.apache.pinot.common.request.BrokerRequest;
@@ -46,6 +47,8 @@ public class ServerQueryRequest {
   private final String _brokerId;
   private final boolean _enableTrace;
   private final boolean _enableStreaming;
+  // Compression type of the response accepted by the broker, null if the broker does not accept compressed response
+  private final String _responseCompression;
   private final List<String> _segmentsToQuery;
   private final QueryContext _queryContext;
 
@@ -57,6 +60,7 @@ public class ServerQueryRequest {
     _brokerId = instanceRequest.getBrokerId() != null ? instanceRequest.getBrokerId() : "unknown";
     _enableTrace = instanceRequest.isEnableTrace();
     _enableStreaming = false;
+    _responseCompression = instanceRequest.getResponseCompression();
     _segmentsToQuery = instanceRequest.getSearchSegments();
     _queryContext = BrokerRequestToQueryContextConverter.convert(instanceRequest.getQuery());
     _timerContext = new TimerContext(_queryContext.getTableName(), serverMetrics, queryArrivalTimeMs);
@@ -71,6 +75,7 @@ public class ServerQueryRequest {
     _brokerId = metadata.getOrDefault(Request.MetadataKeys.BROKER_ID, "unknown");
     _enableTrace = Boolean.parseBoolean(metadata.get(Request.MetadataKeys.ENABLE_TRACE));
     _enableStreaming = Boolean.parseBoolean(metadata.get(Request.MetadataKeys.ENABLE_STREAMING));
+    _responseCompression = null;
 
     _segmentsToQuery = serverRequest.getSegmentsList();
 
@@ -105,6 +110,11 @@ public class ServerQueryRequest {
     return _enableStreaming;
   }
 
+  @Nullable
+  public String getResponseCompression() {
+    return _responseCompression;
+  }
+
   public String getTableNameWithType() {
     return _queryContext.getTableName();
   }
@@ -33,7 +33,9 @@ import org.apache.pinot.common.metrics.ServerMetrics;
 import org.apache.pinot.common.metrics.ServerQueryPhase;
 import org.apache.pinot.common.metrics.ServerTimer;
 import org.apache.pinot.common.response.ProcessingException;
+import org.apache.pinot.common.utils.CommonConstants.Broker.Request.QueryOptionKey;
 import org.apache.pinot.common.utils.DataTable;
+import org.apache.pinot.core.common.datatable.DataTableCompressor;
 import org.apache.pinot.core.common.datatable.DataTableImplV2;
 import org.apache.pinot.core.query.executor.QueryExecutor;
 import org.apache.pinot.core.query.request.ServerQueryRequest;
@@ -280,12 +282,53 @@ public abstract class QueryScheduler {
     }
 
     responseSerializationTimer.stopAndRecord();
+
+    if (responseByte != null) {
+      responseByte = compressResponse(queryRequest, responseByte);
+    }
     timerContext.startNewPhaseTimer(ServerQueryPhase.TOTAL_QUERY_TIME, timerContext.getQueryArrivalTimeMs())
         .stopAndRecord();
 
     return responseByte;
   }
 
+  /**
+   * Compresses the serialized response if the broker accepts compressed response (via the instance request) and the
+   * response size is above the threshold. Returns the uncompressed response if the compression fails.
+   * <p>NOTE: Do not read the compression type from the query options, which are set by the user and passed as is by the
+   *          older brokers that cannot decode the compressed response.
+   */
+  private byte[] compressResponse(ServerQueryRequest queryRequest, byte[] responseBytes) {
+    try {
+      DataTableCompressor.CompressionType compressionType =
+          DataTableCompressor.CompressionType.fromName(queryRequest.getResponseCompression());
+      if (compressionType == null) {
+        return responseBytes;
+      }
+      Map<String, String> queryOptions = queryRequest.getQueryContext().getQueryOptions();
+      String thresholdBytesString =
+          queryOptions != null ? queryOptions.get(QueryOptionKey.RESPONSE_COMPRESSION_THRESHOLD_BYTES) : null;
+      int thresholdBytes = thresholdBytesString != null ? Integer.parseInt(thresholdBytesString)
+          : DataTableCompressor.DEFAULT_THRESHOLD_BYTES;
+      if (responseBytes.length < thresholdBytes) {
+        return responseBytes;
+      }
+      TimerContext.Timer responseCompressionTimer =
+          queryRequest.getTimerContext().startNewPhaseTimer(ServerQueryPhase.RESPONSE_COMPRESSION);
+      byte[] compressedResponseBytes = DataTableCompressor.compress(responseBytes, compressionType);
+      responseCompressionTimer.stopAndRecord();
+      serverMetrics.addMeteredGlobalValue(ServerMeter.RESPONSES_COMPRESSED, 1);
+      serverMetrics.addMeteredGlobalValue(ServerMeter.RESPONSE_BYTES_BEFORE_COMPRESSION, responseBytes.length);
+      serverMetrics.addMeteredGlobalValue(ServerMeter.RESPONSE_BYTES_AFTER_COMPRESSION, compressedResponseBytes.length);
+      return compressedResponseBytes;
+    } catch (Exception e) {
+      serverMetrics.addMeteredGlobalValue(ServerMeter.RESPONSE_COMPRESSION_EXCEPTIONS, 1);
+      LOGGER.error("Caught exception while compressing response for requestId: {}, brokerId: {}",
+          queryRequest.getRequestId(), queryRequest.getBrokerId(), e);
+      return responseBytes;
+    }
+  }
+
   /**
    * Error response future in case of internal error where query response is not available. This can happen
    * if the query can not be executed or
@@ -123,7 +123,8 @@ public class RealtimeSegmentConverter {
     RealtimeSegmentSegmentCreationDataSource dataSource =
         new RealtimeSegmentSegmentCreationDataSource(_realtimeSegmentImpl, reader, _dataSchema);
     driver.init(genConfig, dataSource, CompositeTransformer.getPassThroughTransformer());
-    driver.build();
+    // Build the segment column by column from the realtime segment to reuse its dictionaries and forward indexes
+    driver.buildByColumn(_realtimeSegmentImpl, reader.getSortedDocIdIterationOrder());
 
     if (segmentPartitionConfig != null) {
       Map<String, ColumnPartitionConfig> columnPartitionMap = segmentPartitionConfig.getColumnPartitionMap();
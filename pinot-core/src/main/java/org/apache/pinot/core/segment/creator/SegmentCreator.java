@@ -22,7 +22,9 @@ import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
 import java.util.Map;
+import javax.annotation.Nullable;
 import org.apache.commons.configuration.ConfigurationException;
+import org.apache.pinot.core.common.DataSource;
 import org.apache.pinot.spi.data.Schema;
 import org.apache.pinot.spi.data.readers.GenericRow;
 import org.apache.pinot.core.indexsegment.generator.SegmentGeneratorConfig;
@@ -53,6 +55,17 @@ public interface SegmentCreator extends Closeable {
    */
   void indexRow(GenericRow row);
 
+  /**
+   * Adds the values of a column for all the rows from the given data source (e.g. from a mutable segment), instead of
+   * adding the rows one by one with {@link #indexRow(GenericRow)}. The two methods cannot be mixed for the same
+   * segment.
+   *
+   * @param columnName The name of the column to index
+   * @param dataSource The data source of the column
+   * @param sortedDocIds The order of the docs to index, or {@code null} to index the docs in doc id order
+   */
+  void indexColumn(String columnName, DataSource dataSource, @Nullable int[] sortedDocIds);
+
   /**
    * Sets the name of the segment.
    *
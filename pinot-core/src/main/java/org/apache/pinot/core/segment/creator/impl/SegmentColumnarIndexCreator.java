@@ -21,17 +21,29 @@ package org.apache.pinot.core.segment.creator.impl;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Iterables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
 import org.apache.commons.configuration.ConfigurationException;
 import org.apache.commons.configuration.PropertiesConfiguration;
 import org.apache.pinot.common.utils.FileUtils;
+import org.apache.pinot.core.common.DataSource;
 import org.apache.pinot.core.data.partition.PartitionFunction;
 import org.apache.pinot.core.indexsegment.generator.SegmentGeneratorConfig;
 import org.apache.pinot.core.io.compression.ChunkCompressorFactory;
@@ -53,6 +65,10 @@ import org.apache.pinot.core.segment.creator.impl.inv.OffHeapBitmapInvertedIndex
 import org.apache.pinot.core.segment.creator.impl.inv.OnHeapBitmapInvertedIndexCreator;
 import org.apache.pinot.core.segment.creator.impl.nullvalue.NullValueVectorCreator;
 import org.apache.pinot.core.segment.creator.impl.text.LuceneTextIndexCreator;
+import org.apache.pinot.core.segment.index.readers.Dictionary;
+import org.apache.pinot.core.segment.index.readers.ForwardIndexReader;
+import org.apache.pinot.core.segment.index.readers.ForwardIndexReaderContext;
+import org.apache.pinot.core.segment.index.readers.NullValueVectorReader;
 import org.apache.pinot.spi.config.table.FieldConfig;
 import org.apache.pinot.spi.data.DateTimeFieldSpec;
 import org.apache.pinot.spi.data.FieldSpec;
@@ -81,6 +97,10 @@ public class SegmentColumnarIndexCreator implements SegmentCreator {
   private static final Logger LOGGER = LoggerFactory.getLogger(SegmentColumnarIndexCreator.class);
   // Allow at most 512 characters for the metadata property
   private static final int METADATA_PROPERTY_LENGTH_LIMIT = 512;
+  // Number of rows in a row batch for parallel index creation
+  private static final int ROW_BATCH_SIZE = 1024;
+  // Max number of row batches submitted but not yet indexed for parallel index creation
+  private static final int MAX_PENDING_ROW_BATCHES = 4;
 
   private SegmentGeneratorConfig config;
   private Map<String, ColumnIndexCreationInfo> indexCreationInfoMap;
@@ -98,6 +118,15 @@ public class SegmentColumnarIndexCreator implements SegmentCreator {
 
   private final Set<String> _textIndexColumns = new HashSet<>();
 
+  // For parallel index creation, where the columns are partitioned into groups, and each group is indexed by a single
+  // thread so that the index creators of a column are only accessed by one thread. The rows are buffered into batches,
+  // and each batch is indexed by all the column groups in parallel.
+  private ExecutorService[] _columnGroupExecutors;
+  private String[] _batchColumns;
+  private int[][] _columnGroups;
+  private RowBatch _currentBatch;
+  private final Deque<List<Future<?>>> _pendingBatches = new ArrayDeque<>();
+
   @Override
   public void init(SegmentGeneratorConfig segmentCreationSpec, SegmentIndexCreationInfo segmentIndexCreationInfo,
       Map<String, ColumnIndexCreationInfo> indexCreationInfoMap, Schema schema, File outDir)
@@ -129,7 +158,17 @@ public class SegmentColumnarIndexCreator implements SegmentCreator {
       _textIndexColumns.add(columnName);
     }
 
+    int indexCreationParallelism = segmentCreationSpec.getIndexCreationParallelism();
+    if (indexCreationParallelism > 1) {
+      _columnGroupExecutors = new ExecutorService[indexCreationParallelism];
+      for (int i = 0; i < indexCreationParallelism; i++) {
+        _columnGroupExecutors[i] = Executors.newSingleThreadExecutor(
+            new ThreadFactoryBuilder().setNameFormat("segment-index-creation-" + i + "-%d").setDaemon(true).build());
+      }
+    }
+
     // Initialize creators for dictionary, forward index and inverted index
+    List<Callable<Void>> dictionaryBuildTasks = new ArrayList<>();
     for (FieldSpec fieldSpec : fieldSpecs) {
       // Ignore virtual columns
       if (fieldSpec.isVirtualColumn()) {
@@ -150,13 +189,17 @@ public class SegmentColumnarIndexCreator implements SegmentCreator {
         _dictionaryCreatorMap.put(columnName, dictionaryCreator);
 
         // Create dictionary
-        try {
-          dictionaryCreator.build();
-        } catch (Exception e) {
-          LOGGER.error("Error building dictionary for field: {}, cardinality: {}, number of bytes per entry: {}",
-              fieldSpec.getName(), indexCreationInfo.getDistinctValueCount(), dictionaryCreator.getNumBytesPerEntry());
-          throw e;
-        }
+        dictionaryBuildTasks.add(() -> {
+          try {
+            dictionaryCreator.build();
+          } catch (Exception e) {
+            LOGGER.error("Error building dictionary for field: {}, cardinality: {}, number of bytes per entry: {}",
+                fieldSpec.getName(), indexCreationInfo.getDistinctValueCount(),
+                dictionaryCreator.getNumBytesPerEntry());
+            throw e;
+          }
+          return null;
+        });
 
         // Initialize forward index creator
         int cardinality = indexCreationInfo.getDistinctValueCount();
@@ -222,6 +265,66 @@ public class SegmentColumnarIndexCreator implements SegmentCreator {
         _nullValueVectorCreatorMap.put(columnName, new NullValueVectorCreator(_indexDir, columnName));
       }
     }
+    invokeAll(dictionaryBuildTasks);
+
+    if (_columnGroupExecutors != null) {
+      // Assign the columns to the column groups in a round-robin fashion
+      _batchColumns = _forwardIndexCreatorMap.keySet().toArray(new String[0]);
+      int numColumnGroups = Math.min(_columnGroupExecutors.length, _batchColumns.length);
+      _columnGroups = new int[numColumnGroups][];
+      for (int i = 0; i < numColumnGroups; i++) {
+        _columnGroups[i] = new int[(_batchColumns.length - i + numColumnGroups - 1) / numColumnGroups];
+        for (int j = 0; j < _columnGroups[i].length; j++) {
+          _columnGroups[i][j] = i + j * numColumnGroups;
+        }
+      }
+    }
+  }
+
+  /**
+   * Runs the given tasks on the column group threads if parallel index creation is enabled, or on the caller thread
+   * otherwise, and waits for all of them to finish.
+   */
+  private void invokeAll(List<Callable<Void>> tasks)
+      throws IOException {
+    if (_columnGroupExecutors == null) {
+      for (Callable<Void> task : tasks) {
+        try {
+          task.call();
+        } catch (IOException | RuntimeException e) {
+          throw e;
+        } catch (Exception e) {
+          throw new IOException(e);
+        }
+      }
+      return;
+    }
+    List<Future<?>> futures = new ArrayList<>(tasks.size());
+    for (int i = 0; i < tasks.size(); i++) {
+      futures.add(_columnGroupExecutors[i % _columnGroupExecutors.length].submit(tasks.get(i)));
+    }
+    waitFor(futures);
+  }
+
+  private static void waitFor(List<Future<?>> futures)
+      throws IOException {
+    for (Future<?> future : futures) {
+      try {
+        future.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new RuntimeException("Interrupted while creating the column indexes", e);
+      } catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof IOException) {
+          throw (IOException) cause;
+        }
+        if (cause instanceof RuntimeException) {
+          throw (RuntimeException) cause;
+        }
+        throw new IOException(cause);
+      }
+    }
   }
 
   public static boolean shouldDeriveNumDocsPerChunk(String columnName,
@@ -308,80 +411,237 @@ public class SegmentColumnarIndexCreator implements SegmentCreator {
 
   @Override
   public void indexRow(GenericRow row) {
-    for (Map.Entry<String, ForwardIndexCreator> entry : _forwardIndexCreatorMap.entrySet()) {
-      String columnName = entry.getKey();
-      ForwardIndexCreator forwardIndexCreator = entry.getValue();
-
+    if (_columnGroupExecutors != null) {
+      if (_currentBatch == null) {
+        _currentBatch = new RowBatch(docIdCounter, _batchColumns.length, _nullHandlingEnabled);
+      }
+      _currentBatch.add(row, _batchColumns);
+      docIdCounter++;
+      if (_currentBatch._numRows == ROW_BATCH_SIZE) {
+        submitCurrentBatch();
+      }
+      return;
+    }
+    for (String columnName : _forwardIndexCreatorMap.keySet()) {
       Object columnValueToIndex = row.getValue(columnName);
       if (columnValueToIndex == null) {
         throw new RuntimeException("Null value for column:" + columnName);
       }
+      indexValue(columnName, columnValueToIndex, _nullHandlingEnabled && row.isNullValue(columnName), docIdCounter);
+    }
+    docIdCounter++;
+  }
+
+  private void indexValue(String columnName, Object columnValueToIndex, boolean isNull, int docId) {
+    ForwardIndexCreator forwardIndexCreator = _forwardIndexCreatorMap.get(columnName);
+    boolean isSingleValue = schema.getFieldSpecFor(columnName).isSingleValueField();
+    SegmentDictionaryCreator dictionaryCreator = _dictionaryCreatorMap.get(columnName);
+
+    if (isSingleValue) {
+      // SV column
+      indexSingleValue(columnName, forwardIndexCreator, dictionaryCreator, columnValueToIndex);
+    } else {
+      // MV column (always dictionary encoded)
+      int[] dictIds = dictionaryCreator.indexOfMV(columnValueToIndex);
+      forwardIndexCreator.putDictIdMV(dictIds);
+      DictionaryBasedInvertedIndexCreator invertedIndexCreator = _invertedIndexCreatorMap.get(columnName);
+      if (invertedIndexCreator != null) {
+        invertedIndexCreator.add(dictIds, dictIds.length);
+      }
+    }
+
+    // If row has null value for given column name, add to null value vector
+    if (isNull) {
+      _nullValueVectorCreatorMap.get(columnName).setNull(docId);
+    }
+  }
+
+  /**
+   * Submits the current row batch to all the column groups. Blocks when there are too many batches pending to bound
+   * the memory used by the buffered rows.
+   */
+  private void submitCurrentBatch() {
+    RowBatch batch = _currentBatch;
+    _currentBatch = null;
+    while (_pendingBatches.size() >= MAX_PENDING_ROW_BATCHES) {
+      waitForBatch(_pendingBatches.poll());
+    }
+    List<Future<?>> futures = new ArrayList<>(_columnGroups.length);
+    for (int i = 0; i < _columnGroups.length; i++) {
+      int[] columnGroup = _columnGroups[i];
+      futures.add(_columnGroupExecutors[i].submit(() -> {
+        for (int row = 0; row < batch._numRows; row++) {
+          Object[] values = batch._values[row];
+          boolean[] isNull = batch._isNull != null ? batch._isNull[row] : null;
+          for (int columnIndex : columnGroup) {
+            indexValue(_batchColumns[columnIndex], values[columnIndex], isNull != null && isNull[columnIndex],
+                batch._startDocId + row);
+          }
+        }
+      }));
+    }
+    _pendingBatches.add(futures);
+  }
+
+  private static void waitForBatch(List<Future<?>> futures) {
+    try {
+      waitFor(futures);
+    } catch (IOException e) {
+      throw new RuntimeException("Caught exception while indexing rows", e);
+    }
+  }
+
+  /**
+   * Indexes the buffered rows and waits for all the pending row batches to finish.
+   */
+  private void flushRowBatches() {
+    if (_currentBatch != null) {
+      submitCurrentBatch();
+    }
+    while (!_pendingBatches.isEmpty()) {
+      waitForBatch(_pendingBatches.poll());
+    }
+  }
+
+  private void indexSingleValue(String columnName, ForwardIndexCreator forwardIndexCreator,
+      @Nullable SegmentDictionaryCreator dictionaryCreator, Object columnValueToIndex) {
+    if (dictionaryCreator != null) {
+      // dictionary encoded SV column
+      // get dictID from dictionary
+      int dictId = dictionaryCreator.indexOfSV(columnValueToIndex);
+      // store the docID -> dictID mapping in forward index
+      forwardIndexCreator.putDictId(dictId);
+      DictionaryBasedInvertedIndexCreator invertedIndexCreator = _invertedIndexCreatorMap.get(columnName);
+      if (invertedIndexCreator != null) {
+        // if inverted index enabled during segment creation,
+        // then store dictID -> docID mapping in inverted index
+        invertedIndexCreator.add(dictId);
+      }
+    } else {
+      // non-dictionary encoded SV column
+      // store the docId -> raw value mapping in forward index
+      switch (forwardIndexCreator.getValueType()) {
+        case INT:
+          forwardIndexCreator.putInt((int) columnValueToIndex);
+          break;
+        case LONG:
+          forwardIndexCreator.putLong((long) columnValueToIndex);
+          break;
+        case FLOAT:
+          forwardIndexCreator.putFloat((float) columnValueToIndex);
+          break;
+        case DOUBLE:
+          forwardIndexCreator.putDouble((double) columnValueToIndex);
+          break;
+        case STRING:
+          forwardIndexCreator.putString((String) columnValueToIndex);
+          break;
+        case BYTES:
+          forwardIndexCreator.putBytes((byte[]) columnValueToIndex);
+          break;
+        default:
+          throw new IllegalStateException();
+      }
+    }
+    // text-index enabled SV column
+    if (_textIndexColumns.contains(columnName)) {
+      _textIndexCreatorMap.get(columnName).add((String) columnValueToIndex);
+    }
+  }
 
-      boolean isSingleValue = schema.getFieldSpecFor(columnName).isSingleValueField();
-      SegmentDictionaryCreator dictionaryCreator = _dictionaryCreatorMap.get(columnName);
+  @SuppressWarnings({"rawtypes", "unchecked"})
+  @Override
+  public void indexColumn(String columnName, DataSource dataSource, @Nullable int[] sortedDocIds) {
+    ForwardIndexCreator forwardIndexCreator = _forwardIndexCreatorMap.get(columnName);
+    Preconditions.checkState(forwardIndexCreator != null, "Failed to find forward index creator for column: %s",
+        columnName);
+    SegmentDictionaryCreator dictionaryCreator = _dictionaryCreatorMap.get(columnName);
+    DictionaryBasedInvertedIndexCreator invertedIndexCreator = _invertedIndexCreatorMap.get(columnName);
+    NullValueVectorCreator nullValueVectorCreator = _nullValueVectorCreatorMap.get(columnName);
+    NullValueVectorReader nullValueVectorReader = dataSource.getNullValueVector();
+
+    ForwardIndexReader forwardIndexReader = dataSource.getForwardIndex();
+    ForwardIndexReaderContext readerContext = forwardIndexReader.createContext();
+    Dictionary dictionary = dataSource.getDictionary();
+    // Map the dictionary ids of the source dictionary to the dictionary ids of the segment dictionary, so that the
+    // values only need to be looked up once per distinct value instead of once per doc
+    int[] dictIdMapping = null;
+    if (dictionaryCreator != null && dictionary != null) {
+      int cardinality = dictionary.length();
+      dictIdMapping = new int[cardinality];
+      for (int dictId = 0; dictId < cardinality; dictId++) {
+        dictIdMapping[dictId] = dictionaryCreator.indexOfSV(dictionary.get(dictId));
+      }
+    }
 
-      if (isSingleValue) {
-        // SV column
-        if (dictionaryCreator != null) {
-          // dictionary encoded SV column
-          // get dictID from dictionary
-          int dictId = dictionaryCreator.indexOfSV(columnValueToIndex);
-          // store the docID -> dictID mapping in forward index
+    if (schema.getFieldSpecFor(columnName).isSingleValueField()) {
+      boolean hasTextIndex = _textIndexColumns.contains(columnName);
+      for (int i = 0; i < totalDocs; i++) {
+        int docId = sortedDocIds != null ? sortedDocIds[i] : i;
+        if (dictIdMapping != null) {
+          int sourceDictId = forwardIndexReader.getDictId(docId, readerContext);
+          int dictId = dictIdMapping[sourceDictId];
           forwardIndexCreator.putDictId(dictId);
-          DictionaryBasedInvertedIndexCreator invertedIndexCreator = _invertedIndexCreatorMap.get(columnName);
           if (invertedIndexCreator != null) {
-            // if inverted index enabled during segment creation,
-            // then store dictID -> docID mapping in inverted index
             invertedIndexCreator.add(dictId);
           }
+          if (hasTextIndex) {
+            _textIndexCreatorMap.get(columnName).add(dictionary.getStringValue(sourceDictId));
+          }
         } else {
-          // non-dictionary encoded SV column
-          // store the docId -> raw value mapping in forward index
-          switch (forwardIndexCreator.getValueType()) {
-            case INT:
-              forwardIndexCreator.putInt((int) columnValueToIndex);
-              break;
-            case LONG:
-              forwardIndexCreator.putLong((long) columnValueToIndex);
-              break;
-            case FLOAT:
-              forwardIndexCreator.putFloat((float) columnValueToIndex);
-              break;
-            case DOUBLE:
-              forwardIndexCreator.putDouble((double) columnValueToIndex);
-              break;
-            case STRING:
-              forwardIndexCreator.putString((String) columnValueToIndex);
-              break;
-            case BYTES:
-              forwardIndexCreator.putBytes((byte[]) columnValueToIndex);
-              break;
-            default:
-              throw new IllegalStateException();
+          Object value;
+          if (dictionary != null) {
+            value = dictionary.get(forwardIndexReader.getDictId(docId, readerContext));
+          } else {
+            value = getRawValue(forwardIndexReader, readerContext, docId);
           }
+          indexSingleValue(columnName, forwardIndexCreator, dictionaryCreator, value);
         }
-        // text-index enabled SV column
-        if (_textIndexColumns.contains(columnName)) {
-          _textIndexCreatorMap.get(columnName).add((String) columnValueToIndex);
+        if (nullValueVectorCreator != null && nullValueVectorReader != null && nullValueVectorReader.isNull(docId)) {
+          nullValueVectorCreator.setNull(i);
+        }
+      }
+    } else {
+      // MV column (always dictionary encoded)
+      Preconditions.checkState(dictIdMapping != null, "Cannot index MV column: %s without dictionary", columnName);
+      int[] sourceDictIds = new int[dataSource.getDataSourceMetadata().getMaxNumValuesPerMVEntry()];
+      for (int i = 0; i < totalDocs; i++) {
+        int docId = sortedDocIds != null ? sortedDocIds[i] : i;
+        int numValues = forwardIndexReader.getDictIdMV(docId, sourceDictIds, readerContext);
+        int[] dictIds = new int[numValues];
+        for (int j = 0; j < numValues; j++) {
+          dictIds[j] = dictIdMapping[sourceDictIds[j]];
         }
-      } else {
-        // MV column (always dictionary encoded)
-        int[] dictIds = dictionaryCreator.indexOfMV(columnValueToIndex);
         forwardIndexCreator.putDictIdMV(dictIds);
-        DictionaryBasedInvertedIndexCreator invertedIndexCreator = _invertedIndexCreatorMap.get(columnName);
         if (invertedIndexCreator != null) {
-          invertedIndexCreator.add(dictIds, dictIds.length);
+          invertedIndexCreator.add(dictIds, numValues);
         }
-      }
-
-      if (_nullHandlingEnabled) {
-        // If row has null value for given column name, add to null value vector
-        if (row.isNullValue(columnName)) {
-          _nullValueVectorCreatorMap.get(columnName).setNull(docIdCounter);
+        if (nullValueVectorCreator != null && nullValueVectorReader != null && nullValueVectorReader.isNull(docId)) {
+          nullValueVectorCreator.setNull(i);
         }
       }
     }
-    docIdCounter++;
+  }
+
+  @SuppressWarnings({"rawtypes", "unchecked"})
+  private static Object getRawValue(ForwardIndexReader forwardIndexReader, ForwardIndexReaderContext readerContext,
+      int docId) {
+    switch (forwardIndexReader.getValueType()) {
+      case INT:
+        return forwardIndexReader.getInt(docId, readerContext);
+      case LONG:
+        return forwardIndexReader.getLong(docId, readerContext);
+      case FLOAT:
+        return forwardIndexReader.getFloat(docId, readerContext);
+      case DOUBLE:
+        return forwardIndexReader.getDouble(docId, readerContext);
+      case STRING:
+        return forwardIndexReader.getString(docId, readerContext);
+      case BYTES:
+        return forwardIndexReader.getBytes(docId, readerContext);
+      default:
+        throw new IllegalStateException();
+    }
   }
 
   @Override
@@ -392,15 +652,29 @@ public class SegmentColumnarIndexCreator implements SegmentCreator {
   @Override
   public void seal()
       throws ConfigurationException, IOException {
+    if (_columnGroupExecutors != null) {
+      flushRowBatches();
+    }
+    List<Callable<Void>> sealTasks = new ArrayList<>();
     for (DictionaryBasedInvertedIndexCreator invertedIndexCreator : _invertedIndexCreatorMap.values()) {
-      invertedIndexCreator.seal();
+      sealTasks.add(() -> {
+        invertedIndexCreator.seal();
+        return null;
+      });
     }
     for (TextIndexCreator textIndexCreator : _textIndexCreatorMap.values()) {
-      textIndexCreator.seal();
+      sealTasks.add(() -> {
+        textIndexCreator.seal();
+        return null;
+      });
     }
     for (NullValueVectorCreator nullValueVectorCreator : _nullValueVectorCreatorMap.values()) {
-      nullValueVectorCreator.seal();
+      sealTasks.add(() -> {
+        nullValueVectorCreator.seal();
+        return null;
+      });
     }
+    invokeAll(sealTasks);
     writeMetadata();
   }
 
@@ -624,8 +898,53 @@ public class SegmentColumnarIndexCreator implements SegmentCreator {
   @Override
   public void close()
       throws IOException {
+    if (_columnGroupExecutors != null) {
+      // Wait for the in-flight tasks before closing the index creators
+      for (ExecutorService executorService : _columnGroupExecutors) {
+        executorService.shutdownNow();
+      }
+      try {
+        for (ExecutorService executorService : _columnGroupExecutors) {
+          executorService.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
     FileUtils.close(Iterables
         .concat(_dictionaryCreatorMap.values(), _forwardIndexCreatorMap.values(), _invertedIndexCreatorMap.values(),
             _textIndexCreatorMap.values(), _nullValueVectorCreatorMap.values()));
   }
+
+  /**
+   * Batch of rows buffered for parallel index creation. The values are copied out of the rows because the rows might be
+   * reused by the caller.
+   */
+  private static class RowBatch {
+    final int _startDocId;
+    final Object[][] _values;
+    final boolean[][] _isNull;
+    int _numRows;
+
+    RowBatch(int startDocId, int numColumns, boolean nullHandlingEnabled) {
+      _startDocId = startDocId;
+      _values = new Object[ROW_BATCH_SIZE][numColumns];
+      _isNull = nullHandlingEnabled ? new boolean[ROW_BATCH_SIZE][numColumns] : null;
+    }
+
+    void add(GenericRow row, String[] columns) {
+      Object[] values = _values[_numRows];
+      for (int i = 0; i < columns.length; i++) {
+        Object value = row.getValue(columns[i]);
+        if (value == null) {
+          throw new RuntimeException("Null value for column:" + columns[i]);
+        }
+        values[i] = value;
+        if (_isNull != null) {
+          _isNull[_numRows][i] = row.isNullValue(columns[i]);
+        }
+      }
+      _numRows++;
+    }
+  }
 }
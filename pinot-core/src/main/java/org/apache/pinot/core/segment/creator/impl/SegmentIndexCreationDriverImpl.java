@@ -30,11 +30,13 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import javax.annotation.Nullable;
 import org.apache.commons.collections.CollectionUtils;
 import org.apache.commons.io.FileUtils;
 import org.apache.pinot.core.data.readers.PinotSegmentRecordReader;
 import org.apache.pinot.core.data.recordtransformer.CompositeTransformer;
 import org.apache.pinot.core.data.recordtransformer.RecordTransformer;
+import org.apache.pinot.core.indexsegment.IndexSegment;
 import org.apache.pinot.core.indexsegment.generator.SegmentGeneratorConfig;
 import org.apache.pinot.core.indexsegment.generator.SegmentVersion;
 import org.apache.pinot.core.segment.creator.ColumnIndexCreationInfo;
@@ -235,6 +237,46 @@ public class SegmentIndexCreationDriverImpl implements SegmentIndexCreationDrive
     handlePostCreation();
   }
 
+  /**
+   * Builds the segment column by column from the given index segment (e.g. a mutable segment) instead of reading and
+   * indexing the records one by one. The values of the dictionary-encoded columns are looked up in the segment
+   * dictionary once per distinct value, and the forward and inverted indexes are written from the dictionary ids
+   * directly.
+   * <p>The record transformer is not applied, and all the columns in the schema must exist in the index segment.
+   *
+   * @param indexSegment The index segment to build the segment from
+   * @param sortedDocIds The order of the docs in the segment, or {@code null} to keep the doc id order
+   */
+  public void buildByColumn(IndexSegment indexSegment, @Nullable int[] sortedDocIds)
+      throws Exception {
+    // Count the number of documents and gather per-column statistics
+    LOGGER.debug("Start building StatsCollector!");
+    buildIndexCreationInfo();
+    LOGGER.info("Finished building StatsCollector!");
+    LOGGER.info("Collected stats for {} documents", totalDocs);
+
+    try {
+      // Initialize the index creation using the per-column statistics information
+      indexCreator.init(config, segmentIndexCreationInfo, indexCreationInfoMap, dataSchema, tempIndexDir);
+
+      // Build the index
+      LOGGER.info("Start building IndexCreator by column!");
+      long indexStartTime = System.currentTimeMillis();
+      for (String columnName : dataSchema.getColumnNames()) {
+        indexCreator.indexColumn(columnName, indexSegment.getDataSource(columnName), sortedDocIds);
+      }
+      totalIndexTime += System.currentTimeMillis() - indexStartTime;
+    } catch (Exception e) {
+      indexCreator.close();
+      throw e;
+    } finally {
+      recordReader.close();
+    }
+    LOGGER.info("Finished records indexing in IndexCreator!");
+
+    handlePostCreation();
+  }
+
   private void handlePostCreation()
       throws Exception {
     ColumnStatistics timeColumnStatistics = segmentStats.getColumnProfileFor(config.getTimeColumnName());
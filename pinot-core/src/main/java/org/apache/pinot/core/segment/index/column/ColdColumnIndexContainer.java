@@ -0,0 +1,278 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pinot.core.segment.index.column;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.Uninterruptibles;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import javax.annotation.Nullable;
+import org.apache.pinot.core.segment.index.loader.IndexLoadingConfig;
+import org.apache.pinot.core.segment.index.metadata.ColumnMetadata;
+import org.apache.pinot.core.segment.index.readers.BaseImmutableDictionary;
+import org.apache.pinot.core.segment.index.readers.BloomFilterReader;
+import org.apache.pinot.core.segment.index.readers.ForwardIndexReader;
+import org.apache.pinot.core.segment.index.readers.InvertedIndexReader;
+import org.apache.pinot.core.segment.index.readers.NullValueVectorReaderImpl;
+import org.apache.pinot.core.segment.index.readers.TextIndexReader;
+import org.apache.pinot.core.segment.index.readers.bloom.BloomFilterReaderFactory;
+import org.apache.pinot.core.segment.store.ColdTierSegmentDirectory;
+import org.apache.pinot.core.segment.store.ColumnIndexType;
+import org.apache.pinot.core.segment.store.SegmentDirectory;
+import org.apache.pinot.spi.config.table.BloomFilterConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Column index container for a column of a cold tier segment. The bloom filter is resident, and the other indexes are
+ * downloaded from the cold tier when first accessed, then tracked by the {@link ColdTierColumnCache} which might evict
+ * them and download them again on the next access.
+ * <p>The indexes are prefetched on the prefetch threads of the {@link ColdTierColumnCache} when the segment is loaded
+ * (see {@link #prefetch()}). If they are not loaded (e.g. evicted) when accessed, they are downloaded on the query
+ * thread. Only one download is performed at a time, and the concurrent accesses wait for the same download without
+ * holding the lock of this container, so that the eviction and the close are not blocked by the download.
+ */
+public final class ColdColumnIndexContainer implements ColumnIndexContainer {
+  private static final Logger LOGGER = LoggerFactory.getLogger(ColdColumnIndexContainer.class);
+
+  private final ColdTierSegmentDirectory _segmentDirectory;
+  private final ColumnMetadata _columnMetadata;
+  private final IndexLoadingConfig _indexLoadingConfig;
+  private final File _indexDir;
+  private final BloomFilterReader _bloomFilter;
+  private final ColdTierColumnCache _columnCache = ColdTierColumnCache.getInstance();
+
+  private ColdTierSegmentDirectory.ColumnReader _columnReader;
+  private PhysicalColumnIndexContainer _container;
+  // Task to download the indexes, null if there is no download in progress
+  private FutureTask<PhysicalColumnIndexContainer> _loadTask;
+  private boolean _closed;
+
+  public ColdColumnIndexContainer(ColdTierSegmentDirectory segmentDirectory, ColumnMetadata columnMetadata,
+      IndexLoadingConfig indexLoadingConfig, File indexDir)
+      throws IOException {
+    _segmentDirectory = segmentDirectory;
+    _columnMetadata = columnMetadata;
+    _indexLoadingConfig = indexLoadingConfig;
+    _indexDir = indexDir;
+
+    String columnName = columnMetadata.getColumnName();
+    BloomFilterConfig bloomFilterConfig = indexLoadingConfig.getBloomFilterConfigs().get(columnName);
+    if (columnMetadata.hasDictionary() && bloomFilterConfig != null) {
+      try (SegmentDirectory.Reader reader = segmentDirectory.createReader()) {
+        _bloomFilter = BloomFilterReaderFactory
+            .getBloomFilterReader(reader.getIndexFor(columnName, ColumnIndexType.BLOOM_FILTER),
+                bloomFilterConfig.isLoadOnHeap());
+      }
+    } else {
+      _bloomFilter = null;
+    }
+  }
+
+  /**
+   * Prefetches the indexes in the background if the column cache has room for them.
+   */
+  public void prefetch() {
+    _columnCache.prefetch(this, _segmentDirectory.getColumnSizeBytes(_columnMetadata.getColumnName()));
+  }
+
+  /**
+   * Downloads the indexes if they are not loaded and the column is not closed. Waits for the download if it is already
+   * in progress.
+   */
+  void load() {
+    if (!isClosed()) {
+      getLoadedContainer();
+    }
+  }
+
+  /**
+   * Returns the container with all the indexes loaded, downloads the indexes if they are not loaded.
+   */
+  private PhysicalColumnIndexContainer getLoadedContainer() {
+    PhysicalColumnIndexContainer container;
+    FutureTask<PhysicalColumnIndexContainer> loadTask = null;
+    boolean startLoad = false;
+    synchronized (this) {
+      Preconditions.checkState(!_closed, "Column: %s of cold tier segment: %s is closed",
+          _columnMetadata.getColumnName(), _indexDir);
+      container = _container;
+      if (container == null) {
+        if (_loadTask == null) {
+          _loadTask = new FutureTask<>(this::downloadAndLoad);
+          startLoad = true;
+        }
+        loadTask = _loadTask;
+      }
+    }
+    // NOTE: Update the cache outside of the lock to prevent deadlock when evicting other columns
+    if (container != null) {
+      _columnCache.touch(this);
+      return container;
+    }
+    if (startLoad) {
+      loadTask.run();
+    }
+    try {
+      return Uninterruptibles.getUninterruptibly(loadTask);
+    } catch (ExecutionException e) {
+      throw new RuntimeException(
+          "Caught exception while loading column: " + _columnMetadata.getColumnName() + " of cold tier segment: "
+              + _indexDir, e.getCause());
+    }
+  }
+
+  /**
+   * Downloads the indexes and loads them into the container. Invoked without holding the lock of this container.
+   */
+  private PhysicalColumnIndexContainer downloadAndLoad()
+      throws Exception {
+    ColdTierSegmentDirectory.ColumnReader columnReader = null;
+    PhysicalColumnIndexContainer container;
+    try {
+      columnReader = _segmentDirectory.loadColumn(_columnMetadata.getColumnName());
+      container = new PhysicalColumnIndexContainer(columnReader, _columnMetadata, _indexLoadingConfig, _indexDir);
+    } catch (Exception e) {
+      if (columnReader != null) {
+        closeQuietly(columnReader);
+      }
+      synchronized (this) {
+        _loadTask = null;
+      }
+      throw e;
+    }
+    synchronized (this) {
+      _loadTask = null;
+      if (_closed) {
+        // Closed concurrently
+        container.close();
+        columnReader.close();
+        throw new IllegalStateException("Column is closed while loading");
+      }
+      _container = container;
+      _columnReader = columnReader;
+    }
+    _columnCache.add(this, _segmentDirectory.getColumnSizeBytes(_columnMetadata.getColumnName()));
+    if (isClosed()) {
+      // Closed concurrently
+      _columnCache.remove(this);
+    }
+    return container;
+  }
+
+  private synchronized boolean isClosed() {
+    return _closed;
+  }
+
+  /**
+   * Invoked by the {@link ColdTierColumnCache} when the column is evicted. The loaded indexes are released once there
+   * is no in-flight query on the segment because they might still be used by the queries.
+   */
+  void evict() {
+    PhysicalColumnIndexContainer container;
+    ColdTierSegmentDirectory.ColumnReader columnReader;
+    synchronized (this) {
+      if (_container == null) {
+        return;
+      }
+      container = _container;
+      columnReader = _columnReader;
+      _container = null;
+      _columnReader = null;
+    }
+    LOGGER.info("Evicting column: {} of cold tier segment: {}", _columnMetadata.getColumnName(), _indexDir);
+    _segmentDirectory.releaseWhenNotQueried(() -> {
+      container.close();
+      columnReader.close();
+    });
+  }
+
+  @Override
+  public ForwardIndexReader<?> getForwardIndex() {
+    return getLoadedContainer().getForwardIndex();
+  }
+
+  @Override
+  public InvertedIndexReader<?> getInvertedIndex() {
+    return getLoadedContainer().getInvertedIndex();
+  }
+
+  @Override
+  public InvertedIndexReader<?> getRangeIndex() {
+    return getLoadedContainer().getRangeIndex();
+  }
+
+  @Override
+  public TextIndexReader getTextIndex() {
+    return getLoadedContainer().getTextIndex();
+  }
+
+  @Override
+  public BaseImmutableDictionary getDictionary() {
+    return getLoadedContainer().getDictionary();
+  }
+
+  /**
+   * Returns the resident bloom filter without loading the other indexes.
+   */
+  @Nullable
+  @Override
+  public BloomFilterReader getBloomFilter() {
+    return _bloomFilter;
+  }
+
+  @Override
+  public NullValueVectorReaderImpl getNullValueVector() {
+    return getLoadedContainer().getNullValueVector();
+  }
+
+  @Override
+  public void close()
+      throws IOException {
+    _columnCache.remove(this);
+    synchronized (this) {
+      _closed = true;
+      if (_container != null) {
+        _container.close();
+        _columnReader.close();
+        _container = null;
+        _columnReader = null;
+      }
+    }
+    if (_bloomFilter != null) {
+      _bloomFilter.close();
+    }
+  }
+
+  @Override
+  public String toString() {
+    return _columnMetadata.getColumnName() + " of cold tier segment: " + _indexDir;
+  }
+
+  private static void closeQuietly(ColdTierSegmentDirectory.ColumnReader columnReader) {
+    try {
+      columnReader.close();
+    } catch (Exception e) {
+      LOGGER.error("Caught exception while closing column reader: {}", columnReader, e);
+    }
+  }
+}
@@ -0,0 +1,181 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pinot.core.segment.index.column;
+
+import com.google.common.base.Preconditions;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import org.apache.pinot.common.utils.NamedThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Server level LRU cache of the columns loaded for the cold tier segments, which bounds the disk usage of the columns
+ * downloaded from the cold tier.
+ * <p>An evicted column cannot be released right away because the index readers of the column might still be used by
+ * the in-flight queries. The evicted column is released once there is no in-flight query on its segment (see
+ * {@link org.apache.pinot.core.segment.store.ColdTierSegmentDirectory#releaseWhenNotQueried}). The disk usage can
+ * exceed the max size until then.
+ * <p>The columns of the newly loaded cold tier segments are prefetched on the prefetch threads when the cache has room
+ * for them without evicting other columns, so that the queries do not need to download them on the query threads.
+ */
+public class ColdTierColumnCache {
+  private static final Logger LOGGER = LoggerFactory.getLogger(ColdTierColumnCache.class);
+
+  // Instance config keys
+  public static final String MAX_SIZE_BYTES_KEY = "coldTier.maxCacheSizeBytes";
+  public static final String NUM_PREFETCH_THREADS_KEY = "coldTier.numPrefetchThreads";
+
+  public static final long DEFAULT_MAX_SIZE_BYTES = 10L * 1024 * 1024 * 1024;
+  public static final int DEFAULT_NUM_PREFETCH_THREADS = 2;
+
+  private static ColdTierColumnCache _instance = new ColdTierColumnCache(DEFAULT_MAX_SIZE_BYTES, 0);
+
+  /**
+   * For tests only.
+   */
+  public static void init(long maxSizeBytes) {
+    init(maxSizeBytes, 0);
+  }
+
+  /**
+   * Initializes the server level cache. This method should only be called once before loading any cold tier segment.
+   * Prefetching is disabled if the number of prefetch threads is not positive.
+   */
+  public static void init(long maxSizeBytes, int numPrefetchThreads) {
+    LOGGER.info("Initializing cold tier column cache with max size: {} bytes, {} prefetch threads", maxSizeBytes,
+        numPrefetchThreads);
+    ColdTierColumnCache previousInstance = _instance;
+    _instance = new ColdTierColumnCache(maxSizeBytes, numPrefetchThreads);
+    if (previousInstance._prefetchExecutor != null) {
+      previousInstance._prefetchExecutor.shutdownNow();
+    }
+  }
+
+  public static ColdTierColumnCache getInstance() {
+    return _instance;
+  }
+
+  private final long _maxSizeBytes;
+  // Executor to prefetch the columns, null if prefetching is disabled
+  private final ExecutorService _prefetchExecutor;
+  // Map from loaded column to its size in access order
+  private final LinkedHashMap<ColdColumnIndexContainer, Long> _loadedColumns = new LinkedHashMap<>(16, 0.75f, true);
+  private long _sizeBytes;
+
+  public ColdTierColumnCache(long maxSizeBytes, int numPrefetchThreads) {
+    Preconditions.checkArgument(maxSizeBytes > 0, "Invalid max size: %s for cold tier column cache", maxSizeBytes);
+    _maxSizeBytes = maxSizeBytes;
+    _prefetchExecutor = numPrefetchThreads > 0 ? Executors
+        .newFixedThreadPool(numPrefetchThreads, new NamedThreadFactory("cold-tier-prefetch")) : null;
+  }
+
+  /**
+   * Prefetches the column on the prefetch threads if prefetching is enabled, and the cache has room for the column
+   * without evicting other columns.
+   */
+  void prefetch(ColdColumnIndexContainer column, long sizeBytes) {
+    if (_prefetchExecutor == null) {
+      return;
+    }
+    synchronized (this) {
+      if (_sizeBytes + sizeBytes > _maxSizeBytes) {
+        return;
+      }
+    }
+    try {
+      _prefetchExecutor.execute(() -> {
+        // Check again because other columns might be loaded since the prefetch is scheduled
+        synchronized (this) {
+          if (_sizeBytes + sizeBytes > _maxSizeBytes) {
+            return;
+          }
+        }
+        try {
+          column.load();
+        } catch (Exception e) {
+          LOGGER.warn("Caught exception while prefetching column: {}", column, e);
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      LOGGER.warn("Prefetch executor is shut down, skipping prefetching column: {}", column);
+    }
+  }
+
+  /**
+   * Adds a loaded column into the cache, and evicts the least recently used columns if the cache exceeds the max size.
+   * <p>NOTE: This method should not be called while holding the lock of any column to prevent deadlock.
+   */
+  void add(ColdColumnIndexContainer column, long sizeBytes) {
+    List<ColdColumnIndexContainer> columnsToEvict = new ArrayList<>();
+    synchronized (this) {
+      Long previousSizeBytes = _loadedColumns.put(column, sizeBytes);
+      if (previousSizeBytes != null) {
+        _sizeBytes -= previousSizeBytes;
+      }
+      _sizeBytes += sizeBytes;
+      Iterator<Map.Entry<ColdColumnIndexContainer, Long>> iterator = _loadedColumns.entrySet().iterator();
+      while (_sizeBytes > _maxSizeBytes && iterator.hasNext()) {
+        Map.Entry<ColdColumnIndexContainer, Long> entry = iterator.next();
+        if (entry.getKey() == column) {
+          // Always keep the newly loaded column
+          continue;
+        }
+        columnsToEvict.add(entry.getKey());
+        _sizeBytes -= entry.getValue();
+        iterator.remove();
+      }
+    }
+    for (ColdColumnIndexContainer columnToEvict : columnsToEvict) {
+      columnToEvict.evict();
+    }
+  }
+
+  /**
+   * Marks the column as recently used.
+   */
+  synchronized void touch(ColdColumnIndexContainer column) {
+    _loadedColumns.get(column);
+  }
+
+  /**
+   * Removes the column from the cache (e.g. when the segment is destroyed).
+   */
+  synchronized void remove(ColdColumnIndexContainer column) {
+    Long sizeBytes = _loadedColumns.remove(column);
+    if (sizeBytes != null) {
+      _sizeBytes -= sizeBytes;
+    }
+  }
+
+  public synchronized int getNumLoadedColumns() {
+    return _loadedColumns.size();
+  }
+
+  public synchronized long getSizeBytes() {
+    return _sizeBytes;
+  }
+}
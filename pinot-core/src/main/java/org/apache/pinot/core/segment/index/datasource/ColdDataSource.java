@@ -0,0 +1,93 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pinot.core.segment.index.datasource;
+
+import javax.annotation.Nullable;
+import org.apache.pinot.core.common.DataSource;
+import org.apache.pinot.core.common.DataSourceMetadata;
+import org.apache.pinot.core.segment.index.column.ColdColumnIndexContainer;
+import org.apache.pinot.core.segment.index.metadata.ColumnMetadata;
+import org.apache.pinot.core.segment.index.readers.BloomFilterReader;
+import org.apache.pinot.core.segment.index.readers.Dictionary;
+import org.apache.pinot.core.segment.index.readers.ForwardIndexReader;
+import org.apache.pinot.core.segment.index.readers.InvertedIndexReader;
+import org.apache.pinot.core.segment.index.readers.NullValueVectorReader;
+import org.apache.pinot.core.segment.index.readers.TextIndexReader;
+
+
+/**
+ * The {@code ColdDataSource} class is the data source for a column in the cold tier segment. Unlike the
+ * {@link ImmutableDataSource}, the indexes are fetched from the container on demand so that pruning the segment with
+ * the metadata and the resident bloom filter does not download the column.
+ */
+public class ColdDataSource implements DataSource {
+  private final DataSourceMetadata _dataSourceMetadata;
+  private final ColdColumnIndexContainer _columnIndexContainer;
+
+  public ColdDataSource(ColumnMetadata columnMetadata, ColdColumnIndexContainer columnIndexContainer) {
+    _dataSourceMetadata = new ImmutableDataSource.ImmutableDataSourceMetadata(columnMetadata);
+    _columnIndexContainer = columnIndexContainer;
+  }
+
+  @Override
+  public DataSourceMetadata getDataSourceMetadata() {
+    return _dataSourceMetadata;
+  }
+
+  @Override
+  public ForwardIndexReader<?> getForwardIndex() {
+    return _columnIndexContainer.getForwardIndex();
+  }
+
+  @Nullable
+  @Override
+  public Dictionary getDictionary() {
+    return _columnIndexContainer.getDictionary();
+  }
+
+  @Nullable
+  @Override
+  public InvertedIndexReader<?> getInvertedIndex() {
+    return _columnIndexContainer.getInvertedIndex();
+  }
+
+  @Nullable
+  @Override
+  public InvertedIndexReader<?> getRangeIndex() {
+    return _columnIndexContainer.getRangeIndex();
+  }
+
+  @Nullable
+  @Override
+  public TextIndexReader getTextIndex() {
+    return _columnIndexContainer.getTextIndex();
+  }
+
+  @Nullable
+  @Override
+  public BloomFilterReader getBloomFilter() {
+    return _columnIndexContainer.getBloomFilter();
+  }
+
+  @Nullable
+  @Override
+  public NullValueVectorReader getNullValueVector() {
+    return _columnIndexContainer.getNullValueVector();
+  }
+}
@@ -39,7 +39,7 @@ public class ImmutableDataSource extends BaseDataSource {
         columnIndexContainer.getBloomFilter(), columnIndexContainer.getNullValueVector());
   }
 
-  private static class ImmutableDataSourceMetadata implements DataSourceMetadata {
+  static class ImmutableDataSourceMetadata implements DataSourceMetadata {
     final FieldSpec _fieldSpec;
     final boolean _sorted;
     final int _numDocs;
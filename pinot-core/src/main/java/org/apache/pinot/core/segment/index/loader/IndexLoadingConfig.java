@@ -26,6 +26,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import javax.annotation.Nullable;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.pinot.common.segment.ReadMode;
 import org.apache.pinot.core.data.manager.config.InstanceDataManagerConfig;
 import org.apache.pinot.core.indexsegment.generator.SegmentVersion;
@@ -35,6 +36,7 @@ import org.apache.pinot.spi.config.table.FieldConfig;
 import org.apache.pinot.spi.config.table.IndexingConfig;
 import org.apache.pinot.spi.config.table.StarTreeIndexConfig;
 import org.apache.pinot.spi.config.table.TableConfig;
+import org.apache.pinot.spi.config.table.TableType;
 
 
 /**
@@ -43,6 +45,10 @@ import org.apache.pinot.spi.config.table.TableConfig;
 public class IndexLoadingConfig {
   private static final int DEFAULT_REALTIME_AVG_MULTI_VALUE_COUNT = 2;
   private static final String SEGMENT_STORE_URI = "segment.store.uri";
+  // Remote directory (e.g. on deep store) to serve the OFFLINE segments of the tables with cold tier enabled from. When
+  // configured, only the segment metadata and the bloom filters of these tables are kept on the local disk, and the
+  // other indexes are downloaded on demand
+  public static final String COLD_TIER_REMOTE_DIR = "coldTier.remoteDir";
 
   private ReadMode _readMode = ReadMode.DEFAULT_MODE;
   private List<String> _sortedColumns = Collections.emptyList();
@@ -66,6 +72,7 @@ public class IndexLoadingConfig {
   private boolean _isDirectRealtimeOffHeapAllocation;
   private boolean _enableSplitCommitEndWithMetadata;
   private String _segmentStoreURI;
+  private String _coldTierRemoteDir;
 
   // constructed from FieldConfig
   private Map<String, Map<String, String>> _columnProperties = new HashMap<>();
@@ -73,6 +80,13 @@ public class IndexLoadingConfig {
   public IndexLoadingConfig(InstanceDataManagerConfig instanceDataManagerConfig, TableConfig tableConfig) {
     extractFromInstanceConfig(instanceDataManagerConfig);
     extractFromTableConfig(tableConfig);
+
+    // NOTE: The cold tier is configured on the server, and each table needs to opt in to be served from it
+    String coldTierRemoteDir = instanceDataManagerConfig.getConfig().getProperty(COLD_TIER_REMOTE_DIR);
+    if (coldTierRemoteDir != null && tableConfig.getTableType() == TableType.OFFLINE && tableConfig.getIndexingConfig()
+        .isColdTierEnabled()) {
+      _coldTierRemoteDir = StringUtils.removeEnd(coldTierRemoteDir, "/") + "/" + tableConfig.getTableName();
+    }
   }
 
   private void extractFromTableConfig(TableConfig tableConfig) {
@@ -354,6 +368,22 @@ public class IndexLoadingConfig {
     return _segmentStoreURI;
   }
 
+  /**
+   * Returns the remote directory of the table to serve the segments from if the table is on the cold tier, or
+   * {@code null} if not.
+   */
+  @Nullable
+  public String getColdTierRemoteDir() {
+    return _coldTierRemoteDir;
+  }
+
+  /**
+   * For tests only.
+   */
+  public void setColdTierRemoteDir(@Nullable String coldTierRemoteDir) {
+    _coldTierRemoteDir = coldTierRemoteDir;
+  }
+
   /**
    * For tests only.
    */
@@ -109,6 +109,8 @@ public class SegmentPreProcessor implements AutoCloseable {
       invertedIndexHandler.createInvertedIndices();
 
       // Create column range indices according to the index config.
+      // NOTE: The indexes are created one column at a time because the segment writer (e.g. the single file index
+      //       directory for V3 segments) does not support concurrent writes. The same applies to the bloom filters.
       RangeIndexHandler rangeIndexHandler =
           new RangeIndexHandler(_indexDir, _segmentMetadata, _indexLoadingConfig, segmentWriter);
       rangeIndexHandler.createRangeIndices();
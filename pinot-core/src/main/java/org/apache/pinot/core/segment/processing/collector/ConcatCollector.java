@@ -18,7 +18,8 @@
  */
 package org.apache.pinot.core.segment.processing.collector;
 
-import java.util.ArrayList;
+import java.io.IOException;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import org.apache.commons.collections.CollectionUtils;
@@ -28,40 +29,49 @@ import org.apache.pinot.spi.data.readers.GenericRow;
 
 /**
  * A Collector implementation for collecting and concatenating all incoming rows
+ * The rows are stored off-heap and spilled to disk when needed (see {@link ExternalGenericRowSorter}), so that the
+ * memory usage is bounded regardless of the number of rows collected.
  */
 public class ConcatCollector implements Collector {
-  private final List<GenericRow> _collection = new ArrayList<>();
-  private final GenericRowSorter _sorter;
+  private final ExternalGenericRowSorter _sorter;
 
   public ConcatCollector(CollectorConfig collectorConfig, Schema schema) {
+    this(collectorConfig, schema, ExternalGenericRowSorter.DEFAULT_MAX_BUFFER_SIZE_BYTES);
+  }
+
+  public ConcatCollector(CollectorConfig collectorConfig, Schema schema, long maxBufferSizeBytes) {
     List<String> sortOrder = collectorConfig.getSortOrder();
-    if (CollectionUtils.isNotEmpty(sortOrder)) {
-      _sorter = new GenericRowSorter(sortOrder, schema);
-    } else {
-      _sorter = null;
+    if (CollectionUtils.isEmpty(sortOrder)) {
+      sortOrder = Collections.emptyList();
     }
+    _sorter = new ExternalGenericRowSorter(schema, sortOrder, maxBufferSizeBytes);
   }
 
   @Override
   public void collect(GenericRow genericRow) {
-    _collection.add(genericRow);
+    try {
+      _sorter.add(genericRow);
+    } catch (IOException e) {
+      throw new RuntimeException("Caught exception while collecting row: " + genericRow, e);
+    }
   }
 
   @Override
   public Iterator<GenericRow> iterator() {
-    if (_sorter != null) {
-      _sorter.sort(_collection);
+    try {
+      return _sorter.iterator();
+    } catch (IOException e) {
+      throw new RuntimeException("Caught exception while sorting the collected rows", e);
     }
-    return _collection.iterator();
   }
 
   @Override
   public int size() {
-    return _collection.size();
+    return _sorter.size();
   }
 
   @Override
   public void reset() {
-    _collection.clear();
+    _sorter.reset();
   }
 }
@@ -0,0 +1,339 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pinot.core.segment.processing.collector;
+
+import com.google.common.base.Preconditions;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.UUID;
+import org.apache.commons.io.FileUtils;
+import org.apache.pinot.core.segment.memory.PinotDataBuffer;
+import org.apache.pinot.spi.data.FieldSpec;
+import org.apache.pinot.spi.data.Schema;
+import org.apache.pinot.spi.data.readers.GenericRow;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * External sorter for GenericRows with bounded memory usage regardless of the number of rows.
+ * <p>The rows are serialized (see {@link GenericRowSerializer}) into an off-heap buffer. When the buffer is full, the
+ * rows in the buffer are sorted on their offsets (with the key prefix of the first sort column when it is numeric),
+ * and spilled into a sorted run file. When iterating the rows, the sorted run files are memory mapped and merged with a
+ * k-way merge. The sort is stable, and the rows are returned in the insertion order when there is no sort column.
+ * <p>This class is not thread-safe.
+ */
+public class ExternalGenericRowSorter {
+  private static final Logger LOGGER = LoggerFactory.getLogger(ExternalGenericRowSorter.class);
+
+  public static final long DEFAULT_MAX_BUFFER_SIZE_BYTES = 64L * 1024 * 1024;
+
+  private final GenericRowSerializer _serializer;
+  private final int _numSortFields;
+  private final String _prefixColumn;
+  private final FieldSpec.DataType _prefixDataType;
+  private final long _maxBufferSizeBytes;
+
+  // Off-heap buffer for the rows of the current run, allocated lazily
+  private PinotDataBuffer _buffer;
+  private long _bufferSizeBytes;
+  private final LongArrayList _offsets = new LongArrayList();
+  private final LongArrayList _prefixes = new LongArrayList();
+
+  // Directory for the sorted run files, created lazily
+  private File _spillDir;
+  private final List<File> _runFiles = new ArrayList<>();
+  private final List<PinotDataBuffer> _runBuffers = new ArrayList<>();
+  private int _numRows;
+
+  /**
+   * @param schema Pinot schema, where all the non-virtual columns are stored
+   * @param sortOrder Columns to sort on, can be empty
+   * @param maxBufferSizeBytes Max size of the off-heap buffer (the rows are spilled to disk when it is full)
+   */
+  public ExternalGenericRowSorter(Schema schema, List<String> sortOrder, long maxBufferSizeBytes) {
+    // Put the sort columns in front so that they can be compared without deserializing the whole row
+    List<FieldSpec> fieldSpecs = new ArrayList<>();
+    for (String column : sortOrder) {
+      FieldSpec fieldSpec = schema.getFieldSpecFor(column);
+      Preconditions.checkState(fieldSpec != null, "Column in sort order: %s does not exist in schema", column);
+      Preconditions.checkState(fieldSpec.isSingleValueField(), "Cannot use multi value column: %s for sorting", column);
+      fieldSpecs.add(fieldSpec);
+    }
+    for (FieldSpec fieldSpec : schema.getAllFieldSpecs()) {
+      if (!fieldSpec.isVirtualColumn() && !sortOrder.contains(fieldSpec.getName())) {
+        fieldSpecs.add(fieldSpec);
+      }
+    }
+    _serializer = new GenericRowSerializer(fieldSpecs);
+    _numSortFields = sortOrder.size();
+    if (_numSortFields > 0 && fieldSpecs.get(0).getDataType().isNumeric()) {
+      _prefixColumn = fieldSpecs.get(0).getName();
+      _prefixDataType = fieldSpecs.get(0).getDataType();
+    } else {
+      _prefixColumn = null;
+      _prefixDataType = null;
+    }
+    Preconditions.checkArgument(maxBufferSizeBytes > 0, "Invalid max buffer size: %s", maxBufferSizeBytes);
+    _maxBufferSizeBytes = maxBufferSizeBytes;
+  }
+
+  /**
+   * Adds a row into the sorter. The row is serialized, so it can be reused after this method returns.
+   */
+  public void add(GenericRow row)
+      throws IOException {
+    byte[] bytes = _serializer.serialize(row);
+    if (_buffer == null || _bufferSizeBytes + bytes.length > _buffer.size()) {
+      if (!_offsets.isEmpty()) {
+        spill();
+      }
+      if (_buffer == null || bytes.length > _buffer.size()) {
+        // Allocate a bigger buffer if a single row does not fit into the buffer
+        closeBuffer();
+        _buffer = PinotDataBuffer.allocateDirect(Math.max(_maxBufferSizeBytes, bytes.length),
+            PinotDataBuffer.NATIVE_ORDER, "ExternalGenericRowSorter buffer");
+      }
+    }
+    _buffer.readFrom(_bufferSizeBytes, bytes);
+    _offsets.add(_bufferSizeBytes);
+    if (_prefixColumn != null) {
+      _prefixes.add(getPrefix(row.getValue(_prefixColumn)));
+    }
+    _bufferSizeBytes += bytes.length;
+    _numRows++;
+  }
+
+  /**
+   * Returns a long with the same order as the numeric value.
+   */
+  private long getPrefix(Object value) {
+    switch (_prefixDataType) {
+      case INT:
+      case LONG:
+        return ((Number) value).longValue();
+      case FLOAT:
+      case DOUBLE:
+        // Flip the non-sign bits of the negative values so that the bits have the same order as Double.compare()
+        long bits = Double.doubleToLongBits(((Number) value).doubleValue());
+        return bits ^ ((bits >> 63) & Long.MAX_VALUE);
+      default:
+        throw new IllegalStateException("Unsupported data type for key prefix: " + _prefixDataType);
+    }
+  }
+
+  /**
+   * Returns the row ids of the rows in the buffer in the sorted order.
+   */
+  private int[] sortBuffer() {
+    int numRows = _offsets.size();
+    int[] rowIds = new int[numRows];
+    for (int i = 0; i < numRows; i++) {
+      rowIds[i] = i;
+    }
+    if (_numSortFields > 0) {
+      long[] offsets = _offsets.elements();
+      long[] prefixes = _prefixColumn != null ? _prefixes.elements() : null;
+      // NOTE: Use merge sort to keep the sort stable
+      IntArrays.mergeSort(rowIds, (rowId1, rowId2) -> {
+        if (prefixes != null) {
+          int result = Long.compare(prefixes[rowId1], prefixes[rowId2]);
+          if (result != 0) {
+            return result;
+          }
+        }
+        return _serializer.compare(_buffer, offsets[rowId1], _buffer, offsets[rowId2], _numSortFields);
+      });
+    }
+    return rowIds;
+  }
+
+  /**
+   * Sorts the rows in the buffer, writes them into a sorted run file, and clears the buffer.
+   */
+  private void spill()
+      throws IOException {
+    if (_spillDir == null) {
+      _spillDir = new File(FileUtils.getTempDirectory(), "external_generic_row_sorter_" + UUID.randomUUID());
+      FileUtils.forceMkdir(_spillDir);
+    }
+    File runFile = new File(_spillDir, "run_" + _runFiles.size());
+    int[] sortedRowIds = sortBuffer();
+    long[] offsets = _offsets.elements();
+    byte[] bytes = new byte[0];
+    try (OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(runFile))) {
+      for (int rowId : sortedRowIds) {
+        long offset = offsets[rowId];
+        int rowSize = GenericRowSerializer.getRowSize(_buffer, offset);
+        if (bytes.length < rowSize) {
+          bytes = new byte[rowSize];
+        }
+        _buffer.copyTo(offset, bytes, 0, rowSize);
+        outputStream.write(bytes, 0, rowSize);
+      }
+    }
+    _runFiles.add(runFile);
+    LOGGER.debug("Spilled {} rows of {} bytes into sorted run file: {}", sortedRowIds.length, _bufferSizeBytes,
+        runFile);
+    _bufferSizeBytes = 0;
+    _offsets.clear();
+    _prefixes.clear();
+  }
+
+  /**
+   * Returns an iterator of the rows in the sorted order. A new GenericRow is returned for each row. No row should be
+   * added after this method is called.
+   */
+  public Iterator<GenericRow> iterator()
+      throws IOException {
+    if (_runFiles.isEmpty()) {
+      // All rows fit into the buffer
+      int[] sortedRowIds = sortBuffer();
+      long[] offsets = _offsets.elements();
+      return new Iterator<GenericRow>() {
+        private int _index = 0;
+
+        @Override
+        public boolean hasNext() {
+          return _index < sortedRowIds.length;
+        }
+
+        @Override
+        public GenericRow next() {
+          if (!hasNext()) {
+            throw new NoSuchElementException();
+          }
+          return _serializer.deserialize(_buffer, offsets[sortedRowIds[_index++]], new GenericRow());
+        }
+      };
+    }
+
+    if (!_offsets.isEmpty()) {
+      spill();
+    }
+    closeBuffer();
+    PriorityQueue<RunCursor> cursors = new PriorityQueue<>(_runFiles.size());
+    for (int i = 0; i < _runFiles.size(); i++) {
+      File runFile = _runFiles.get(i);
+      PinotDataBuffer runBuffer = PinotDataBuffer
+          .mapFile(runFile, true, 0, runFile.length(), PinotDataBuffer.NATIVE_ORDER,
+              "ExternalGenericRowSorter run: " + runFile);
+      _runBuffers.add(runBuffer);
+      cursors.add(new RunCursor(i, runBuffer));
+    }
+    return new Iterator<GenericRow>() {
+      @Override
+      public boolean hasNext() {
+        return !cursors.isEmpty();
+      }
+
+      @Override
+      public GenericRow next() {
+        RunCursor cursor = cursors.poll();
+        if (cursor == null) {
+          throw new NoSuchElementException();
+        }
+        GenericRow row = _serializer.deserialize(cursor._buffer, cursor._offset, new GenericRow());
+        if (cursor.advance()) {
+          cursors.add(cursor);
+        }
+        return row;
+      }
+    };
+  }
+
+  /**
+   * Cursor on a memory mapped sorted run file.
+   */
+  private class RunCursor implements Comparable<RunCursor> {
+    final int _runId;
+    final PinotDataBuffer _buffer;
+    long _offset = 0;
+
+    RunCursor(int runId, PinotDataBuffer buffer) {
+      _runId = runId;
+      _buffer = buffer;
+    }
+
+    /**
+     * Moves to the next row, returns {@code false} if there is no more row in the run.
+     */
+    boolean advance() {
+      _offset += GenericRowSerializer.getRowSize(_buffer, _offset);
+      return _offset < _buffer.size();
+    }
+
+    @Override
+    public int compareTo(RunCursor o) {
+      int result = _serializer.compare(_buffer, _offset, o._buffer, o._offset, _numSortFields);
+      // Break ties with the run id to keep the sort stable
+      return result != 0 ? result : Integer.compare(_runId, o._runId);
+    }
+  }
+
+  public int size() {
+    return _numRows;
+  }
+
+  /**
+   * Releases all the rows, including the off-heap buffer and the sorted run files.
+   */
+  public void reset() {
+    closeBuffer();
+    _bufferSizeBytes = 0;
+    _offsets.clear();
+    _prefixes.clear();
+    for (PinotDataBuffer runBuffer : _runBuffers) {
+      releaseBuffer(runBuffer);
+    }
+    _runBuffers.clear();
+    _runFiles.clear();
+    if (_spillDir != null) {
+      FileUtils.deleteQuietly(_spillDir);
+      _spillDir = null;
+    }
+    _numRows = 0;
+  }
+
+  private void closeBuffer() {
+    if (_buffer != null) {
+      releaseBuffer(_buffer);
+      _buffer = null;
+    }
+  }
+
+  private static void releaseBuffer(PinotDataBuffer buffer) {
+    try {
+      buffer.close();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}
@@ -0,0 +1,280 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pinot.core.segment.processing.collector;
+
+import com.google.common.base.Preconditions;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import org.apache.pinot.core.segment.memory.PinotDataBuffer;
+import org.apache.pinot.spi.data.FieldSpec;
+import org.apache.pinot.spi.data.readers.GenericRow;
+
+
+/**
+ * Serializer for GenericRows into a compact binary layout, which allows the rows to be stored in off-heap or memory
+ * mapped buffers, and compared without being deserialized.
+ * <p>The serialized row is: [row size (including the size itself)][field 1]...[field n], in native byte order, where:
+ * <ul>
+ *   <li>INT/LONG/FLOAT/DOUBLE values are stored as fixed-size values</li>
+ *   <li>STRING/BYTES values are stored as [length][bytes]</li>
+ *   <li>Multi-value fields are stored as [number of values][value 1]...[value m]</li>
+ * </ul>
+ */
+public class GenericRowSerializer {
+  private final int _numFields;
+  private final String[] _fieldNames;
+  private final FieldSpec.DataType[] _dataTypes;
+  private final boolean[] _isSingleValueFields;
+
+  public GenericRowSerializer(List<FieldSpec> fieldSpecs) {
+    _numFields = fieldSpecs.size();
+    _fieldNames = new String[_numFields];
+    _dataTypes = new FieldSpec.DataType[_numFields];
+    _isSingleValueFields = new boolean[_numFields];
+    for (int i = 0; i < _numFields; i++) {
+      FieldSpec fieldSpec = fieldSpecs.get(i);
+      _fieldNames[i] = fieldSpec.getName();
+      _dataTypes[i] = fieldSpec.getDataType();
+      _isSingleValueFields[i] = fieldSpec.isSingleValueField();
+    }
+  }
+
+  /**
+   * Serializes the given GenericRow into a byte array.
+   */
+  public byte[] serialize(GenericRow row) {
+    // Encode the STRING values first to compute the serialized size
+    Object[] values = new Object[_numFields];
+    int size = Integer.BYTES;
+    for (int i = 0; i < _numFields; i++) {
+      Object value = row.getValue(_fieldNames[i]);
+      Preconditions.checkState(value != null, "Null value is not supported for column: %s", _fieldNames[i]);
+      if (_isSingleValueFields[i]) {
+        values[i] = encodeValue(value, _dataTypes[i]);
+        size += getSerializedSize(values[i], _dataTypes[i]);
+      } else {
+        Object[] multiValues = (Object[]) value;
+        Object[] encodedValues = new Object[multiValues.length];
+        size += Integer.BYTES;
+        for (int j = 0; j < multiValues.length; j++) {
+          encodedValues[j] = encodeValue(multiValues[j], _dataTypes[i]);
+          size += getSerializedSize(encodedValues[j], _dataTypes[i]);
+        }
+        values[i] = encodedValues;
+      }
+    }
+
+    byte[] bytes = new byte[size];
+    ByteBuffer byteBuffer = ByteBuffer.wrap(bytes).order(PinotDataBuffer.NATIVE_ORDER);
+    byteBuffer.putInt(size);
+    for (int i = 0; i < _numFields; i++) {
+      if (_isSingleValueFields[i]) {
+        putValue(byteBuffer, values[i], _dataTypes[i]);
+      } else {
+        Object[] encodedValues = (Object[]) values[i];
+        byteBuffer.putInt(encodedValues.length);
+        for (Object encodedValue : encodedValues) {
+          putValue(byteBuffer, encodedValue, _dataTypes[i]);
+        }
+      }
+    }
+    return bytes;
+  }
+
+  private static Object encodeValue(Object value, FieldSpec.DataType dataType) {
+    return dataType == FieldSpec.DataType.STRING ? value.toString().getBytes(StandardCharsets.UTF_8) : value;
+  }
+
+  private static int getSerializedSize(Object encodedValue, FieldSpec.DataType dataType) {
+    switch (dataType) {
+      case INT:
+      case FLOAT:
+        return Integer.BYTES;
+      case LONG:
+      case DOUBLE:
+        return Long.BYTES;
+      case STRING:
+      case BYTES:
+        return Integer.BYTES + ((byte[]) encodedValue).length;
+      default:
+        throw new IllegalStateException("Unsupported data type: " + dataType);
+    }
+  }
+
+  private static void putValue(ByteBuffer byteBuffer, Object encodedValue, FieldSpec.DataType dataType) {
+    switch (dataType) {
+      case INT:
+        byteBuffer.putInt(((Number) encodedValue).intValue());
+        break;
+      case LONG:
+        byteBuffer.putLong(((Number) encodedValue).longValue());
+        break;
+      case FLOAT:
+        byteBuffer.putFloat(((Number) encodedValue).floatValue());
+        break;
+      case DOUBLE:
+        byteBuffer.putDouble(((Number) encodedValue).doubleValue());
+        break;
+      case STRING:
+      case BYTES:
+        byte[] bytes = (byte[]) encodedValue;
+        byteBuffer.putInt(bytes.length);
+        byteBuffer.put(bytes);
+        break;
+      default:
+        throw new IllegalStateException("Unsupported data type: " + dataType);
+    }
+  }
+
+  /**
+   * Returns the size of the serialized row at the given offset of the buffer.
+   */
+  public static int getRowSize(PinotDataBuffer buffer, long offset) {
+    return buffer.getInt(offset);
+  }
+
+  /**
+   * Deserializes the row at the given offset of the buffer into the given GenericRow.
+   */
+  public GenericRow deserialize(PinotDataBuffer buffer, long offset, GenericRow reuse) {
+    offset += Integer.BYTES;
+    for (int i = 0; i < _numFields; i++) {
+      FieldSpec.DataType dataType = _dataTypes[i];
+      if (_isSingleValueFields[i]) {
+        Object value = getValue(buffer, offset, dataType);
+        offset += getSerializedSize(buffer, offset, dataType);
+        reuse.putValue(_fieldNames[i], value);
+      } else {
+        int numValues = buffer.getInt(offset);
+        offset += Integer.BYTES;
+        Object[] multiValues = new Object[numValues];
+        for (int j = 0; j < numValues; j++) {
+          multiValues[j] = getValue(buffer, offset, dataType);
+          offset += getSerializedSize(buffer, offset, dataType);
+        }
+        reuse.putValue(_fieldNames[i], multiValues);
+      }
+    }
+    return reuse;
+  }
+
+  private static Object getValue(PinotDataBuffer buffer, long offset, FieldSpec.DataType dataType) {
+    switch (dataType) {
+      case INT:
+        return buffer.getInt(offset);
+      case LONG:
+        return buffer.getLong(offset);
+      case FLOAT:
+        return buffer.getFloat(offset);
+      case DOUBLE:
+        return buffer.getDouble(offset);
+      case STRING:
+        return new String(getBytes(buffer, offset), StandardCharsets.UTF_8);
+      case BYTES:
+        return getBytes(buffer, offset);
+      default:
+        throw new IllegalStateException("Unsupported data type: " + dataType);
+    }
+  }
+
+  private static byte[] getBytes(PinotDataBuffer buffer, long offset) {
+    byte[] bytes = new byte[buffer.getInt(offset)];
+    buffer.copyTo(offset + Integer.BYTES, bytes);
+    return bytes;
+  }
+
+  private static int getSerializedSize(PinotDataBuffer buffer, long offset, FieldSpec.DataType dataType) {
+    switch (dataType) {
+      case INT:
+      case FLOAT:
+        return Integer.BYTES;
+      case LONG:
+      case DOUBLE:
+        return Long.BYTES;
+      case STRING:
+      case BYTES:
+        return Integer.BYTES + buffer.getInt(offset);
+      default:
+        throw new IllegalStateException("Unsupported data type: " + dataType);
+    }
+  }
+
+  /**
+   * Compares the first {@code numFields} fields (which must be single-value) of the serialized rows at the given
+   * offsets of the given buffers, with the same semantic as {@link GenericRowSorter}.
+   */
+  public int compare(PinotDataBuffer buffer1, long offset1, PinotDataBuffer buffer2, long offset2, int numFields) {
+    offset1 += Integer.BYTES;
+    offset2 += Integer.BYTES;
+    for (int i = 0; i < numFields; i++) {
+      FieldSpec.DataType dataType = _dataTypes[i];
+      int result;
+      switch (dataType) {
+        case INT:
+          result = Integer.compare(buffer1.getInt(offset1), buffer2.getInt(offset2));
+          break;
+        case LONG:
+          result = Long.compare(buffer1.getLong(offset1), buffer2.getLong(offset2));
+          break;
+        case FLOAT:
+          result = Float.compare(buffer1.getFloat(offset1), buffer2.getFloat(offset2));
+          break;
+        case DOUBLE:
+          result = Double.compare(buffer1.getDouble(offset1), buffer2.getDouble(offset2));
+          break;
+        case STRING:
+          // NOTE: Compare the decoded values to keep the same order as String.compareTo(), which is not the same as
+          //       the order of the UTF-8 bytes for supplementary characters
+          result = ((String) getValue(buffer1, offset1, dataType)).compareTo((String) getValue(buffer2, offset2,
+              dataType));
+          break;
+        case BYTES:
+          result = compareBytes(buffer1, offset1, buffer2, offset2);
+          break;
+        default:
+          throw new IllegalStateException("Cannot sort on column with dataType " + dataType);
+      }
+      if (result != 0) {
+        return result;
+      }
+      offset1 += getSerializedSize(buffer1, offset1, dataType);
+      offset2 += getSerializedSize(buffer2, offset2, dataType);
+    }
+    return 0;
+  }
+
+  /**
+   * Compares the serialized BYTES values in place with the same semantic as ByteArray.compare().
+   */
+  private static int compareBytes(PinotDataBuffer buffer1, long offset1, PinotDataBuffer buffer2, long offset2) {
+    int length1 = buffer1.getInt(offset1);
+    int length2 = buffer2.getInt(offset2);
+    offset1 += Integer.BYTES;
+    offset2 += Integer.BYTES;
+    int minLength = Math.min(length1, length2);
+    for (int i = 0; i < minLength; i++) {
+      int result = Byte.toUnsignedInt(buffer1.getByte(offset1 + i)) - Byte.toUnsignedInt(buffer2.getByte(offset2 + i));
+      if (result != 0) {
+        return result;
+      }
+    }
+    return length1 - length2;
+  }
+}
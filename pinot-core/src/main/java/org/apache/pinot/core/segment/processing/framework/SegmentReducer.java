@@ -89,7 +89,8 @@ public class SegmentReducer {
         GenericRow next = avroRecordReader.next();
 
         // Aggregations
-        // TODO: Off-heap based implementation for aggregation/sorting
+        // NOTE: CONCAT collector stores the rows off-heap and spills them to disk when needed
+        // TODO: Off-heap based implementation for aggregation
         _collector.collect(next);
 
         // Reached max records per part file. Flush
@@ -129,5 +130,6 @@ public class SegmentReducer {
    * Cleans up reducer state
    */
   public void cleanup() {
+    _collector.reset();
   }
 }
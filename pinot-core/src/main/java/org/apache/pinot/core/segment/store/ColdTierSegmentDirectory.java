@@ -0,0 +1,466 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pinot.core.segment.store;
+
+import com.google.common.base.Preconditions;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import org.apache.commons.io.FileUtils;
+import org.apache.pinot.common.segment.ReadMode;
+import org.apache.pinot.core.segment.creator.impl.V1Constants;
+import org.apache.pinot.core.segment.index.metadata.SegmentMetadataImpl;
+import org.apache.pinot.core.segment.memory.PinotDataBuffer;
+import org.apache.pinot.spi.filesystem.PinotFS;
+import org.apache.pinot.spi.filesystem.PinotFSFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Segment directory for a segment served from the cold tier, where the index files are stored one file per index in a
+ * remote directory on {@link PinotFS} (e.g. deep store), and only the segment metadata and the bloom filters are kept
+ * resident on the local disk.
+ * <p>The other indexes of a column are downloaded into a column cache directory under the local segment directory when
+ * the column is loaded via {@link #loadColumn(String)}, and removed when the returned {@link ColumnReader} is closed.
+ * <p>The remote directory is populated from a regular segment with {@link #upload(File, SegmentMetadataImpl, URI)}, and
+ * the resident files are downloaded with {@link #downloadResidentFiles(URI, File)}.
+ * <p>The in-flight queries on the segment are tracked with {@link #acquireForQuery()} and {@link #releaseAfterQuery()},
+ * so that the evicted columns can be released via {@link #releaseWhenNotQueried(Closeable)} only after the queries
+ * that might still use them are done.
+ */
+public class ColdTierSegmentDirectory extends SegmentDirectory {
+  private static final Logger LOGGER = LoggerFactory.getLogger(ColdTierSegmentDirectory.class);
+
+  // File listing the index files (with their sizes) in the remote directory, which is uploaded after all the index
+  // files so that its existence indicates the remote directory is complete
+  public static final String INDEX_FILES_FILE_NAME = "index_files";
+  public static final String COLUMN_CACHE_DIR_NAME = "column_cache";
+  private static final char INDEX_FILE_SEPARATOR = '\t';
+  private static final String[] METADATA_FILE_NAMES =
+      new String[]{V1Constants.MetadataKeys.METADATA_FILE_NAME, V1Constants.SEGMENT_CREATION_META};
+
+  private final File _indexDir;
+  private final URI _remoteDir;
+  private final File _columnCacheDir;
+  private final ReadMode _readMode;
+  private final Map<IndexKey, Long> _indexFileSizes;
+  private final Map<String, PinotDataBuffer> _bloomFilterBuffers = new HashMap<>();
+  private SegmentMetadataImpl _segmentMetadata;
+
+  // Number of in-flight queries on the segment, and the resources to be released once there is no in-flight query
+  private final Object _queryLock = new Object();
+  private int _numQueries;
+  private List<Closeable> _resourcesToRelease = new ArrayList<>();
+
+  ColdTierSegmentDirectory(File indexDir, URI remoteDir, SegmentMetadataImpl segmentMetadata, ReadMode readMode)
+      throws IOException {
+    _indexDir = indexDir;
+    _remoteDir = remoteDir;
+    _columnCacheDir = new File(indexDir, COLUMN_CACHE_DIR_NAME);
+    _readMode = readMode;
+    _segmentMetadata = segmentMetadata;
+    _indexFileSizes = readIndexFiles(new File(indexDir, INDEX_FILES_FILE_NAME));
+    // Column files left over from the previous run are not tracked
+    FileUtils.deleteDirectory(_columnCacheDir);
+    FileUtils.forceMkdir(_columnCacheDir);
+  }
+
+  /**
+   * Returns whether the segment has been uploaded into the given remote directory.
+   */
+  public static boolean isUploaded(URI remoteDir)
+      throws IOException {
+    return PinotFSFactory.create(remoteDir.getScheme()).exists(getRemoteFileUri(remoteDir, INDEX_FILES_FILE_NAME));
+  }
+
+  /**
+   * Returns whether the given local segment directory only contains the resident files of a cold tier segment.
+   */
+  public static boolean isColdTierSegment(File indexDir) {
+    return new File(indexDir, INDEX_FILES_FILE_NAME).isFile();
+  }
+
+  /**
+   * Uploads the segment in the given local segment directory (of any segment format) into the given remote directory,
+   * one file per index. Text index is not supported.
+   */
+  public static void upload(File indexDir, SegmentMetadataImpl segmentMetadata, URI remoteDir)
+      throws Exception {
+    LOGGER.info("Uploading segment: {} into cold tier: {}", segmentMetadata.getName(), remoteDir);
+    PinotFS pinotFS = PinotFSFactory.create(remoteDir.getScheme());
+    File tempDir = new File(indexDir.getParentFile(), indexDir.getName() + ".cold." + UUID.randomUUID());
+    FileUtils.forceMkdir(tempDir);
+    try (SegmentDirectory segmentDirectory = SegmentDirectory
+        .createFromLocalFS(indexDir, segmentMetadata, ReadMode.mmap);
+        SegmentDirectory.Reader reader = segmentDirectory.createReader()) {
+      List<String> indexFiles = new ArrayList<>();
+      for (String column : segmentMetadata.getAllColumns()) {
+        for (ColumnIndexType indexType : ColumnIndexType.values()) {
+          if (indexType == ColumnIndexType.TEXT_INDEX || !reader.hasIndexFor(column, indexType)) {
+            continue;
+          }
+          String fileName = getIndexFileName(column, indexType);
+          File indexFile = new File(tempDir, fileName);
+          PinotDataBuffer buffer = reader.getIndexFor(column, indexType);
+          long size = buffer.size();
+          if (size > 0) {
+            try (PinotDataBuffer fileBuffer = PinotDataBuffer
+                .mapFile(indexFile, false, 0, size, ByteOrder.BIG_ENDIAN, "ColdTierSegmentDirectory.upload")) {
+              buffer.copyTo(0, fileBuffer, 0, size);
+            }
+          } else {
+            FileUtils.touch(indexFile);
+          }
+          pinotFS.copyFromLocalFile(indexFile, getRemoteFileUri(remoteDir, fileName));
+          FileUtils.deleteQuietly(indexFile);
+          indexFiles.add(fileName + INDEX_FILE_SEPARATOR + size);
+        }
+      }
+      pinotFS.copyFromLocalFile(SegmentDirectoryPaths.findMetadataFile(indexDir),
+          getRemoteFileUri(remoteDir, V1Constants.MetadataKeys.METADATA_FILE_NAME));
+      pinotFS.copyFromLocalFile(SegmentDirectoryPaths.findCreationMetaFile(indexDir),
+          getRemoteFileUri(remoteDir, V1Constants.SEGMENT_CREATION_META));
+      File indexFilesFile = new File(tempDir, INDEX_FILES_FILE_NAME);
+      FileUtils.writeLines(indexFilesFile, indexFiles);
+      pinotFS.copyFromLocalFile(indexFilesFile, getRemoteFileUri(remoteDir, INDEX_FILES_FILE_NAME));
+    } finally {
+      FileUtils.deleteQuietly(tempDir);
+    }
+    LOGGER.info("Uploaded segment: {} into cold tier: {}", segmentMetadata.getName(), remoteDir);
+  }
+
+  /**
+   * Replaces the content of the given local segment directory with the resident files (segment metadata and bloom
+   * filters) of the segment in the given remote directory.
+   */
+  public static void downloadResidentFiles(URI remoteDir, File indexDir)
+      throws Exception {
+    PinotFS pinotFS = PinotFSFactory.create(remoteDir.getScheme());
+    FileUtils.deleteDirectory(indexDir);
+    FileUtils.forceMkdir(indexDir);
+    for (String fileName : METADATA_FILE_NAMES) {
+      pinotFS.copyToLocalFile(getRemoteFileUri(remoteDir, fileName), new File(indexDir, fileName));
+    }
+    // Download the index files file last so that the local segment directory is not treated as a cold tier segment
+    // before all the resident files are downloaded
+    File tempIndexFilesFile = new File(indexDir, INDEX_FILES_FILE_NAME + ".tmp");
+    pinotFS.copyToLocalFile(getRemoteFileUri(remoteDir, INDEX_FILES_FILE_NAME), tempIndexFilesFile);
+    for (IndexKey indexKey : readIndexFiles(tempIndexFilesFile).keySet()) {
+      if (indexKey.type == ColumnIndexType.BLOOM_FILTER) {
+        String fileName = getIndexFileName(indexKey.name, indexKey.type);
+        pinotFS.copyToLocalFile(getRemoteFileUri(remoteDir, fileName), new File(indexDir, fileName));
+      }
+    }
+    FileUtils.moveFile(tempIndexFilesFile, new File(indexDir, INDEX_FILES_FILE_NAME));
+  }
+
+  private static Map<IndexKey, Long> readIndexFiles(File indexFilesFile)
+      throws IOException {
+    Map<IndexKey, Long> indexFileSizes = new HashMap<>();
+    for (String line : FileUtils.readLines(indexFilesFile, StandardCharsets.UTF_8)) {
+      if (line.isEmpty()) {
+        continue;
+      }
+      int separatorIndex = line.lastIndexOf(INDEX_FILE_SEPARATOR);
+      String fileName = line.substring(0, separatorIndex);
+      int indexTypeIndex = fileName.lastIndexOf('.');
+      IndexKey indexKey = new IndexKey(fileName.substring(0, indexTypeIndex),
+          ColumnIndexType.getValue(fileName.substring(indexTypeIndex + 1)));
+      indexFileSizes.put(indexKey, Long.parseLong(line.substring(separatorIndex + 1)));
+    }
+    return indexFileSizes;
+  }
+
+  private static String getIndexFileName(String column, ColumnIndexType indexType) {
+    return column + "." + indexType.getIndexName();
+  }
+
+  private static URI getRemoteFileUri(URI remoteDir, String fileName) {
+    try {
+      return URI.create(remoteDir.toString() + "/" + URLEncoder.encode(fileName, StandardCharsets.UTF_8.name()));
+    } catch (UnsupportedEncodingException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private boolean hasIndex(String column, ColumnIndexType type) {
+    return _indexFileSizes.containsKey(new IndexKey(column, type));
+  }
+
+  /**
+   * Returns the total size of the non-resident index files of the given column.
+   */
+  public long getColumnSizeBytes(String column) {
+    long sizeBytes = 0;
+    for (Map.Entry<IndexKey, Long> entry : _indexFileSizes.entrySet()) {
+      IndexKey indexKey = entry.getKey();
+      if (indexKey.name.equals(column) && indexKey.type != ColumnIndexType.BLOOM_FILTER) {
+        sizeBytes += entry.getValue();
+      }
+    }
+    return sizeBytes;
+  }
+
+  /**
+   * Downloads the non-resident index files of the given column, and returns a reader for them. The downloaded files are
+   * removed when the reader is closed, so the returned reader must be closed only after all the index readers created
+   * from it are no longer used.
+   */
+  public ColumnReader loadColumn(String column)
+      throws Exception {
+    File columnDir = new File(_columnCacheDir, UUID.randomUUID().toString());
+    FileUtils.forceMkdir(columnDir);
+    try {
+      PinotFS pinotFS = PinotFSFactory.create(_remoteDir.getScheme());
+      Map<ColumnIndexType, File> indexFiles = new HashMap<>();
+      for (IndexKey indexKey : _indexFileSizes.keySet()) {
+        if (indexKey.name.equals(column) && indexKey.type != ColumnIndexType.BLOOM_FILTER) {
+          String fileName = getIndexFileName(column, indexKey.type);
+          File indexFile = new File(columnDir, fileName);
+          pinotFS.copyToLocalFile(getRemoteFileUri(_remoteDir, fileName), indexFile);
+          indexFiles.put(indexKey.type, indexFile);
+        }
+      }
+      LOGGER.info("Downloaded {} index files for column: {} of segment: {} from cold tier: {}", indexFiles.size(),
+          column, _segmentMetadata.getName(), _remoteDir);
+      return new ColumnReader(column, columnDir, indexFiles);
+    } catch (Exception e) {
+      FileUtils.deleteQuietly(columnDir);
+      throw e;
+    }
+  }
+
+  /**
+   * Marks the start of a query on the segment.
+   */
+  public void acquireForQuery() {
+    synchronized (_queryLock) {
+      _numQueries++;
+    }
+  }
+
+  /**
+   * Marks the end of a query on the segment, and releases the resources passed to
+   * {@link #releaseWhenNotQueried(Closeable)} if there is no more in-flight query.
+   */
+  public void releaseAfterQuery() {
+    List<Closeable> resourcesToRelease;
+    synchronized (_queryLock) {
+      _numQueries--;
+      if (_numQueries > 0 || _resourcesToRelease.isEmpty()) {
+        return;
+      }
+      resourcesToRelease = _resourcesToRelease;
+      _resourcesToRelease = new ArrayList<>();
+    }
+    release(resourcesToRelease);
+  }
+
+  /**
+   * Releases the given resource (e.g. an evicted column) right away if there is no in-flight query on the segment, or
+   * after all the in-flight queries are done because they might still use it.
+   * <p>NOTE: The resource might be held for long if the segment keeps being queried without a break.
+   */
+  public void releaseWhenNotQueried(Closeable resource) {
+    synchronized (_queryLock) {
+      if (_numQueries > 0) {
+        _resourcesToRelease.add(resource);
+        return;
+      }
+    }
+    release(Collections.singletonList(resource));
+  }
+
+  private static void release(List<Closeable> resources) {
+    for (Closeable resource : resources) {
+      try {
+        resource.close();
+      } catch (Exception e) {
+        LOGGER.error("Caught exception while releasing resource: {}", resource, e);
+      }
+    }
+  }
+
+  private PinotDataBuffer mapIndexFile(File indexFile, String context)
+      throws IOException {
+    Preconditions.checkState(indexFile.isFile(), "Failed to find index file: %s", indexFile);
+    String allocationContext = getClass().getSimpleName() + "." + indexFile + "." + context;
+    // Backward-compatible: index file is always big-endian
+    if (_readMode == ReadMode.heap) {
+      return PinotDataBuffer.loadFile(indexFile, 0, indexFile.length(), ByteOrder.BIG_ENDIAN, allocationContext);
+    } else {
+      return PinotDataBuffer.mapFile(indexFile, true, 0, indexFile.length(), ByteOrder.BIG_ENDIAN, allocationContext);
+    }
+  }
+
+  private synchronized PinotDataBuffer getBloomFilterBuffer(String column)
+      throws IOException {
+    PinotDataBuffer buffer = _bloomFilterBuffers.get(column);
+    if (buffer == null) {
+      buffer = mapIndexFile(new File(_indexDir, getIndexFileName(column, ColumnIndexType.BLOOM_FILTER)),
+          ColumnIndexType.BLOOM_FILTER.getIndexName());
+      _bloomFilterBuffers.put(column, buffer);
+    }
+    return buffer;
+  }
+
+  @Override
+  public void reloadMetadata()
+      throws Exception {
+    _segmentMetadata = new SegmentMetadataImpl(_indexDir);
+  }
+
+  public URI getRemoteDir() {
+    return _remoteDir;
+  }
+
+  @Override
+  public Path getPath() {
+    return _indexDir.toPath();
+  }
+
+  @Override
+  public long getDiskSizeBytes() {
+    return FileUtils.sizeOfDirectory(_indexDir);
+  }
+
+  /**
+   * Returns a reader for the resident indexes (bloom filters). The other indexes are not accessible from this reader,
+   * but can be checked for existence.
+   */
+  @Override
+  public Reader createReader() {
+    return new Reader() {
+      @Override
+      public PinotDataBuffer getIndexFor(String column, ColumnIndexType type)
+          throws IOException {
+        Preconditions.checkState(type == ColumnIndexType.BLOOM_FILTER,
+            "Index: %s for column: %s is not resident in cold tier segment: %s", type, column, _indexDir);
+        return getBloomFilterBuffer(column);
+      }
+
+      @Override
+      public boolean hasIndexFor(String column, ColumnIndexType type) {
+        return hasIndex(column, type);
+      }
+
+      @Override
+      public void close() {
+      }
+
+      @Override
+      public String toString() {
+        return _indexDir.toString();
+      }
+    };
+  }
+
+  @Override
+  public Writer createWriter() {
+    throw new UnsupportedOperationException("Cold tier segment cannot be modified");
+  }
+
+  @Override
+  public String toString() {
+    return _indexDir.toString();
+  }
+
+  @Override
+  public synchronized void close()
+      throws IOException {
+    List<Closeable> resourcesToRelease;
+    synchronized (_queryLock) {
+      resourcesToRelease = _resourcesToRelease;
+      _resourcesToRelease = new ArrayList<>();
+    }
+    release(resourcesToRelease);
+    for (PinotDataBuffer buffer : _bloomFilterBuffers.values()) {
+      buffer.close();
+    }
+    _bloomFilterBuffers.clear();
+  }
+
+  /**
+   * Reader for the indexes of a column downloaded via {@link #loadColumn(String)}.
+   */
+  public class ColumnReader extends Reader {
+    private final String _column;
+    private final File _columnDir;
+    private final Map<ColumnIndexType, File> _indexFiles;
+    private final Map<ColumnIndexType, PinotDataBuffer> _buffers = new HashMap<>();
+
+    private ColumnReader(String column, File columnDir, Map<ColumnIndexType, File> indexFiles) {
+      _column = column;
+      _columnDir = columnDir;
+      _indexFiles = indexFiles;
+    }
+
+    @Override
+    public synchronized PinotDataBuffer getIndexFor(String column, ColumnIndexType type)
+        throws IOException {
+      if (type == ColumnIndexType.BLOOM_FILTER) {
+        return getBloomFilterBuffer(column);
+      }
+      Preconditions.checkArgument(column.equals(_column), "Column reader for: %s cannot read column: %s", _column,
+          column);
+      PinotDataBuffer buffer = _buffers.get(type);
+      if (buffer == null) {
+        File indexFile = _indexFiles.get(type);
+        Preconditions.checkState(indexFile != null, "Failed to find index: %s for column: %s in cold tier segment: %s",
+            type, column, _indexDir);
+        buffer = mapIndexFile(indexFile, type.getIndexName());
+        _buffers.put(type, buffer);
+      }
+      return buffer;
+    }
+
+    @Override
+    public boolean hasIndexFor(String column, ColumnIndexType type) {
+      return hasIndex(column, type);
+    }
+
+    @Override
+    public synchronized void close()
+        throws IOException {
+      for (PinotDataBuffer buffer : _buffers.values()) {
+        buffer.close();
+      }
+      _buffers.clear();
+      FileUtils.deleteDirectory(_columnDir);
+    }
+
+    @Override
+    public String toString() {
+      return _columnDir.toString();
+    }
+  }
+}
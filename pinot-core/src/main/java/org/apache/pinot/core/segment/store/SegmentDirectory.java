@@ -21,6 +21,7 @@ package org.apache.pinot.core.segment.store;
 import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
+import java.net.URI;
 import java.nio.file.Path;
 import org.apache.commons.configuration.ConfigurationException;
 import org.apache.pinot.common.segment.ReadMode;
@@ -113,6 +114,21 @@ public abstract class SegmentDirectory implements Closeable {
     return new SegmentLocalFSDirectory(directory, readMode);
   }
 
+  /**
+   * Create segment directory for a cold tier segment, where only the metadata and the bloom filters are kept in the
+   * local directory, and the other indexes are downloaded from the remote directory on demand
+   * @param directory local directory with the resident files of the segment
+   * @param remoteDir remote directory with one file per index of the segment
+   * @param metadata segment metadata
+   * @param readMode mmap vs heap ReadMode for data
+   * @return segmentDirectory
+   */
+  public static ColdTierSegmentDirectory createFromColdTier(File directory, URI remoteDir, SegmentMetadataImpl metadata,
+      ReadMode readMode)
+      throws IOException {
+    return new ColdTierSegmentDirectory(directory, remoteDir, metadata, readMode);
+  }
+
   public static SegmentMetadataImpl loadSegmentMetadata(File directory)
       throws IOException, ConfigurationException {
     return SegmentLocalFSDirectory.loadSegmentMetadata(directory);
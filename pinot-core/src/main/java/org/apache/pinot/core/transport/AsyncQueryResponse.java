@@ -18,11 +18,15 @@
  */
 package org.apache.pinot.core.transport;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
 import javax.annotation.concurrent.ThreadSafe;
 import org.apache.pinot.common.utils.DataTable;
 
@@ -38,11 +42,34 @@ public class AsyncQueryResponse {
   private final ConcurrentHashMap<ServerRoutingInstance, ServerResponse> _responseMap;
   private final CountDownLatch _countDownLatch;
   private final long _maxEndTimeMs;
+  private final ServerLatencyTracker _serverLatencyTracker;
+  private final Map<ServerRoutingInstance, String> _instanceIdMap;
+  // Map from the server with request in-flight to the time when the request is sent, only tracked with the tracker
+  private final ConcurrentHashMap<ServerRoutingInstance, Long> _requestSendTimeMsMap;
+  // Map from the alternate server of the hedged request to the original server
+  private final ConcurrentHashMap<ServerRoutingInstance, ServerRoutingInstance> _hedgedServerMap =
+      new ConcurrentHashMap<>();
+
+  // Hedging states, guarded by the object lock
+  private boolean _hedgingDone;
+  private int _numHedgedRequests;
+  private ScheduledFuture<?> _hedgeFuture;
 
   private volatile Exception _brokerRequestSendException;
+  private volatile DataTableListener _dataTableListener;
 
   public AsyncQueryResponse(QueryRouter queryRouter, long requestId, Set<ServerRoutingInstance> serversQueried,
       long startTimeMs, long timeoutMs) {
+    this(queryRouter, requestId, serversQueried, startTimeMs, timeoutMs, null, null);
+  }
+
+  /**
+   * @param serverLatencyTracker Tracker for the server latency and in-flight requests, {@code null} if not tracked
+   * @param instanceIdMap Map from the server queried to its instance id, required when the tracker is provided
+   */
+  public AsyncQueryResponse(QueryRouter queryRouter, long requestId, Set<ServerRoutingInstance> serversQueried,
+      long startTimeMs, long timeoutMs, @Nullable ServerLatencyTracker serverLatencyTracker,
+      @Nullable Map<ServerRoutingInstance, String> instanceIdMap) {
     _queryRouter = queryRouter;
     _requestId = requestId;
     int numServersQueried = serversQueried.size();
@@ -52,6 +79,10 @@ public class AsyncQueryResponse {
     }
     _countDownLatch = new CountDownLatch(numServersQueried);
     _maxEndTimeMs = startTimeMs + timeoutMs;
+    _serverLatencyTracker = serverLatencyTracker;
+    // NOTE: Make a concurrent copy because the instance ids of the alternate servers are added when hedging
+    _instanceIdMap = instanceIdMap != null ? new ConcurrentHashMap<>(instanceIdMap) : null;
+    _requestSendTimeMsMap = serverLatencyTracker != null ? new ConcurrentHashMap<>() : null;
   }
 
   /**
@@ -64,6 +95,21 @@ public class AsyncQueryResponse {
       return _responseMap;
     } finally {
       _queryRouter.markQueryDone(_requestId);
+      if (_serverLatencyTracker != null) {
+        // Count the servers not responded (failed or timed out) as finished with the elapsed time as the latency
+        for (ServerRoutingInstance serverRoutingInstance : _requestSendTimeMsMap.keySet()) {
+          recordRequestFinished(serverRoutingInstance);
+        }
+      }
+    }
+  }
+
+  private void recordRequestFinished(ServerRoutingInstance serverRoutingInstance) {
+    // NOTE: Remove the entry to ensure each request is counted as finished only once
+    Long requestSendTimeMs = _requestSendTimeMsMap.remove(serverRoutingInstance);
+    if (requestSendTimeMs != null) {
+      _serverLatencyTracker.recordRequestFinished(_instanceIdMap.get(serverRoutingInstance),
+          System.currentTimeMillis() - requestSendTimeMs);
     }
   }
 
@@ -80,14 +126,49 @@ public class AsyncQueryResponse {
     return stringBuilder.toString();
   }
 
+  /**
+   * Should be called before sending the request to the server so that the response is always tracked after it.
+   */
+  void markRequestSending(ServerRoutingInstance serverRoutingInstance) {
+    if (_serverLatencyTracker != null) {
+      _serverLatencyTracker.recordRequestSent(_instanceIdMap.get(serverRoutingInstance));
+      _requestSendTimeMsMap.put(serverRoutingInstance, System.currentTimeMillis());
+    }
+  }
+
+  /**
+   * Should be called before sending the requests to the servers.
+   */
+  void setDataTableListener(DataTableListener dataTableListener) {
+    _dataTableListener = dataTableListener;
+  }
+
   void markRequestSubmitted(ServerRoutingInstance serverRoutingInstance) {
     _responseMap.get(serverRoutingInstance).markRequestSubmitted();
   }
 
   void receiveDataTable(ServerRoutingInstance serverRoutingInstance, DataTable dataTable, int responseSize,
       int deserializationTimeMs) {
-    _responseMap.get(serverRoutingInstance).receiveDataTable(dataTable, responseSize, deserializationTimeMs);
-    _countDownLatch.countDown();
+    ServerResponse serverResponse = _responseMap.get(serverRoutingInstance);
+    if (serverResponse == null) {
+      // Response from the alternate server of a hedged request
+      ServerRoutingInstance hedgedServerRoutingInstance = _hedgedServerMap.get(serverRoutingInstance);
+      if (hedgedServerRoutingInstance == null) {
+        return;
+      }
+      serverResponse = _responseMap.get(hedgedServerRoutingInstance);
+    }
+    // NOTE: Only count down for the first response of the hedged request
+    if (serverResponse.receiveDataTable(dataTable, responseSize, deserializationTimeMs)) {
+      DataTableListener dataTableListener = _dataTableListener;
+      if (dataTableListener != null) {
+        dataTableListener.onDataTable(dataTable);
+      }
+      _countDownLatch.countDown();
+    }
+    if (_serverLatencyTracker != null) {
+      recordRequestFinished(serverRoutingInstance);
+    }
   }
 
   void markQueryFailed() {
@@ -103,11 +184,72 @@ public class AsyncQueryResponse {
    */
   void markServerDown(ServerRoutingInstance serverRoutingInstance) {
     ServerResponse serverResponse = _responseMap.get(serverRoutingInstance);
-    if (serverResponse != null && serverResponse.getDataTable() == null) {
+    // NOTE: Do not fail the query if the request is hedged because the alternate server might still respond
+    if (serverResponse != null && serverResponse.getDataTable() == null && !_hedgedServerMap
+        .containsValue(serverRoutingInstance)) {
       markQueryFailed();
     }
   }
 
+  /**
+   * Returns all the servers the query is sent to, including the alternate servers of the hedged requests.
+   */
+  List<ServerRoutingInstance> getServersQueried() {
+    List<ServerRoutingInstance> serversQueried = new ArrayList<>(_responseMap.keySet());
+    serversQueried.addAll(_hedgedServerMap.keySet());
+    return serversQueried;
+  }
+
+  /**
+   * Returns the servers that have not responded and have not been hedged.
+   */
+  List<ServerRoutingInstance> getServersToHedge() {
+    List<ServerRoutingInstance> serversToHedge = new ArrayList<>();
+    for (Map.Entry<ServerRoutingInstance, ServerResponse> entry : _responseMap.entrySet()) {
+      ServerRoutingInstance serverRoutingInstance = entry.getKey();
+      if (entry.getValue().getDataTable() == null && !_hedgedServerMap.containsValue(serverRoutingInstance)) {
+        serversToHedge.add(serverRoutingInstance);
+      }
+    }
+    return serversToHedge;
+  }
+
+  synchronized void setHedgeFuture(ScheduledFuture<?> hedgeFuture) {
+    if (_hedgingDone) {
+      hedgeFuture.cancel(false);
+    } else {
+      _hedgeFuture = hedgeFuture;
+    }
+  }
+
+  /**
+   * Marks the request to the given server hedged to the alternate server. Returns {@code false} if the query is already
+   * done, in which case the hedged request should not be sent.
+   */
+  synchronized boolean markRequestHedged(ServerRoutingInstance serverRoutingInstance,
+      ServerRoutingInstance alternateServerRoutingInstance, String alternateInstanceId) {
+    if (_hedgingDone) {
+      return false;
+    }
+    if (_instanceIdMap != null) {
+      _instanceIdMap.put(alternateServerRoutingInstance, alternateInstanceId);
+    }
+    _hedgedServerMap.put(alternateServerRoutingInstance, serverRoutingInstance);
+    _numHedgedRequests++;
+    return true;
+  }
+
+  /**
+   * Stops hedging for the query, and returns the number of hedged requests sent.
+   */
+  synchronized int finishHedging() {
+    _hedgingDone = true;
+    if (_hedgeFuture != null) {
+      _hedgeFuture.cancel(false);
+    }
+    return _numHedgedRequests;
+  }
+
   public Exception getBrokerRequestSendException() {
     return _brokerRequestSendException;
   }
@@ -21,6 +21,8 @@ package org.apache.pinot.core.transport;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
+import java.util.Set;
+import javax.annotation.Nullable;
 import org.apache.pinot.common.metrics.BrokerMeter;
 import org.apache.pinot.common.metrics.BrokerMetrics;
 import org.apache.pinot.common.utils.DataTable;
@@ -39,12 +41,23 @@ public class DataTableHandler extends SimpleChannelInboundHandler<ByteBuf> {
   private final QueryRouter _queryRouter;
   private final ServerRoutingInstance _serverRoutingInstance;
   private final BrokerMetrics _brokerMetrics;
+  private final Set<Long> _pendingRequestIds;
 
   public DataTableHandler(QueryRouter queryRouter, ServerRoutingInstance serverRoutingInstance,
       BrokerMetrics brokerMetrics) {
+    this(queryRouter, serverRoutingInstance, brokerMetrics, null);
+  }
+
+  /**
+   * @param pendingRequestIds Ids of the pending requests on the channel to be removed when the responses are received,
+   *                          {@code null} if not tracked
+   */
+  public DataTableHandler(QueryRouter queryRouter, ServerRoutingInstance serverRoutingInstance,
+      BrokerMetrics brokerMetrics, @Nullable Set<Long> pendingRequestIds) {
     _queryRouter = queryRouter;
     _serverRoutingInstance = serverRoutingInstance;
     _brokerMetrics = brokerMetrics;
+    _pendingRequestIds = pendingRequestIds;
   }
 
   @Override
@@ -65,6 +78,9 @@ public class DataTableHandler extends SimpleChannelInboundHandler<ByteBuf> {
     try {
       long deserializationStartTimeMs = System.currentTimeMillis();
       DataTable dataTable = DataTableFactory.getDataTable(msg.nioBuffer());
+      if (_pendingRequestIds != null) {
+        _pendingRequestIds.remove(Long.parseLong(dataTable.getMetadata().get(DataTable.REQUEST_ID_METADATA_KEY)));
+      }
       _queryRouter.receiveDataTable(_serverRoutingInstance, dataTable, responseSize,
           (int) (System.currentTimeMillis() - deserializationStartTimeMs));
     } catch (Exception e) {
@@ -25,13 +25,19 @@ import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
+import java.util.ArrayDeque;
 import java.util.concurrent.TimeUnit;
 import javax.annotation.Nullable;
+import org.apache.pinot.common.exception.QueryException;
+import org.apache.pinot.common.metrics.ServerGauge;
 import org.apache.pinot.common.metrics.ServerMeter;
 import org.apache.pinot.common.metrics.ServerMetrics;
 import org.apache.pinot.common.metrics.ServerQueryPhase;
 import org.apache.pinot.common.metrics.ServerTimer;
 import org.apache.pinot.common.request.InstanceRequest;
+import org.apache.pinot.common.utils.CommonConstants.Server;
+import org.apache.pinot.common.utils.DataTable;
+import org.apache.pinot.core.common.datatable.DataTableImplV2;
 import org.apache.pinot.spi.utils.BytesUtils;
 import org.apache.pinot.core.query.request.ServerQueryRequest;
 import org.apache.pinot.core.query.scheduler.QueryScheduler;
@@ -44,6 +50,9 @@ import org.slf4j.LoggerFactory;
 /**
  * The {@code InstanceRequestHandler} is the Netty inbound handler on Pinot Server side to handle the serialized
  * instance requests sent from Pinot Broker.
+ * <p>The responses are serialized on the query worker threads, then written on the channel event loop. When the channel
+ * is not writable (outbound buffer exceeds the high water mark), the responses are queued and written once the channel
+ * becomes writable again. Responses exceeding the max queued bytes of the channel are rejected with an error response.
  */
 public class InstanceRequestHandler extends SimpleChannelInboundHandler<ByteBuf> {
   private static final Logger LOGGER = LoggerFactory.getLogger(InstanceRequestHandler.class);
@@ -54,10 +63,21 @@ public class InstanceRequestHandler extends SimpleChannelInboundHandler<ByteBuf>
   private final TDeserializer _deserializer = new TDeserializer(new TCompactProtocol.Factory());
   private final QueryScheduler _queryScheduler;
   private final ServerMetrics _serverMetrics;
+  private final long _maxQueuedResponseBytes;
+
+  // NOTE: Queued responses are only accessed within the channel event loop, so no synchronization is required
+  private final ArrayDeque<QueuedResponse> _queuedResponses = new ArrayDeque<>();
+  private long _queuedResponseBytes;
 
   public InstanceRequestHandler(QueryScheduler queryScheduler, ServerMetrics serverMetrics) {
+    this(queryScheduler, serverMetrics, Server.DEFAULT_NETTY_MAX_QUEUED_RESPONSE_BYTES);
+  }
+
+  public InstanceRequestHandler(QueryScheduler queryScheduler, ServerMetrics serverMetrics,
+      long maxQueuedResponseBytes) {
     _queryScheduler = queryScheduler;
     _serverMetrics = serverMetrics;
+    _maxQueuedResponseBytes = maxQueuedResponseBytes;
   }
 
   @Override
@@ -90,23 +110,9 @@ public class InstanceRequestHandler extends SimpleChannelInboundHandler<ByteBuf>
       public void onSuccess(@Nullable byte[] responseBytes) {
         // NOTE: response bytes can be null if data table serialization throws exception
         if (responseBytes != null) {
-          long sendResponseStartTimeMs = System.currentTimeMillis();
-          int queryProcessingTimeMs = (int) (sendResponseStartTimeMs - queryArrivalTimeMs);
-          ctx.writeAndFlush(Unpooled.wrappedBuffer(responseBytes)).addListener(f -> {
-            long sendResponseEndTimeMs = System.currentTimeMillis();
-            int sendResponseLatencyMs = (int) (sendResponseEndTimeMs - sendResponseStartTimeMs);
-            _serverMetrics.addMeteredGlobalValue(ServerMeter.NETTY_CONNECTION_RESPONSES_SENT, 1);
-            _serverMetrics.addMeteredGlobalValue(ServerMeter.NETTY_CONNECTION_BYTES_SENT, responseBytes.length);
-            _serverMetrics.addTimedValue(ServerTimer.NETTY_CONNECTION_SEND_RESPONSE_LATENCY, sendResponseLatencyMs,
-                TimeUnit.MILLISECONDS);
-
-            int totalQueryTimeMs = (int) (sendResponseEndTimeMs - queryArrivalTimeMs);
-            if (totalQueryTimeMs > SLOW_QUERY_LATENCY_THRESHOLD_MS) {
-              LOGGER.info(
-                  "Slow query: request handler processing time: {}, send response latency: {}, total time to handle request: {}",
-                  queryProcessingTimeMs, sendResponseLatencyMs, totalQueryTimeMs);
-            }
-          });
+          // The response is already serialized on the query worker thread, only hand off the write to the event loop
+          ctx.executor().execute(
+              () -> writeResponse(ctx, instanceRequest.getRequestId(), responseBytes, queryArrivalTimeMs));
         }
       }
 
@@ -118,9 +124,108 @@ public class InstanceRequestHandler extends SimpleChannelInboundHandler<ByteBuf>
     }, MoreExecutors.directExecutor());
   }
 
+  /**
+   * Writes the response if the channel is writable and no response is queued, otherwise queues the response (or an
+   * error response if the queued bytes exceed the limit). Must be invoked within the channel event loop.
+   */
+  private void writeResponse(ChannelHandlerContext ctx, long requestId, byte[] responseBytes,
+      long queryArrivalTimeMs) {
+    if (!ctx.channel().isActive()) {
+      return;
+    }
+    if (_queuedResponses.isEmpty() && ctx.channel().isWritable()) {
+      sendResponse(ctx, responseBytes, queryArrivalTimeMs);
+      return;
+    }
+    if (_queuedResponseBytes + responseBytes.length > _maxQueuedResponseBytes) {
+      LOGGER.warn("Rejecting response of {} bytes for requestId: {} because {} bytes are queued for channel: {}",
+          responseBytes.length, requestId, _queuedResponseBytes, ctx.channel());
+      _serverMetrics.addMeteredGlobalValue(ServerMeter.NETTY_CONNECTION_RESPONSES_REJECTED, 1);
+      responseBytes = getRejectedResponseBytes(requestId);
+      if (responseBytes == null) {
+        return;
+      }
+    }
+    _queuedResponses.add(new QueuedResponse(responseBytes, queryArrivalTimeMs));
+    _queuedResponseBytes += responseBytes.length;
+    _serverMetrics.addMeteredGlobalValue(ServerMeter.NETTY_CONNECTION_RESPONSES_QUEUED, 1);
+    _serverMetrics.addValueToGlobalGauge(ServerGauge.NETTY_CONNECTION_QUEUED_RESPONSE_BYTES, responseBytes.length);
+  }
+
+  private void sendResponse(ChannelHandlerContext ctx, byte[] responseBytes, long queryArrivalTimeMs) {
+    long sendResponseStartTimeMs = System.currentTimeMillis();
+    int queryProcessingTimeMs = (int) (sendResponseStartTimeMs - queryArrivalTimeMs);
+    ctx.writeAndFlush(Unpooled.wrappedBuffer(responseBytes)).addListener(f -> {
+      long sendResponseEndTimeMs = System.currentTimeMillis();
+      int sendResponseLatencyMs = (int) (sendResponseEndTimeMs - sendResponseStartTimeMs);
+      _serverMetrics.addMeteredGlobalValue(ServerMeter.NETTY_CONNECTION_RESPONSES_SENT, 1);
+      _serverMetrics.addMeteredGlobalValue(ServerMeter.NETTY_CONNECTION_BYTES_SENT, responseBytes.length);
+      _serverMetrics.addTimedValue(ServerTimer.NETTY_CONNECTION_SEND_RESPONSE_LATENCY, sendResponseLatencyMs,
+          TimeUnit.MILLISECONDS);
+
+      int totalQueryTimeMs = (int) (sendResponseEndTimeMs - queryArrivalTimeMs);
+      if (totalQueryTimeMs > SLOW_QUERY_LATENCY_THRESHOLD_MS) {
+        LOGGER.info("Slow query: request handler processing time: {}, send response latency: {}, "
+            + "total time to handle request: {}", queryProcessingTimeMs, sendResponseLatencyMs, totalQueryTimeMs);
+      }
+    });
+  }
+
+  /**
+   * Returns a serialized error response for the rejected response, or {@code null} if the serialization fails.
+   */
+  @Nullable
+  private byte[] getRejectedResponseBytes(long requestId) {
+    DataTable dataTable = new DataTableImplV2();
+    dataTable.getMetadata().put(DataTable.REQUEST_ID_METADATA_KEY, Long.toString(requestId));
+    dataTable.addException(QueryException.getException(QueryException.SERVER_OUT_OF_CAPACITY_ERROR,
+        "Response rejected because too many bytes are queued for the broker connection"));
+    try {
+      return dataTable.toBytes();
+    } catch (Exception e) {
+      LOGGER.error("Caught exception while serializing the rejected response for requestId: {}", requestId, e);
+      _serverMetrics.addMeteredGlobalValue(ServerMeter.RESPONSE_SERIALIZATION_EXCEPTIONS, 1);
+      return null;
+    }
+  }
+
+  @Override
+  public void channelWritabilityChanged(ChannelHandlerContext ctx) {
+    while (ctx.channel().isWritable() && !_queuedResponses.isEmpty()) {
+      QueuedResponse queuedResponse = _queuedResponses.poll();
+      int responseSize = queuedResponse._responseBytes.length;
+      _queuedResponseBytes -= responseSize;
+      _serverMetrics.addValueToGlobalGauge(ServerGauge.NETTY_CONNECTION_QUEUED_RESPONSE_BYTES, -responseSize);
+      sendResponse(ctx, queuedResponse._responseBytes, queuedResponse._queryArrivalTimeMs);
+    }
+    ctx.fireChannelWritabilityChanged();
+  }
+
+  @Override
+  public void channelInactive(ChannelHandlerContext ctx) {
+    if (!_queuedResponses.isEmpty()) {
+      LOGGER.warn("Dropping {} queued responses of {} bytes for inactive channel: {}", _queuedResponses.size(),
+          _queuedResponseBytes, ctx.channel());
+      _serverMetrics.addValueToGlobalGauge(ServerGauge.NETTY_CONNECTION_QUEUED_RESPONSE_BYTES, -_queuedResponseBytes);
+      _queuedResponses.clear();
+      _queuedResponseBytes = 0;
+    }
+    ctx.fireChannelInactive();
+  }
+
   @Override
   public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
     LOGGER.error("Caught exception while fetching instance request", cause);
     _serverMetrics.addMeteredGlobalValue(ServerMeter.REQUEST_FETCH_EXCEPTIONS, 1);
   }
+
+  private static class QueuedResponse {
+    final byte[] _responseBytes;
+    final long _queryArrivalTimeMs;
+
+    QueuedResponse(byte[] responseBytes, long queryArrivalTimeMs) {
+      _responseBytes = responseBytes;
+      _queryArrivalTimeMs = queryArrivalTimeMs;
+    }
+  }
 }
@@ -0,0 +1,180 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pinot.core.transport;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+
+/**
+ * The {@code QueryHedger} class provides the states to send hedged requests for the straggling servers. When a server
+ * has not responded after the hedge delay, the same request (same segments) is sent to an alternate server hosting all
+ * the segments, and the first response is taken.
+ * <p>The hedge delay of a table is the configured percentile of the recent server response latency of the table, so
+ * that only the slowest requests are hedged. The number of in-flight hedged requests is capped to limit the load
+ * amplification when the whole cluster is slow.
+ */
+@ThreadSafe
+public class QueryHedger {
+  public static final double DEFAULT_LATENCY_PERCENTILE = 95;
+  public static final long DEFAULT_MIN_DELAY_MS = 10L;
+  public static final int DEFAULT_MAX_IN_FLIGHT_HEDGED_REQUESTS = 100;
+
+  // Number of recent latency samples kept for each table
+  private static final int NUM_LATENCY_SAMPLES = 1000;
+  // Do not hedge before collecting enough samples for the table
+  private static final int MIN_NUM_LATENCY_SAMPLES = 100;
+  // Re-calculate the percentile every this number of samples
+  private static final int PERCENTILE_UPDATE_INTERVAL = 100;
+
+  /**
+   * Selects the alternate server for the hedged request.
+   */
+  public interface AlternateServerSelector {
+
+    /**
+     * Returns an alternate server hosting all the given segments of the given table which is not in the excluded
+     * instances, or {@code null} if there is no such server.
+     */
+    @Nullable
+    ServerInstance selectAlternateServer(String tableNameWithType, List<String> segments,
+        Set<String> excludedInstanceIds);
+  }
+
+  private final AlternateServerSelector _alternateServerSelector;
+  private final double _latencyPercentile;
+  private final long _minDelayMs;
+  private final int _maxInFlightHedgedRequests;
+  private final ConcurrentHashMap<String, LatencySamples> _latencySamplesMap = new ConcurrentHashMap<>();
+  private final AtomicInteger _numInFlightHedgedRequests = new AtomicInteger();
+  private final ScheduledExecutorService _executorService = Executors.newSingleThreadScheduledExecutor(
+      new ThreadFactoryBuilder().setNameFormat("query-hedger-%d").setDaemon(true).build());
+
+  public QueryHedger(AlternateServerSelector alternateServerSelector) {
+    this(alternateServerSelector, DEFAULT_LATENCY_PERCENTILE, DEFAULT_MIN_DELAY_MS,
+        DEFAULT_MAX_IN_FLIGHT_HEDGED_REQUESTS);
+  }
+
+  public QueryHedger(AlternateServerSelector alternateServerSelector, double latencyPercentile, long minDelayMs,
+      int maxInFlightHedgedRequests) {
+    Preconditions.checkArgument(latencyPercentile > 0 && latencyPercentile <= 100, "Invalid latency percentile: %s",
+        latencyPercentile);
+    Preconditions.checkArgument(maxInFlightHedgedRequests > 0, "Invalid max in-flight hedged requests: %s",
+        maxInFlightHedgedRequests);
+    _alternateServerSelector = alternateServerSelector;
+    _latencyPercentile = latencyPercentile;
+    _minDelayMs = minDelayMs;
+    _maxInFlightHedgedRequests = maxInFlightHedgedRequests;
+  }
+
+  /**
+   * Returns the delay before sending the hedged requests for the given table, or -1 if there are not enough latency
+   * samples for the table.
+   */
+  public long getHedgeDelayMs(String rawTableName) {
+    LatencySamples latencySamples = _latencySamplesMap.get(rawTableName);
+    if (latencySamples == null) {
+      return -1;
+    }
+    long percentileLatencyMs = latencySamples._percentileLatencyMs;
+    return percentileLatencyMs >= 0 ? Math.max(percentileLatencyMs, _minDelayMs) : -1;
+  }
+
+  /**
+   * Records a server response latency for the given table. For the server that has not responded (e.g. timed out), the
+   * time elapsed since the request was submitted should be recorded so that the slow servers are not left out.
+   */
+  public void recordLatency(String rawTableName, long latencyMs) {
+    _latencySamplesMap.computeIfAbsent(rawTableName, k -> new LatencySamples()).add(latencyMs);
+  }
+
+  @Nullable
+  ServerInstance selectAlternateServer(String tableNameWithType, List<String> segments,
+      Set<String> excludedInstanceIds) {
+    return _alternateServerSelector.selectAlternateServer(tableNameWithType, segments, excludedInstanceIds);
+  }
+
+  /**
+   * Tries to reserve a slot for a hedged request, returns {@code false} if the in-flight hedged requests reach the cap.
+   */
+  boolean tryAcquire() {
+    int numInFlightHedgedRequests;
+    do {
+      numInFlightHedgedRequests = _numInFlightHedgedRequests.get();
+      if (numInFlightHedgedRequests >= _maxInFlightHedgedRequests) {
+        return false;
+      }
+    } while (!_numInFlightHedgedRequests.compareAndSet(numInFlightHedgedRequests, numInFlightHedgedRequests + 1));
+    return true;
+  }
+
+  void release(int numHedgedRequests) {
+    _numInFlightHedgedRequests.addAndGet(-numHedgedRequests);
+  }
+
+  public int getNumInFlightHedgedRequests() {
+    return _numInFlightHedgedRequests.get();
+  }
+
+  ScheduledFuture<?> schedule(Runnable hedgeTask, long delayMs) {
+    return _executorService.schedule(hedgeTask, delayMs, TimeUnit.MILLISECONDS);
+  }
+
+  public void shutDown() {
+    _executorService.shutdownNow();
+  }
+
+  /**
+   * Ring buffer of the recent latency samples with the cached percentile latency.
+   */
+  private class LatencySamples {
+    final long[] _samples = new long[NUM_LATENCY_SAMPLES];
+    int _numSamples;
+    int _index;
+    int _numSamplesSinceUpdate;
+    volatile long _percentileLatencyMs = -1;
+
+    synchronized void add(long latencyMs) {
+      _samples[_index] = latencyMs;
+      _index = (_index + 1) % NUM_LATENCY_SAMPLES;
+      if (_numSamples < NUM_LATENCY_SAMPLES) {
+        _numSamples++;
+      }
+      _numSamplesSinceUpdate++;
+      if (_numSamples >= MIN_NUM_LATENCY_SAMPLES && _numSamplesSinceUpdate >= PERCENTILE_UPDATE_INTERVAL) {
+        long[] sortedSamples = Arrays.copyOf(_samples, _numSamples);
+        Arrays.sort(sortedSamples);
+        int percentileIndex = (int) Math.ceil(_latencyPercentile / 100 * _numSamples) - 1;
+        _percentileLatencyMs = sortedSamples[Math.max(percentileIndex, 0)];
+        _numSamplesSinceUpdate = 0;
+      }
+    }
+  }
+}
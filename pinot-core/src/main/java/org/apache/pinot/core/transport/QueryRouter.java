@@ -18,9 +18,13 @@
  */
 package org.apache.pinot.core.transport;
 
+import com.google.common.annotations.VisibleForTesting;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.ThreadSafe;
@@ -28,8 +32,10 @@ import org.apache.pinot.common.metrics.BrokerMeter;
 import org.apache.pinot.common.metrics.BrokerMetrics;
 import org.apache.pinot.common.request.BrokerRequest;
 import org.apache.pinot.common.request.InstanceRequest;
+import org.apache.pinot.common.utils.CommonConstants.Broker.Request.QueryOptionKey;
 import org.apache.pinot.common.utils.DataTable;
 import org.apache.pinot.spi.config.table.TableType;
+import org.apache.pinot.spi.utils.builder.TableNameBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -37,7 +43,8 @@ import org.slf4j.LoggerFactory;
 /**
  * The {@code QueryRouter} class provides methods to route the query based on the routing table, and returns a
  * {@link AsyncQueryResponse} so that caller can handle the query response asynchronously.
- * <p>It works on {@link ServerChannels} which maintains only a single connection between the broker and each server.
+ * <p>It works on {@link ServerChannels} which maintains a fixed number of connections between the broker and each
+ * server.
  */
 @ThreadSafe
 public class QueryRouter {
@@ -46,28 +53,79 @@ public class QueryRouter {
   private final String _brokerId;
   private final BrokerMetrics _brokerMetrics;
   private final ServerChannels _serverChannels;
+  private final ServerLatencyTracker _serverLatencyTracker;
+  private final QueryHedger _queryHedger;
   private final ConcurrentHashMap<Long, AsyncQueryResponse> _asyncQueryResponseMap = new ConcurrentHashMap<>();
 
   public QueryRouter(String brokerId, BrokerMetrics brokerMetrics) {
+    this(brokerId, brokerMetrics, null);
+  }
+
+  /**
+   * @param serverLatencyTracker Tracker for the server latency and in-flight requests, {@code null} if not tracked
+   */
+  public QueryRouter(String brokerId, BrokerMetrics brokerMetrics,
+      @Nullable ServerLatencyTracker serverLatencyTracker) {
+    this(brokerId, brokerMetrics, serverLatencyTracker, null);
+  }
+
+  /**
+   * @param serverLatencyTracker Tracker for the server latency and in-flight requests, {@code null} if not tracked
+   * @param queryHedger Hedger for the straggling servers, {@code null} if hedging is disabled
+   */
+  public QueryRouter(String brokerId, BrokerMetrics brokerMetrics,
+      @Nullable ServerLatencyTracker serverLatencyTracker, @Nullable QueryHedger queryHedger) {
+    this(brokerId, brokerMetrics, serverLatencyTracker, queryHedger, ServerChannels.DEFAULT_NUM_CHANNELS_PER_SERVER,
+        false);
+  }
+
+  /**
+   * @param serverLatencyTracker Tracker for the server latency and in-flight requests, {@code null} if not tracked
+   * @param queryHedger Hedger for the straggling servers, {@code null} if hedging is disabled
+   * @param numChannelsPerServer Number of channels between the broker and each server
+   * @param enableNativeTransport Whether to use the epoll native transport when available
+   */
+  public QueryRouter(String brokerId, BrokerMetrics brokerMetrics,
+      @Nullable ServerLatencyTracker serverLatencyTracker, @Nullable QueryHedger queryHedger, int numChannelsPerServer,
+      boolean enableNativeTransport) {
     _brokerId = brokerId;
     _brokerMetrics = brokerMetrics;
-    _serverChannels = new ServerChannels(this, brokerMetrics);
+    _serverChannels = new ServerChannels(this, brokerMetrics, numChannelsPerServer, enableNativeTransport);
+    _serverLatencyTracker = serverLatencyTracker;
+    _queryHedger = queryHedger;
   }
 
   public AsyncQueryResponse submitQuery(long requestId, String rawTableName,
       @Nullable BrokerRequest offlineBrokerRequest, @Nullable Map<ServerInstance, List<String>> offlineRoutingTable,
       @Nullable BrokerRequest realtimeBrokerRequest, @Nullable Map<ServerInstance, List<String>> realtimeRoutingTable,
       long timeoutMs) {
+    return submitQuery(requestId, rawTableName, offlineBrokerRequest, offlineRoutingTable, realtimeBrokerRequest,
+        realtimeRoutingTable, timeoutMs, null);
+  }
+
+  /**
+   * Submits the query to the servers based on the routing table. The data table listener (optional) is invoked on the
+   * Netty thread when each server response arrives.
+   */
+  public AsyncQueryResponse submitQuery(long requestId, String rawTableName,
+      @Nullable BrokerRequest offlineBrokerRequest, @Nullable Map<ServerInstance, List<String>> offlineRoutingTable,
+      @Nullable BrokerRequest realtimeBrokerRequest, @Nullable Map<ServerInstance, List<String>> realtimeRoutingTable,
+      long timeoutMs, @Nullable DataTableListener dataTableListener) {
     assert offlineBrokerRequest != null || realtimeBrokerRequest != null;
 
     // Build map from server to request based on the routing table
     Map<ServerRoutingInstance, InstanceRequest> requestMap = new HashMap<>();
+    Map<ServerRoutingInstance, String> instanceIdMap =
+        _serverLatencyTracker != null || _queryHedger != null ? new HashMap<>() : null;
     if (offlineBrokerRequest != null) {
       assert offlineRoutingTable != null;
       for (Map.Entry<ServerInstance, List<String>> entry : offlineRoutingTable.entrySet()) {
         ServerRoutingInstance serverRoutingInstance = entry.getKey().toServerRoutingInstance(TableType.OFFLINE);
         InstanceRequest instanceRequest = getInstanceRequest(requestId, offlineBrokerRequest, entry.getValue());
         requestMap.put(serverRoutingInstance, instanceRequest);
+        if (instanceIdMap != null) {
+          instanceIdMap.put(serverRoutingInstance, entry.getKey().getInstanceId());
+        }
       }
     }
     if (realtimeBrokerRequest != null) {
@@ -76,16 +134,24 @@ public class QueryRouter {
         ServerRoutingInstance serverRoutingInstance = entry.getKey().toServerRoutingInstance(TableType.REALTIME);
         InstanceRequest instanceRequest = getInstanceRequest(requestId, realtimeBrokerRequest, entry.getValue());
         requestMap.put(serverRoutingInstance, instanceRequest);
+        if (instanceIdMap != null) {
+          instanceIdMap.put(serverRoutingInstance, entry.getKey().getInstanceId());
+        }
       }
     }
 
     // Create the asynchronous query response with the request map
     AsyncQueryResponse asyncQueryResponse =
-        new AsyncQueryResponse(this, requestId, requestMap.keySet(), System.currentTimeMillis(), timeoutMs);
+        new AsyncQueryResponse(this, requestId, requestMap.keySet(), System.currentTimeMillis(), timeoutMs,
+            _serverLatencyTracker, instanceIdMap);
+    if (dataTableListener != null) {
+      asyncQueryResponse.setDataTableListener(dataTableListener);
+    }
     _asyncQueryResponseMap.put(requestId, asyncQueryResponse);
     for (Map.Entry<ServerRoutingInstance, InstanceRequest> entry : requestMap.entrySet()) {
       ServerRoutingInstance serverRoutingInstance = entry.getKey();
       try {
+        asyncQueryResponse.markRequestSending(serverRoutingInstance);
         _serverChannels.sendRequest(serverRoutingInstance, entry.getValue());
         asyncQueryResponse.markRequestSubmitted(serverRoutingInstance);
       } catch (Exception e) {
@@ -94,15 +160,85 @@ public class QueryRouter {
         _brokerMetrics.addMeteredTableValue(rawTableName, BrokerMeter.REQUEST_SEND_EXCEPTIONS, 1);
         asyncQueryResponse.setBrokerRequestSendException(e);
         asyncQueryResponse.markQueryFailed();
-        break;
+        return asyncQueryResponse;
+      }
+    }
+
+    if (_queryHedger != null) {
+      long hedgeDelayMs = _queryHedger.getHedgeDelayMs(rawTableName);
+      if (hedgeDelayMs >= 0 && hedgeDelayMs < timeoutMs) {
+        asyncQueryResponse.setHedgeFuture(_queryHedger
+            .schedule(() -> sendHedgedRequests(rawTableName, asyncQueryResponse, requestMap, instanceIdMap),
+                hedgeDelayMs));
       }
     }
 
     return asyncQueryResponse;
   }
 
+  /**
+   * Sends the hedged requests to the alternate servers for the servers that have not responded yet. The alternate
+   * server is picked from the servers not queried for the same table type so that the response can be distinguished.
+   */
+  private void sendHedgedRequests(String rawTableName, AsyncQueryResponse asyncQueryResponse,
+      Map<ServerRoutingInstance, InstanceRequest> requestMap, Map<ServerRoutingInstance, String> instanceIdMap) {
+    Map<TableType, Set<String>> excludedInstanceIdsMap = new HashMap<>();
+    for (Map.Entry<ServerRoutingInstance, String> entry : instanceIdMap.entrySet()) {
+      excludedInstanceIdsMap.computeIfAbsent(entry.getKey().getTableType(), k -> new HashSet<>()).add(entry.getValue());
+    }
+    for (ServerRoutingInstance serverRoutingInstance : asyncQueryResponse.getServersToHedge()) {
+      if (!_queryHedger.tryAcquire()) {
+        _brokerMetrics.addMeteredTableValue(rawTableName, BrokerMeter.HEDGED_REQUESTS_THROTTLED, 1);
+        return;
+      }
+      TableType tableType = serverRoutingInstance.getTableType();
+      String tableNameWithType = TableNameBuilder.forType(tableType).tableNameWithType(rawTableName);
+      InstanceRequest instanceRequest = requestMap.get(serverRoutingInstance);
+      Set<String> excludedInstanceIds = excludedInstanceIdsMap.get(tableType);
+      ServerInstance alternateServerInstance;
+      try {
+        alternateServerInstance =
+            _queryHedger.selectAlternateServer(tableNameWithType, instanceRequest.getSearchSegments(),
+                excludedInstanceIds);
+      } catch (Exception e) {
+        LOGGER.error("Caught exception while selecting alternate server for request {} to server: {}",
+            instanceRequest.getRequestId(), serverRoutingInstance, e);
+        alternateServerInstance = null;
+      }
+      if (alternateServerInstance == null) {
+        _queryHedger.release(1);
+        continue;
+      }
+      ServerRoutingInstance alternateServerRoutingInstance = alternateServerInstance.toServerRoutingInstance(tableType);
+      if (!asyncQueryResponse.markRequestHedged(serverRoutingInstance, alternateServerRoutingInstance,
+          alternateServerInstance.getInstanceId())) {
+        // Query is already done
+        _queryHedger.release(1);
+        return;
+      }
+      excludedInstanceIds.add(alternateServerInstance.getInstanceId());
+      try {
+        asyncQueryResponse.markRequestSending(alternateServerRoutingInstance);
+        _serverChannels.sendRequest(alternateServerRoutingInstance, instanceRequest);
+        _brokerMetrics.addMeteredTableValue(rawTableName, BrokerMeter.HEDGED_REQUESTS_SENT, 1);
+        // NOTE: The query might be marked done while sending the hedged request
+        if (!_asyncQueryResponseMap.containsKey(instanceRequest.getRequestId())) {
+          _serverChannels
+              .markRequestDone(instanceRequest.getRequestId(), Collections.singleton(alternateServerRoutingInstance));
+        }
+      } catch (Exception e) {
+        // The original request is still in-flight, so do not fail the query
+        LOGGER.warn("Caught exception while sending hedged request {} to server: {}", instanceRequest.getRequestId(),
+            alternateServerRoutingInstance, e);
+      }
+    }
+  }
+
   public void shutDown() {
     _serverChannels.shutDown();
+    if (_queryHedger != null) {
+      _queryHedger.shutDown();
+    }
   }
 
   void receiveDataTable(ServerRoutingInstance serverRoutingInstance, DataTable dataTable, int responseSize,
@@ -116,6 +252,11 @@ public class QueryRouter {
     }
   }
 
+  @VisibleForTesting
+  int getNumPendingRequests(ServerRoutingInstance serverRoutingInstance) {
+    return _serverChannels.getNumPendingRequests(serverRoutingInstance);
+  }
+
   void markServerDown(ServerRoutingInstance serverRoutingInstance) {
     for (AsyncQueryResponse asyncQueryResponse : _asyncQueryResponseMap.values()) {
       asyncQueryResponse.markServerDown(serverRoutingInstance);
@@ -123,7 +264,14 @@ public class QueryRouter {
   }
 
   void markQueryDone(long requestId) {
-    _asyncQueryResponseMap.remove(requestId);
+    AsyncQueryResponse asyncQueryResponse = _asyncQueryResponseMap.remove(requestId);
+    if (asyncQueryResponse != null) {
+      if (_queryHedger != null) {
+        _queryHedger.release(asyncQueryResponse.finishHedging());
+      }
+      // Stop counting the requests not responded (e.g. timed out) as pending on the channels
+      _serverChannels.markRequestDone(requestId, asyncQueryResponse.getServersQueried());
+    }
   }
 
   private InstanceRequest getInstanceRequest(long requestId, BrokerRequest brokerRequest, List<String> segments) {
@@ -133,6 +281,13 @@ public class QueryRouter {
     instanceRequest.setEnableTrace(brokerRequest.isEnableTrace());
     instanceRequest.setSearchSegments(segments);
     instanceRequest.setBrokerId(_brokerId);
+    // NOTE: Ask for the compressed response via the instance request instead of the query options, so that the servers
+    //       never compress the response for the older brokers, which pass the query options from the user as is but
+    //       cannot decode the compressed response.
+    Map<String, String> queryOptions = brokerRequest.getQueryOptions();
+    if (queryOptions != null) {
+      instanceRequest.setResponseCompression(queryOptions.get(QueryOptionKey.RESPONSE_COMPRESSION));
+    }
     return instanceRequest;
   }
 }
@@ -18,11 +18,13 @@
  */
 package org.apache.pinot.core.transport;
 
+import com.google.common.base.Preconditions;
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.EventLoopGroup;
+import io.netty.channel.WriteBufferWaterMark;
 import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
 import io.netty.channel.socket.nio.NioServerSocketChannel;
@@ -30,6 +32,7 @@ import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
 import io.netty.handler.codec.LengthFieldPrepender;
 import java.util.concurrent.TimeUnit;
 import org.apache.pinot.common.metrics.ServerMetrics;
+import org.apache.pinot.common.utils.CommonConstants.Server;
 import org.apache.pinot.core.query.scheduler.QueryScheduler;
 
 
@@ -41,15 +44,30 @@ public class QueryServer {
   private final int _port;
   private final QueryScheduler _queryScheduler;
   private final ServerMetrics _serverMetrics;
+  private final int _writeBufferLowWaterMarkBytes;
+  private final int _writeBufferHighWaterMarkBytes;
+  private final long _maxQueuedResponseBytes;
 
   private EventLoopGroup _bossGroup;
   private EventLoopGroup _workerGroup;
   private Channel _channel;
 
   public QueryServer(int port, QueryScheduler queryScheduler, ServerMetrics serverMetrics) {
+    this(port, queryScheduler, serverMetrics, Server.DEFAULT_NETTY_WRITE_BUFFER_LOW_WATER_MARK_BYTES,
+        Server.DEFAULT_NETTY_WRITE_BUFFER_HIGH_WATER_MARK_BYTES, Server.DEFAULT_NETTY_MAX_QUEUED_RESPONSE_BYTES);
+  }
+
+  public QueryServer(int port, QueryScheduler queryScheduler, ServerMetrics serverMetrics,
+      int writeBufferLowWaterMarkBytes, int writeBufferHighWaterMarkBytes, long maxQueuedResponseBytes) {
+    Preconditions.checkArgument(writeBufferLowWaterMarkBytes <= writeBufferHighWaterMarkBytes,
+        "Write buffer low water mark: %s must not be larger than high water mark: %s", writeBufferLowWaterMarkBytes,
+        writeBufferHighWaterMarkBytes);
     _port = port;
     _queryScheduler = queryScheduler;
     _serverMetrics = serverMetrics;
+    _writeBufferLowWaterMarkBytes = writeBufferLowWaterMarkBytes;
+    _writeBufferHighWaterMarkBytes = writeBufferHighWaterMarkBytes;
+    _maxQueuedResponseBytes = maxQueuedResponseBytes;
   }
 
   public void start() {
@@ -59,13 +77,15 @@ public class QueryServer {
       ServerBootstrap serverBootstrap = new ServerBootstrap();
       _channel = serverBootstrap.group(_bossGroup, _workerGroup).channel(NioServerSocketChannel.class)
           .option(ChannelOption.SO_BACKLOG, 128).childOption(ChannelOption.SO_KEEPALIVE, true)
+          .childOption(ChannelOption.WRITE_BUFFER_WATER_MARK,
+              new WriteBufferWaterMark(_writeBufferLowWaterMarkBytes, _writeBufferHighWaterMarkBytes))
           .childHandler(new ChannelInitializer<SocketChannel>() {
             @Override
             protected void initChannel(SocketChannel ch) {
               ch.pipeline()
                   .addLast(new LengthFieldBasedFrameDecoder(Integer.MAX_VALUE, 0, Integer.BYTES, 0, Integer.BYTES),
                       new LengthFieldPrepender(Integer.BYTES),
-                      new InstanceRequestHandler(_queryScheduler, _serverMetrics));
+                      new InstanceRequestHandler(_queryScheduler, _serverMetrics, _maxQueuedResponseBytes));
             }
           }).bind(_port).sync().channel();
     } catch (Exception e) {
@@ -18,43 +18,88 @@
  */
 package org.apache.pinot.core.transport;
 
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
 import io.netty.bootstrap.Bootstrap;
-import io.netty.buffer.Unpooled;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufOutputStream;
+import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollSocketChannel;
 import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
 import io.netty.channel.socket.nio.NioSocketChannel;
 import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
 import io.netty.handler.codec.LengthFieldPrepender;
+import java.util.Collection;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import javax.annotation.concurrent.ThreadSafe;
 import org.apache.pinot.common.metrics.BrokerGauge;
 import org.apache.pinot.common.metrics.BrokerMeter;
 import org.apache.pinot.common.metrics.BrokerMetrics;
 import org.apache.pinot.common.request.InstanceRequest;
-import org.apache.thrift.TSerializer;
+import org.apache.thrift.TException;
 import org.apache.thrift.protocol.TCompactProtocol;
+import org.apache.thrift.transport.TIOStreamTransport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 
 /**
  * The {@code ServerChannels} class manages the channels between broker to all the connected servers.
- * <p>There is only one channel between the broker and each connected server (we count OFFLINE and REALTIME as different
- * servers)
+ * <p>There is a fixed number of channels (1 by default) between the broker and each connected server (we count OFFLINE
+ * and REALTIME as different servers). Each request is sent on the channel with the least pending requests to reduce
+ * the head-of-line blocking caused by the large responses.
+ * <p>The epoll native transport is used when enabled and available (Linux only), otherwise falls back to NIO.
  */
 @ThreadSafe
 public class ServerChannels {
+  private static final Logger LOGGER = LoggerFactory.getLogger(ServerChannels.class);
+
+  public static final int DEFAULT_NUM_CHANNELS_PER_SERVER = 1;
+
   private final QueryRouter _queryRouter;
   private final BrokerMetrics _brokerMetrics;
+  private final int _numChannelsPerServer;
   private final ConcurrentHashMap<ServerRoutingInstance, ServerChannel> _serverToChannelMap = new ConcurrentHashMap<>();
-  private final EventLoopGroup _eventLoopGroup = new NioEventLoopGroup();
+  private final EventLoopGroup _eventLoopGroup;
+  private final Class<? extends SocketChannel> _channelClass;
 
   public ServerChannels(QueryRouter queryRouter, BrokerMetrics brokerMetrics) {
+    this(queryRouter, brokerMetrics, DEFAULT_NUM_CHANNELS_PER_SERVER, false);
+  }
+
+  /**
+   * @param numChannelsPerServer Number of channels between the broker and each server
+   * @param enableNativeTransport Whether to use the epoll native transport when available
+   */
+  public ServerChannels(QueryRouter queryRouter, BrokerMetrics brokerMetrics, int numChannelsPerServer,
+      boolean enableNativeTransport) {
+    Preconditions.checkArgument(numChannelsPerServer > 0, "Invalid number of channels per server: %s",
+        numChannelsPerServer);
     _queryRouter = queryRouter;
     _brokerMetrics = brokerMetrics;
+    _numChannelsPerServer = numChannelsPerServer;
+    if (enableNativeTransport && Epoll.isAvailable()) {
+      LOGGER.info("Using epoll native transport with {} channels per server", numChannelsPerServer);
+      _eventLoopGroup = new EpollEventLoopGroup();
+      _channelClass = EpollSocketChannel.class;
+    } else {
+      if (enableNativeTransport) {
+        LOGGER.warn("Epoll native transport is not available, falling back to NIO", Epoll.unavailabilityCause());
+      }
+      LOGGER.info("Using NIO transport with {} channels per server", numChannelsPerServer);
+      _eventLoopGroup = new NioEventLoopGroup();
+      _channelClass = NioSocketChannel.class;
+    }
   }
 
   public void sendRequest(ServerRoutingInstance serverRoutingInstance, InstanceRequest instanceRequest)
@@ -62,6 +107,37 @@ public class ServerChannels {
     _serverToChannelMap.computeIfAbsent(serverRoutingInstance, ServerChannel::new).sendRequest(instanceRequest);
   }
 
+  /**
+   * Marks the request done on the given servers, so that the request is no longer counted as pending on the channels
+   * even if the server never responds (e.g. the query timed out on the broker side).
+   */
+  public void markRequestDone(long requestId, Collection<ServerRoutingInstance> serverRoutingInstances) {
+    if (_numChannelsPerServer == 1) {
+      return;
+    }
+    for (ServerRoutingInstance serverRoutingInstance : serverRoutingInstances) {
+      ServerChannel serverChannel = _serverToChannelMap.get(serverRoutingInstance);
+      if (serverChannel != null) {
+        for (PooledChannel pooledChannel : serverChannel._pooledChannels) {
+          pooledChannel._pendingRequestIds.remove(requestId);
+        }
+      }
+    }
+  }
+
+  @VisibleForTesting
+  int getNumPendingRequests(ServerRoutingInstance serverRoutingInstance) {
+    ServerChannel serverChannel = _serverToChannelMap.get(serverRoutingInstance);
+    if (serverChannel == null || _numChannelsPerServer == 1) {
+      return 0;
+    }
+    int numPendingRequests = 0;
+    for (PooledChannel pooledChannel : serverChannel._pooledChannels) {
+      numPendingRequests += pooledChannel._pendingRequestIds.size();
+    }
+    return numPendingRequests;
+  }
+
   public void shutDown() {
     // Shut down immediately
     _eventLoopGroup.shutdownGracefully(0, 0, TimeUnit.SECONDS);
@@ -69,15 +145,55 @@ public class ServerChannels {
 
   @ThreadSafe
   private class ServerChannel {
-    final TSerializer _serializer = new TSerializer(new TCompactProtocol.Factory());
+    final PooledChannel[] _pooledChannels;
+    // Used to break the ties when picking the least loaded channel
+    final AtomicInteger _roundRobinIndex = new AtomicInteger();
+
+    ServerChannel(ServerRoutingInstance serverRoutingInstance) {
+      _pooledChannels = new PooledChannel[_numChannelsPerServer];
+      for (int i = 0; i < _numChannelsPerServer; i++) {
+        _pooledChannels[i] = new PooledChannel(serverRoutingInstance);
+      }
+    }
+
+    void sendRequest(InstanceRequest instanceRequest)
+        throws Exception {
+      getLeastLoadedChannel().sendRequest(instanceRequest);
+    }
+
+    PooledChannel getLeastLoadedChannel() {
+      if (_numChannelsPerServer == 1) {
+        return _pooledChannels[0];
+      }
+      int startIndex = Math.abs(_roundRobinIndex.getAndIncrement() % _numChannelsPerServer);
+      PooledChannel leastLoadedChannel = null;
+      int minNumPendingRequests = Integer.MAX_VALUE;
+      for (int i = 0; i < _numChannelsPerServer; i++) {
+        PooledChannel pooledChannel = _pooledChannels[(startIndex + i) % _numChannelsPerServer];
+        int numPendingRequests = pooledChannel._pendingRequestIds.size();
+        if (numPendingRequests < minNumPendingRequests) {
+          leastLoadedChannel = pooledChannel;
+          minNumPendingRequests = numPendingRequests;
+        }
+      }
+      return leastLoadedChannel;
+    }
+  }
+
+  @ThreadSafe
+  private class PooledChannel {
     final ServerRoutingInstance _serverRoutingInstance;
     final Bootstrap _bootstrap;
+    // Ids of the requests sent on this channel without response received and not marked done, only tracked with
+    // multiple channels per server to pick the least loaded channel
+    final Set<Long> _pendingRequestIds = _numChannelsPerServer > 1 ? ConcurrentHashMap.newKeySet() : null;
     Channel _channel;
 
-    ServerChannel(ServerRoutingInstance serverRoutingInstance) {
+    PooledChannel(ServerRoutingInstance serverRoutingInstance) {
       _serverRoutingInstance = serverRoutingInstance;
       _bootstrap = new Bootstrap().remoteAddress(serverRoutingInstance.getHostname(), serverRoutingInstance.getPort())
-          .group(_eventLoopGroup).channel(NioSocketChannel.class).option(ChannelOption.SO_KEEPALIVE, true)
+          .group(_eventLoopGroup).channel(_channelClass).option(ChannelOption.SO_KEEPALIVE, true)
+          .option(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
           .handler(new ChannelInitializer<SocketChannel>() {
             @Override
             protected void initChannel(SocketChannel ch) {
@@ -86,7 +202,8 @@ public class ServerChannels {
                       new LengthFieldPrepender(Integer.BYTES),
                       // NOTE: data table de-serialization happens inside this handler
                       // Revisit if this becomes a bottleneck
-                      new DataTableHandler(_queryRouter, _serverRoutingInstance, _brokerMetrics));
+                      new DataTableHandler(_queryRouter, _serverRoutingInstance, _brokerMetrics,
+                          _pendingRequestIds));
             }
           });
     }
@@ -98,11 +215,35 @@ public class ServerChannels {
         _channel = _bootstrap.connect().sync().channel();
         _brokerMetrics.setValueOfGlobalGauge(BrokerGauge.NETTY_CONNECTION_CONNECT_TIME_MS,
             System.currentTimeMillis() - startTime);
+        // Responses for the requests sent on the previous channel will never arrive
+        if (_pendingRequestIds != null) {
+          _pendingRequestIds.clear();
+        }
       }
-      byte[] requestBytes = _serializer.serialize(instanceRequest);
-      _channel.writeAndFlush(Unpooled.wrappedBuffer(requestBytes), _channel.voidPromise());
+      ByteBuf requestBuf = serialize(instanceRequest);
+      int requestSize = requestBuf.readableBytes();
+      if (_pendingRequestIds != null) {
+        _pendingRequestIds.add(instanceRequest.getRequestId());
+      }
+      // NOTE: The buffer is released by Netty after being written
+      _channel.writeAndFlush(requestBuf, _channel.voidPromise());
       _brokerMetrics.addMeteredGlobalValue(BrokerMeter.NETTY_CONNECTION_REQUESTS_SENT, 1);
-      _brokerMetrics.addMeteredGlobalValue(BrokerMeter.NETTY_CONNECTION_BYTES_SENT, requestBytes.length);
+      _brokerMetrics.addMeteredGlobalValue(BrokerMeter.NETTY_CONNECTION_BYTES_SENT, requestSize);
+    }
+
+    /**
+     * Serializes the request into a pooled direct buffer to avoid allocating and copying the intermediate byte array.
+     */
+    ByteBuf serialize(InstanceRequest instanceRequest)
+        throws TException {
+      ByteBuf requestBuf = _channel.alloc().directBuffer();
+      try {
+        instanceRequest.write(new TCompactProtocol(new TIOStreamTransport(new ByteBufOutputStream(requestBuf))));
+        return requestBuf;
+      } catch (Exception e) {
+        requestBuf.release();
+        throw e;
+      }
     }
   }
 }
@@ -28,14 +28,19 @@ public class ServerInstance {
   private static final int SERVER_INSTANCE_PREFIX_LENGTH = Helix.PREFIX_OF_SERVER_INSTANCE.length();
   private static final String HOSTNAME_PORT_DELIMITER = "_";
 
+  public static final int INVALID_PORT = -1;
+
+  private final String _instanceId;
   private final String _hostname;
   private final int _port;
+  private final int _grpcPort;
 
   /**
    * By default (auto joined instances), server instance name is of format: {@code Server_<hostname>_<port>}, e.g.
    * {@code Server_localhost_12345}, hostname is of format: {@code Server_<hostname>}, e.g. {@code Server_localhost}.
    */
   public ServerInstance(InstanceConfig instanceConfig) {
+    _instanceId = instanceConfig.getInstanceName();
     String hostname = instanceConfig.getHostName();
     if (hostname != null) {
       if (hostname.startsWith(Helix.PREFIX_OF_SERVER_INSTANCE)) {
@@ -52,12 +57,28 @@ public class ServerInstance {
       _hostname = hostnameAndPort[0];
       _port = Integer.parseInt(hostnameAndPort[1]);
     }
+    String grpcPort = instanceConfig.getRecord().getSimpleField(Helix.Instance.GRPC_PORT_KEY);
+    _grpcPort = grpcPort != null ? Integer.parseInt(grpcPort) : INVALID_PORT;
   }
 
   @VisibleForTesting
   ServerInstance(String hostname, int port) {
+    _instanceId = Helix.PREFIX_OF_SERVER_INSTANCE + hostname + HOSTNAME_PORT_DELIMITER + port;
+    _hostname = hostname;
+    _port = port;
+    _grpcPort = INVALID_PORT;
+  }
+
+  @VisibleForTesting
+  ServerInstance(String hostname, int port, int grpcPort) {
+    _instanceId = Helix.PREFIX_OF_SERVER_INSTANCE + hostname + HOSTNAME_PORT_DELIMITER + port;
     _hostname = hostname;
     _port = port;
+    _grpcPort = grpcPort;
+  }
+
+  public String getInstanceId() {
+    return _instanceId;
   }
 
   public String getHostname() {
@@ -68,6 +89,13 @@ public class ServerInstance {
     return _port;
   }
 
+  /**
+   * Returns the port of the gRPC query server, or {@link #INVALID_PORT} if the gRPC query server is not enabled.
+   */
+  public int getGrpcPort() {
+    return _grpcPort;
+  }
+
   public ServerRoutingInstance toServerRoutingInstance(TableType tableType) {
     return new ServerRoutingInstance(_hostname, _port, tableType);
   }
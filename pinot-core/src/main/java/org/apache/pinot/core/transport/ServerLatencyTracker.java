@@ -0,0 +1,140 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pinot.core.transport;
+
+import com.google.common.base.Preconditions;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.annotation.concurrent.ThreadSafe;
+
+
+/**
+ * The {@code ServerLatencyTracker} class tracks the response latency (exponentially weighted moving average) and the
+ * number of in-flight requests for each server instance, which can be used to route queries away from slow or
+ * overloaded servers.
+ * <p>The latency EWMA decays towards 0 when the server has not responded for a while, so that a server that was slow
+ * (e.g. due to a GC pause) can be probed again after it recovers.
+ */
+@ThreadSafe
+public class ServerLatencyTracker {
+  public static final double DEFAULT_EWMA_ALPHA = 0.3;
+  public static final long DEFAULT_DECAY_HALF_LIFE_MS = 10_000L;
+
+  private final double _alpha;
+  private final long _decayHalfLifeMs;
+  private final ConcurrentHashMap<String, ServerStats> _serverStatsMap = new ConcurrentHashMap<>();
+
+  public ServerLatencyTracker() {
+    this(DEFAULT_EWMA_ALPHA, DEFAULT_DECAY_HALF_LIFE_MS);
+  }
+
+  public ServerLatencyTracker(double alpha, long decayHalfLifeMs) {
+    Preconditions.checkArgument(alpha > 0 && alpha <= 1, "Invalid EWMA alpha: %s", alpha);
+    Preconditions.checkArgument(decayHalfLifeMs > 0, "Invalid decay half life: %s", decayHalfLifeMs);
+    _alpha = alpha;
+    _decayHalfLifeMs = decayHalfLifeMs;
+  }
+
+  /**
+   * Records a request sent to the given server.
+   */
+  public void recordRequestSent(String instanceId) {
+    getServerStats(instanceId).requestSent();
+  }
+
+  /**
+   * Records a request finished (responded, failed or timed out) on the given server with the given latency.
+   * <p>NOTE: The stats are not re-created if the server is already removed, e.g. when the request was in-flight while
+   * the server was removed.
+   */
+  public void recordRequestFinished(String instanceId, long latencyMs) {
+    ServerStats serverStats = _serverStatsMap.get(instanceId);
+    if (serverStats != null) {
+      serverStats.requestFinished(latencyMs, System.currentTimeMillis());
+    }
+  }
+
+  /**
+   * Removes the stats of the given server. Should be called when the server is disabled or removed from the cluster so
+   * that the stats do not accumulate for the servers no longer queried.
+   */
+  public void removeServer(String instanceId) {
+    _serverStatsMap.remove(instanceId);
+  }
+
+  public int getNumServers() {
+    return _serverStatsMap.size();
+  }
+
+  private ServerStats getServerStats(String instanceId) {
+    return _serverStatsMap.computeIfAbsent(instanceId, k -> new ServerStats());
+  }
+
+  /**
+   * Returns the score of the given server, where lower is better. The score is the expected latency of a new request,
+   * estimated as the latency EWMA multiplied by the number of requests queued on the server (including the new one).
+   * Servers without stats have score 0 so that they are always probed.
+   */
+  public double getScore(String instanceId) {
+    ServerStats serverStats = _serverStatsMap.get(instanceId);
+    return serverStats != null ? serverStats.getScore(System.currentTimeMillis()) : 0;
+  }
+
+  public int getNumInFlightRequests(String instanceId) {
+    ServerStats serverStats = _serverStatsMap.get(instanceId);
+    return serverStats != null ? serverStats._numInFlightRequests : 0;
+  }
+
+  public double getLatencyEwmaMs(String instanceId) {
+    ServerStats serverStats = _serverStatsMap.get(instanceId);
+    return serverStats != null ? serverStats.getDecayedLatencyEwmaMs(System.currentTimeMillis()) : 0;
+  }
+
+  private class ServerStats {
+    volatile int _numInFlightRequests;
+    volatile double _latencyEwmaMs;
+    volatile long _lastUpdateTimeMs;
+
+    synchronized void requestSent() {
+      _numInFlightRequests++;
+    }
+
+    synchronized void requestFinished(long latencyMs, long currentTimeMs) {
+      if (_numInFlightRequests > 0) {
+        _numInFlightRequests--;
+      }
+      if (_lastUpdateTimeMs == 0) {
+        _latencyEwmaMs = latencyMs;
+      } else {
+        _latencyEwmaMs = _alpha * latencyMs + (1 - _alpha) * getDecayedLatencyEwmaMs(currentTimeMs);
+      }
+      _lastUpdateTimeMs = currentTimeMs;
+    }
+
+    double getDecayedLatencyEwmaMs(long currentTimeMs) {
+      long elapsedMs = currentTimeMs - _lastUpdateTimeMs;
+      double latencyEwmaMs = _latencyEwmaMs;
+      return elapsedMs > 0 ? latencyEwmaMs * Math.pow(0.5, (double) elapsedMs / _decayHalfLifeMs) : latencyEwmaMs;
+    }
+
+    double getScore(long currentTimeMs) {
+      // NOTE: Use at least 1ms as the latency so that the number of in-flight requests is always counted
+      return (_numInFlightRequests + 1) * Math.max(getDecayedLatencyEwmaMs(currentTimeMs), 1);
+    }
+  }
+}
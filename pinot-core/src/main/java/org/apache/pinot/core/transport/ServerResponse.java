@@ -58,6 +58,18 @@ public class ServerResponse {
     }
   }
 
+  /**
+   * Returns the time elapsed since the request was submitted, or -1 if the request was not submitted. For the server
+   * that has not responded (e.g. timed out), this is a lower bound of the response delay.
+   */
+  public int getElapsedSinceSubmitMs() {
+    if (_submitRequestTimeMs != 0) {
+      return (int) (System.currentTimeMillis() - _submitRequestTimeMs);
+    } else {
+      return -1;
+    }
+  }
+
   public int getResponseSize() {
     return _responseSize;
   }
@@ -76,10 +88,18 @@ public class ServerResponse {
     _submitRequestTimeMs = System.currentTimeMillis();
   }
 
-  void receiveDataTable(DataTable dataTable, int responseSize, int deserializationTimeMs) {
+  /**
+   * Returns {@code true} if the data table is accepted, {@code false} if the data table is already received (e.g. from
+   * the other server of the hedged request).
+   */
+  synchronized boolean receiveDataTable(DataTable dataTable, int responseSize, int deserializationTimeMs) {
+    if (_dataTable != null) {
+      return false;
+    }
     _receiveDataTableTimeMs = System.currentTimeMillis();
     _dataTable = dataTable;
     _responseSize = responseSize;
     _deserializationTimeMs = deserializationTimeMs;
+    return true;
   }
 }
@@ -0,0 +1,98 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pinot.core.transport.grpc;
+
+import com.google.common.util.concurrent.MoreExecutors;
+import io.grpc.Context;
+import io.grpc.Status;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+import javax.annotation.concurrent.ThreadSafe;
+import org.apache.pinot.common.proto.Server.ServerResponse;
+
+
+/**
+ * The {@code FlowControlledStreamObserver} wraps the server side response observer, and blocks the sender until the
+ * transport is ready to accept more responses (i.e. the client has consumed the previous responses), so that the
+ * responses are not buffered without bound on the server side when the client is slower than the server.
+ * <p>When the call is cancelled (e.g. the client has received enough rows, or timed out), the sender is unblocked and
+ * {@link #onNext(ServerResponse)} throws a {@code StatusRuntimeException} so that the query execution can stop early.
+ * <p>NOTE: The ready/cancel handlers and the cancelled state of the call are updated on the serializing executor of the
+ *       call, which is blocked while the service method is running. The cancellation is detected from the
+ *       {@link Context} of the call instead, which is cancelled directly by the transport.
+ */
+@ThreadSafe
+class FlowControlledStreamObserver implements StreamObserver<ServerResponse> {
+  // Re-check the state periodically in case the ready signal is missed
+  private static final long MAX_WAIT_TIME_MS = 100L;
+
+  private final ServerCallStreamObserver<ServerResponse> _delegate;
+  private final Context _context;
+  private final Object _lock = new Object();
+
+  /**
+   * NOTE: This constructor must be called within the service method (before it returns) with the current context of
+   *       the call (i.e. {@code Context.current()}) to register the handlers.
+   */
+  FlowControlledStreamObserver(ServerCallStreamObserver<ServerResponse> delegate, Context context) {
+    _delegate = delegate;
+    _context = context;
+    _delegate.setOnReadyHandler(this::signal);
+    _context.addListener(cancelledContext -> signal(), MoreExecutors.directExecutor());
+  }
+
+  private void signal() {
+    synchronized (_lock) {
+      _lock.notifyAll();
+    }
+  }
+
+  boolean isCancelled() {
+    return _context.isCancelled() || _delegate.isCancelled();
+  }
+
+  @Override
+  public void onNext(ServerResponse value) {
+    synchronized (_lock) {
+      while (!_delegate.isReady() && !isCancelled()) {
+        try {
+          _lock.wait(MAX_WAIT_TIME_MS);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw Status.CANCELLED.withDescription("Interrupted while waiting for the transport to be ready")
+              .asRuntimeException();
+        }
+      }
+    }
+    if (isCancelled()) {
+      throw Status.CANCELLED.withDescription("Call is cancelled by the client").asRuntimeException();
+    }
+    _delegate.onNext(value);
+  }
+
+  @Override
+  public void onError(Throwable t) {
+    _delegate.onError(t);
+  }
+
+  @Override
+  public void onCompleted() {
+    _delegate.onCompleted();
+  }
+}
@@ -18,9 +18,11 @@
  */
 package org.apache.pinot.core.transport.grpc;
 
+import io.grpc.Context;
 import io.grpc.Server;
 import io.grpc.ServerBuilder;
 import io.grpc.Status;
+import io.grpc.stub.ServerCallStreamObserver;
 import io.grpc.stub.StreamObserver;
 import java.io.IOException;
 import java.util.concurrent.ExecutorService;
@@ -76,7 +78,12 @@ public class GrpcQueryServer extends PinotQueryServerGrpc.PinotQueryServerImplBa
   }
 
   @Override
-  public void submit(ServerRequest request, StreamObserver<ServerResponse> responseObserver) {
+  public void submit(ServerRequest request, StreamObserver<ServerResponse> serverResponseObserver) {
+    // NOTE: Capture the context of the call so that the cancellation can be detected while the query is being processed
+    FlowControlledStreamObserver responseObserver =
+        new FlowControlledStreamObserver((ServerCallStreamObserver<ServerResponse>) serverResponseObserver,
+            Context.current());
+
     // Deserialize the request
     ServerQueryRequest queryRequest;
     try {
@@ -93,6 +100,10 @@ public class GrpcQueryServer extends PinotQueryServerGrpc.PinotQueryServerImplBa
     try {
       dataTable = _queryExecutor.processQuery(queryRequest, _executorService, responseObserver);
     } catch (Exception e) {
+      if (responseObserver.isCancelled()) {
+        LOGGER.debug("Request {} is cancelled by broker: {}", queryRequest.getRequestId(), queryRequest.getBrokerId());
+        return;
+      }
       LOGGER.error("Caught exception while processing request {}: {} from broker: {}", queryRequest.getRequestId(),
           queryRequest.getQueryContext(), queryRequest.getBrokerId(), e);
       _serverMetrics.addMeteredGlobalValue(ServerMeter.UNCAUGHT_EXCEPTIONS, 1);
@@ -111,6 +122,11 @@ public class GrpcQueryServer extends PinotQueryServerGrpc.PinotQueryServerImplBa
       responseObserver.onError(Status.INTERNAL.withCause(e).asException());
       return;
     }
+    if (responseObserver.isCancelled()) {
+      // The broker has received enough rows or timed out
+      LOGGER.debug("Request {} is cancelled by broker: {}", queryRequest.getRequestId(), queryRequest.getBrokerId());
+      return;
+    }
     responseObserver.onNext(response);
     responseObserver.onCompleted();
   }
@@ -0,0 +1,457 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pinot.core.transport.grpc;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.grpc.Context;
+import io.grpc.stub.ClientCallStreamObserver;
+import io.grpc.stub.ClientResponseObserver;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import org.apache.pinot.common.exception.QueryException;
+import org.apache.pinot.common.metrics.BrokerMeter;
+import org.apache.pinot.common.metrics.BrokerMetrics;
+import org.apache.pinot.common.proto.Server;
+import org.apache.pinot.common.request.BrokerRequest;
+import org.apache.pinot.common.utils.CommonConstants.Query.Response;
+import org.apache.pinot.common.utils.DataSchema;
+import org.apache.pinot.common.utils.DataTable;
+import org.apache.pinot.common.utils.grpc.GrpcQueryClient;
+import org.apache.pinot.common.utils.grpc.GrpcRequestBuilder;
+import org.apache.pinot.core.common.datatable.DataTableFactory;
+import org.apache.pinot.core.common.datatable.DataTableImplV2;
+import org.apache.pinot.core.query.selection.SelectionOperatorUtils;
+import org.apache.pinot.core.transport.ServerInstance;
+import org.apache.pinot.core.transport.ServerLatencyTracker;
+import org.apache.pinot.core.transport.ServerRoutingInstance;
+import org.apache.pinot.spi.config.table.TableType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * The {@code StreamingQueryRouter} class routes the selection only queries (without ORDER BY) to the servers via the
+ * gRPC streaming endpoint, and gathers the rows as the servers produce them.
+ * <p>The rows are pulled from each server one block at a time (gRPC flow control), and all the streams are cancelled
+ * once LIMIT rows are gathered, so that the broker holds at most LIMIT rows regardless of the number of servers.
+ * <p>The streams are consumed asynchronously with the gRPC callbacks, so that no thread is blocked on the streams, and
+ * the number of threads does not grow with the number of queries and servers.
+ * <p>NOTE: The execution statistics of the servers whose streams are cancelled are not available.
+ */
+@ThreadSafe
+public class StreamingQueryRouter {
+  private static final Logger LOGGER = LoggerFactory.getLogger(StreamingQueryRouter.class);
+
+  private final String _brokerId;
+  private final BrokerMetrics _brokerMetrics;
+  // Tracker for the server latency and in-flight requests, null if adaptive selection is disabled
+  private final ServerLatencyTracker _serverLatencyTracker;
+  // Map from "<hostname>_<grpcPort>" to the gRPC query client
+  private final ConcurrentHashMap<String, GrpcQueryClient> _grpcQueryClientMap = new ConcurrentHashMap<>();
+  private final ScheduledExecutorService _deadlineExecutor = Executors.newSingleThreadScheduledExecutor(
+      new ThreadFactoryBuilder().setNameFormat("streaming-query-deadline-%d").setDaemon(true).build());
+
+  public StreamingQueryRouter(String brokerId, BrokerMetrics brokerMetrics) {
+    this(brokerId, brokerMetrics, null);
+  }
+
+  /**
+   * @param serverLatencyTracker Tracker for the server latency and in-flight requests, {@code null} if adaptive
+   *                             selection is disabled
+   */
+  public StreamingQueryRouter(String brokerId, BrokerMetrics brokerMetrics,
+      @Nullable ServerLatencyTracker serverLatencyTracker) {
+    _brokerId = brokerId;
+    _brokerMetrics = brokerMetrics;
+    _serverLatencyTracker = serverLatencyTracker;
+  }
+
+  /**
+   * Returns whether all the servers in the routing table have the gRPC query server enabled.
+   */
+  public static boolean isStreamingSupported(@Nullable Map<ServerInstance, List<String>> routingTable) {
+    if (routingTable != null) {
+      for (ServerInstance serverInstance : routingTable.keySet()) {
+        if (serverInstance.getGrpcPort() == ServerInstance.INVALID_PORT) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Submits the query to the servers based on the routing table, and blocks until all the streams are finished, LIMIT
+   * rows are gathered, or the query times out. Returns the {@link StreamingQueryResponse} containing a map from server
+   * to the data table with the rows gathered from the server and the metadata (execution statistics and exceptions)
+   * sent by the server.
+   */
+  public StreamingQueryResponse submitQuery(long requestId, String rawTableName,
+      @Nullable BrokerRequest offlineBrokerRequest, @Nullable Map<ServerInstance, List<String>> offlineRoutingTable,
+      @Nullable BrokerRequest realtimeBrokerRequest, @Nullable Map<ServerInstance, List<String>> realtimeRoutingTable,
+      long timeoutMs, int limit)
+      throws InterruptedException {
+    assert offlineBrokerRequest != null || realtimeBrokerRequest != null;
+    _brokerMetrics.addMeteredTableValue(rawTableName, BrokerMeter.STREAMING_QUERIES, 1);
+
+    List<ServerStream> serverStreams = new ArrayList<>();
+    if (offlineBrokerRequest != null) {
+      assert offlineRoutingTable != null;
+      addServerStreams(serverStreams, requestId, offlineBrokerRequest, offlineRoutingTable, TableType.OFFLINE,
+          timeoutMs);
+    }
+    if (realtimeBrokerRequest != null) {
+      assert realtimeRoutingTable != null;
+      addServerStreams(serverStreams, requestId, realtimeBrokerRequest, realtimeRoutingTable, TableType.REALTIME,
+          timeoutMs);
+    }
+
+    StreamGatherer streamGatherer = new StreamGatherer(rawTableName, serverStreams, limit);
+    for (ServerStream serverStream : serverStreams) {
+      if (_serverLatencyTracker != null) {
+        _serverLatencyTracker.recordRequestSent(serverStream._instanceId);
+      }
+      streamGatherer.start(serverStream);
+    }
+    boolean finished = streamGatherer._countDownLatch.await(timeoutMs, TimeUnit.MILLISECONDS);
+    return streamGatherer.close(finished);
+  }
+
+  private void addServerStreams(List<ServerStream> serverStreams, long requestId, BrokerRequest brokerRequest,
+      Map<ServerInstance, List<String>> routingTable, TableType tableType, long timeoutMs) {
+    for (Map.Entry<ServerInstance, List<String>> entry : routingTable.entrySet()) {
+      ServerInstance serverInstance = entry.getKey();
+      List<String> segments = entry.getValue();
+      if (segments.isEmpty()) {
+        continue;
+      }
+      Server.ServerRequest serverRequest =
+          new GrpcRequestBuilder().setRequestId(requestId).setBrokerId(_brokerId)
+              .setEnableTrace(brokerRequest.isEnableTrace()).setEnableStreaming(true).setBrokerRequest(brokerRequest)
+              .setSegments(segments).build();
+      GrpcQueryClient grpcQueryClient = _grpcQueryClientMap
+          .computeIfAbsent(serverInstance.getHostname() + "_" + serverInstance.getGrpcPort(),
+              k -> new GrpcQueryClient(serverInstance.getHostname(), serverInstance.getGrpcPort()));
+      Context.CancellableContext context =
+          Context.current().withDeadlineAfter(timeoutMs, TimeUnit.MILLISECONDS, _deadlineExecutor);
+      serverStreams.add(
+          new ServerStream(serverInstance.getInstanceId(), serverInstance.toServerRoutingInstance(tableType),
+              grpcQueryClient, serverRequest, context));
+    }
+  }
+
+  public void shutDown() {
+    _deadlineExecutor.shutdownNow();
+    for (GrpcQueryClient grpcQueryClient : _grpcQueryClientMap.values()) {
+      grpcQueryClient.close();
+    }
+  }
+
+  /**
+   * The {@code StreamingQueryResponse} class contains the data tables gathered from the servers and the statistics of
+   * the streams.
+   */
+  public static class StreamingQueryResponse {
+    private final Map<ServerRoutingInstance, DataTable> _dataTableMap;
+    private final int _numServersResponded;
+    private final String _stats;
+
+    StreamingQueryResponse(Map<ServerRoutingInstance, DataTable> dataTableMap, int numServersResponded, String stats) {
+      _dataTableMap = dataTableMap;
+      _numServersResponded = numServersResponded;
+      _stats = stats;
+    }
+
+    /**
+     * Returns a map from server to the data table (one entry per server queried).
+     */
+    public Map<ServerRoutingInstance, DataTable> getDataTableMap() {
+      return _dataTableMap;
+    }
+
+    /**
+     * Returns the number of servers whose streams are finished (fully consumed, or cancelled because LIMIT is
+     * satisfied). Servers timed out or failed are not counted.
+     */
+    public int getNumServersResponded() {
+      return _numServersResponded;
+    }
+
+    /**
+     * Returns the statistics for the servers the query sent to, in the same format as the non-streaming queries.
+     */
+    public String getStats() {
+      return _stats;
+    }
+  }
+
+  private static class ServerStream {
+    final String _instanceId;
+    final ServerRoutingInstance _serverRoutingInstance;
+    final GrpcQueryClient _grpcQueryClient;
+    final Server.ServerRequest _serverRequest;
+    final Context.CancellableContext _context;
+
+    // Guarded by the StreamGatherer
+    final List<Object[]> _rows = new ArrayList<>();
+    DataSchema _dataSchema;
+    DataTable _metadataDataTable;
+    Exception _exception;
+    boolean _finished;
+
+    // Statistics of the stream, only updated by the gRPC callbacks of the stream
+    final long _startTimeMs = System.currentTimeMillis();
+    volatile long _submitTimeMs;
+    volatile long _endTimeMs;
+    volatile int _responseSize;
+    volatile int _deserializationTimeMs;
+
+    ServerStream(String instanceId, ServerRoutingInstance serverRoutingInstance, GrpcQueryClient grpcQueryClient,
+        Server.ServerRequest serverRequest, Context.CancellableContext context) {
+      _instanceId = instanceId;
+      _serverRoutingInstance = serverRoutingInstance;
+      _grpcQueryClient = grpcQueryClient;
+      _serverRequest = serverRequest;
+      _context = context;
+    }
+  }
+
+  /**
+   * Gathers the rows from all the server streams of a query until LIMIT rows are gathered.
+   */
+  private class StreamGatherer {
+    final String _rawTableName;
+    final List<ServerStream> _serverStreams;
+    final int _limit;
+    final CountDownLatch _countDownLatch;
+
+    int _numRowsGathered;
+    boolean _closed;
+
+    StreamGatherer(String rawTableName, List<ServerStream> serverStreams, int limit) {
+      _rawTableName = rawTableName;
+      _serverStreams = serverStreams;
+      _limit = limit;
+      _countDownLatch = new CountDownLatch(serverStreams.size());
+    }
+
+    /**
+     * Starts the call to the server, where the responses are handled asynchronously by the gRPC callbacks.
+     */
+    void start(ServerStream serverStream) {
+      serverStream._submitTimeMs = System.currentTimeMillis();
+      ServerStreamObserver serverStreamObserver = new ServerStreamObserver(serverStream);
+      try {
+        serverStream._context
+            .run(() -> serverStream._grpcQueryClient.submit(serverStream._serverRequest, serverStreamObserver));
+      } catch (Exception e) {
+        serverStreamObserver.onError(e);
+      }
+    }
+
+    /**
+     * Adds the rows from the server stream, returns {@code false} if no more rows are needed, in which case the stream
+     * is marked as finished.
+     */
+    synchronized boolean addRows(ServerStream serverStream, DataTable dataTable) {
+      if (_closed) {
+        return false;
+      }
+      serverStream._dataSchema = dataTable.getDataSchema();
+      int numRowsToAdd = Math.min(dataTable.getNumberOfRows(), _limit - _numRowsGathered);
+      for (int rowId = 0; rowId < numRowsToAdd; rowId++) {
+        serverStream._rows.add(SelectionOperatorUtils.extractRowFromDataTable(dataTable, rowId));
+      }
+      _numRowsGathered += numRowsToAdd;
+      if (_numRowsGathered >= _limit) {
+        // LIMIT is satisfied (possibly by the other streams), cancel all the other streams
+        for (ServerStream stream : _serverStreams) {
+          if (stream != serverStream && !stream._finished && !stream._context.isCancelled()) {
+            stream._context.cancel(null);
+            _brokerMetrics.addMeteredTableValue(_rawTableName, BrokerMeter.STREAMING_REQUESTS_CANCELLED, 1);
+          }
+        }
+        serverStream._finished = true;
+        return false;
+      }
+      return true;
+    }
+
+    synchronized void setMetadata(ServerStream serverStream, DataTable dataTable) {
+      if (!_closed) {
+        serverStream._metadataDataTable = dataTable;
+        serverStream._finished = true;
+      }
+    }
+
+    synchronized void onException(ServerStream serverStream, Exception e) {
+      if (_closed || serverStream._finished) {
+        return;
+      }
+      Throwable cancellationCause = serverStream._context.cancellationCause();
+      if (serverStream._context.isCancelled() && cancellationCause == null) {
+        // Cancelled because LIMIT is satisfied
+        serverStream._finished = true;
+        return;
+      }
+      if (cancellationCause instanceof TimeoutException) {
+        serverStream._exception = new TimeoutException("Timed out while streaming from server");
+      } else {
+        LOGGER.warn("Caught exception while streaming from server: {}", serverStream._serverRoutingInstance, e);
+        serverStream._exception = e;
+      }
+    }
+
+    /**
+     * Closes the gatherer, cancels the unfinished streams, and returns the data tables gathered.
+     */
+    synchronized StreamingQueryResponse close(boolean finished) {
+      _closed = true;
+      Map<ServerRoutingInstance, DataTable> dataTableMap = new HashMap<>();
+      int numServersResponded = 0;
+      StringBuilder stats =
+          new StringBuilder("(Server=SubmitDelayMs,ResponseDelayMs,ResponseSize,DeserializationTimeMs)");
+      for (ServerStream serverStream : _serverStreams) {
+        if (serverStream._finished) {
+          numServersResponded++;
+        }
+        stats.append(';').append(serverStream._serverRoutingInstance.getShortName()).append('=')
+            .append(getStats(serverStream));
+        if (!finished) {
+          serverStream._context.cancel(null);
+        }
+        DataTable dataTable;
+        try {
+          dataTable = serverStream._dataSchema != null ? SelectionOperatorUtils
+              .getDataTableFromRows(serverStream._rows, serverStream._dataSchema) : new DataTableImplV2();
+        } catch (Exception e) {
+          LOGGER.error("Caught exception while building data table for server: {}",
+              serverStream._serverRoutingInstance, e);
+          dataTable = new DataTableImplV2();
+          dataTable.addException(QueryException.getException(QueryException.BROKER_GATHER_ERROR, e));
+        }
+        if (serverStream._metadataDataTable != null) {
+          dataTable.getMetadata().putAll(serverStream._metadataDataTable.getMetadata());
+        }
+        if (serverStream._exception instanceof TimeoutException || (serverStream._exception == null
+            && !serverStream._finished)) {
+          dataTable.addException(QueryException.getException(QueryException.BROKER_TIMEOUT_ERROR,
+              "Timed out while streaming from server: " + serverStream._serverRoutingInstance));
+        } else if (serverStream._exception != null) {
+          dataTable.addException(QueryException.getException(QueryException.BROKER_GATHER_ERROR,
+              "Caught exception while streaming from server: " + serverStream._serverRoutingInstance + ": "
+                  + serverStream._exception));
+        }
+        dataTableMap.put(serverStream._serverRoutingInstance, dataTable);
+      }
+      return new StreamingQueryResponse(dataTableMap, numServersResponded, stats.toString());
+    }
+
+    /**
+     * Observer of the responses from a server, which requests the next response after handling the current one.
+     * <p>NOTE: gRPC invokes the callbacks of a call sequentially.
+     */
+    private class ServerStreamObserver implements ClientResponseObserver<Server.ServerRequest, Server.ServerResponse> {
+      final ServerStream _serverStream;
+      ClientCallStreamObserver<Server.ServerRequest> _requestStream;
+      boolean _done;
+
+      ServerStreamObserver(ServerStream serverStream) {
+        _serverStream = serverStream;
+      }
+
+      @Override
+      public void beforeStart(ClientCallStreamObserver<Server.ServerRequest> requestStream) {
+        // Only 1 response is requested when the call starts, request the following ones manually
+        requestStream.disableAutoInboundFlowControl();
+        _requestStream = requestStream;
+      }
+
+      @Override
+      public void onNext(Server.ServerResponse response) {
+        if (_done) {
+          return;
+        }
+        try {
+          long deserializationStartTimeMs = System.currentTimeMillis();
+          DataTable dataTable = DataTableFactory.getDataTable(response.getPayload().asReadOnlyByteBuffer());
+          _serverStream._responseSize += response.getPayload().size();
+          _serverStream._deserializationTimeMs += (int) (System.currentTimeMillis() - deserializationStartTimeMs);
+          if (Response.ResponseType.DATA.equals(response.getMetadataMap().get(Response.MetadataKeys.RESPONSE_TYPE))) {
+            if (!addRows(_serverStream, dataTable)) {
+              finish();
+              return;
+            }
+          } else {
+            setMetadata(_serverStream, dataTable);
+          }
+          _requestStream.request(1);
+        } catch (Exception e) {
+          onError(e);
+        }
+      }
+
+      @Override
+      public void onError(Throwable t) {
+        if (!_done) {
+          onException(_serverStream, t instanceof Exception ? (Exception) t : new RuntimeException(t));
+          finish();
+        }
+      }
+
+      @Override
+      public void onCompleted() {
+        if (!_done) {
+          finish();
+        }
+      }
+
+      private void finish() {
+        _done = true;
+        // Release the resources of the call
+        _serverStream._context.cancel(null);
+        _serverStream._endTimeMs = System.currentTimeMillis();
+        if (_serverLatencyTracker != null) {
+          _serverLatencyTracker
+              .recordRequestFinished(_serverStream._instanceId, _serverStream._endTimeMs - _serverStream._submitTimeMs);
+        }
+        _countDownLatch.countDown();
+      }
+    }
+
+    private String getStats(ServerStream serverStream) {
+      long submitTimeMs = serverStream._submitTimeMs;
+      long endTimeMs = serverStream._endTimeMs;
+      int submitDelayMs = submitTimeMs != 0 ? (int) (submitTimeMs - serverStream._startTimeMs) : -1;
+      int responseDelayMs = submitTimeMs != 0 && endTimeMs != 0 ? (int) (endTimeMs - submitTimeMs) : -1;
+      return String.format("%d,%d,%d,%d", submitDelayMs, responseDelayMs, serverStream._responseSize,
+          serverStream._deserializationTimeMs);
+    }
+  }
+}
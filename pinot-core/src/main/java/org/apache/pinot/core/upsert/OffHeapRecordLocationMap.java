@@ -0,0 +1,446 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pinot.core.upsert;
+
+import com.google.common.base.Preconditions;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.function.IntFunction;
+import java.util.function.UnaryOperator;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import org.apache.commons.io.FileUtils;
+import org.apache.pinot.core.realtime.impl.ThreadSafeMutableRoaringBitmap;
+import org.apache.pinot.core.segment.memory.PinotDataBuffer;
+import org.apache.pinot.spi.data.readers.PrimaryKey;
+import org.apache.pinot.spi.utils.ByteArray;
+import org.roaringbitmap.PeekableIntIterator;
+import org.roaringbitmap.buffer.MutableRoaringBitmap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Off-heap map from primary key to {@link RecordLocation} for the upsert metadata.
+ * <p>The primary keys are not stored. Instead, each primary key is hashed into a 128-bit murmur3 hash, which is used as
+ * the key of an open addressing (linear probing) hash table. Each entry of the table takes 32 bytes:
+ * <ul>
+ *   <li>8 bytes: high 64 bits of the primary key hash</li>
+ *   <li>8 bytes: low 64 bits of the primary key hash</li>
+ *   <li>4 bytes: segment id (0 for empty entry)</li>
+ *   <li>4 bytes: doc id</li>
+ *   <li>8 bytes: timestamp</li>
+ * </ul>
+ * <p>The segment id identifies a pair of segment name and valid doc ids (one per segment instance), and is resolved on
+ * heap. When a directory is provided, the table is backed by memory-mapped files under the directory, otherwise it is
+ * backed by direct memory.
+ */
+@ThreadSafe
+public class OffHeapRecordLocationMap implements Closeable {
+  private static final Logger LOGGER = LoggerFactory.getLogger(OffHeapRecordLocationMap.class);
+
+  private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+
+  private static final int ENTRY_SIZE = 32;
+  private static final int KEY_HIGH_OFFSET = 0;
+  private static final int KEY_LOW_OFFSET = 8;
+  private static final int SEGMENT_ID_OFFSET = 16;
+  private static final int DOC_ID_OFFSET = 20;
+  private static final int TIMESTAMP_OFFSET = 24;
+  private static final int EMPTY_SEGMENT_ID = 0;
+
+  private static final int DEFAULT_INITIAL_CAPACITY = 1 << 16;
+  private static final int MAX_CAPACITY = 1 << 30;
+  private static final double LOAD_FACTOR = 0.75;
+
+  // Number of valid docs to remove per lock acquisition when removing a segment
+  private static final int REMOVE_BATCH_SIZE = 1000;
+
+  private final String _name;
+  private final File _dir;
+  private final Map<Integer, SegmentEntry> _segmentIdToEntryMap = new HashMap<>();
+  private final Map<ThreadSafeMutableRoaringBitmap, Integer> _validDocIdsToSegmentIdMap = new IdentityHashMap<>();
+  private int _nextSegmentId = EMPTY_SEGMENT_ID + 1;
+  private int _numBufferFiles = 0;
+
+  private PinotDataBuffer _buffer;
+  private File _bufferFile;
+  private int _capacity;
+  private int _size;
+
+  /**
+   * @param name Name of the map, used to name the memory-mapped files
+   * @param dir Directory for the memory-mapped files, or {@code null} to use direct memory
+   */
+  public OffHeapRecordLocationMap(String name, @Nullable File dir) {
+    this(name, dir, DEFAULT_INITIAL_CAPACITY);
+  }
+
+  public OffHeapRecordLocationMap(String name, @Nullable File dir, int initialCapacity) {
+    Preconditions.checkArgument(initialCapacity > 0 && initialCapacity <= MAX_CAPACITY,
+        "Illegal initial capacity: %s", initialCapacity);
+    _name = name;
+    _dir = dir;
+    if (dir != null) {
+      try {
+        FileUtils.forceMkdir(dir);
+      } catch (IOException e) {
+        throw new RuntimeException("Failed to create directory: " + dir, e);
+      }
+    }
+    _capacity = Integer.highestOneBit(initialCapacity);
+    if (_capacity < initialCapacity) {
+      _capacity <<= 1;
+    }
+    _buffer = allocateBuffer(_capacity);
+  }
+
+  /**
+   * Computes the 128-bit hash of the given primary key, returned as {high 64 bits, low 64 bits}.
+   */
+  public static long[] hash(PrimaryKey primaryKey) {
+    Hasher hasher = HASH_FUNCTION.newHasher();
+    for (Object value : primaryKey.getValues()) {
+      if (value instanceof Integer) {
+        hasher.putInt((Integer) value);
+      } else if (value instanceof Long) {
+        hasher.putLong((Long) value);
+      } else if (value instanceof Float) {
+        hasher.putFloat((Float) value);
+      } else if (value instanceof Double) {
+        hasher.putDouble((Double) value);
+      } else if (value instanceof String) {
+        byte[] bytes = ((String) value).getBytes(StandardCharsets.UTF_8);
+        hasher.putInt(bytes.length).putBytes(bytes);
+      } else if (value instanceof ByteArray) {
+        byte[] bytes = ((ByteArray) value).getBytes();
+        hasher.putInt(bytes.length).putBytes(bytes);
+      } else if (value instanceof byte[]) {
+        byte[] bytes = (byte[]) value;
+        hasher.putInt(bytes.length).putBytes(bytes);
+      } else {
+        byte[] bytes = String.valueOf(value).getBytes(StandardCharsets.UTF_8);
+        hasher.putInt(bytes.length).putBytes(bytes);
+      }
+    }
+    ByteBuffer hashBuffer = ByteBuffer.wrap(hasher.hash().asBytes()).order(ByteOrder.LITTLE_ENDIAN);
+    return new long[]{hashBuffer.getLong(), hashBuffer.getLong()};
+  }
+
+  /**
+   * Computes the new record location for the given primary key hash. The remapping function takes the current record
+   * location (or {@code null} if the primary key does not exist) and returns the new record location, which must not be
+   * {@code null}. The map is not updated if the remapping function returns the current record location.
+   */
+  public synchronized void compute(long[] primaryKeyHash, UnaryOperator<RecordLocation> remappingFunction) {
+    long keyHigh = primaryKeyHash[0];
+    long keyLow = primaryKeyHash[1];
+    int slot = findSlot(_buffer, _capacity, keyHigh, keyLow);
+    long offset = (long) slot * ENTRY_SIZE;
+    int currentSegmentId = _buffer.getInt(offset + SEGMENT_ID_OFFSET);
+    SegmentEntry currentSegmentEntry = null;
+    RecordLocation currentRecordLocation = null;
+    if (currentSegmentId != EMPTY_SEGMENT_ID) {
+      currentSegmentEntry = _segmentIdToEntryMap.get(currentSegmentId);
+      currentRecordLocation =
+          new RecordLocation(currentSegmentEntry._segmentName, _buffer.getInt(offset + DOC_ID_OFFSET),
+              _buffer.getLong(offset + TIMESTAMP_OFFSET), currentSegmentEntry._validDocIds);
+    }
+    RecordLocation newRecordLocation = remappingFunction.apply(currentRecordLocation);
+    Preconditions.checkState(newRecordLocation != null, "Record location cannot be removed through compute()");
+    if (newRecordLocation == currentRecordLocation) {
+      return;
+    }
+    if (currentSegmentEntry != null) {
+      currentSegmentEntry._numEntries--;
+    }
+    int newSegmentId = getOrCreateSegmentId(newRecordLocation.getSegmentName(), newRecordLocation.getValidDocIds());
+    _segmentIdToEntryMap.get(newSegmentId)._numEntries++;
+    _buffer.putLong(offset + KEY_HIGH_OFFSET, keyHigh);
+    _buffer.putLong(offset + KEY_LOW_OFFSET, keyLow);
+    _buffer.putInt(offset + SEGMENT_ID_OFFSET, newSegmentId);
+    _buffer.putInt(offset + DOC_ID_OFFSET, newRecordLocation.getDocId());
+    _buffer.putLong(offset + TIMESTAMP_OFFSET, newRecordLocation.getTimestamp());
+    if (currentSegmentId == EMPTY_SEGMENT_ID && ++_size > _capacity * LOAD_FACTOR) {
+      resize();
+    }
+  }
+
+  /**
+   * Returns the record location for the given primary key hash, or {@code null} if the primary key does not exist.
+   */
+  @Nullable
+  public synchronized RecordLocation get(long[] primaryKeyHash) {
+    int slot = findSlot(_buffer, _capacity, primaryKeyHash[0], primaryKeyHash[1]);
+    long offset = (long) slot * ENTRY_SIZE;
+    int segmentId = _buffer.getInt(offset + SEGMENT_ID_OFFSET);
+    if (segmentId == EMPTY_SEGMENT_ID) {
+      return null;
+    }
+    SegmentEntry segmentEntry = _segmentIdToEntryMap.get(segmentId);
+    return new RecordLocation(segmentEntry._segmentName, _buffer.getInt(offset + DOC_ID_OFFSET),
+        _buffer.getLong(offset + TIMESTAMP_OFFSET), segmentEntry._validDocIds);
+  }
+
+  /**
+   * Removes all the record locations that point to the given valid doc ids.
+   * <p>The record locations are looked up with the primary key hashes of the valid docs, which are computed with the
+   * given function outside of the lock, and removed in batches so that the lock is not held for the whole segment. The
+   * whole map is scanned only when the function is not provided, or fails to remove all the record locations.
+   */
+  public void removeSegment(ThreadSafeMutableRoaringBitmap validDocIds,
+      @Nullable IntFunction<long[]> primaryKeyHashFunction) {
+    SegmentEntry segmentEntry;
+    synchronized (this) {
+      Integer segmentId = _validDocIdsToSegmentIdMap.get(validDocIds);
+      if (segmentId == null) {
+        return;
+      }
+      segmentEntry = _segmentIdToEntryMap.get(segmentId);
+      if (segmentEntry._numEntries == 0) {
+        releaseSegmentId(segmentEntry);
+        return;
+      }
+    }
+
+    // NOTE: The record locations that point to the segment always have their doc ids in the valid doc ids. Doc ids
+    //       are never added to the valid doc ids of a removed segment, so it is safe to take a copy here.
+    if (primaryKeyHashFunction != null) {
+      try {
+        removeValidDocs(segmentEntry, validDocIds.getMutableRoaringBitmap(), primaryKeyHashFunction);
+      } catch (Exception e) {
+        LOGGER.warn("Caught exception while looking up the primary keys of the valid docs for segment: {} in off-heap "
+            + "record location map: {}, scanning the whole map", segmentEntry._segmentName, _name, e);
+      }
+    }
+
+    synchronized (this) {
+      if (segmentEntry._numEntries > 0) {
+        if (primaryKeyHashFunction != null) {
+          LOGGER.warn("{} record locations are not found with the primary keys of the valid docs for segment: {} in "
+              + "off-heap record location map: {}, scanning the whole map", segmentEntry._numEntries,
+              segmentEntry._segmentName, _name);
+        }
+        int slot = 0;
+        while (slot < _capacity && segmentEntry._numEntries > 0) {
+          if (_buffer.getInt((long) slot * ENTRY_SIZE + SEGMENT_ID_OFFSET) == segmentEntry._segmentId) {
+            // NOTE: Do not advance the slot because another entry might be shifted into it
+            removeSlot(slot);
+            segmentEntry._numEntries--;
+          } else {
+            slot++;
+          }
+        }
+      }
+      releaseSegmentId(segmentEntry);
+    }
+  }
+
+  /**
+   * Removes the record locations that point to the given valid docs of the segment by looking up their primary key
+   * hashes.
+   */
+  private void removeValidDocs(SegmentEntry segmentEntry, MutableRoaringBitmap validDocIds,
+      IntFunction<long[]> primaryKeyHashFunction) {
+    int[] docIds = new int[REMOVE_BATCH_SIZE];
+    long[][] primaryKeyHashes = new long[REMOVE_BATCH_SIZE][];
+    PeekableIntIterator docIdIterator = validDocIds.getIntIterator();
+    while (docIdIterator.hasNext()) {
+      int numDocs = 0;
+      while (numDocs < REMOVE_BATCH_SIZE && docIdIterator.hasNext()) {
+        int docId = docIdIterator.next();
+        docIds[numDocs] = docId;
+        primaryKeyHashes[numDocs++] = primaryKeyHashFunction.apply(docId);
+      }
+      synchronized (this) {
+        for (int i = 0; i < numDocs; i++) {
+          long[] primaryKeyHash = primaryKeyHashes[i];
+          int slot = findSlot(_buffer, _capacity, primaryKeyHash[0], primaryKeyHash[1]);
+          long offset = (long) slot * ENTRY_SIZE;
+          // Only remove the record location if it still points to the valid doc of the segment
+          if (_buffer.getInt(offset + SEGMENT_ID_OFFSET) == segmentEntry._segmentId
+              && _buffer.getInt(offset + DOC_ID_OFFSET) == docIds[i]) {
+            removeSlot(slot);
+            segmentEntry._numEntries--;
+          }
+        }
+        if (segmentEntry._numEntries == 0) {
+          return;
+        }
+      }
+    }
+  }
+
+  public synchronized int size() {
+    return _size;
+  }
+
+  @Override
+  public synchronized void close()
+      throws IOException {
+    _buffer.close();
+    deleteBufferFile(_bufferFile);
+    _segmentIdToEntryMap.clear();
+    _validDocIdsToSegmentIdMap.clear();
+    _size = 0;
+  }
+
+  private int getOrCreateSegmentId(String segmentName, ThreadSafeMutableRoaringBitmap validDocIds) {
+    Integer segmentId = _validDocIdsToSegmentIdMap.get(validDocIds);
+    if (segmentId == null) {
+      segmentId = _nextSegmentId++;
+      _validDocIdsToSegmentIdMap.put(validDocIds, segmentId);
+      _segmentIdToEntryMap.put(segmentId, new SegmentEntry(segmentId, segmentName, validDocIds));
+    }
+    return segmentId;
+  }
+
+  private void releaseSegmentId(SegmentEntry segmentEntry) {
+    _validDocIdsToSegmentIdMap.remove(segmentEntry._validDocIds);
+    _segmentIdToEntryMap.remove(segmentEntry._segmentId);
+  }
+
+  /**
+   * Returns the slot holding the given key, or the first empty slot to insert the key.
+   */
+  private static int findSlot(PinotDataBuffer buffer, int capacity, long keyHigh, long keyLow) {
+    int mask = capacity - 1;
+    int slot = (int) keyLow & mask;
+    while (true) {
+      long offset = (long) slot * ENTRY_SIZE;
+      if (buffer.getInt(offset + SEGMENT_ID_OFFSET) == EMPTY_SEGMENT_ID || (
+          buffer.getLong(offset + KEY_HIGH_OFFSET) == keyHigh && buffer.getLong(offset + KEY_LOW_OFFSET) == keyLow)) {
+        return slot;
+      }
+      slot = (slot + 1) & mask;
+    }
+  }
+
+  /**
+   * Removes the entry in the given slot with backward shift deletion, so that no tombstone is required.
+   */
+  private void removeSlot(int slot) {
+    int mask = _capacity - 1;
+    int gap = slot;
+    int next = slot;
+    while (true) {
+      next = (next + 1) & mask;
+      long nextOffset = (long) next * ENTRY_SIZE;
+      if (_buffer.getInt(nextOffset + SEGMENT_ID_OFFSET) == EMPTY_SEGMENT_ID) {
+        break;
+      }
+      int home = (int) _buffer.getLong(nextOffset + KEY_LOW_OFFSET) & mask;
+      // The entry can be moved into the gap only if its home slot is not cyclically within (gap, next]
+      boolean canMove = gap <= next ? (home <= gap || home > next) : (home <= gap && home > next);
+      if (canMove) {
+        _buffer.copyTo(nextOffset, _buffer, (long) gap * ENTRY_SIZE, ENTRY_SIZE);
+        gap = next;
+      }
+    }
+    _buffer.putInt((long) gap * ENTRY_SIZE + SEGMENT_ID_OFFSET, EMPTY_SEGMENT_ID);
+    _size--;
+  }
+
+  private void resize() {
+    Preconditions.checkState(_capacity < MAX_CAPACITY, "Cannot resize the off-heap record location map: %s", _name);
+    int newCapacity = _capacity << 1;
+    File oldBufferFile = _bufferFile;
+    PinotDataBuffer oldBuffer = _buffer;
+    PinotDataBuffer newBuffer = allocateBuffer(newCapacity);
+    for (int slot = 0; slot < _capacity; slot++) {
+      long offset = (long) slot * ENTRY_SIZE;
+      if (oldBuffer.getInt(offset + SEGMENT_ID_OFFSET) != EMPTY_SEGMENT_ID) {
+        int newSlot = findSlot(newBuffer, newCapacity, oldBuffer.getLong(offset + KEY_HIGH_OFFSET),
+            oldBuffer.getLong(offset + KEY_LOW_OFFSET));
+        oldBuffer.copyTo(offset, newBuffer, (long) newSlot * ENTRY_SIZE, ENTRY_SIZE);
+      }
+    }
+    LOGGER.info("Resized off-heap record location map: {} from {} to {} entries", _name, _capacity, newCapacity);
+    _buffer = newBuffer;
+    _capacity = newCapacity;
+    try {
+      oldBuffer.close();
+    } catch (IOException e) {
+      LOGGER.error("Failed to close the old buffer for off-heap record location map: {}", _name, e);
+    }
+    deleteBufferFile(oldBufferFile);
+  }
+
+  /**
+   * Allocates a buffer for the given capacity with all the entries set to empty. Also updates the buffer file.
+   */
+  private PinotDataBuffer allocateBuffer(int capacity) {
+    long size = (long) capacity * ENTRY_SIZE;
+    String description = "Upsert record location map: " + _name;
+    PinotDataBuffer buffer;
+    if (_dir != null) {
+      File file = new File(_dir, _name + "." + _numBufferFiles++);
+      try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+        randomAccessFile.setLength(size);
+      } catch (IOException e) {
+        throw new RuntimeException("Failed to create file: " + file, e);
+      }
+      try {
+        buffer = PinotDataBuffer.mapFile(file, false, 0, size, PinotDataBuffer.NATIVE_ORDER, description);
+      } catch (IOException e) {
+        FileUtils.deleteQuietly(file);
+        throw new RuntimeException("Failed to map file: " + file, e);
+      }
+      _bufferFile = file;
+    } else {
+      buffer = PinotDataBuffer.allocateDirect(size, PinotDataBuffer.NATIVE_ORDER, description);
+    }
+    // NOTE: The contents of the allocated buffer are not defined
+    for (int slot = 0; slot < capacity; slot++) {
+      buffer.putInt((long) slot * ENTRY_SIZE + SEGMENT_ID_OFFSET, EMPTY_SEGMENT_ID);
+    }
+    return buffer;
+  }
+
+  private static void deleteBufferFile(@Nullable File bufferFile) {
+    if (bufferFile != null && !FileUtils.deleteQuietly(bufferFile)) {
+      LOGGER.warn("Failed to delete file: {}", bufferFile);
+    }
+  }
+
+  private static class SegmentEntry {
+    final int _segmentId;
+    final String _segmentName;
+    final ThreadSafeMutableRoaringBitmap _validDocIds;
+    // Number of record locations that point to the segment, guarded by the map lock
+    int _numEntries;
+
+    SegmentEntry(int segmentId, String segmentName, ThreadSafeMutableRoaringBitmap validDocIds) {
+      _segmentId = segmentId;
+      _segmentName = segmentName;
+      _validDocIds = validDocIds;
+    }
+  }
+}
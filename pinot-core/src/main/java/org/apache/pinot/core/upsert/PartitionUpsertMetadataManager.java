@@ -19,8 +19,13 @@
 package org.apache.pinot.core.upsert;
 
 import com.google.common.annotations.VisibleForTesting;
+import java.io.Closeable;
+import java.io.IOException;
 import java.util.Iterator;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntFunction;
+import java.util.function.UnaryOperator;
+import javax.annotation.Nullable;
 import javax.annotation.concurrent.ThreadSafe;
 import org.apache.pinot.common.metrics.ServerGauge;
 import org.apache.pinot.common.metrics.ServerMetrics;
@@ -52,25 +57,42 @@ import org.slf4j.LoggerFactory;
  *     updates applied to the new segment's valid doc ids won't be reflected to the replaced segment's valid doc ids.
  *   </li>
  * </ul>
+ * <p>The record locations are kept on heap keyed by the primary key by default, or in an
+ * {@link OffHeapRecordLocationMap} keyed by the primary key hash when it is provided.
  */
 @ThreadSafe
-public class PartitionUpsertMetadataManager {
+public class PartitionUpsertMetadataManager implements Closeable {
   private static final Logger LOGGER = LoggerFactory.getLogger(PartitionUpsertMetadataManager.class);
 
   private final String _tableNameWithType;
   private final int _partitionId;
   private final ServerMetrics _serverMetrics;
 
+  private final OffHeapRecordLocationMap _offHeapRecordLocationMap;
+
   public PartitionUpsertMetadataManager(String tableNameWithType, int partitionId, ServerMetrics serverMetrics) {
+    this(tableNameWithType, partitionId, serverMetrics, null);
+  }
+
+  public PartitionUpsertMetadataManager(String tableNameWithType, int partitionId, ServerMetrics serverMetrics,
+      @Nullable OffHeapRecordLocationMap offHeapRecordLocationMap) {
     _tableNameWithType = tableNameWithType;
     _partitionId = partitionId;
     _serverMetrics = serverMetrics;
+    _offHeapRecordLocationMap = offHeapRecordLocationMap;
   }
 
-  // TODO(upset): consider an off-heap KV store to persist this index to improve the recovery speed.
   @VisibleForTesting
   final ConcurrentHashMap<PrimaryKey, RecordLocation> _primaryKeyToRecordLocationMap = new ConcurrentHashMap<>();
 
+  /**
+   * Returns {@code true} if the record locations are kept off-heap keyed by the primary key hash, in which case the
+   * {@link RecordInfo} can be constructed with the primary key hash.
+   */
+  public boolean isOffHeap() {
+    return _offHeapRecordLocationMap != null;
+  }
+
   /**
    * Initializes the upsert metadata for the given immutable segment, returns the valid doc ids for the segment.
    */
@@ -80,7 +102,7 @@ public class PartitionUpsertMetadataManager {
     ThreadSafeMutableRoaringBitmap validDocIds = new ThreadSafeMutableRoaringBitmap();
     while (recordInfoIterator.hasNext()) {
       RecordInfo recordInfo = recordInfoIterator.next();
-      _primaryKeyToRecordLocationMap.compute(recordInfo._primaryKey, (primaryKey, currentRecordLocation) -> {
+      computeRecordLocation(recordInfo, currentRecordLocation -> {
         if (currentRecordLocation != null) {
           // Existing primary key
 
@@ -132,7 +154,7 @@ public class PartitionUpsertMetadataManager {
     }
     // Update metrics
     _serverMetrics.setValueOfPartitionGauge(_tableNameWithType, _partitionId, ServerGauge.UPSERT_PRIMARY_KEYS_COUNT,
-        _primaryKeyToRecordLocationMap.size());
+        getNumPrimaryKeys());
     return validDocIds;
   }
 
@@ -140,7 +162,7 @@ public class PartitionUpsertMetadataManager {
    * Updates the upsert metadata for a new consumed record in the given consuming segment.
    */
   public void updateRecord(String segmentName, RecordInfo recordInfo, ThreadSafeMutableRoaringBitmap validDocIds) {
-    _primaryKeyToRecordLocationMap.compute(recordInfo._primaryKey, (primaryKey, currentRecordLocation) -> {
+    computeRecordLocation(recordInfo, currentRecordLocation -> {
       if (currentRecordLocation != null) {
         // Existing primary key
 
@@ -161,7 +183,7 @@ public class PartitionUpsertMetadataManager {
     });
     // Update metrics
     _serverMetrics.setValueOfPartitionGauge(_tableNameWithType, _partitionId, ServerGauge.UPSERT_PRIMARY_KEYS_COUNT,
-        _primaryKeyToRecordLocationMap.size());
+        getNumPrimaryKeys());
   }
 
   /**
@@ -169,9 +191,23 @@ public class PartitionUpsertMetadataManager {
    * consuming segment because it should be replaced by the committed segment.
    */
   public void removeSegment(String segmentName, ThreadSafeMutableRoaringBitmap validDocIds) {
+    removeSegment(segmentName, validDocIds, null);
+  }
+
+  /**
+   * Removes the upsert metadata for the given immutable segment. When the record locations are kept off-heap, the
+   * primary key reader (from doc id to primary key of the segment) is used to look up the record locations of the valid
+   * docs instead of scanning the whole map.
+   */
+  public void removeSegment(String segmentName, ThreadSafeMutableRoaringBitmap validDocIds,
+      @Nullable IntFunction<PrimaryKey> primaryKeyReader) {
     LOGGER.info("Removing upsert metadata for segment: {}", segmentName);
 
-    if (!validDocIds.getMutableRoaringBitmap().isEmpty()) {
+    if (_offHeapRecordLocationMap != null) {
+      // NOTE: Always remove from the off-heap map to release the segment id for the valid doc ids.
+      _offHeapRecordLocationMap.removeSegment(validDocIds, primaryKeyReader != null
+          ? docId -> OffHeapRecordLocationMap.hash(primaryKeyReader.apply(docId)) : null);
+    } else if (!validDocIds.getMutableRoaringBitmap().isEmpty()) {
       // Remove all the record locations that point to the valid doc ids of the removed segment.
       _primaryKeyToRecordLocationMap.forEach((primaryKey, recordLocation) -> {
         if (recordLocation.getValidDocIds() == validDocIds) {
@@ -182,18 +218,67 @@ public class PartitionUpsertMetadataManager {
     }
     // Update metrics
     _serverMetrics.setValueOfPartitionGauge(_tableNameWithType, _partitionId, ServerGauge.UPSERT_PRIMARY_KEYS_COUNT,
-        _primaryKeyToRecordLocationMap.size());
+        getNumPrimaryKeys());
+  }
+
+  public int getNumPrimaryKeys() {
+    return _offHeapRecordLocationMap != null ? _offHeapRecordLocationMap.size() : _primaryKeyToRecordLocationMap.size();
+  }
+
+  @Override
+  public void close()
+      throws IOException {
+    if (_offHeapRecordLocationMap != null) {
+      _offHeapRecordLocationMap.close();
+    }
+  }
+
+  private void computeRecordLocation(RecordInfo recordInfo, UnaryOperator<RecordLocation> remappingFunction) {
+    if (_offHeapRecordLocationMap != null) {
+      _offHeapRecordLocationMap.compute(recordInfo.getPrimaryKeyHash(), remappingFunction);
+    } else {
+      assert recordInfo._primaryKey != null;
+      _primaryKeyToRecordLocationMap.compute(recordInfo._primaryKey,
+          (primaryKey, currentRecordLocation) -> remappingFunction.apply(currentRecordLocation));
+    }
   }
 
   public static final class RecordInfo {
     private final PrimaryKey _primaryKey;
+    private long[] _primaryKeyHash;
     private final int _docId;
     private final long _timestamp;
 
     public RecordInfo(PrimaryKey primaryKey, int docId, long timestamp) {
       _primaryKey = primaryKey;
+      _primaryKeyHash = null;
+      _docId = docId;
+      _timestamp = timestamp;
+    }
+
+    /**
+     * Constructs the record info with the primary key hash (see {@link OffHeapRecordLocationMap#hash(PrimaryKey)}),
+     * which can only be used when the record locations are kept off-heap.
+     */
+    public RecordInfo(long[] primaryKeyHash, int docId, long timestamp) {
+      _primaryKey = null;
+      _primaryKeyHash = primaryKeyHash;
       _docId = docId;
       _timestamp = timestamp;
     }
+
+    /**
+     * Returns the primary key hash, computes it from the primary key if it is not provided.
+     */
+    public long[] getPrimaryKeyHash() {
+      if (_primaryKeyHash == null) {
+        _primaryKeyHash = OffHeapRecordLocationMap.hash(_primaryKey);
+      }
+      return _primaryKeyHash;
+    }
+
+    public long getTimestamp() {
+      return _timestamp;
+    }
   }
 }
@@ -0,0 +1,196 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pinot.core.upsert;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import javax.annotation.Nullable;
+import org.apache.commons.io.FileUtils;
+import org.apache.pinot.core.segment.memory.PinotDataBuffer;
+import org.apache.pinot.core.upsert.PartitionUpsertMetadataManager.RecordInfo;
+import org.roaringbitmap.IntIterator;
+import org.roaringbitmap.buffer.ImmutableRoaringBitmap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * The primary key snapshot of an immutable upsert segment, which is persisted inside the segment directory so that the
+ * upsert metadata can be rebuilt without reading the primary key and time columns of the segment.
+ * <p>The snapshot is only used with the {@link OffHeapRecordLocationMap} because it contains the primary key hashes
+ * instead of the primary keys. The file is big-endian with the following layout:
+ * <ul>
+ *   <li>Header: version (int), segment CRC (long), number of docs (int)</li>
+ *   <li>For each doc: primary key hash high 64 bits (long), primary key hash low 64 bits (long), timestamp (long)</li>
+ * </ul>
+ * <p>The segment CRC is used to detect a stale snapshot (e.g. segment replaced with the same name).
+ */
+public class PrimaryKeySnapshot implements Closeable {
+  private static final Logger LOGGER = LoggerFactory.getLogger(PrimaryKeySnapshot.class);
+
+  public static final String FILE_NAME = "upsert.primarykey.snapshot";
+  private static final String TEMP_FILE_NAME = FILE_NAME + ".tmp";
+  private static final int VERSION = 1;
+  private static final int HEADER_SIZE = 16;
+  private static final int RECORD_SIZE = 24;
+
+  private final PinotDataBuffer _dataBuffer;
+  private final int _numDocs;
+
+  private PrimaryKeySnapshot(PinotDataBuffer dataBuffer, int numDocs) {
+    _dataBuffer = dataBuffer;
+    _numDocs = numDocs;
+  }
+
+  /**
+   * Loads the primary key snapshot from the given segment directory. Returns {@code null} (and deletes the snapshot
+   * file) if the snapshot does not exist, or does not match the given segment CRC and number of docs.
+   */
+  @Nullable
+  public static PrimaryKeySnapshot load(File indexDir, long crc, int numDocs) {
+    File snapshotFile = new File(indexDir, FILE_NAME);
+    if (!snapshotFile.exists()) {
+      return null;
+    }
+    if (snapshotFile.length() == HEADER_SIZE + (long) numDocs * RECORD_SIZE) {
+      PinotDataBuffer dataBuffer = null;
+      try {
+        dataBuffer = PinotDataBuffer.mapReadOnlyBigEndianFile(snapshotFile);
+        if (dataBuffer.getInt(0) == VERSION && dataBuffer.getLong(4) == crc && dataBuffer.getInt(12) == numDocs) {
+          return new PrimaryKeySnapshot(dataBuffer, numDocs);
+        }
+      } catch (Exception e) {
+        LOGGER.warn("Caught exception while loading primary key snapshot: {}", snapshotFile, e);
+      }
+      if (dataBuffer != null) {
+        try {
+          dataBuffer.close();
+        } catch (IOException e) {
+          LOGGER.warn("Failed to close primary key snapshot: {}", snapshotFile, e);
+        }
+      }
+    }
+    LOGGER.info("Deleting stale primary key snapshot: {}", snapshotFile);
+    FileUtils.deleteQuietly(snapshotFile);
+    return null;
+  }
+
+  /**
+   * Returns an iterator of the record infos (primary key hash, doc id and timestamp) in the snapshot.
+   */
+  public Iterator<RecordInfo> iterator() {
+    return new Iterator<RecordInfo>() {
+      private int _docId = 0;
+
+      @Override
+      public boolean hasNext() {
+        return _docId < _numDocs;
+      }
+
+      @Override
+      public RecordInfo next() {
+        if (_docId >= _numDocs) {
+          throw new NoSuchElementException();
+        }
+        return getRecordInfo(_docId++);
+      }
+    };
+  }
+
+  /**
+   * Returns an iterator of the record infos for the given doc ids only.
+   */
+  public Iterator<RecordInfo> iterator(ImmutableRoaringBitmap docIds) {
+    IntIterator docIdIterator = docIds.getIntIterator();
+    return new Iterator<RecordInfo>() {
+      @Override
+      public boolean hasNext() {
+        return docIdIterator.hasNext();
+      }
+
+      @Override
+      public RecordInfo next() {
+        return getRecordInfo(docIdIterator.next());
+      }
+    };
+  }
+
+  private RecordInfo getRecordInfo(int docId) {
+    long offset = HEADER_SIZE + (long) docId * RECORD_SIZE;
+    return new RecordInfo(new long[]{_dataBuffer.getLong(offset), _dataBuffer.getLong(offset + 8)}, docId,
+        _dataBuffer.getLong(offset + 16));
+  }
+
+  @Override
+  public void close()
+      throws IOException {
+    _dataBuffer.close();
+  }
+
+  /**
+   * Writer for the primary key snapshot. The records must be added in doc id order. The snapshot file only becomes
+   * visible after all the records are added and the writer is closed.
+   */
+  public static class Writer implements Closeable {
+    private final File _indexDir;
+    private final File _tempFile;
+    private final DataOutputStream _outputStream;
+    private final int _numDocs;
+    private int _numDocsAdded = 0;
+
+    public Writer(File indexDir, long crc, int numDocs)
+        throws IOException {
+      _indexDir = indexDir;
+      _tempFile = new File(indexDir, TEMP_FILE_NAME);
+      FileUtils.deleteQuietly(_tempFile);
+      _outputStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(_tempFile)));
+      _numDocs = numDocs;
+      _outputStream.writeInt(VERSION);
+      _outputStream.writeLong(crc);
+      _outputStream.writeInt(numDocs);
+    }
+
+    public void add(long[] primaryKeyHash, long timestamp)
+        throws IOException {
+      _outputStream.writeLong(primaryKeyHash[0]);
+      _outputStream.writeLong(primaryKeyHash[1]);
+      _outputStream.writeLong(timestamp);
+      _numDocsAdded++;
+    }
+
+    @Override
+    public void close()
+        throws IOException {
+      _outputStream.close();
+      if (_numDocsAdded == _numDocs) {
+        File snapshotFile = new File(_indexDir, FILE_NAME);
+        FileUtils.deleteQuietly(snapshotFile);
+        FileUtils.moveFile(_tempFile, snapshotFile);
+      } else {
+        FileUtils.deleteQuietly(_tempFile);
+      }
+    }
+  }
+}
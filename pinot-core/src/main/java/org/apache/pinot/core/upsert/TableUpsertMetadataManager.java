@@ -18,10 +18,15 @@
  */
 package org.apache.pinot.core.upsert;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import javax.annotation.Nullable;
 import javax.annotation.concurrent.ThreadSafe;
 import org.apache.pinot.common.metrics.ServerMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 
 /**
@@ -29,17 +34,48 @@ import org.apache.pinot.common.metrics.ServerMetrics;
  */
 @ThreadSafe
 public class TableUpsertMetadataManager {
+  private static final Logger LOGGER = LoggerFactory.getLogger(TableUpsertMetadataManager.class);
+
   private final Map<Integer, PartitionUpsertMetadataManager> _partitionMetadataManagerMap = new ConcurrentHashMap<>();
   private final String _tableNameWithType;
   private final ServerMetrics _serverMetrics;
+  private final boolean _offHeap;
+  private final File _offHeapDir;
 
   public TableUpsertMetadataManager(String tableNameWithType, ServerMetrics serverMetrics) {
+    this(tableNameWithType, serverMetrics, false, null);
+  }
+
+  /**
+   * @param offHeap Whether to keep the record locations off-heap
+   * @param offHeapDir Directory for the memory-mapped files of the off-heap record locations, or {@code null} to use
+   *                   direct memory
+   */
+  public TableUpsertMetadataManager(String tableNameWithType, ServerMetrics serverMetrics, boolean offHeap,
+      @Nullable File offHeapDir) {
     _tableNameWithType = tableNameWithType;
     _serverMetrics = serverMetrics;
+    _offHeap = offHeap;
+    _offHeapDir = offHeapDir;
   }
 
   public PartitionUpsertMetadataManager getOrCreatePartitionManager(int partitionId) {
     return _partitionMetadataManagerMap.computeIfAbsent(partitionId,
-        k -> new PartitionUpsertMetadataManager(_tableNameWithType, k, _serverMetrics));
+        k -> new PartitionUpsertMetadataManager(_tableNameWithType, k, _serverMetrics,
+            _offHeap ? new OffHeapRecordLocationMap(_tableNameWithType + "_" + k, _offHeapDir) : null));
+  }
+
+  /**
+   * Releases the resources held by the partition managers. Should be called after all the segments are removed.
+   */
+  public void close() {
+    for (PartitionUpsertMetadataManager partitionUpsertMetadataManager : _partitionMetadataManagerMap.values()) {
+      try {
+        partitionUpsertMetadataManager.close();
+      } catch (IOException e) {
+        LOGGER.error("Failed to close upsert metadata manager for table: {}", _tableNameWithType, e);
+      }
+    }
+    _partitionMetadataManagerMap.clear();
   }
 }
@@ -0,0 +1,108 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pinot.core.upsert;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import javax.annotation.Nullable;
+import org.apache.commons.io.FileUtils;
+import org.roaringbitmap.buffer.ImmutableRoaringBitmap;
+import org.roaringbitmap.buffer.MutableRoaringBitmap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * The valid doc ids snapshot of an immutable upsert segment, which is persisted inside the segment directory when the
+ * server shuts down gracefully. When the segment is loaded again, only the valid docs in the snapshot need to be added
+ * to the upsert metadata, and the invalid docs are skipped.
+ * <p>The snapshot is consumed (deleted) when it is loaded, so that a stale snapshot will never be used after a server
+ * crash. The file is big-endian with the following layout:
+ * <ul>
+ *   <li>Header: version (int), segment CRC (long)</li>
+ *   <li>Serialized valid doc ids bitmap</li>
+ * </ul>
+ */
+public class ValidDocIdsSnapshot {
+  private static final Logger LOGGER = LoggerFactory.getLogger(ValidDocIdsSnapshot.class);
+
+  public static final String FILE_NAME = "upsert.validdocids.snapshot";
+  private static final String TEMP_FILE_NAME = FILE_NAME + ".tmp";
+  private static final int VERSION = 1;
+
+  private ValidDocIdsSnapshot() {
+  }
+
+  /**
+   * Persists the valid doc ids snapshot into the given segment directory.
+   */
+  public static void persist(File indexDir, long crc, ImmutableRoaringBitmap validDocIds)
+      throws IOException {
+    File tempFile = new File(indexDir, TEMP_FILE_NAME);
+    try (DataOutputStream outputStream = new DataOutputStream(
+        new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+      outputStream.writeInt(VERSION);
+      outputStream.writeLong(crc);
+      validDocIds.serialize(outputStream);
+    } catch (IOException e) {
+      FileUtils.deleteQuietly(tempFile);
+      throw e;
+    }
+    File snapshotFile = new File(indexDir, FILE_NAME);
+    FileUtils.deleteQuietly(snapshotFile);
+    FileUtils.moveFile(tempFile, snapshotFile);
+  }
+
+  /**
+   * Loads and deletes the valid doc ids snapshot from the given segment directory. Returns {@code null} if the snapshot
+   * does not exist, or does not match the given segment CRC.
+   */
+  @Nullable
+  public static MutableRoaringBitmap loadAndDelete(File indexDir, long crc) {
+    File snapshotFile = new File(indexDir, FILE_NAME);
+    if (!snapshotFile.exists()) {
+      return null;
+    }
+    MutableRoaringBitmap validDocIds = null;
+    try (DataInputStream inputStream = new DataInputStream(
+        new BufferedInputStream(new FileInputStream(snapshotFile)))) {
+      if (inputStream.readInt() == VERSION && inputStream.readLong() == crc) {
+        validDocIds = new MutableRoaringBitmap();
+        validDocIds.deserialize(inputStream);
+      } else {
+        LOGGER.info("Ignoring stale valid doc ids snapshot: {}", snapshotFile);
+      }
+    } catch (Exception e) {
+      LOGGER.warn("Caught exception while loading valid doc ids snapshot: {}", snapshotFile, e);
+      validDocIds = null;
+    }
+    if (!FileUtils.deleteQuietly(snapshotFile)) {
+      // NOTE: Do not use the snapshot if it cannot be deleted, or it might be used again after it becomes stale.
+      LOGGER.warn("Failed to delete valid doc ids snapshot: {}", snapshotFile);
+      return null;
+    }
+    return validDocIds;
+  }
+}
@@ -60,6 +60,38 @@ public class DataTableSerDeTest {
     Assert.assertEquals(actual, expected);
   }
 
+  @Test
+  public void testCompression()
+      throws IOException {
+    DataSchema dataSchema = new DataSchema(new String[]{"INT", "STRING"},
+        new DataSchema.ColumnDataType[]{DataSchema.ColumnDataType.INT, DataSchema.ColumnDataType.STRING});
+    DataTableBuilder dataTableBuilder = new DataTableBuilder(dataSchema);
+    int[] ints = new int[NUM_ROWS];
+    String[] strings = new String[NUM_ROWS];
+    for (int rowId = 0; rowId < NUM_ROWS; rowId++) {
+      ints[rowId] = RANDOM.nextInt();
+      strings[rowId] = RandomStringUtils.random(RANDOM.nextInt(20));
+      dataTableBuilder.startRow();
+      dataTableBuilder.setColumn(0, ints[rowId]);
+      dataTableBuilder.setColumn(1, strings[rowId]);
+      dataTableBuilder.finishRow();
+    }
+    byte[] bytes = dataTableBuilder.build().toBytes();
+
+    for (DataTableCompressor.CompressionType compressionType : DataTableCompressor.CompressionType.values()) {
+      byte[] compressedBytes = DataTableCompressor.compress(bytes, compressionType);
+      DataTable newDataTable = DataTableFactory.getDataTable(compressedBytes);
+      Assert.assertEquals(newDataTable.getDataSchema(), dataSchema, ERROR_MESSAGE);
+      Assert.assertEquals(newDataTable.getNumberOfRows(), NUM_ROWS, ERROR_MESSAGE);
+      for (int rowId = 0; rowId < NUM_ROWS; rowId++) {
+        Assert.assertEquals(newDataTable.getInt(rowId, 0), ints[rowId], ERROR_MESSAGE);
+        Assert.assertEquals(newDataTable.getString(rowId, 1), strings[rowId], ERROR_MESSAGE);
+      }
+    }
+    Assert.assertNull(DataTableCompressor.CompressionType.fromName("none"));
+    Assert.assertEquals(DataTableCompressor.CompressionType.fromName("lz4"), DataTableCompressor.CompressionType.LZ4);
+  }
+
   @Test
   public void testEmptyStrings()
       throws IOException {
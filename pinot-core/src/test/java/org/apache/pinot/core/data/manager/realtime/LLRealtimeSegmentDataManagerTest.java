@@ -27,7 +27,10 @@ import java.lang.reflect.Method;
 import java.util.LinkedList;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 import org.apache.commons.io.FileUtils;
 import org.apache.pinot.common.metadata.instance.InstanceZKMetadata;
@@ -48,6 +51,8 @@ import org.apache.pinot.spi.data.Schema;
 import org.apache.pinot.spi.env.PinotConfiguration;
 import org.apache.pinot.spi.stream.LongMsgOffset;
 import org.apache.pinot.spi.stream.LongMsgOffsetFactory;
+import org.apache.pinot.spi.stream.MessageBatch;
+import org.apache.pinot.spi.stream.PartitionLevelConsumer;
 import org.apache.pinot.spi.stream.PermanentConsumerException;
 import org.apache.pinot.spi.stream.StreamConfigProperties;
 import org.apache.pinot.spi.stream.StreamPartitionMsgOffset;
@@ -151,13 +156,18 @@ public class LLRealtimeSegmentDataManagerTest {
 
   private FakeLLRealtimeSegmentDataManager createFakeSegmentManager()
       throws Exception {
+    return createFakeSegmentManager(_segmentName, createTableDataManager());
+  }
+
+  private FakeLLRealtimeSegmentDataManager createFakeSegmentManager(LLCSegmentName llcSegmentName,
+      RealtimeTableDataManager tableDataManager)
+      throws Exception {
     LLCRealtimeSegmentZKMetadata segmentZKMetadata = createZkMetadata();
+    segmentZKMetadata.setSegmentName(llcSegmentName.getSegmentName());
     TableConfig tableConfig = createTableConfig();
     InstanceZKMetadata instanceZKMetadata = new InstanceZKMetadata();
-    RealtimeTableDataManager tableDataManager = createTableDataManager();
     String resourceDir = _segmentDir;
-    LLCSegmentName llcSegmentName = new LLCSegmentName(_segmentNameStr);
-    _partitionIdToSemaphoreMap.putIfAbsent(_partitionId, new Semaphore(1));
+    _partitionIdToSemaphoreMap.putIfAbsent(llcSegmentName.getPartitionId(), new Semaphore(1));
     Schema schema = Schema.fromString(makeSchema());
     ServerMetrics serverMetrics = new ServerMetrics(new MetricsRegistry());
     FakeLLRealtimeSegmentDataManager segmentDataManager =
@@ -765,6 +775,152 @@ public class LLRealtimeSegmentDataManagerTest {
     Assert.assertEquals(secondSegmentDataManager.get().getPartitionConsumerSemaphore().availablePermits(), 1);
   }
 
+  @Test
+  public void testConsumeOnSharedExecutor()
+      throws Exception {
+    // Consume 3 partitions on 2 shared consumer threads
+    int numPartitions = 3;
+    ScheduledExecutorService sharedConsumerExecutor = Executors.newScheduledThreadPool(2);
+    try {
+      RealtimeTableDataManager tableDataManager = createTableDataManager();
+      when(tableDataManager.getSharedConsumerExecutor()).thenReturn(sharedConsumerExecutor);
+      FakeLLRealtimeSegmentDataManager[] segmentDataManagers = new FakeLLRealtimeSegmentDataManager[numPartitions];
+      CountingPartitionLevelConsumer[] partitionLevelConsumers = new CountingPartitionLevelConsumer[numPartitions];
+      for (int i = 0; i < numPartitions; i++) {
+        LLCSegmentName llcSegmentName = new LLCSegmentName(_tableName, i, _sequenceId, _segTimeMs);
+        FakeLLRealtimeSegmentDataManager segmentDataManager =
+            createFakeSegmentManager(llcSegmentName, tableDataManager);
+        segmentDataManager._useRealStartAndStop = true;
+        segmentDataManager.setConsumeEndTime(Long.MAX_VALUE);
+        CountingPartitionLevelConsumer partitionLevelConsumer = new CountingPartitionLevelConsumer();
+        Field field = LLRealtimeSegmentDataManager.class.getDeclaredField("_partitionLevelConsumer");
+        field.setAccessible(true);
+        field.set(segmentDataManager, partitionLevelConsumer);
+        segmentDataManagers[i] = segmentDataManager;
+        partitionLevelConsumers[i] = partitionLevelConsumer;
+      }
+      for (FakeLLRealtimeSegmentDataManager segmentDataManager : segmentDataManagers) {
+        segmentDataManager.start();
+      }
+
+      // All the partitions should make progress on the shared consumer threads
+      TestUtils.waitForCondition(aVoid -> {
+        for (CountingPartitionLevelConsumer partitionLevelConsumer : partitionLevelConsumers) {
+          if (partitionLevelConsumer._numFetches.get() < 10) {
+            return false;
+          }
+        }
+        return true;
+      }, 10_000L, "Failed to consume all the partitions on the shared consumer threads");
+
+      // Stopping the consumption should not start a consumer thread, and should stop fetching from the stream
+      Field consumerThreadField = LLRealtimeSegmentDataManager.class.getDeclaredField("_consumerThread");
+      consumerThreadField.setAccessible(true);
+      for (int i = 0; i < numPartitions; i++) {
+        FakeLLRealtimeSegmentDataManager segmentDataManager = segmentDataManagers[i];
+        long startTimeMs = System.currentTimeMillis();
+        segmentDataManager.stop();
+        Assert.assertTrue(System.currentTimeMillis() - startTimeMs < 10_000L);
+        Assert.assertNull(consumerThreadField.get(segmentDataManager));
+        int numFetches = partitionLevelConsumers[i]._numFetches.get();
+        Thread.sleep(200L);
+        Assert.assertEquals(partitionLevelConsumers[i]._numFetches.get(), numFetches);
+        segmentDataManager.destroy();
+      }
+    } finally {
+      sharedConsumerExecutor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testHandOffFromSharedExecutor()
+      throws Exception {
+    ScheduledExecutorService sharedConsumerExecutor = Executors.newScheduledThreadPool(1);
+    try {
+      RealtimeTableDataManager tableDataManager = createTableDataManager();
+      when(tableDataManager.getSharedConsumerExecutor()).thenReturn(sharedConsumerExecutor);
+      FakeLLRealtimeSegmentDataManager segmentDataManager =
+          createFakeSegmentManager(_segmentName, tableDataManager);
+      segmentDataManager._useRealStartAndStop = true;
+      // End criteria is reached on the shared consumer executor right away
+      replaceRealtimeSegment(segmentDataManager, 1);
+      segmentDataManager.setConsumeEndTime(0L);
+      final LongMsgOffset endOffset = new LongMsgOffset(_startOffsetValue);
+      segmentDataManager._responses.add(new SegmentCompletionProtocol.Response(
+          new SegmentCompletionProtocol.Response.Params().withStreamPartitionMsgOffset(endOffset.toString())
+              .withStatus(SegmentCompletionProtocol.ControllerResponseStatus.DISCARD)));
+      segmentDataManager.start();
+
+      // The consumer thread should not consume again after the hand-off (consuming with no offset left would fail the
+      // fake segment manager), but post the segment consumed message directly
+      TestUtils.waitForCondition(aVoid -> {
+        try {
+          return segmentDataManager._state.get(segmentDataManager) == LLRealtimeSegmentDataManager.State.DISCARDED;
+        } catch (IllegalAccessException e) {
+          throw new RuntimeException(e);
+        }
+      }, 10_000L, "Failed to hand off to the consumer thread");
+      Assert.assertTrue(segmentDataManager._responses.isEmpty());
+      Assert.assertFalse(segmentDataManager._postConsumeStoppedCalled);
+      segmentDataManager.stop();
+      segmentDataManager.destroy();
+    } finally {
+      sharedConsumerExecutor.shutdownNow();
+    }
+  }
+
+  /**
+   * Partition level consumer that always returns a batch of messages starting from the requested offset, and counts the
+   * number of fetches.
+   */
+  private static class CountingPartitionLevelConsumer implements PartitionLevelConsumer {
+    private static final int NUM_MESSAGES_PER_BATCH = 10;
+
+    final AtomicInteger _numFetches = new AtomicInteger();
+
+    @Override
+    public MessageBatch fetchMessages(long startOffset, long endOffset, int timeoutMillis) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public MessageBatch fetchMessages(StreamPartitionMsgOffset startOffset, StreamPartitionMsgOffset endOffset,
+        int timeoutMillis) {
+      _numFetches.getAndIncrement();
+      long startOffsetValue = ((LongMsgOffset) startOffset).getOffset();
+      return new MessageBatch<byte[]>() {
+        @Override
+        public int getMessageCount() {
+          return NUM_MESSAGES_PER_BATCH;
+        }
+
+        @Override
+        public byte[] getMessageAtIndex(int index) {
+          return new byte[0];
+        }
+
+        @Override
+        public int getMessageOffsetAtIndex(int index) {
+          return 0;
+        }
+
+        @Override
+        public int getMessageLengthAtIndex(int index) {
+          return 0;
+        }
+
+        @Override
+        public long getNextStreamMessageOffsetAtIndex(int index) {
+          return startOffsetValue + index + 1;
+        }
+      };
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+
   public static class FakeLLRealtimeSegmentDataManager extends LLRealtimeSegmentDataManager {
 
     public Field _state;
@@ -781,6 +937,7 @@ public class LLRealtimeSegmentDataManagerTest {
     private boolean _downloadAndReplaceCalled = false;
     public boolean _throwExceptionFromConsume = false;
     public boolean _postConsumeStoppedCalled = false;
+    public boolean _useRealStartAndStop = false;
     public Map<Integer, Semaphore> _semaphoreMap;
 
     private static InstanceDataManagerConfig makeInstanceDataManagerConfig() {
@@ -851,7 +1008,9 @@ public class LLRealtimeSegmentDataManagerTest {
 
     @Override
     protected void start() {
-      // Do nothing.
+      if (_useRealStartAndStop) {
+        super.start();
+      }
     }
 
     @Override
@@ -930,7 +1089,15 @@ public class LLRealtimeSegmentDataManagerTest {
 
     @Override
     public void stop() {
-      _timeNow += _stopWaitTimeMs;
+      if (_useRealStartAndStop) {
+        try {
+          super.stop();
+        } catch (InterruptedException e) {
+          throw new RuntimeException(e);
+        }
+      } else {
+        _timeNow += _stopWaitTimeMs;
+      }
     }
 
     public void setCurrentOffset(long offset) {
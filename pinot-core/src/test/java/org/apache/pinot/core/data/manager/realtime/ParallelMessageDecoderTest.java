@@ -0,0 +1,216 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pinot.core.data.manager.realtime;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.apache.pinot.core.data.manager.realtime.ParallelMessageDecoder.TransformedMessage;
+import org.apache.pinot.core.data.recordtransformer.RecordTransformer;
+import org.apache.pinot.spi.data.readers.GenericRow;
+import org.apache.pinot.spi.stream.MessageBatch;
+import org.apache.pinot.spi.stream.StreamMessageDecoder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+
+public class ParallelMessageDecoderTest {
+  private static final Logger LOGGER = LoggerFactory.getLogger(ParallelMessageDecoderTest.class);
+  private static final String COLUMN_NAME = "value";
+  private static final int NUM_DECODERS = 4;
+
+  private final ExecutorService _decodeExecutor = Executors.newFixedThreadPool(NUM_DECODERS);
+
+  @AfterClass
+  public void tearDown() {
+    _decodeExecutor.shutdownNow();
+  }
+
+  @Test
+  public void testShouldDecodeInParallel() {
+    int minMessageCount = ParallelMessageDecoder.MIN_MESSAGE_COUNT_FOR_PARALLEL_DECODE;
+    assertFalse(ParallelMessageDecoder.shouldDecodeInParallel(new TestMessageBatch(minMessageCount - 1)));
+    assertTrue(ParallelMessageDecoder.shouldDecodeInParallel(new TestMessageBatch(minMessageCount)));
+  }
+
+  @Test
+  public void testDecodeInOrder() {
+    TestMessageDecoder[] messageDecoders = new TestMessageDecoder[NUM_DECODERS];
+    RecordTransformer[] recordTransformers = new RecordTransformer[NUM_DECODERS];
+    for (int i = 0; i < NUM_DECODERS; i++) {
+      messageDecoders[i] = new TestMessageDecoder();
+      recordTransformers[i] = new TestRecordTransformer();
+    }
+    ParallelMessageDecoder parallelMessageDecoder =
+        new ParallelMessageDecoder(_decodeExecutor, messageDecoders, recordTransformers, LOGGER);
+
+    // Decode multiple message batches with different sizes to reuse the decoders across batches
+    for (int messageCount : Arrays.asList(16, 17, 100, 1000)) {
+      TestMessageBatch messageBatch = new TestMessageBatch(messageCount);
+      assertTrue(ParallelMessageDecoder.shouldDecodeInParallel(messageBatch));
+
+      // Decode the messages one by one as the expected result
+      TestMessageDecoder expectedMessageDecoder = new TestMessageDecoder();
+      RecordTransformer expectedRecordTransformer = new TestRecordTransformer();
+      List<TransformedMessage> expectedMessages = new ArrayList<>(messageCount);
+      for (int i = 0; i < messageCount; i++) {
+        TransformedMessage transformedMessage = new TransformedMessage();
+        ParallelMessageDecoder
+            .decodeAndTransform(expectedMessageDecoder, expectedRecordTransformer, messageBatch, i, new GenericRow(),
+                transformedMessage, LOGGER);
+        expectedMessages.add(transformedMessage);
+      }
+
+      parallelMessageDecoder.start(messageBatch);
+      try {
+        for (int i = 0; i < messageCount; i++) {
+          TransformedMessage expectedMessage = expectedMessages.get(i);
+          TransformedMessage actualMessage = parallelMessageDecoder.getTransformedMessage(i);
+          assertEquals(actualMessage._numRowsDropped, expectedMessage._numRowsDropped);
+          assertEquals(actualMessage._numRowsErrored, expectedMessage._numRowsErrored);
+          assertEquals(actualMessage._rows, expectedMessage._rows);
+        }
+      } finally {
+        parallelMessageDecoder.finish();
+      }
+    }
+
+    for (TestMessageDecoder messageDecoder : messageDecoders) {
+      assertFalse(messageDecoder._usedConcurrently);
+    }
+  }
+
+  /**
+   * Message batch where each message is the index of the message encoded as an int.
+   */
+  private static class TestMessageBatch implements MessageBatch<byte[]> {
+    final int _messageCount;
+
+    TestMessageBatch(int messageCount) {
+      _messageCount = messageCount;
+    }
+
+    @Override
+    public int getMessageCount() {
+      return _messageCount;
+    }
+
+    @Override
+    public byte[] getMessageAtIndex(int index) {
+      return ByteBuffer.allocate(Integer.BYTES).putInt(index).array();
+    }
+
+    @Override
+    public int getMessageOffsetAtIndex(int index) {
+      return 0;
+    }
+
+    @Override
+    public int getMessageLengthAtIndex(int index) {
+      return Integer.BYTES;
+    }
+
+    @Override
+    public long getNextStreamMessageOffsetAtIndex(int index) {
+      return index + 1;
+    }
+  }
+
+  /**
+   * Decodes the message into a row, drops every 10th message, and decodes every 7th message into 2 rows. Sleeps
+   * randomly to shuffle the finish order of the decode tasks, and records whether it is used by multiple threads at the
+   * same time.
+   */
+  private static class TestMessageDecoder implements StreamMessageDecoder<byte[]> {
+    final AtomicBoolean _inUse = new AtomicBoolean();
+    volatile boolean _usedConcurrently;
+
+    @Override
+    public void init(Map<String, String> props, Set<String> fieldsToRead, String topicName) {
+    }
+
+    @Override
+    public GenericRow decode(byte[] payload, GenericRow destination) {
+      return decode(payload, 0, payload.length, destination);
+    }
+
+    @Override
+    public GenericRow decode(byte[] payload, int offset, int length, GenericRow destination) {
+      if (!_inUse.compareAndSet(false, true)) {
+        _usedConcurrently = true;
+      }
+      try {
+        if (ThreadLocalRandom.current().nextInt(10) == 0) {
+          Thread.sleep(1);
+        }
+        int value = ByteBuffer.wrap(payload, offset, length).getInt();
+        if (value % 10 == 0) {
+          return null;
+        }
+        if (value % 7 == 0) {
+          List<GenericRow> rows = new ArrayList<>(2);
+          for (int i = 0; i < 2; i++) {
+            GenericRow row = new GenericRow();
+            row.putValue(COLUMN_NAME, value * 10 + i);
+            rows.add(row);
+          }
+          destination.putValue(GenericRow.MULTIPLE_RECORDS_KEY, rows);
+        } else {
+          destination.putValue(COLUMN_NAME, value);
+        }
+        return destination;
+      } catch (InterruptedException e) {
+        throw new RuntimeException(e);
+      } finally {
+        _inUse.set(false);
+      }
+    }
+  }
+
+  /**
+   * Fails on every 11th value, and skips every 13th value.
+   */
+  private static class TestRecordTransformer implements RecordTransformer {
+
+    @Override
+    public GenericRow transform(GenericRow record) {
+      int value = (int) record.getValue(COLUMN_NAME);
+      if (value % 11 == 0) {
+        throw new IllegalStateException("Failed to transform value: " + value);
+      }
+      if (value % 13 == 0) {
+        return null;
+      }
+      return record;
+    }
+  }
+}
@@ -0,0 +1,79 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pinot.core.data.manager.realtime;
+
+import org.apache.pinot.spi.stream.LongMsgOffset;
+import org.apache.pinot.spi.stream.MessageBatch;
+import org.testng.annotations.Test;
+
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+
+public class PrefetchedMessagesTest {
+
+  @Test
+  public void testPrefetchedMessages() {
+    // Each message has 10 bytes
+    PrefetchedMessages prefetchedMessages = new PrefetchedMessages("segment", new LongMsgOffset(100), 150);
+    assertTrue(prefetchedMessages.isEmpty());
+    assertEquals(prefetchedMessages.getNextOffset().compareTo(new LongMsgOffset(100)), 0);
+
+    MessageBatch messageBatch1 = getMessageBatch(100, 10);
+    MessageBatch messageBatch2 = getMessageBatch(110, 10);
+    MessageBatch messageBatch3 = getMessageBatch(120, 10);
+    prefetchedMessages.add(messageBatch1);
+    assertFalse(prefetchedMessages.isFull());
+    prefetchedMessages.add(messageBatch2);
+    assertTrue(prefetchedMessages.isFull());
+    prefetchedMessages.add(messageBatch3);
+    assertEquals(prefetchedMessages.getNumMessages(), 30);
+    assertEquals(prefetchedMessages.getNumBytes(), 300);
+    assertEquals(prefetchedMessages.getNextOffset().compareTo(new LongMsgOffset(130)), 0);
+
+    // Poll in order
+    assertSame(prefetchedMessages.poll(new LongMsgOffset(100)), messageBatch1);
+    assertSame(prefetchedMessages.poll(new LongMsgOffset(110)), messageBatch2);
+    assertEquals(prefetchedMessages.getNumMessages(), 10);
+    assertEquals(prefetchedMessages.getNumBytes(), 100);
+    assertFalse(prefetchedMessages.isFull());
+
+    // Poll with mismatching offset should drop all the remaining messages
+    assertNull(prefetchedMessages.poll(new LongMsgOffset(115)));
+    assertTrue(prefetchedMessages.isEmpty());
+    assertEquals(prefetchedMessages.getNumMessages(), 0);
+    assertEquals(prefetchedMessages.getNumBytes(), 0);
+    assertNull(prefetchedMessages.poll(new LongMsgOffset(120)));
+  }
+
+  private static MessageBatch getMessageBatch(long startOffset, int numMessages) {
+    MessageBatch messageBatch = mock(MessageBatch.class);
+    when(messageBatch.getMessageCount()).thenReturn(numMessages);
+    when(messageBatch.getMessageLengthAtIndex(anyInt())).thenReturn(10);
+    when(messageBatch.getNextStreamParitionMsgOffsetAtIndex(anyInt()))
+        .thenAnswer(invocation -> new LongMsgOffset(startOffset + invocation.<Integer>getArgument(0) + 1));
+    return messageBatch;
+  }
+}
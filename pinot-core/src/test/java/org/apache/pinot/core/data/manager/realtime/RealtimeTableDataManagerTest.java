@@ -0,0 +1,200 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pinot.core.data.manager.realtime;
+
+import com.yammer.metrics.core.MetricsRegistry;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import org.apache.commons.io.FileUtils;
+import org.apache.helix.AccessOption;
+import org.apache.helix.HelixManager;
+import org.apache.helix.ZNRecord;
+import org.apache.helix.store.zk.ZkHelixPropertyStore;
+import org.apache.pinot.common.metadata.ZKMetadataProvider;
+import org.apache.pinot.common.metrics.ServerMetrics;
+import org.apache.pinot.common.segment.ReadMode;
+import org.apache.pinot.common.utils.LLCSegmentName;
+import org.apache.pinot.common.utils.SchemaUtils;
+import org.apache.pinot.common.utils.config.TableConfigUtils;
+import org.apache.pinot.core.data.manager.config.TableDataManagerConfig;
+import org.apache.pinot.core.data.readers.GenericRowRecordReader;
+import org.apache.pinot.core.indexsegment.generator.SegmentGeneratorConfig;
+import org.apache.pinot.core.indexsegment.immutable.ImmutableSegment;
+import org.apache.pinot.core.indexsegment.immutable.ImmutableSegmentLoader;
+import org.apache.pinot.core.segment.creator.impl.SegmentIndexCreationDriverImpl;
+import org.apache.pinot.core.segment.index.readers.ValidDocIndexReader;
+import org.apache.pinot.core.upsert.ValidDocIdsSnapshot;
+import org.apache.pinot.spi.config.table.TableConfig;
+import org.apache.pinot.spi.config.table.TableType;
+import org.apache.pinot.spi.config.table.UpsertConfig;
+import org.apache.pinot.spi.data.FieldSpec.DataType;
+import org.apache.pinot.spi.data.Schema;
+import org.apache.pinot.spi.data.readers.GenericRow;
+import org.apache.pinot.spi.utils.builder.TableConfigBuilder;
+import org.apache.pinot.spi.utils.builder.TableNameBuilder;
+import org.roaringbitmap.buffer.MutableRoaringBitmap;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertTrue;
+
+
+public class RealtimeTableDataManagerTest {
+  private static final File TEMP_DIR = new File(FileUtils.getTempDirectory(), "RealtimeTableDataManagerTest");
+  private static final String RAW_TABLE_NAME = "testTable";
+  private static final String REALTIME_TABLE_NAME = TableNameBuilder.REALTIME.tableNameWithType(RAW_TABLE_NAME);
+  private static final String PRIMARY_KEY_COLUMN = "pk";
+  private static final String TIME_COLUMN = "ts";
+  private static final Schema SCHEMA = new Schema.SchemaBuilder().setSchemaName(RAW_TABLE_NAME)
+      .addSingleValueDimension(PRIMARY_KEY_COLUMN, DataType.INT)
+      .addDateTime(TIME_COLUMN, DataType.LONG, "1:MILLISECONDS:EPOCH", "1:MILLISECONDS")
+      .setPrimaryKeyColumns(Collections.singletonList(PRIMARY_KEY_COLUMN)).build();
+  private static final String SEGMENT_NAME =
+      new LLCSegmentName(RAW_TABLE_NAME, 0, 0, System.currentTimeMillis()).getSegmentName();
+
+  @BeforeClass
+  public void setUp()
+      throws Exception {
+    FileUtils.deleteDirectory(TEMP_DIR);
+  }
+
+  @AfterClass
+  public void tearDown()
+      throws Exception {
+    FileUtils.deleteDirectory(TEMP_DIR);
+  }
+
+  @Test
+  public void testUpsertWithValidDocIdsSnapshot()
+      throws Exception {
+    testUpsertWithValidDocIdsSnapshot(false);
+    testUpsertWithValidDocIdsSnapshot(true);
+  }
+
+  private void testUpsertWithValidDocIdsSnapshot(boolean offHeap)
+      throws Exception {
+    File testDir = new File(TEMP_DIR, offHeap ? "offHeap" : "onHeap");
+    File indexDir = buildSegment(testDir);
+    File snapshotFile = new File(indexDir, ValidDocIdsSnapshot.FILE_NAME);
+
+    // Without the snapshot, all the docs should be replayed, where doc 0 is replaced by doc 2 with the same primary key
+    RealtimeTableDataManager tableDataManager = createTableDataManager(testDir, offHeap);
+    ImmutableSegment segment = ImmutableSegmentLoader.load(indexDir, ReadMode.mmap);
+    long crc = Long.parseLong(segment.getSegmentMetadata().getCrc());
+    tableDataManager.addSegment(segment);
+    assertValidDocIds(segment, 1, 2);
+
+    // The snapshot should be persisted on shutdown
+    tableDataManager.shutDown();
+    assertTrue(snapshotFile.exists());
+
+    // With the snapshot, only the valid docs in the snapshot should be added without replaying all the docs. Use a
+    // snapshot different from the replay result to verify that the replay is skipped.
+    ValidDocIdsSnapshot.persist(indexDir, crc, MutableRoaringBitmap.bitmapOf(0, 1));
+    tableDataManager = createTableDataManager(testDir, offHeap);
+    segment = ImmutableSegmentLoader.load(indexDir, ReadMode.mmap);
+    tableDataManager.addSegment(segment);
+    assertValidDocIds(segment, 0, 1);
+    // The snapshot should be deleted after being loaded
+    assertFalse(snapshotFile.exists());
+    tableDataManager.shutDown();
+
+    // Stale snapshot (mismatching CRC) should be ignored and deleted, and all the docs should be replayed
+    ValidDocIdsSnapshot.persist(indexDir, crc + 1, MutableRoaringBitmap.bitmapOf(0, 1));
+    tableDataManager = createTableDataManager(testDir, offHeap);
+    segment = ImmutableSegmentLoader.load(indexDir, ReadMode.mmap);
+    tableDataManager.addSegment(segment);
+    assertValidDocIds(segment, 1, 2);
+    assertFalse(snapshotFile.exists());
+    tableDataManager.shutDown();
+
+    // Missing snapshot should fall back to replaying all the docs
+    FileUtils.forceDelete(snapshotFile);
+    tableDataManager = createTableDataManager(testDir, offHeap);
+    segment = ImmutableSegmentLoader.load(indexDir, ReadMode.mmap);
+    tableDataManager.addSegment(segment);
+    assertValidDocIds(segment, 1, 2);
+    tableDataManager.shutDown();
+  }
+
+  private static File buildSegment(File testDir)
+      throws Exception {
+    List<GenericRow> records = new ArrayList<>();
+    records.add(getRecord(0, 100L));
+    records.add(getRecord(1, 100L));
+    records.add(getRecord(0, 120L));
+    SegmentGeneratorConfig segmentGeneratorConfig = new SegmentGeneratorConfig(getTableConfig(false), SCHEMA);
+    segmentGeneratorConfig.setTableName(RAW_TABLE_NAME);
+    segmentGeneratorConfig.setSegmentName(SEGMENT_NAME);
+    segmentGeneratorConfig.setOutDir(testDir.getPath());
+    SegmentIndexCreationDriverImpl driver = new SegmentIndexCreationDriverImpl();
+    driver.init(segmentGeneratorConfig, new GenericRowRecordReader(records));
+    driver.build();
+    return new File(testDir, SEGMENT_NAME);
+  }
+
+  private static GenericRow getRecord(int primaryKey, long timestamp) {
+    GenericRow record = new GenericRow();
+    record.putValue(PRIMARY_KEY_COLUMN, primaryKey);
+    record.putValue(TIME_COLUMN, timestamp);
+    return record;
+  }
+
+  private static TableConfig getTableConfig(boolean offHeap) {
+    return new TableConfigBuilder(TableType.REALTIME).setTableName(RAW_TABLE_NAME).setTimeColumnName(TIME_COLUMN)
+        .setUpsertConfig(new UpsertConfig(UpsertConfig.Mode.FULL, offHeap, true)).build();
+  }
+
+  @SuppressWarnings("unchecked")
+  private static RealtimeTableDataManager createTableDataManager(File testDir, boolean offHeap)
+      throws Exception {
+    ZkHelixPropertyStore<ZNRecord> propertyStore = mock(ZkHelixPropertyStore.class);
+    ZNRecord tableConfigRecord = TableConfigUtils.toZNRecord(getTableConfig(offHeap));
+    when(propertyStore.get(eq(ZKMetadataProvider.constructPropertyStorePathForResourceConfig(REALTIME_TABLE_NAME)),
+        any(), eq(AccessOption.PERSISTENT))).thenReturn(tableConfigRecord);
+    ZNRecord schemaRecord = SchemaUtils.toZNRecord(SCHEMA);
+    when(propertyStore.get(eq(ZKMetadataProvider.constructPropertyStorePathForSchema(RAW_TABLE_NAME)), any(),
+        eq(AccessOption.PERSISTENT))).thenReturn(schemaRecord);
+    TableDataManagerConfig config = mock(TableDataManagerConfig.class);
+    when(config.getTableName()).thenReturn(REALTIME_TABLE_NAME);
+    when(config.getDataDir()).thenReturn(new File(testDir, REALTIME_TABLE_NAME).getAbsolutePath());
+    RealtimeTableDataManager tableDataManager = new RealtimeTableDataManager(new Semaphore(1));
+    tableDataManager.init(config, "testInstance", propertyStore, new ServerMetrics(new MetricsRegistry()),
+        mock(HelixManager.class));
+    tableDataManager.start();
+    return tableDataManager;
+  }
+
+  private static void assertValidDocIds(ImmutableSegment segment, int... expectedValidDocIds) {
+    ValidDocIndexReader validDocIndex = segment.getValidDocIndex();
+    assertNotNull(validDocIndex);
+    assertEquals(validDocIndex.getValidDocBitmap().toArray(), expectedValidDocIds);
+  }
+}
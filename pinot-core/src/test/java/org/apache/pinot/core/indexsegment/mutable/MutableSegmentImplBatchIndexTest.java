@@ -0,0 +1,237 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pinot.core.indexsegment.mutable;
+
+import java.io.File;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.apache.pinot.core.common.DataSource;
+import org.apache.pinot.core.segment.index.readers.Dictionary;
+import org.apache.pinot.core.segment.index.readers.InvertedIndexReader;
+import org.apache.pinot.segments.v1.creator.SegmentTestUtils;
+import org.apache.pinot.spi.data.FieldSpec;
+import org.apache.pinot.spi.data.Schema;
+import org.apache.pinot.spi.data.readers.FileFormat;
+import org.apache.pinot.spi.data.readers.GenericRow;
+import org.apache.pinot.spi.data.readers.RecordReader;
+import org.apache.pinot.spi.data.readers.RecordReaderFactory;
+import org.apache.pinot.spi.stream.RowMetadata;
+import org.apache.pinot.spi.stream.StreamMessageMetadata;
+import org.roaringbitmap.buffer.ImmutableRoaringBitmap;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.fail;
+
+
+/**
+ * Tests that indexing the records in batches generates the same segment as indexing the records one by one.
+ */
+@SuppressWarnings("rawtypes")
+public class MutableSegmentImplBatchIndexTest {
+  private static final String AVRO_FILE = "data/test_data-mv.avro";
+  private static final int BATCH_SIZE = 37;
+
+  private Schema _schema;
+  private final List<GenericRow> _rows = new ArrayList<>();
+  private MutableSegmentImpl _rowIndexedSegment;
+  private MutableSegmentImpl _batchIndexedSegment;
+  private long _lastIngestionTimeMs;
+
+  @BeforeClass
+  public void setUp()
+      throws Exception {
+    URL resourceUrl = MutableSegmentImplBatchIndexTest.class.getClassLoader().getResource(AVRO_FILE);
+    assertNotNull(resourceUrl);
+    File avroFile = new File(resourceUrl.getFile());
+
+    _schema = SegmentTestUtils.extractSchemaFromAvroWithoutTime(avroFile);
+    Set<String> invertedIndexColumns = new HashSet<>(_schema.getDimensionNames());
+    _rowIndexedSegment = MutableSegmentImplTestUtils
+        .createMutableSegmentImpl(_schema, Collections.emptySet(), Collections.emptySet(), invertedIndexColumns, false);
+    _batchIndexedSegment = MutableSegmentImplTestUtils
+        .createMutableSegmentImpl(_schema, Collections.emptySet(), Collections.emptySet(), invertedIndexColumns, false);
+
+    try (RecordReader recordReader = RecordReaderFactory
+        .getRecordReader(FileFormat.AVRO, avroFile, _schema.getColumnNames(), null)) {
+      List<GenericRow> rows = new ArrayList<>(BATCH_SIZE);
+      List<RowMetadata> rowMetadataList = new ArrayList<>(BATCH_SIZE);
+      while (recordReader.hasNext()) {
+        GenericRow row = recordReader.next();
+        _lastIngestionTimeMs = System.currentTimeMillis();
+        StreamMessageMetadata rowMetadata = new StreamMessageMetadata(_lastIngestionTimeMs);
+        _rowIndexedSegment.index(row, rowMetadata);
+        _rows.add(row);
+        rows.add(row);
+        rowMetadataList.add(rowMetadata);
+        if (rows.size() == BATCH_SIZE) {
+          _batchIndexedSegment.index(rows, rowMetadataList);
+          rows.clear();
+          rowMetadataList.clear();
+        }
+      }
+      _batchIndexedSegment.index(rows, rowMetadataList);
+    }
+  }
+
+  @Test
+  public void testBatchIndex() {
+    int numDocs = _rowIndexedSegment.getNumDocsIndexed();
+    assertEquals(_batchIndexedSegment.getNumDocsIndexed(), numDocs);
+    assertEquals(_batchIndexedSegment.getSegmentMetadata().getLatestIngestionTimestamp(), _lastIngestionTimeMs);
+
+    GenericRow expectedRow = new GenericRow();
+    GenericRow actualRow = new GenericRow();
+    for (int docId = 0; docId < numDocs; docId++) {
+      _rowIndexedSegment.getRecord(docId, expectedRow);
+      _batchIndexedSegment.getRecord(docId, actualRow);
+      for (String column : _schema.getPhysicalColumnNames()) {
+        Object expectedValue = expectedRow.getValue(column);
+        Object actualValue = actualRow.getValue(column);
+        if (expectedValue instanceof Object[]) {
+          assertEquals((Object[]) actualValue, (Object[]) expectedValue);
+        } else {
+          assertEquals(actualValue, expectedValue);
+        }
+      }
+    }
+
+    for (FieldSpec fieldSpec : _schema.getAllFieldSpecs()) {
+      if (fieldSpec.getFieldType() != FieldSpec.FieldType.DIMENSION) {
+        continue;
+      }
+      String column = fieldSpec.getName();
+      assertEquals(_batchIndexedSegment.getDataSource(column).getDataSourceMetadata().getMinValue(),
+          _rowIndexedSegment.getDataSource(column).getDataSourceMetadata().getMinValue());
+      assertEquals(_batchIndexedSegment.getDataSource(column).getDataSourceMetadata().getMaxValue(),
+          _rowIndexedSegment.getDataSource(column).getDataSourceMetadata().getMaxValue());
+      InvertedIndexReader expectedInvertedIndex = _rowIndexedSegment.getDataSource(column).getInvertedIndex();
+      InvertedIndexReader actualInvertedIndex = _batchIndexedSegment.getDataSource(column).getInvertedIndex();
+      int cardinality = _rowIndexedSegment.getDataSource(column).getDictionary().length();
+      for (int dictId = 0; dictId < cardinality; dictId++) {
+        assertEquals(((ImmutableRoaringBitmap) actualInvertedIndex.getDocIds(dictId)).toArray(),
+            ((ImmutableRoaringBitmap) expectedInvertedIndex.getDocIds(dictId)).toArray());
+      }
+    }
+  }
+
+  @Test
+  public void testBatchIndexWithBadRecord() {
+    // Put a record with a value that cannot be indexed into the middle of the batch, with the other values copied from
+    // the first record so that the dictionaries are not affected by the bad record
+    String badColumn = null;
+    for (FieldSpec fieldSpec : _schema.getDimensionFieldSpecs()) {
+      if (fieldSpec.isSingleValueField()) {
+        badColumn = fieldSpec.getName();
+        break;
+      }
+    }
+    assertNotNull(badColumn);
+    GenericRow badRow = new GenericRow();
+    badRow.init(_rows.get(0));
+    badRow.putValue(badColumn, new Object());
+    List<GenericRow> goodRows = _rows.subList(0, Math.min(_rows.size(), 2 * BATCH_SIZE));
+    int badRowId = goodRows.size() / 2;
+    List<GenericRow> batch = new ArrayList<>(goodRows);
+    batch.add(badRowId, badRow);
+
+    Set<String> invertedIndexColumns = new HashSet<>(_schema.getDimensionNames());
+    MutableSegmentImpl expectedSegment = MutableSegmentImplTestUtils
+        .createMutableSegmentImpl(_schema, Collections.emptySet(), Collections.emptySet(), invertedIndexColumns, false);
+    MutableSegmentImpl actualSegment = MutableSegmentImplTestUtils
+        .createMutableSegmentImpl(_schema, Collections.emptySet(), Collections.emptySet(), invertedIndexColumns, false);
+    try {
+      for (GenericRow row : goodRows) {
+        expectedSegment.index(row, null);
+      }
+
+      // Only the records before the bad record should be indexed
+      try {
+        actualSegment.index(batch, null);
+        fail("Indexing the bad record should fail");
+      } catch (RuntimeException e) {
+        // Expected
+      }
+      assertEquals(actualSegment.getNumDocsIndexed(), badRowId);
+
+      // Index the records after the bad record
+      actualSegment.index(batch.subList(badRowId + 1, batch.size()), null);
+
+      int numDocs = expectedSegment.getNumDocsIndexed();
+      assertEquals(actualSegment.getNumDocsIndexed(), numDocs);
+      GenericRow expectedRow = new GenericRow();
+      GenericRow actualRow = new GenericRow();
+      for (int docId = 0; docId < numDocs; docId++) {
+        expectedSegment.getRecord(docId, expectedRow);
+        actualSegment.getRecord(docId, actualRow);
+        for (String column : _schema.getPhysicalColumnNames()) {
+          Object expectedValue = expectedRow.getValue(column);
+          Object actualValue = actualRow.getValue(column);
+          if (expectedValue instanceof Object[]) {
+            assertEquals((Object[]) actualValue, (Object[]) expectedValue);
+          } else {
+            assertEquals(actualValue, expectedValue);
+          }
+        }
+      }
+
+      for (String column : _schema.getPhysicalColumnNames()) {
+        DataSource expectedDataSource = expectedSegment.getDataSource(column);
+        DataSource actualDataSource = actualSegment.getDataSource(column);
+        assertEquals(actualDataSource.getDataSourceMetadata().getNumValues(),
+            expectedDataSource.getDataSourceMetadata().getNumValues());
+        assertEquals(actualDataSource.getDataSourceMetadata().getMaxNumValuesPerMVEntry(),
+            expectedDataSource.getDataSourceMetadata().getMaxNumValuesPerMVEntry());
+        assertEquals(actualDataSource.getDataSourceMetadata().getMinValue(),
+            expectedDataSource.getDataSourceMetadata().getMinValue());
+        assertEquals(actualDataSource.getDataSourceMetadata().getMaxValue(),
+            expectedDataSource.getDataSourceMetadata().getMaxValue());
+        InvertedIndexReader expectedInvertedIndex = expectedDataSource.getInvertedIndex();
+        if (expectedInvertedIndex == null) {
+          continue;
+        }
+        InvertedIndexReader actualInvertedIndex = actualDataSource.getInvertedIndex();
+        Dictionary expectedDictionary = expectedDataSource.getDictionary();
+        Dictionary actualDictionary = actualDataSource.getDictionary();
+        int cardinality = expectedDictionary.length();
+        for (int dictId = 0; dictId < cardinality; dictId++) {
+          int actualDictId = actualDictionary.indexOf(expectedDictionary.getStringValue(dictId));
+          assertEquals(((ImmutableRoaringBitmap) actualInvertedIndex.getDocIds(actualDictId)).toArray(),
+              ((ImmutableRoaringBitmap) expectedInvertedIndex.getDocIds(dictId)).toArray());
+        }
+      }
+    } finally {
+      expectedSegment.destroy();
+      actualSegment.destroy();
+    }
+  }
+
+  @AfterClass
+  public void tearDown() {
+    _rowIndexedSegment.destroy();
+    _batchIndexedSegment.destroy();
+  }
+}
@@ -0,0 +1,166 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pinot.core.query.reduce;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.pinot.common.request.BrokerRequest;
+import org.apache.pinot.common.response.broker.BrokerResponseNative;
+import org.apache.pinot.common.utils.CommonConstants.Broker;
+import org.apache.pinot.common.utils.CommonConstants.Broker.Request;
+import org.apache.pinot.common.utils.DataSchema;
+import org.apache.pinot.common.utils.DataSchema.ColumnDataType;
+import org.apache.pinot.common.utils.DataTable;
+import org.apache.pinot.core.common.datatable.DataTableBuilder;
+import org.apache.pinot.core.transport.ServerRoutingInstance;
+import org.apache.pinot.pql.parsers.Pql2Compiler;
+import org.apache.pinot.spi.config.table.TableType;
+import org.apache.pinot.spi.env.PinotConfiguration;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+
+
+public class IncrementalReduceTest {
+  private static final int NUM_DATA_TABLES = 4;
+  private static final long TIMEOUT_MS = 10_000L;
+
+  private BrokerReduceService _brokerReduceService;
+
+  @BeforeClass
+  public void setUp() {
+    Map<String, Object> properties = new HashMap<>();
+    properties.put(Broker.CONFIG_OF_ENABLE_INCREMENTAL_REDUCE, true);
+    _brokerReduceService = new BrokerReduceService(new PinotConfiguration(properties));
+  }
+
+  @Test
+  public void testIncrementalReduceDisabled() {
+    BrokerReduceService brokerReduceService = new BrokerReduceService(new PinotConfiguration());
+    try {
+      assertNull(brokerReduceService
+          .getIncrementalReduceHandler(new Pql2Compiler().compileToBrokerRequest("SELECT COUNT(*) FROM testTable")));
+    } finally {
+      brokerReduceService.shutDown();
+    }
+  }
+
+  @Test
+  public void testAggregation()
+      throws Exception {
+    BrokerRequest brokerRequest = new Pql2Compiler().compileToBrokerRequest("SELECT COUNT(*) FROM testTable");
+    DataSchema dataSchema = new DataSchema(new String[]{"count_star"}, new ColumnDataType[]{ColumnDataType.LONG});
+    DataTable[] dataTables = new DataTable[NUM_DATA_TABLES];
+    for (int i = 0; i < NUM_DATA_TABLES; i++) {
+      DataTableBuilder dataTableBuilder = new DataTableBuilder(dataSchema);
+      dataTableBuilder.startRow();
+      dataTableBuilder.setColumn(0, (long) i + 1);
+      dataTableBuilder.finishRow();
+      dataTables[i] = dataTableBuilder.build();
+    }
+
+    BrokerResponseNative expectedResponse = _brokerReduceService
+        .reduceOnDataTable(brokerRequest, getDataTableMap(dataTables), TIMEOUT_MS, null);
+    BrokerResponseNative actualResponse = reduceIncrementally(brokerRequest, dataTables);
+    assertEquals(actualResponse.getAggregationResults().get(0).getValue(), "10");
+    assertEquals(actualResponse.getAggregationResults().get(0).getValue(),
+        expectedResponse.getAggregationResults().get(0).getValue());
+  }
+
+  @Test
+  public void testGroupBy()
+      throws Exception {
+    BrokerRequest brokerRequest =
+        new Pql2Compiler().compileToBrokerRequest("SELECT COUNT(*) FROM testTable GROUP BY d TOP 10");
+    Map<String, String> queryOptions = new HashMap<>();
+    queryOptions.put(Request.QueryOptionKey.GROUP_BY_MODE, Request.SQL);
+    queryOptions.put(Request.QueryOptionKey.RESPONSE_FORMAT, Request.SQL);
+    brokerRequest.setQueryOptions(queryOptions);
+    DataSchema dataSchema = new DataSchema(new String[]{"d", "count_star"},
+        new ColumnDataType[]{ColumnDataType.STRING, ColumnDataType.LONG});
+    DataTable[] dataTables = new DataTable[NUM_DATA_TABLES];
+    for (int i = 0; i < NUM_DATA_TABLES; i++) {
+      DataTableBuilder dataTableBuilder = new DataTableBuilder(dataSchema);
+      dataTableBuilder.startRow();
+      dataTableBuilder.setColumn(0, "a");
+      dataTableBuilder.setColumn(1, (long) i);
+      dataTableBuilder.finishRow();
+      dataTableBuilder.startRow();
+      dataTableBuilder.setColumn(0, "b");
+      dataTableBuilder.setColumn(1, 1L);
+      dataTableBuilder.finishRow();
+      dataTables[i] = dataTableBuilder.build();
+    }
+
+    BrokerResponseNative expectedResponse = _brokerReduceService
+        .reduceOnDataTable(brokerRequest, getDataTableMap(dataTables), TIMEOUT_MS, null);
+    BrokerResponseNative actualResponse = reduceIncrementally(brokerRequest, dataTables);
+    // NOTE: The order of the groups is not guaranteed without ORDER BY
+    Map<Object, Object> actualGroups = getGroups(actualResponse.getResultTable().getRows());
+    assertEquals(actualGroups.size(), 2);
+    assertEquals(actualGroups.get("a"), 6L);
+    assertEquals(actualGroups.get("b"), 4L);
+    assertEquals(actualGroups, getGroups(expectedResponse.getResultTable().getRows()));
+  }
+
+  private static Map<Object, Object> getGroups(List<Object[]> rows) {
+    Map<Object, Object> groups = new HashMap<>();
+    for (Object[] row : rows) {
+      groups.put(row[0], row[1]);
+    }
+    return groups;
+  }
+
+  /**
+   * Merges half of the data tables incrementally, then reduces the rest.
+   */
+  private BrokerResponseNative reduceIncrementally(BrokerRequest brokerRequest, DataTable[] dataTables) {
+    IncrementalReduceHandler incrementalReduceHandler = _brokerReduceService.getIncrementalReduceHandler(brokerRequest);
+    assertNotNull(incrementalReduceHandler);
+    int numMergedDataTables = NUM_DATA_TABLES / 2;
+    for (int i = 0; i < numMergedDataTables; i++) {
+      incrementalReduceHandler.onDataTable(dataTables[i]);
+    }
+    incrementalReduceHandler.close();
+    // Data tables should not be accepted after the handler is closed
+    incrementalReduceHandler.onDataTable(dataTables[numMergedDataTables]);
+    assertFalse(incrementalReduceHandler.isMerged(dataTables[numMergedDataTables]));
+    return _brokerReduceService
+        .reduceOnDataTable(brokerRequest, getDataTableMap(dataTables), TIMEOUT_MS, null, incrementalReduceHandler);
+  }
+
+  private static Map<ServerRoutingInstance, DataTable> getDataTableMap(DataTable[] dataTables) {
+    Map<ServerRoutingInstance, DataTable> dataTableMap = new HashMap<>();
+    for (int i = 0; i < dataTables.length; i++) {
+      dataTableMap.put(new ServerRoutingInstance("localhost", 1234 + i, TableType.OFFLINE), dataTables[i]);
+    }
+    return dataTableMap;
+  }
+
+  @AfterClass
+  public void tearDown() {
+    _brokerReduceService.shutDown();
+  }
+}
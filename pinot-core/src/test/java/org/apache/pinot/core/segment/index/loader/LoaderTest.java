@@ -20,9 +20,12 @@ package org.apache.pinot.core.segment.index.loader;
 
 import java.io.File;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import org.apache.commons.io.FileUtils;
 import org.apache.pinot.common.segment.ReadMode;
 import org.apache.pinot.common.utils.CommonConstants.Segment.BuiltInVirtualColumn;
@@ -30,17 +33,21 @@ import org.apache.pinot.common.utils.TarGzCompressionUtils;
 import org.apache.pinot.core.indexsegment.IndexSegment;
 import org.apache.pinot.core.indexsegment.generator.SegmentGeneratorConfig;
 import org.apache.pinot.core.indexsegment.generator.SegmentVersion;
+import org.apache.pinot.core.indexsegment.immutable.ImmutableSegment;
 import org.apache.pinot.core.indexsegment.immutable.ImmutableSegmentLoader;
 import org.apache.pinot.core.segment.creator.SegmentIndexCreationDriver;
 import org.apache.pinot.core.segment.creator.impl.SegmentCreationDriverFactory;
 import org.apache.pinot.core.segment.creator.impl.V1Constants;
 import org.apache.pinot.core.segment.creator.impl.text.LuceneTextIndexCreator;
+import org.apache.pinot.core.segment.index.column.ColdTierColumnCache;
 import org.apache.pinot.core.segment.index.converter.SegmentV1V2ToV3FormatConverter;
 import org.apache.pinot.core.segment.index.metadata.ColumnMetadata;
 import org.apache.pinot.core.segment.index.metadata.SegmentMetadataImpl;
+import org.apache.pinot.core.segment.index.readers.Dictionary;
 import org.apache.pinot.core.segment.index.readers.StringDictionary;
 import org.apache.pinot.core.segment.index.readers.text.LuceneTextIndexReader;
 import org.apache.pinot.core.segment.memory.PinotDataBuffer;
+import org.apache.pinot.core.segment.store.ColdTierSegmentDirectory;
 import org.apache.pinot.core.segment.store.ColumnIndexType;
 import org.apache.pinot.core.segment.store.SegmentDirectory;
 import org.apache.pinot.core.segment.store.SegmentDirectoryPaths;
@@ -484,6 +491,163 @@ public class LoaderTest {
     Assert.assertEquals(files[0].getName(), SegmentDirectoryPaths.V3_SUBDIRECTORY_NAME);
   }
 
+  @Test
+  public void testLoadFromColdTier()
+      throws Exception {
+    constructV1Segment();
+    String segmentName = _indexDir.getName();
+
+    // Load the segment from local to get the expected values
+    IndexSegment indexSegment = ImmutableSegmentLoader.load(_indexDir, _v3IndexLoadingConfig);
+    Map<String, Object> expectedValues = new HashMap<>();
+    for (String column : new SegmentMetadataImpl(_indexDir).getAllColumns()) {
+      Dictionary dictionary = indexSegment.getDataSource(column).getDictionary();
+      if (dictionary != null) {
+        expectedValues.put(column, dictionary.get(dictionary.length() - 1));
+      }
+    }
+    indexSegment.destroy();
+
+    IndexLoadingConfig indexLoadingConfig = new IndexLoadingConfig();
+    indexLoadingConfig.setReadMode(ReadMode.mmap);
+    indexLoadingConfig.setSegmentVersion(SegmentVersion.v3);
+    indexLoadingConfig.setColdTierRemoteDir(new File(INDEX_DIR, "coldTier").toURI().toString());
+    ColdTierColumnCache columnCache = ColdTierColumnCache.getInstance();
+    int numLoadedColumns = columnCache.getNumLoadedColumns();
+
+    // First load should upload the segment and only keep the resident files locally
+    indexSegment = ImmutableSegmentLoader.load(_indexDir, indexLoadingConfig);
+    Assert.assertTrue(ColdTierSegmentDirectory.isColdTierSegment(_indexDir));
+    Assert.assertFalse(SegmentDirectoryPaths.segmentDirectoryFor(_indexDir, SegmentVersion.v3).exists());
+    Assert.assertEquals(indexSegment.getSegmentName(), segmentName);
+    testBuiltInVirtualColumns(indexSegment);
+    Assert.assertEquals(columnCache.getNumLoadedColumns(), numLoadedColumns);
+    testColdTierValues(indexSegment, expectedValues);
+    Assert.assertEquals(columnCache.getNumLoadedColumns(), numLoadedColumns + expectedValues.size());
+    indexSegment.destroy();
+    Assert.assertEquals(columnCache.getNumLoadedColumns(), numLoadedColumns);
+
+    // Reload should load from the resident files
+    indexSegment = ImmutableSegmentLoader.load(_indexDir, indexLoadingConfig);
+    testColdTierValues(indexSegment, expectedValues);
+    indexSegment.destroy();
+  }
+
+  @Test
+  public void testColdTierEvictionWhileQueried()
+      throws Exception {
+    constructV1Segment();
+    IndexLoadingConfig indexLoadingConfig = new IndexLoadingConfig();
+    indexLoadingConfig.setReadMode(ReadMode.mmap);
+    indexLoadingConfig.setSegmentVersion(SegmentVersion.v3);
+    indexLoadingConfig.setColdTierRemoteDir(new File(INDEX_DIR, "coldTier").toURI().toString());
+
+    // Keep only one loaded column in the cache
+    ColdTierColumnCache.init(1);
+    ImmutableSegment immutableSegment = ImmutableSegmentLoader.load(_indexDir, indexLoadingConfig);
+    try {
+      List<String> columns = new ArrayList<>();
+      for (String column : immutableSegment.getPhysicalColumnNames()) {
+        if (immutableSegment.getSegmentMetadata().getColumnMetadataFor(column).hasDictionary()) {
+          columns.add(column);
+        }
+      }
+      Assert.assertTrue(columns.size() >= 2);
+      File columnCacheDir = new File(_indexDir, ColdTierSegmentDirectory.COLUMN_CACHE_DIR_NAME);
+
+      immutableSegment.acquireForQuery();
+      Dictionary dictionary = immutableSegment.getDataSource(columns.get(0)).getDictionary();
+      Object expectedValue = dictionary.get(dictionary.length() - 1);
+      Assert.assertEquals(columnCacheDir.list().length, 1);
+
+      // Loading another column evicts the first column, which should not be released while the query is in-flight
+      immutableSegment.getDataSource(columns.get(1)).getDictionary();
+      Assert.assertEquals(ColdTierColumnCache.getInstance().getNumLoadedColumns(), 1);
+      Assert.assertEquals(columnCacheDir.list().length, 2);
+      Assert.assertEquals(dictionary.get(dictionary.length() - 1), expectedValue);
+
+      // The evicted column should be released once the query is done
+      immutableSegment.releaseAfterQuery();
+      Assert.assertEquals(columnCacheDir.list().length, 1);
+
+      // Evicting a column without in-flight query should release it right away
+      immutableSegment.getDataSource(columns.get(0)).getDictionary();
+      Assert.assertEquals(columnCacheDir.list().length, 1);
+    } finally {
+      immutableSegment.destroy();
+      ColdTierColumnCache.init(ColdTierColumnCache.DEFAULT_MAX_SIZE_BYTES);
+    }
+  }
+
+  @Test
+  public void testColdTierPrefetch()
+      throws Exception {
+    constructV1Segment();
+    IndexLoadingConfig indexLoadingConfig = new IndexLoadingConfig();
+    indexLoadingConfig.setReadMode(ReadMode.mmap);
+    indexLoadingConfig.setSegmentVersion(SegmentVersion.v3);
+    indexLoadingConfig.setColdTierRemoteDir(new File(INDEX_DIR, "coldTier").toURI().toString());
+
+    ColdTierColumnCache.init(ColdTierColumnCache.DEFAULT_MAX_SIZE_BYTES, 1);
+    ImmutableSegment immutableSegment = ImmutableSegmentLoader.load(_indexDir, indexLoadingConfig);
+    try {
+      // All the columns should be prefetched in the background
+      int numColumns = immutableSegment.getPhysicalColumnNames().size();
+      TestUtils.waitForCondition(aVoid -> ColdTierColumnCache.getInstance().getNumLoadedColumns() == numColumns,
+          10_000L, "Failed to prefetch all the columns");
+
+      // Accessing the prefetched columns should not download them again
+      File columnCacheDir = new File(_indexDir, ColdTierSegmentDirectory.COLUMN_CACHE_DIR_NAME);
+      Assert.assertEquals(columnCacheDir.list().length, numColumns);
+      for (String column : immutableSegment.getPhysicalColumnNames()) {
+        immutableSegment.getDataSource(column).getForwardIndex();
+      }
+      Assert.assertEquals(columnCacheDir.list().length, numColumns);
+    } finally {
+      immutableSegment.destroy();
+      ColdTierColumnCache.init(ColdTierColumnCache.DEFAULT_MAX_SIZE_BYTES);
+    }
+  }
+
+  @Test
+  public void testColdTierWithTextIndex()
+      throws Exception {
+    constructSegmentWithTextIndex(SegmentVersion.v3);
+    IndexLoadingConfig indexLoadingConfig = new IndexLoadingConfig();
+    indexLoadingConfig.setReadMode(ReadMode.mmap);
+    indexLoadingConfig.setColdTierRemoteDir(new File(INDEX_DIR, "coldTier").toURI().toString());
+    indexLoadingConfig.setTextIndexColumns(new HashSet<>(Arrays.asList(TEXT_INDEX_COL_NAME)));
+
+    // Segment with text index should be served from the local disk
+    IndexSegment indexSegment = ImmutableSegmentLoader.load(_indexDir, indexLoadingConfig);
+    Assert.assertFalse(ColdTierSegmentDirectory.isColdTierSegment(_indexDir));
+    Assert.assertNotNull(indexSegment.getDataSource(TEXT_INDEX_COL_NAME).getTextIndex());
+    indexSegment.destroy();
+
+    // Segment with only the resident files of the cold tier cannot be loaded once text index is configured
+    constructV1Segment();
+    indexLoadingConfig.setSegmentVersion(SegmentVersion.v3);
+    indexLoadingConfig.setTextIndexColumns(new HashSet<>());
+    indexSegment = ImmutableSegmentLoader.load(_indexDir, indexLoadingConfig);
+    Assert.assertTrue(ColdTierSegmentDirectory.isColdTierSegment(_indexDir));
+    indexSegment.destroy();
+    indexLoadingConfig.setTextIndexColumns(new HashSet<>(Arrays.asList(TEXT_INDEX_COL_NAME)));
+    try {
+      ImmutableSegmentLoader.load(_indexDir, indexLoadingConfig);
+      Assert.fail();
+    } catch (IllegalStateException e) {
+      // Expected
+    }
+  }
+
+  private void testColdTierValues(IndexSegment indexSegment, Map<String, Object> expectedValues) {
+    for (Map.Entry<String, Object> entry : expectedValues.entrySet()) {
+      Dictionary dictionary = indexSegment.getDataSource(entry.getKey()).getDictionary();
+      Assert.assertNotNull(dictionary);
+      Assert.assertEquals(dictionary.get(dictionary.length() - 1), entry.getValue());
+    }
+  }
+
   @AfterClass
   public void tearDown() {
     FileUtils.deleteQuietly(INDEX_DIR);
@@ -0,0 +1,120 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pinot.core.segment.processing.framework;
+
+import com.google.common.collect.Lists;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import org.apache.commons.lang3.RandomStringUtils;
+import org.apache.pinot.core.segment.processing.collector.ExternalGenericRowSorter;
+import org.apache.pinot.spi.data.FieldSpec;
+import org.apache.pinot.spi.data.Schema;
+import org.apache.pinot.spi.data.readers.GenericRow;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+
+/**
+ * Tests for {@link ExternalGenericRowSorter}
+ */
+public class ExternalGenericRowSorterTest {
+  private static final Random RANDOM = new Random(10);
+  private static final int NUM_ROWS = 1000;
+  private static final Schema SCHEMA =
+      new Schema.SchemaBuilder().addSingleValueDimension("stringCol", FieldSpec.DataType.STRING)
+          .addSingleValueDimension("intCol", FieldSpec.DataType.INT)
+          .addMultiValueDimension("mvCol", FieldSpec.DataType.LONG).addMetric("longCol", FieldSpec.DataType.LONG)
+          .addMetric("doubleCol", FieldSpec.DataType.DOUBLE).build();
+
+  @Test
+  public void testSort()
+      throws Exception {
+    List<Object[]> ogRows = generateRows();
+    List<Object[]> expectedRows = new ArrayList<>(ogRows);
+    expectedRows.sort(Comparator.comparingDouble((Object[] o) -> (double) o[4]).thenComparing(o -> (String) o[0]));
+
+    // Sort with a buffer large enough to hold all the rows, and with a small buffer to spill multiple sorted runs
+    for (long maxBufferSizeBytes : new long[]{ExternalGenericRowSorter.DEFAULT_MAX_BUFFER_SIZE_BYTES, 1024}) {
+      ExternalGenericRowSorter sorter =
+          new ExternalGenericRowSorter(SCHEMA, Lists.newArrayList("doubleCol", "stringCol"), maxBufferSizeBytes);
+      addRows(sorter, ogRows);
+      checkRows(sorter.iterator(), expectedRows);
+      sorter.reset();
+      Assert.assertEquals(sorter.size(), 0);
+    }
+  }
+
+  @Test
+  public void testNoSort()
+      throws Exception {
+    List<Object[]> ogRows = generateRows();
+    ExternalGenericRowSorter sorter = new ExternalGenericRowSorter(SCHEMA, Collections.emptyList(), 1024);
+    addRows(sorter, ogRows);
+    // Rows should be returned in the insertion order
+    checkRows(sorter.iterator(), ogRows);
+    sorter.reset();
+    Assert.assertEquals(sorter.size(), 0);
+  }
+
+  private static List<Object[]> generateRows() {
+    List<Object[]> ogRows = new ArrayList<>(NUM_ROWS);
+    for (int i = 0; i < NUM_ROWS; i++) {
+      Object[] mvValue = new Object[RANDOM.nextInt(3)];
+      for (int j = 0; j < mvValue.length; j++) {
+        mvValue[j] = RANDOM.nextLong();
+      }
+      // Include negative double values to test the key prefix
+      ogRows.add(new Object[]{RandomStringUtils.randomAlphabetic(5), RANDOM.nextInt(10), mvValue, RANDOM.nextLong(),
+          (double) (RANDOM.nextInt(20) - 10)});
+    }
+    return ogRows;
+  }
+
+  private static void addRows(ExternalGenericRowSorter sorter, List<Object[]> ogRows)
+      throws Exception {
+    GenericRow reuse = new GenericRow();
+    for (Object[] ogRow : ogRows) {
+      reuse.clear();
+      reuse.putValue("stringCol", ogRow[0]);
+      reuse.putValue("intCol", ogRow[1]);
+      reuse.putValue("mvCol", ogRow[2]);
+      reuse.putValue("longCol", ogRow[3]);
+      reuse.putValue("doubleCol", ogRow[4]);
+      sorter.add(reuse);
+    }
+    Assert.assertEquals(sorter.size(), ogRows.size());
+  }
+
+  private static void checkRows(Iterator<GenericRow> iterator, List<Object[]> expectedRows) {
+    for (Object[] expectedRow : expectedRows) {
+      Assert.assertTrue(iterator.hasNext());
+      GenericRow row = iterator.next();
+      Assert.assertEquals(row.getValue("stringCol"), expectedRow[0]);
+      Assert.assertEquals(row.getValue("intCol"), expectedRow[1]);
+      Assert.assertEquals((Object[]) row.getValue("mvCol"), (Object[]) expectedRow[2]);
+      Assert.assertEquals(row.getValue("longCol"), expectedRow[3]);
+      Assert.assertEquals(row.getValue("doubleCol"), expectedRow[4]);
+    }
+    Assert.assertFalse(iterator.hasNext());
+  }
+}
@@ -0,0 +1,179 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pinot.core.transport;
+
+import com.google.common.util.concurrent.Futures;
+import com.yammer.metrics.core.MetricsRegistry;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.pinot.common.exception.QueryException;
+import org.apache.pinot.common.metrics.ServerGauge;
+import org.apache.pinot.common.metrics.ServerMetrics;
+import org.apache.pinot.common.request.BrokerRequest;
+import org.apache.pinot.common.request.InstanceRequest;
+import org.apache.pinot.common.utils.DataTable;
+import org.apache.pinot.core.common.datatable.DataTableFactory;
+import org.apache.pinot.core.common.datatable.DataTableImplV2;
+import org.apache.pinot.core.query.request.ServerQueryRequest;
+import org.apache.pinot.core.query.scheduler.QueryScheduler;
+import org.apache.pinot.pql.parsers.Pql2Compiler;
+import org.apache.thrift.TSerializer;
+import org.apache.thrift.protocol.TCompactProtocol;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+
+public class InstanceRequestHandlerTest {
+  private static final BrokerRequest BROKER_REQUEST =
+      new Pql2Compiler().compileToBrokerRequest("SELECT * FROM testTable");
+  private static final String PADDING_METADATA_KEY = "padding";
+  private static final int PADDING_LENGTH = 1000;
+  // Only allow 2 regular responses to be queued
+  private static final int RESPONSE_LENGTH = getResponseBytes(0).length;
+  private static final long MAX_QUEUED_RESPONSE_BYTES = 2 * RESPONSE_LENGTH + 100;
+
+  private final Map<Long, byte[]> _responseBytesMap = new ConcurrentHashMap<>();
+  private ServerMetrics _serverMetrics;
+  private EmbeddedChannel _channel;
+
+  @BeforeMethod
+  public void setUp() {
+    QueryScheduler queryScheduler = mock(QueryScheduler.class);
+    when(queryScheduler.submit(any())).thenAnswer(invocation -> Futures
+        .immediateFuture(_responseBytesMap.get(((ServerQueryRequest) invocation.getArgument(0)).getRequestId())));
+    _serverMetrics = new ServerMetrics(new MetricsRegistry());
+    _channel =
+        new EmbeddedChannel(new InstanceRequestHandler(queryScheduler, _serverMetrics, MAX_QUEUED_RESPONSE_BYTES));
+  }
+
+  @Test
+  public void testQueueResponsesWhenChannelNotWritable()
+      throws Exception {
+    // Response should be written directly when the channel is writable
+    sendRequest(1);
+    assertResponse(_channel.readOutbound(), 1);
+    assertNull(_channel.readOutbound());
+
+    // Responses should be queued when the channel is not writable
+    setWritable(false);
+    sendRequest(2);
+    sendRequest(3);
+    assertNull(_channel.readOutbound());
+    assertEquals(getQueuedResponseBytes(), 2 * RESPONSE_LENGTH);
+
+    // Response exceeding the max queued bytes should be replaced with an error response
+    sendRequest(4);
+    assertNull(_channel.readOutbound());
+    long queuedResponseBytes = getQueuedResponseBytes();
+    assertTrue(queuedResponseBytes > 2 * RESPONSE_LENGTH && queuedResponseBytes < 3 * RESPONSE_LENGTH);
+
+    // Queued responses should be drained in order once the channel becomes writable
+    setWritable(true);
+    assertResponse(_channel.readOutbound(), 2);
+    assertResponse(_channel.readOutbound(), 3);
+    byte[] rejectedResponseBytes = readBytes(_channel.readOutbound());
+    assertEquals(queuedResponseBytes, 2 * RESPONSE_LENGTH + rejectedResponseBytes.length);
+    DataTable rejectedDataTable = DataTableFactory.getDataTable(ByteBuffer.wrap(rejectedResponseBytes));
+    assertEquals(rejectedDataTable.getMetadata().get(DataTable.REQUEST_ID_METADATA_KEY), "4");
+    assertTrue(rejectedDataTable.getMetadata()
+        .containsKey(DataTable.EXCEPTION_METADATA_KEY + QueryException.SERVER_OUT_OF_CAPACITY_ERROR_CODE));
+    assertFalse(rejectedDataTable.getMetadata().containsKey(PADDING_METADATA_KEY));
+    assertNull(_channel.readOutbound());
+    assertEquals(getQueuedResponseBytes(), 0);
+
+    // Response should be written directly again after the queue is drained
+    sendRequest(5);
+    assertResponse(_channel.readOutbound(), 5);
+    assertEquals(getQueuedResponseBytes(), 0);
+  }
+
+  @Test
+  public void testDropQueuedResponsesOnChannelInactive()
+      throws Exception {
+    setWritable(false);
+    sendRequest(1);
+    sendRequest(2);
+    assertEquals(getQueuedResponseBytes(), 2 * RESPONSE_LENGTH);
+
+    // Queued responses should be dropped and the gauge should be reset when the channel becomes inactive
+    _channel.close();
+    _channel.runPendingTasks();
+    assertEquals(getQueuedResponseBytes(), 0);
+    assertNull(_channel.readOutbound());
+  }
+
+  private static byte[] getResponseBytes(long requestId) {
+    DataTable dataTable = new DataTableImplV2();
+    dataTable.getMetadata().put(DataTable.REQUEST_ID_METADATA_KEY, Long.toString(requestId));
+    dataTable.getMetadata().put(PADDING_METADATA_KEY, StringUtils.repeat('a', PADDING_LENGTH));
+    try {
+      return dataTable.toBytes();
+    } catch (Exception e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private void sendRequest(long requestId)
+      throws Exception {
+    // NOTE: Use single digit request id so that all the responses have the same length
+    _responseBytesMap.put(requestId, getResponseBytes(requestId));
+    byte[] requestBytes =
+        new TSerializer(new TCompactProtocol.Factory()).serialize(new InstanceRequest(requestId, BROKER_REQUEST));
+    _channel.writeInbound(Unpooled.wrappedBuffer(requestBytes));
+    // Run the response writing task handed off to the event loop
+    _channel.runPendingTasks();
+  }
+
+  private void setWritable(boolean writable) {
+    _channel.unsafe().outboundBuffer().setUserDefinedWritability(1, writable);
+    _channel.runPendingTasks();
+    assertEquals(_channel.isWritable(), writable);
+  }
+
+  private long getQueuedResponseBytes() {
+    return _serverMetrics.getValueOfGlobalGauge(ServerGauge.NETTY_CONNECTION_QUEUED_RESPONSE_BYTES);
+  }
+
+  private void assertResponse(ByteBuf responseBuf, long requestId) {
+    assertEquals(readBytes(responseBuf), _responseBytesMap.get(requestId));
+  }
+
+  private static byte[] readBytes(ByteBuf byteBuf) {
+    try {
+      byte[] bytes = new byte[byteBuf.readableBytes()];
+      byteBuf.readBytes(bytes);
+      return bytes;
+    } finally {
+      byteBuf.release();
+    }
+  }
+}
@@ -30,6 +30,7 @@ import org.apache.pinot.core.common.datatable.DataTableImplV2;
 import org.apache.pinot.core.query.scheduler.QueryScheduler;
 import org.apache.pinot.pql.parsers.Pql2Compiler;
 import org.apache.pinot.spi.config.table.TableType;
+import org.apache.pinot.util.TestUtils;
 import org.testng.annotations.AfterClass;
 import org.testng.annotations.BeforeClass;
 import org.testng.annotations.Test;
@@ -63,7 +64,11 @@ public class QueryRoutingTest {
   }
 
   private QueryServer getQueryServer(int responseDelayMs, byte[] responseBytes) {
-    return new QueryServer(TEST_PORT, mockQueryScheduler(responseDelayMs, responseBytes), mock(ServerMetrics.class));
+    return getQueryServer(TEST_PORT, responseDelayMs, responseBytes);
+  }
+
+  private QueryServer getQueryServer(int port, int responseDelayMs, byte[] responseBytes) {
+    return new QueryServer(port, mockQueryScheduler(responseDelayMs, responseBytes), mock(ServerMetrics.class));
   }
 
   private QueryScheduler mockQueryScheduler(int responseDelayMs, byte[] responseBytes) {
@@ -229,6 +234,124 @@ public class QueryRoutingTest {
     assertTrue(System.currentTimeMillis() - startTimeMs < 1000);
   }
 
+  @Test
+  public void testHedgedRequest()
+      throws Exception {
+    long requestId = 123;
+    DataTable dataTable = new DataTableImplV2();
+    dataTable.getMetadata().put(DataTable.REQUEST_ID_METADATA_KEY, Long.toString(requestId));
+    byte[] responseBytes = dataTable.toBytes();
+
+    // Start a slow server and a fast alternate server
+    ServerInstance alternateServerInstance = new ServerInstance("localhost", TEST_PORT + 1);
+    QueryServer slowQueryServer = getQueryServer(2_000, responseBytes);
+    slowQueryServer.start();
+    QueryServer alternateQueryServer = getQueryServer(TEST_PORT + 1, 0, responseBytes);
+    alternateQueryServer.start();
+
+    QueryHedger queryHedger = new QueryHedger((tableNameWithType, segments, excludedInstanceIds) -> {
+      assertEquals(tableNameWithType, "testTable_OFFLINE");
+      assertTrue(excludedInstanceIds.contains(SERVER_INSTANCE.getInstanceId()));
+      return alternateServerInstance;
+    });
+    ServerLatencyTracker serverLatencyTracker = new ServerLatencyTracker();
+    QueryRouter queryRouter =
+        new QueryRouter("testBroker", mock(BrokerMetrics.class), serverLatencyTracker, queryHedger);
+
+    // Should not hedge before collecting enough latency samples
+    assertEquals(queryHedger.getHedgeDelayMs("testTable"), -1);
+    for (int i = 0; i < 100; i++) {
+      queryHedger.recordLatency("testTable", 10);
+    }
+    assertEquals(queryHedger.getHedgeDelayMs("testTable"), QueryHedger.DEFAULT_MIN_DELAY_MS);
+
+    // The response from the alternate server should be returned as the response of the slow server
+    long startTimeMs = System.currentTimeMillis();
+    AsyncQueryResponse asyncQueryResponse =
+        queryRouter.submitQuery(requestId, "testTable", BROKER_REQUEST, ROUTING_TABLE, null, null, 1_000L);
+    Map<ServerRoutingInstance, ServerResponse> response = asyncQueryResponse.getResponse();
+    assertEquals(response.size(), 1);
+    assertTrue(response.containsKey(OFFLINE_SERVER_ROUTING_INSTANCE));
+    ServerResponse serverResponse = response.get(OFFLINE_SERVER_ROUTING_INSTANCE);
+    assertNotNull(serverResponse.getDataTable());
+    assertEquals(serverResponse.getResponseSize(), responseBytes.length);
+    // Query should not wait for the slow server
+    assertTrue(System.currentTimeMillis() - startTimeMs < 1000);
+    assertEquals(queryHedger.getNumInFlightHedgedRequests(), 0);
+
+    // Both the original and the hedged requests should be tracked as finished
+    String alternateInstanceId = alternateServerInstance.getInstanceId();
+    TestUtils.waitForCondition(aVoid -> serverLatencyTracker.getNumInFlightRequests(alternateInstanceId) == 0, 1_000L,
+        "Failed to track the hedged request as finished");
+    // Servers with stats have score at least 1
+    assertTrue(serverLatencyTracker.getScore(alternateInstanceId) >= 1);
+    assertEquals(serverLatencyTracker.getNumInFlightRequests(SERVER_INSTANCE.getInstanceId()), 0);
+
+    // Shut down the servers
+    queryRouter.shutDown();
+    slowQueryServer.shutDown();
+    alternateQueryServer.shutDown();
+  }
+
+  @Test
+  public void testMultipleChannelsPerServer()
+      throws Exception {
+    long requestId = 123;
+    DataTable dataTable = new DataTableImplV2();
+    dataTable.getMetadata().put(DataTable.REQUEST_ID_METADATA_KEY, Long.toString(requestId));
+    byte[] responseBytes = dataTable.toBytes();
+
+    // Start the server
+    QueryServer queryServer = getQueryServer(0, responseBytes);
+    queryServer.start();
+
+    // Native transport should fall back to NIO if not available
+    QueryRouter queryRouter = new QueryRouter("testBroker", mock(BrokerMetrics.class), null, null, 2, true);
+    for (int i = 0; i < 5; i++) {
+      AsyncQueryResponse asyncQueryResponse = queryRouter
+          .submitQuery(requestId, "testTable", BROKER_REQUEST, ROUTING_TABLE, BROKER_REQUEST, ROUTING_TABLE, 1_000L);
+      Map<ServerRoutingInstance, ServerResponse> response = asyncQueryResponse.getResponse();
+      assertEquals(response.size(), 2);
+      for (ServerResponse serverResponse : response.values()) {
+        assertNotNull(serverResponse.getDataTable());
+        assertEquals(serverResponse.getResponseSize(), responseBytes.length);
+      }
+      assertEquals(queryRouter.getNumPendingRequests(OFFLINE_SERVER_ROUTING_INSTANCE), 0);
+      assertEquals(queryRouter.getNumPendingRequests(REALTIME_SERVER_ROUTING_INSTANCE), 0);
+    }
+
+    // Shut down the server
+    queryRouter.shutDown();
+    queryServer.shutDown();
+  }
+
+  @Test
+  public void testMultipleChannelsPerServerWithTimeout()
+      throws Exception {
+    long requestId = 123;
+    DataTable dataTable = new DataTableImplV2();
+    dataTable.getMetadata().put(DataTable.REQUEST_ID_METADATA_KEY, Long.toString(requestId));
+    byte[] responseBytes = dataTable.toBytes();
+
+    // Start the server with a response delay longer than the query timeout
+    QueryServer queryServer = getQueryServer(500, responseBytes);
+    queryServer.start();
+
+    QueryRouter queryRouter = new QueryRouter("testBroker", mock(BrokerMetrics.class), null, null, 2, false);
+    AsyncQueryResponse asyncQueryResponse =
+        queryRouter.submitQuery(requestId, "testTable", BROKER_REQUEST, ROUTING_TABLE, null, null, 100L);
+    assertEquals(queryRouter.getNumPendingRequests(OFFLINE_SERVER_ROUTING_INSTANCE), 1);
+    Map<ServerRoutingInstance, ServerResponse> response = asyncQueryResponse.getResponse();
+    assertNull(response.get(OFFLINE_SERVER_ROUTING_INSTANCE).getDataTable());
+
+    // The timed out request should no longer be counted as pending
+    assertEquals(queryRouter.getNumPendingRequests(OFFLINE_SERVER_ROUTING_INSTANCE), 0);
+
+    // Shut down the server
+    queryRouter.shutDown();
+    queryServer.shutDown();
+  }
+
   @AfterClass
   public void tearDown() {
     _queryRouter.shutDown();
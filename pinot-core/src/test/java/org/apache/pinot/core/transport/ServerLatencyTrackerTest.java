@@ -0,0 +1,74 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pinot.core.transport;
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+
+public class ServerLatencyTrackerTest {
+  private static final String INSTANCE_ID = "Server_localhost_12345";
+
+  @Test
+  public void testServerLatencyTracker()
+      throws Exception {
+    ServerLatencyTracker serverLatencyTracker = new ServerLatencyTracker(0.5, 100L);
+
+    // Unknown server should have score 0
+    assertEquals(serverLatencyTracker.getScore(INSTANCE_ID), 0.0);
+    assertEquals(serverLatencyTracker.getNumInFlightRequests(INSTANCE_ID), 0);
+
+    serverLatencyTracker.recordRequestSent(INSTANCE_ID);
+    serverLatencyTracker.recordRequestSent(INSTANCE_ID);
+    assertEquals(serverLatencyTracker.getNumInFlightRequests(INSTANCE_ID), 2);
+    // Latency should be at least 1ms when calculating the score
+    assertEquals(serverLatencyTracker.getScore(INSTANCE_ID), 3.0);
+
+    // The first latency should be used as the initial EWMA
+    serverLatencyTracker.recordRequestFinished(INSTANCE_ID, 1000);
+    assertEquals(serverLatencyTracker.getNumInFlightRequests(INSTANCE_ID), 1);
+    double latencyEwmaMs = serverLatencyTracker.getLatencyEwmaMs(INSTANCE_ID);
+    assertTrue(latencyEwmaMs > 0 && latencyEwmaMs <= 1000);
+    serverLatencyTracker.recordRequestFinished(INSTANCE_ID, 0);
+    assertEquals(serverLatencyTracker.getNumInFlightRequests(INSTANCE_ID), 0);
+    latencyEwmaMs = serverLatencyTracker.getLatencyEwmaMs(INSTANCE_ID);
+    assertTrue(latencyEwmaMs > 0 && latencyEwmaMs <= 500);
+
+    // Number of in-flight requests should not go negative
+    serverLatencyTracker.recordRequestFinished(INSTANCE_ID, 0);
+    assertEquals(serverLatencyTracker.getNumInFlightRequests(INSTANCE_ID), 0);
+
+    // Latency EWMA should decay over time
+    latencyEwmaMs = serverLatencyTracker.getLatencyEwmaMs(INSTANCE_ID);
+    Thread.sleep(200L);
+    assertTrue(serverLatencyTracker.getLatencyEwmaMs(INSTANCE_ID) < latencyEwmaMs);
+
+    // Removed server should have no stats, and finishing an in-flight request should not re-create the stats
+    serverLatencyTracker.recordRequestSent(INSTANCE_ID);
+    assertEquals(serverLatencyTracker.getNumServers(), 1);
+    serverLatencyTracker.removeServer(INSTANCE_ID);
+    assertEquals(serverLatencyTracker.getNumServers(), 0);
+    assertEquals(serverLatencyTracker.getScore(INSTANCE_ID), 0.0);
+    serverLatencyTracker.recordRequestFinished(INSTANCE_ID, 1000);
+    assertEquals(serverLatencyTracker.getNumServers(), 0);
+    assertEquals(serverLatencyTracker.getNumInFlightRequests(INSTANCE_ID), 0);
+  }
+}
@@ -0,0 +1,115 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pinot.core.transport.grpc;
+
+import com.yammer.metrics.core.MetricsRegistry;
+import io.grpc.Context;
+import io.grpc.StatusRuntimeException;
+import io.grpc.stub.StreamObserver;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.pinot.common.metrics.ServerMetrics;
+import org.apache.pinot.common.proto.Server.ServerRequest;
+import org.apache.pinot.common.proto.Server.ServerResponse;
+import org.apache.pinot.common.utils.DataSchema;
+import org.apache.pinot.common.utils.grpc.GrpcQueryClient;
+import org.apache.pinot.common.utils.grpc.GrpcRequestBuilder;
+import org.apache.pinot.core.common.datatable.DataTableImplV2;
+import org.apache.pinot.core.operator.streaming.StreamingResponseUtils;
+import org.apache.pinot.core.query.executor.QueryExecutor;
+import org.apache.pinot.core.query.selection.SelectionOperatorUtils;
+import org.apache.pinot.pql.parsers.Pql2Compiler;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertTrue;
+
+
+public class GrpcQueryServerTest {
+  private static final int TEST_GRPC_PORT = 12347;
+  private static final int MAX_NUM_BLOCKS = 1_000_000;
+  private static final DataSchema DATA_SCHEMA =
+      new DataSchema(new String[]{"column"}, new DataSchema.ColumnDataType[]{DataSchema.ColumnDataType.INT});
+
+  private final AtomicInteger _numBlocksSent = new AtomicInteger();
+  private final CountDownLatch _executionStopped = new CountDownLatch(1);
+  private GrpcQueryServer _grpcQueryServer;
+  private GrpcQueryClient _grpcQueryClient;
+
+  @SuppressWarnings("unchecked")
+  @BeforeClass
+  public void setUp() {
+    // Query executor that keeps streaming blocks until the stream is cancelled
+    QueryExecutor queryExecutor = mock(QueryExecutor.class);
+    when(queryExecutor.processQuery(any(), any(), any())).thenAnswer(invocation -> {
+      StreamObserver<ServerResponse> responseObserver = invocation.getArgument(2);
+      List<Object[]> rows = new ArrayList<>();
+      rows.add(new Object[]{0});
+      ServerResponse dataResponse =
+          StreamingResponseUtils.getDataResponse(SelectionOperatorUtils.getDataTableFromRows(rows, DATA_SCHEMA));
+      try {
+        for (int i = 0; i < MAX_NUM_BLOCKS; i++) {
+          responseObserver.onNext(dataResponse);
+          _numBlocksSent.incrementAndGet();
+        }
+      } catch (StatusRuntimeException e) {
+        _executionStopped.countDown();
+      }
+      return new DataTableImplV2();
+    });
+    _grpcQueryServer = new GrpcQueryServer(TEST_GRPC_PORT, queryExecutor, new ServerMetrics(new MetricsRegistry()));
+    _grpcQueryServer.start();
+    _grpcQueryClient = new GrpcQueryClient("localhost", TEST_GRPC_PORT);
+  }
+
+  @Test
+  public void testExecutionStopsAfterClientCancels()
+      throws Exception {
+    ServerRequest serverRequest = new GrpcRequestBuilder().setRequestId(123L).setBrokerId("testBroker")
+        .setEnableTrace(false).setEnableStreaming(true)
+        .setBrokerRequest(new Pql2Compiler().compileToBrokerRequest("SELECT * FROM testTable"))
+        .setSegments(Collections.singletonList("testSegment")).build();
+    Context.CancellableContext context = Context.current().withCancellation();
+    Iterator<ServerResponse> responses = context.call(() -> _grpcQueryClient.submit(serverRequest));
+    for (int i = 0; i < 3; i++) {
+      assertTrue(responses.hasNext());
+      responses.next();
+    }
+
+    // Query execution should stop (instead of blocking on the flow control) once the client cancels the call
+    context.cancel(null);
+    assertTrue(_executionStopped.await(10, TimeUnit.SECONDS), "Query execution did not stop after cancellation");
+    assertTrue(_numBlocksSent.get() < MAX_NUM_BLOCKS);
+  }
+
+  @AfterClass
+  public void tearDown() {
+    _grpcQueryClient.close();
+    _grpcQueryServer.shutdown();
+  }
+}
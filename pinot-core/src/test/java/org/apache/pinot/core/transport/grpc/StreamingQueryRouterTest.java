@@ -0,0 +1,185 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pinot.core.transport.grpc;
+
+import io.grpc.Context;
+import io.grpc.Server;
+import io.grpc.ServerBuilder;
+import io.grpc.StatusRuntimeException;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import org.apache.helix.model.InstanceConfig;
+import org.apache.pinot.common.metrics.BrokerMetrics;
+import org.apache.pinot.common.proto.PinotQueryServerGrpc;
+import org.apache.pinot.common.proto.Server.ServerRequest;
+import org.apache.pinot.common.proto.Server.ServerResponse;
+import org.apache.pinot.common.request.BrokerRequest;
+import org.apache.pinot.common.utils.CommonConstants.Helix;
+import org.apache.pinot.common.utils.DataSchema;
+import org.apache.pinot.common.utils.DataTable;
+import org.apache.pinot.core.common.datatable.DataTableImplV2;
+import org.apache.pinot.core.operator.streaming.StreamingResponseUtils;
+import org.apache.pinot.core.query.selection.SelectionOperatorUtils;
+import org.apache.pinot.core.transport.ServerInstance;
+import org.apache.pinot.core.transport.ServerRoutingInstance;
+import org.apache.pinot.pql.parsers.Pql2Compiler;
+import org.apache.pinot.spi.config.table.TableType;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import static org.mockito.Mockito.mock;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+
+public class StreamingQueryRouterTest {
+  private static final int TEST_PORT = 12345;
+  private static final int TEST_GRPC_PORT = 12346;
+  private static final int NUM_BLOCKS = 10;
+  private static final int NUM_ROWS_PER_BLOCK = 10;
+  private static final DataSchema DATA_SCHEMA =
+      new DataSchema(new String[]{"column"}, new DataSchema.ColumnDataType[]{DataSchema.ColumnDataType.INT});
+  private static final BrokerRequest BROKER_REQUEST =
+      new Pql2Compiler().compileToBrokerRequest("SELECT * FROM testTable");
+
+  private Server _server;
+  private ServerInstance _serverInstance;
+  private StreamingQueryRouter _streamingQueryRouter;
+
+  @BeforeClass
+  public void setUp()
+      throws Exception {
+    _server = ServerBuilder.forPort(TEST_GRPC_PORT).addService(new PinotQueryServerGrpc.PinotQueryServerImplBase() {
+      @Override
+      public void submit(ServerRequest request, StreamObserver<ServerResponse> serverResponseObserver) {
+        FlowControlledStreamObserver responseObserver =
+            new FlowControlledStreamObserver((ServerCallStreamObserver<ServerResponse>) serverResponseObserver,
+                Context.current());
+        try {
+          for (int i = 0; i < NUM_BLOCKS; i++) {
+            List<Object[]> rows = new ArrayList<>(NUM_ROWS_PER_BLOCK);
+            for (int j = 0; j < NUM_ROWS_PER_BLOCK; j++) {
+              rows.add(new Object[]{i * NUM_ROWS_PER_BLOCK + j});
+            }
+            responseObserver.onNext(
+                StreamingResponseUtils.getDataResponse(SelectionOperatorUtils.getDataTableFromRows(rows, DATA_SCHEMA)));
+          }
+          DataTable metadataDataTable = new DataTableImplV2();
+          metadataDataTable.getMetadata()
+              .put(DataTable.NUM_DOCS_SCANNED_METADATA_KEY, Integer.toString(NUM_BLOCKS * NUM_ROWS_PER_BLOCK));
+          responseObserver.onNext(StreamingResponseUtils.getMetadataResponse(metadataDataTable));
+          responseObserver.onCompleted();
+        } catch (StatusRuntimeException e) {
+          // Cancelled by the client
+        } catch (Exception e) {
+          responseObserver.onError(e);
+        }
+      }
+    }).build().start();
+
+    InstanceConfig instanceConfig = new InstanceConfig(Helix.PREFIX_OF_SERVER_INSTANCE + "localhost_" + TEST_PORT);
+    instanceConfig.getRecord().setSimpleField(Helix.Instance.GRPC_PORT_KEY, Integer.toString(TEST_GRPC_PORT));
+    _serverInstance = new ServerInstance(instanceConfig);
+    _streamingQueryRouter = new StreamingQueryRouter("testBroker", mock(BrokerMetrics.class));
+  }
+
+  @Test
+  public void testStreamingQuery()
+      throws Exception {
+    Map<ServerInstance, List<String>> routingTable =
+        Collections.singletonMap(_serverInstance, Collections.singletonList("testSegment"));
+    assertTrue(StreamingQueryRouter.isStreamingSupported(routingTable));
+    ServerRoutingInstance offlineServerRoutingInstance = _serverInstance.toServerRoutingInstance(TableType.OFFLINE);
+    ServerRoutingInstance realtimeServerRoutingInstance = _serverInstance.toServerRoutingInstance(TableType.REALTIME);
+
+    // All the rows and the metadata should be gathered
+    StreamingQueryRouter.StreamingQueryResponse streamingQueryResponse =
+        _streamingQueryRouter.submitQuery(123L, "testTable", BROKER_REQUEST, routingTable, null, null, 10_000L, 1000);
+    Map<ServerRoutingInstance, DataTable> dataTableMap = streamingQueryResponse.getDataTableMap();
+    assertEquals(dataTableMap.size(), 1);
+    assertEquals(streamingQueryResponse.getNumServersResponded(), 1);
+    assertTrue(streamingQueryResponse.getStats().contains(offlineServerRoutingInstance.getShortName()));
+    DataTable dataTable = dataTableMap.get(offlineServerRoutingInstance);
+    assertEquals(dataTable.getDataSchema(), DATA_SCHEMA);
+    assertEquals(dataTable.getNumberOfRows(), NUM_BLOCKS * NUM_ROWS_PER_BLOCK);
+    for (int rowId = 0; rowId < NUM_BLOCKS * NUM_ROWS_PER_BLOCK; rowId++) {
+      assertEquals(dataTable.getInt(rowId, 0), rowId);
+    }
+    assertEquals(dataTable.getMetadata().get(DataTable.NUM_DOCS_SCANNED_METADATA_KEY),
+        Integer.toString(NUM_BLOCKS * NUM_ROWS_PER_BLOCK));
+
+    // Streams should be cancelled once LIMIT rows are gathered
+    streamingQueryResponse = _streamingQueryRouter
+        .submitQuery(123L, "testTable", BROKER_REQUEST, routingTable, BROKER_REQUEST, routingTable, 10_000L, 25);
+    dataTableMap = streamingQueryResponse.getDataTableMap();
+    assertEquals(dataTableMap.size(), 2);
+    assertEquals(streamingQueryResponse.getNumServersResponded(), 2);
+    int numRowsGathered = 0;
+    for (DataTable serverDataTable : dataTableMap.values()) {
+      numRowsGathered += serverDataTable.getNumberOfRows();
+      for (String key : serverDataTable.getMetadata().keySet()) {
+        assertFalse(key.startsWith(DataTable.EXCEPTION_METADATA_KEY));
+      }
+    }
+    assertEquals(numRowsGathered, 25);
+    assertTrue(dataTableMap.containsKey(realtimeServerRoutingInstance));
+
+    // Server without gRPC port should not support streaming
+    InstanceConfig instanceConfig = new InstanceConfig(Helix.PREFIX_OF_SERVER_INSTANCE + "localhost_" + TEST_PORT);
+    assertFalse(StreamingQueryRouter.isStreamingSupported(
+        Collections.singletonMap(new ServerInstance(instanceConfig), Collections.singletonList("testSegment"))));
+  }
+
+  @Test
+  public void testStreamingQueryWithLimitZero()
+      throws Exception {
+    Map<ServerInstance, List<String>> routingTable =
+        Collections.singletonMap(_serverInstance, Collections.singletonList("testSegment"));
+
+    // All the streams should be finished without rows, and the data schema should be gathered
+    StreamingQueryRouter.StreamingQueryResponse streamingQueryResponse = _streamingQueryRouter
+        .submitQuery(123L, "testTable", BROKER_REQUEST, routingTable, BROKER_REQUEST, routingTable, 10_000L, 0);
+    Map<ServerRoutingInstance, DataTable> dataTableMap = streamingQueryResponse.getDataTableMap();
+    assertEquals(dataTableMap.size(), 2);
+    assertEquals(streamingQueryResponse.getNumServersResponded(), 2);
+    boolean dataSchemaGathered = false;
+    for (DataTable serverDataTable : dataTableMap.values()) {
+      assertEquals(serverDataTable.getNumberOfRows(), 0);
+      for (String key : serverDataTable.getMetadata().keySet()) {
+        assertFalse(key.startsWith(DataTable.EXCEPTION_METADATA_KEY));
+      }
+      if (DATA_SCHEMA.equals(serverDataTable.getDataSchema())) {
+        dataSchemaGathered = true;
+      }
+    }
+    assertTrue(dataSchemaGathered);
+  }
+
+  @AfterClass
+  public void tearDown() {
+    _streamingQueryRouter.shutDown();
+    _server.shutdownNow();
+  }
+}
@@ -0,0 +1,203 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pinot.core.upsert;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import org.apache.commons.io.FileUtils;
+import org.apache.pinot.common.metrics.ServerMetrics;
+import org.apache.pinot.common.utils.LLCSegmentName;
+import org.apache.pinot.core.realtime.impl.ThreadSafeMutableRoaringBitmap;
+import org.apache.pinot.core.upsert.PartitionUpsertMetadataManager.RecordInfo;
+import org.apache.pinot.spi.data.readers.PrimaryKey;
+import org.apache.pinot.spi.utils.builder.TableNameBuilder;
+import org.mockito.Mockito;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+
+
+public class OffHeapRecordLocationMapTest {
+  private static final File TEMP_DIR = new File(FileUtils.getTempDirectory(), "OffHeapRecordLocationMapTest");
+  private static final String RAW_TABLE_NAME = "testTable";
+  private static final String REALTIME_TABLE_NAME = TableNameBuilder.REALTIME.tableNameWithType(RAW_TABLE_NAME);
+
+  @BeforeClass
+  public void setUp()
+      throws IOException {
+    FileUtils.deleteDirectory(TEMP_DIR);
+  }
+
+  @AfterClass
+  public void tearDown()
+      throws IOException {
+    FileUtils.deleteDirectory(TEMP_DIR);
+  }
+
+  @Test
+  public void testComputeAndRemoveSegment()
+      throws IOException {
+    // Use a small initial capacity to trigger resizing
+    try (OffHeapRecordLocationMap recordLocationMap = new OffHeapRecordLocationMap("test", TEMP_DIR, 4)) {
+      int numKeys = 1000;
+      ThreadSafeMutableRoaringBitmap validDocIds1 = new ThreadSafeMutableRoaringBitmap();
+      ThreadSafeMutableRoaringBitmap validDocIds2 = new ThreadSafeMutableRoaringBitmap();
+      for (int i = 0; i < numKeys; i++) {
+        int docId = i;
+        validDocIds1.add(docId);
+        recordLocationMap.compute(OffHeapRecordLocationMap.hash(getPrimaryKey(i)),
+            currentRecordLocation -> new RecordLocation("segment1", docId, 100, validDocIds1));
+      }
+      assertEquals(recordLocationMap.size(), numKeys);
+
+      // Move the even keys to the second segment
+      for (int i = 0; i < numKeys; i += 2) {
+        int docId = i / 2;
+        recordLocationMap.compute(OffHeapRecordLocationMap.hash(getPrimaryKey(i)), currentRecordLocation -> {
+          assertNotNull(currentRecordLocation);
+          assertSame(currentRecordLocation.getValidDocIds(), validDocIds1);
+          validDocIds1.remove(currentRecordLocation.getDocId());
+          validDocIds2.add(docId);
+          return new RecordLocation("segment2", docId, 120, validDocIds2);
+        });
+      }
+      assertEquals(recordLocationMap.size(), numKeys);
+
+      // Keep the current record location
+      recordLocationMap.compute(OffHeapRecordLocationMap.hash(getPrimaryKey(1)), currentRecordLocation -> {
+        assertNotNull(currentRecordLocation);
+        return currentRecordLocation;
+      });
+      for (int i = 0; i < numKeys; i++) {
+        RecordLocation recordLocation = recordLocationMap.get(OffHeapRecordLocationMap.hash(getPrimaryKey(i)));
+        assertNotNull(recordLocation);
+        if (i % 2 == 0) {
+          checkRecordLocation(recordLocation, "segment2", i / 2, 120);
+          assertSame(recordLocation.getValidDocIds(), validDocIds2);
+        } else {
+          checkRecordLocation(recordLocation, "segment1", i, 100);
+          assertSame(recordLocation.getValidDocIds(), validDocIds1);
+        }
+      }
+
+      // Remove a segment without record locations
+      recordLocationMap.removeSegment(new ThreadSafeMutableRoaringBitmap(), docId -> {
+        throw new IllegalStateException();
+      });
+      assertEquals(recordLocationMap.size(), numKeys);
+
+      // Remove the first segment by looking up the primary keys of the valid docs, only the even keys should remain
+      recordLocationMap.removeSegment(validDocIds1, docId -> OffHeapRecordLocationMap.hash(getPrimaryKey(docId)));
+      assertEquals(recordLocationMap.size(), numKeys / 2);
+      for (int i = 0; i < numKeys; i++) {
+        RecordLocation recordLocation = recordLocationMap.get(OffHeapRecordLocationMap.hash(getPrimaryKey(i)));
+        if (i % 2 == 0) {
+          assertNotNull(recordLocation);
+          checkRecordLocation(recordLocation, "segment2", i / 2, 120);
+        } else {
+          assertNull(recordLocation);
+        }
+      }
+
+      // Remove the second segment by scanning the whole map when the primary key lookup fails
+      recordLocationMap.removeSegment(validDocIds2, docId -> {
+        throw new IllegalStateException();
+      });
+      assertEquals(recordLocationMap.size(), 0);
+
+      // Removed segments should not be resolved again
+      ThreadSafeMutableRoaringBitmap validDocIds3 = new ThreadSafeMutableRoaringBitmap(0);
+      recordLocationMap.compute(OffHeapRecordLocationMap.hash(getPrimaryKey(0)),
+          currentRecordLocation -> new RecordLocation("segment3", 0, 140, validDocIds3));
+      RecordLocation recordLocation = recordLocationMap.get(OffHeapRecordLocationMap.hash(getPrimaryKey(0)));
+      assertNotNull(recordLocation);
+      checkRecordLocation(recordLocation, "segment3", 0, 140);
+      recordLocationMap.removeSegment(validDocIds3, null);
+      assertEquals(recordLocationMap.size(), 0);
+    }
+  }
+
+  @Test
+  public void testPartitionUpsertMetadataManagerWithPrimaryKeySnapshot()
+      throws IOException {
+    PartitionUpsertMetadataManager upsertMetadataManager =
+        new PartitionUpsertMetadataManager(REALTIME_TABLE_NAME, 0, Mockito.mock(ServerMetrics.class),
+            new OffHeapRecordLocationMap("partition", null));
+    File indexDir = new File(TEMP_DIR, "segment");
+    FileUtils.forceMkdir(indexDir);
+
+    // Add the segment and persist the primary key snapshot
+    String segmentName = new LLCSegmentName(RAW_TABLE_NAME, 0, 1, System.currentTimeMillis()).toString();
+    List<RecordInfo> recordInfoList = new ArrayList<>();
+    recordInfoList.add(new RecordInfo(getPrimaryKey(0), 0, 100));
+    recordInfoList.add(new RecordInfo(getPrimaryKey(1), 1, 100));
+    recordInfoList.add(new RecordInfo(getPrimaryKey(0), 2, 120));
+    recordInfoList.add(new RecordInfo(getPrimaryKey(1), 3, 80));
+    try (PrimaryKeySnapshot.Writer writer = new PrimaryKeySnapshot.Writer(indexDir, 123L, recordInfoList.size())) {
+      for (RecordInfo recordInfo : recordInfoList) {
+        writer.add(recordInfo.getPrimaryKeyHash(), recordInfo.getTimestamp());
+      }
+    }
+    ThreadSafeMutableRoaringBitmap validDocIds =
+        upsertMetadataManager.addSegment(segmentName, recordInfoList.iterator());
+    assertEquals(validDocIds.getMutableRoaringBitmap().toArray(), new int[]{1, 2});
+    assertEquals(upsertMetadataManager.getNumPrimaryKeys(), 2);
+
+    // Stale snapshot should be ignored and removed
+    assertNull(PrimaryKeySnapshot.load(indexDir, 456L, recordInfoList.size()));
+    assertFalse(new File(indexDir, PrimaryKeySnapshot.FILE_NAME).exists());
+
+    // Re-add the segment from the snapshot after removing it
+    try (PrimaryKeySnapshot.Writer writer = new PrimaryKeySnapshot.Writer(indexDir, 123L, recordInfoList.size())) {
+      for (RecordInfo recordInfo : recordInfoList) {
+        writer.add(recordInfo.getPrimaryKeyHash(), recordInfo.getTimestamp());
+      }
+    }
+    upsertMetadataManager.removeSegment(segmentName, validDocIds);
+    assertEquals(upsertMetadataManager.getNumPrimaryKeys(), 0);
+    try (PrimaryKeySnapshot snapshot = PrimaryKeySnapshot.load(indexDir, 123L, recordInfoList.size())) {
+      assertNotNull(snapshot);
+      Iterator<RecordInfo> recordInfoIterator = snapshot.iterator();
+      ThreadSafeMutableRoaringBitmap newValidDocIds = upsertMetadataManager.addSegment(segmentName, recordInfoIterator);
+      assertEquals(newValidDocIds.getMutableRoaringBitmap().toArray(), new int[]{1, 2});
+    }
+    assertEquals(upsertMetadataManager.getNumPrimaryKeys(), 2);
+    upsertMetadataManager.close();
+  }
+
+  private static PrimaryKey getPrimaryKey(int value) {
+    return new PrimaryKey(new Object[]{value, "key" + value});
+  }
+
+  private static void checkRecordLocation(RecordLocation recordLocation, String segmentName, int docId,
+      long timestamp) {
+    assertEquals(recordLocation.getSegmentName(), segmentName);
+    assertEquals(recordLocation.getDocId(), docId);
+    assertEquals(recordLocation.getTimestamp(), timestamp);
+  }
+}
@@ -0,0 +1,71 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pinot.core.upsert;
+
+import java.io.File;
+import java.io.IOException;
+import org.apache.commons.io.FileUtils;
+import org.roaringbitmap.buffer.MutableRoaringBitmap;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+
+
+public class ValidDocIdsSnapshotTest {
+  private static final File INDEX_DIR = new File(FileUtils.getTempDirectory(), "ValidDocIdsSnapshotTest");
+
+  @BeforeClass
+  public void setUp()
+      throws IOException {
+    FileUtils.deleteDirectory(INDEX_DIR);
+    FileUtils.forceMkdir(INDEX_DIR);
+  }
+
+  @AfterClass
+  public void tearDown()
+      throws IOException {
+    FileUtils.deleteDirectory(INDEX_DIR);
+  }
+
+  @Test
+  public void testPersistAndLoad()
+      throws IOException {
+    File snapshotFile = new File(INDEX_DIR, ValidDocIdsSnapshot.FILE_NAME);
+    assertNull(ValidDocIdsSnapshot.loadAndDelete(INDEX_DIR, 123L));
+
+    MutableRoaringBitmap validDocIds = MutableRoaringBitmap.bitmapOf(1, 3, 5, 100000);
+    ValidDocIdsSnapshot.persist(INDEX_DIR, 123L, validDocIds);
+    MutableRoaringBitmap loadedValidDocIds = ValidDocIdsSnapshot.loadAndDelete(INDEX_DIR, 123L);
+    assertNotNull(loadedValidDocIds);
+    assertEquals(loadedValidDocIds, validDocIds);
+    // The snapshot should be deleted after being loaded
+    assertFalse(snapshotFile.exists());
+    assertNull(ValidDocIdsSnapshot.loadAndDelete(INDEX_DIR, 123L));
+
+    // Snapshot with mismatching CRC should be ignored and deleted
+    ValidDocIdsSnapshot.persist(INDEX_DIR, 123L, validDocIds);
+    assertNull(ValidDocIdsSnapshot.loadAndDelete(INDEX_DIR, 456L));
+    assertFalse(snapshotFile.exists());
+  }
+}
@@ -18,9 +18,25 @@
  */
 package org.apache.pinot.realtime.converter;
 
+import java.io.File;
+import java.net.URL;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
+import org.apache.commons.io.FileUtils;
+import org.apache.pinot.core.data.recordtransformer.CompositeTransformer;
+import org.apache.pinot.core.indexsegment.generator.SegmentGeneratorConfig;
+import org.apache.pinot.core.indexsegment.immutable.ImmutableSegment;
+import org.apache.pinot.core.indexsegment.immutable.ImmutableSegmentLoader;
+import org.apache.pinot.core.indexsegment.mutable.MutableSegmentImpl;
+import org.apache.pinot.core.indexsegment.mutable.MutableSegmentImplTestUtils;
 import org.apache.pinot.core.realtime.converter.RealtimeSegmentConverter;
+import org.apache.pinot.core.realtime.converter.RealtimeSegmentRecordReader;
+import org.apache.pinot.core.realtime.converter.stats.RealtimeSegmentSegmentCreationDataSource;
+import org.apache.pinot.core.segment.creator.impl.SegmentIndexCreationDriverImpl;
 import org.apache.pinot.core.segment.virtualcolumn.VirtualColumnProviderFactory;
+import org.apache.pinot.segments.v1.creator.SegmentTestUtils;
 import org.apache.pinot.spi.config.table.TableConfig;
 import org.apache.pinot.spi.config.table.TableType;
 import org.apache.pinot.spi.data.DimensionFieldSpec;
@@ -29,12 +45,19 @@ import org.apache.pinot.spi.data.MetricFieldSpec;
 import org.apache.pinot.spi.data.Schema;
 import org.apache.pinot.spi.data.TimeFieldSpec;
 import org.apache.pinot.spi.data.TimeGranularitySpec;
+import org.apache.pinot.spi.data.readers.FileFormat;
+import org.apache.pinot.spi.data.readers.GenericRow;
+import org.apache.pinot.spi.data.readers.RecordReader;
+import org.apache.pinot.spi.data.readers.RecordReaderFactory;
+import org.apache.pinot.spi.utils.ReadMode;
 import org.apache.pinot.spi.utils.builder.TableConfigBuilder;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
 
 public class RealtimeSegmentConverterTest {
+  private static final File TEMP_DIR = new File(FileUtils.getTempDirectory(), "RealtimeSegmentConverterTest");
+  private static final String AVRO_FILE = "data/test_data-mv.avro";
 
   @Test
   public void testNoVirtualColumnsInSchema() {
@@ -47,4 +70,97 @@ public class RealtimeSegmentConverterTest {
     Schema newSchema = RealtimeSegmentConverter.getUpdatedSchema(schema);
     Assert.assertEquals(newSchema.getColumnNames().size(), 2);
   }
+
+  @Test
+  public void testBuildByColumn()
+      throws Exception {
+    URL resourceUrl = RealtimeSegmentConverterTest.class.getClassLoader().getResource(AVRO_FILE);
+    Assert.assertNotNull(resourceUrl);
+    File avroFile = new File(resourceUrl.getFile());
+    Schema schema = SegmentTestUtils.extractSchemaFromAvroWithoutTime(avroFile);
+    Set<String> invertedIndexColumns = new HashSet<>(schema.getDimensionNames());
+    String sortedColumn = null;
+    for (FieldSpec fieldSpec : schema.getAllFieldSpecs()) {
+      if (fieldSpec.getFieldType() == FieldSpec.FieldType.DIMENSION && fieldSpec.isSingleValueField()) {
+        sortedColumn = fieldSpec.getName();
+        break;
+      }
+    }
+    Assert.assertNotNull(sortedColumn);
+
+    MutableSegmentImpl mutableSegment = MutableSegmentImplTestUtils
+        .createMutableSegmentImpl(schema, Collections.emptySet(), Collections.emptySet(), invertedIndexColumns, false);
+    try (RecordReader recordReader = RecordReaderFactory
+        .getRecordReader(FileFormat.AVRO, avroFile, schema.getColumnNames(), null)) {
+      while (recordReader.hasNext()) {
+        mutableSegment.index(recordReader.next(), null);
+      }
+    }
+
+    FileUtils.deleteDirectory(TEMP_DIR);
+    ImmutableSegment expectedSegment = null;
+    ImmutableSegment actualSegment = null;
+    try {
+      File rowBasedSegmentDir = buildSegment(mutableSegment, schema, sortedColumn, "rowBased", false);
+      File columnBasedSegmentDir = buildSegment(mutableSegment, schema, sortedColumn, "columnBased", true);
+      expectedSegment = ImmutableSegmentLoader.load(rowBasedSegmentDir, ReadMode.heap);
+      actualSegment = ImmutableSegmentLoader.load(columnBasedSegmentDir, ReadMode.heap);
+
+      int numDocs = expectedSegment.getSegmentMetadata().getTotalDocs();
+      Assert.assertEquals(numDocs, mutableSegment.getNumDocsIndexed());
+      Assert.assertEquals(actualSegment.getSegmentMetadata().getTotalDocs(), numDocs);
+      GenericRow expectedRow = new GenericRow();
+      GenericRow actualRow = new GenericRow();
+      for (int docId = 0; docId < numDocs; docId++) {
+        expectedSegment.getRecord(docId, expectedRow);
+        actualSegment.getRecord(docId, actualRow);
+        for (String column : schema.getPhysicalColumnNames()) {
+          Object expectedValue = expectedRow.getValue(column);
+          Object actualValue = actualRow.getValue(column);
+          if (expectedValue instanceof Object[]) {
+            Assert.assertEquals((Object[]) actualValue, (Object[]) expectedValue);
+          } else {
+            Assert.assertEquals(actualValue, expectedValue);
+          }
+        }
+      }
+      for (String column : schema.getPhysicalColumnNames()) {
+        Assert.assertEquals(actualSegment.getSegmentMetadata().getColumnMetadataFor(column).getCardinality(),
+            expectedSegment.getSegmentMetadata().getColumnMetadataFor(column).getCardinality());
+      }
+    } finally {
+      if (expectedSegment != null) {
+        expectedSegment.destroy();
+      }
+      if (actualSegment != null) {
+        actualSegment.destroy();
+      }
+      mutableSegment.destroy();
+      FileUtils.deleteDirectory(TEMP_DIR);
+    }
+  }
+
+  private static File buildSegment(MutableSegmentImpl mutableSegment, Schema schema, String sortedColumn,
+      String segmentName, boolean buildByColumn)
+      throws Exception {
+    TableConfig tableConfig = new TableConfigBuilder(TableType.REALTIME).setTableName("testTable").build();
+    SegmentGeneratorConfig genConfig = new SegmentGeneratorConfig(tableConfig, schema);
+    genConfig.setSkipTimeValueCheck(true);
+    for (String column : schema.getDimensionNames()) {
+      genConfig.createInvertedIndexForColumn(column);
+    }
+    genConfig.setTableName("testTable");
+    genConfig.setOutDir(TEMP_DIR.getAbsolutePath());
+    genConfig.setSegmentName(segmentName);
+    RealtimeSegmentRecordReader reader = new RealtimeSegmentRecordReader(mutableSegment, sortedColumn);
+    SegmentIndexCreationDriverImpl driver = new SegmentIndexCreationDriverImpl();
+    driver.init(genConfig, new RealtimeSegmentSegmentCreationDataSource(mutableSegment, reader, schema),
+        CompositeTransformer.getPassThroughTransformer());
+    if (buildByColumn) {
+      driver.buildByColumn(mutableSegment, reader.getSortedDocIdIterationOrder());
+    } else {
+      driver.build();
+    }
+    return driver.getOutputDirectory();
+  }
 }
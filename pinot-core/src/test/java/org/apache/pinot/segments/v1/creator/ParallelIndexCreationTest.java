@@ -0,0 +1,87 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pinot.segments.v1.creator;
+
+import java.io.File;
+import java.net.URL;
+import java.util.Arrays;
+import org.apache.commons.io.FileUtils;
+import org.apache.pinot.core.indexsegment.generator.SegmentGeneratorConfig;
+import org.apache.pinot.core.indexsegment.generator.SegmentVersion;
+import org.apache.pinot.core.segment.creator.SegmentIndexCreationDriver;
+import org.apache.pinot.core.segment.creator.impl.SegmentIndexCreationDriverImpl;
+import org.apache.pinot.core.segment.creator.impl.V1Constants;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.Test;
+
+
+/**
+ * Tests that the segment created with parallel index creation is identical to the one created on a single thread.
+ */
+public class ParallelIndexCreationTest {
+  private static final String AVRO_FILE_PATH = "data" + File.separator + "test_sample_data.avro";
+  private static final File INDEX_DIR =
+      new File(FileUtils.getTempDirectory(), ParallelIndexCreationTest.class.getSimpleName());
+
+  @Test
+  public void testParallelIndexCreation()
+      throws Exception {
+    FileUtils.deleteQuietly(INDEX_DIR);
+    URL resourceUrl = getClass().getClassLoader().getResource(AVRO_FILE_PATH);
+    Assert.assertNotNull(resourceUrl);
+    File avroFile = new File(resourceUrl.getFile());
+
+    File serialSegmentDir = buildSegment(avroFile, new File(INDEX_DIR, "serial"), 1);
+    File parallelSegmentDir = buildSegment(avroFile, new File(INDEX_DIR, "parallel"), 4);
+
+    File[] serialFiles = serialSegmentDir.listFiles();
+    Assert.assertNotNull(serialFiles);
+    Assert.assertEquals(parallelSegmentDir.list().length, serialFiles.length);
+    for (File serialFile : serialFiles) {
+      String fileName = serialFile.getName();
+      // Segment metadata contains the creation time
+      if (fileName.equals(V1Constants.MetadataKeys.METADATA_FILE_NAME) || fileName
+          .equals(V1Constants.SEGMENT_CREATION_META)) {
+        continue;
+      }
+      File parallelFile = new File(parallelSegmentDir, fileName);
+      Assert.assertTrue(parallelFile.isFile(), "Missing index file: " + fileName);
+      Assert.assertTrue(FileUtils.contentEquals(serialFile, parallelFile), "Different index file: " + fileName);
+    }
+  }
+
+  private File buildSegment(File avroFile, File outputDir, int indexCreationParallelism)
+      throws Exception {
+    SegmentGeneratorConfig segmentGeneratorConfig =
+        SegmentTestUtils.getSegmentGeneratorConfigWithoutTimeColumn(avroFile, outputDir, "myTable");
+    segmentGeneratorConfig.setSegmentVersion(SegmentVersion.v1);
+    segmentGeneratorConfig.setInvertedIndexCreationColumns(Arrays.asList("column10", "met_impressionCount"));
+    segmentGeneratorConfig.setIndexCreationParallelism(indexCreationParallelism);
+    SegmentIndexCreationDriver driver = new SegmentIndexCreationDriverImpl();
+    driver.init(segmentGeneratorConfig);
+    driver.build();
+    return new File(outputDir, driver.getSegmentName());
+  }
+
+  @AfterClass
+  public void tearDown() {
+    FileUtils.deleteQuietly(INDEX_DIR);
+  }
+}
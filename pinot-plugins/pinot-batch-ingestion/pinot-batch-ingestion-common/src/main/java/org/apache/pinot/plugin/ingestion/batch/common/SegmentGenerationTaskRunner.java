@@ -98,6 +98,9 @@ public class SegmentGenerationTaskRunner implements Serializable {
     segmentGeneratorConfig.setReaderConfig(recordReaderConfig);
     segmentGeneratorConfig.setRecordReaderPath(_taskSpec.getRecordReaderSpec().getClassName());
     segmentGeneratorConfig.setInputFilePath(_taskSpec.getInputFilePath());
+    if (_taskSpec.getIndexCreationParallelism() > 1) {
+      segmentGeneratorConfig.setIndexCreationParallelism(_taskSpec.getIndexCreationParallelism());
+    }
 
     //build segment
     SegmentIndexCreationDriverImpl segmentIndexCreationDriver = new SegmentIndexCreationDriverImpl();
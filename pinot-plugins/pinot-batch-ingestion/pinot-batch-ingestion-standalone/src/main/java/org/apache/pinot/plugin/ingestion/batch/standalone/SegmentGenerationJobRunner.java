@@ -25,12 +25,14 @@ import java.nio.file.FileSystems;
 import java.nio.file.PathMatcher;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.UUID;
 
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
 import org.apache.commons.io.FileUtils;
 import org.apache.pinot.common.utils.TarGzCompressionUtils;
 import org.apache.pinot.plugin.ingestion.batch.common.SegmentGenerationTaskRunner;
@@ -129,7 +131,6 @@ public class SegmentGenerationJobRunner implements IngestionJobRunner {
     //Get list of files to process
     String[] files = inputDirFS.listFiles(inputDirURI, true);
 
-    //TODO: sort input files based on creation time
     List<String> filteredFiles = new ArrayList<>();
     PathMatcher includeFilePathMatcher = null;
     if (_spec.getIncludeFileNamePattern() != null) {
@@ -155,6 +156,8 @@ public class SegmentGenerationJobRunner implements IngestionJobRunner {
         filteredFiles.add(file);
       }
     }
+    // Sort the input files so that the sequence ids (used to generate the segment names) are deterministic
+    Collections.sort(filteredFiles);
     File localTempDir = new File(FileUtils.getTempDirectory(), "pinot-" + UUID.randomUUID());
     try {
       //create localTempDir for input and output
@@ -169,15 +172,17 @@ public class SegmentGenerationJobRunner implements IngestionJobRunner {
 
       int numInputFiles = filteredFiles.size();
       CountDownLatch segmentCreationTaskCountDownLatch = new CountDownLatch(numInputFiles);
+      // Throttle the concurrent tasks by the total size of the input files being processed (in KB)
+      int maxInFlightInputKBs = getMaxInFlightInputKBs(_spec.getSegmentCreationJobMaxInFlightInputBytes());
+      Semaphore inFlightInputKBs = new Semaphore(maxInFlightInputKBs);
       //iterate on the file list, for each
       for (int i = 0; i < numInputFiles; i++) {
         final URI inputFileURI = getFileURI(filteredFiles.get(i), inputDirURI.getScheme());
-
-        //copy input path to local
-        File localInputDataFile = new File(localInputTempDir, new File(inputFileURI.getPath()).getName());
-        inputDirFS.copyToLocalFile(inputFileURI, localInputDataFile);
+        int inputKBs = getInputKBs(inputDirFS.length(inputFileURI), maxInFlightInputKBs);
+        inFlightInputKBs.acquire(inputKBs);
 
         //create task spec
+        File localInputDataFile = new File(localInputTempDir, i + "-" + new File(inputFileURI.getPath()).getName());
         SegmentGenerationTaskSpec taskSpec = new SegmentGenerationTaskSpec();
         taskSpec.setInputFilePath(localInputDataFile.getAbsolutePath());
         taskSpec.setOutputDirectoryPath(localOutputTempDir.getAbsolutePath());
@@ -186,15 +191,18 @@ public class SegmentGenerationJobRunner implements IngestionJobRunner {
         taskSpec.setTableConfig(tableConfig.toJsonNode());
         taskSpec.setSequenceId(i);
         taskSpec.setSegmentNameGeneratorSpec(_spec.getSegmentNameGeneratorSpec());
+        taskSpec.setIndexCreationParallelism(_spec.getSegmentIndexCreationParallelism());
 
         LOGGER.info("Submitting one Segment Generation Task for {}", inputFileURI);
         _executorService.submit(() -> {
           File localSegmentDir = null;
           File localSegmentTarFile = null;
           try {
+            //copy input path to local
+            inputDirFS.copyToLocalFile(inputFileURI, localInputDataFile);
+
             //invoke segmentGenerationTask
-            SegmentGenerationTaskRunner taskRunner = new SegmentGenerationTaskRunner(taskSpec);
-            String segmentName = taskRunner.run();
+            String segmentName = generateSegment(taskSpec);
             // Tar segment directory to compress file
             localSegmentDir = new File(localOutputTempDir, segmentName);
             String segmentTarFileName = segmentName + Constants.TAR_GZ_FILE_EXT;
@@ -218,6 +226,7 @@ public class SegmentGenerationJobRunner implements IngestionJobRunner {
           } catch (Exception e) {
             LOGGER.error("Failed to generate Pinot segment for file - {}", inputFileURI, e);
           } finally {
+            inFlightInputKBs.release(inputKBs);
             segmentCreationTaskCountDownLatch.countDown();
             FileUtils.deleteQuietly(localSegmentDir);
             FileUtils.deleteQuietly(localSegmentTarFile);
@@ -233,6 +242,34 @@ public class SegmentGenerationJobRunner implements IngestionJobRunner {
     }
   }
 
+  /**
+   * Generates the segment for the given task, and returns the segment name.
+   */
+  String generateSegment(SegmentGenerationTaskSpec taskSpec)
+      throws Exception {
+    return new SegmentGenerationTaskRunner(taskSpec).run();
+  }
+
+  /**
+   * Returns the max total size (in KB) of the input files processed concurrently, defaults to half of the max heap.
+   */
+  static int getMaxInFlightInputKBs(long maxInFlightInputBytes) {
+    if (maxInFlightInputBytes <= 0) {
+      maxInFlightInputBytes = Runtime.getRuntime().maxMemory() / 2;
+    }
+    LOGGER.info("Throttling segment creation tasks with max in-flight input size: {}",
+        DataSizeUtils.fromBytes(maxInFlightInputBytes));
+    return (int) Math.max(Math.min(maxInFlightInputBytes >> 10, Integer.MAX_VALUE), 1);
+  }
+
+  /**
+   * Returns the number of permits (in KB) to acquire for an input file. Capped at the max in-flight input size so that
+   * a file larger than the budget can still be processed (alone).
+   */
+  static int getInputKBs(long inputFileLength, int maxInFlightInputKBs) {
+    return (int) Math.max(Math.min((inputFileLength + 1023) >> 10, maxInFlightInputKBs), 1);
+  }
+
   private URI getDirectoryUri(String uriStr)
       throws URISyntaxException {
     URI uri = new URI(uriStr);
@@ -0,0 +1,211 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pinot.plugin.ingestion.batch.standalone;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.commons.io.FileUtils;
+import org.apache.pinot.spi.config.table.TableType;
+import org.apache.pinot.spi.data.FieldSpec;
+import org.apache.pinot.spi.data.Schema;
+import org.apache.pinot.spi.ingestion.batch.spec.RecordReaderSpec;
+import org.apache.pinot.spi.ingestion.batch.spec.SegmentGenerationJobSpec;
+import org.apache.pinot.spi.ingestion.batch.spec.SegmentGenerationTaskSpec;
+import org.apache.pinot.spi.ingestion.batch.spec.TableSpec;
+import org.apache.pinot.spi.utils.builder.TableConfigBuilder;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+
+public class SegmentGenerationJobRunnerTest {
+  private static final File TEMP_DIR = new File(FileUtils.getTempDirectory(), "SegmentGenerationJobRunnerTest");
+  private static final File INPUT_DIR = new File(TEMP_DIR, "input");
+  private static final File OUTPUT_DIR = new File(TEMP_DIR, "output");
+  private static final String TABLE_NAME = "testTable";
+
+  @BeforeMethod
+  public void setUp()
+      throws IOException {
+    FileUtils.deleteQuietly(TEMP_DIR);
+    FileUtils.forceMkdir(INPUT_DIR);
+    FileUtils.forceMkdir(OUTPUT_DIR);
+  }
+
+  @AfterMethod
+  public void tearDown() {
+    FileUtils.deleteQuietly(TEMP_DIR);
+  }
+
+  @Test
+  public void testInputFilesSortedAndIndexCreationParallelism()
+      throws Exception {
+    writeInputFile("c.csv", 10);
+    writeInputFile("a.csv", 10);
+    writeInputFile("b.csv", 10);
+    SegmentGenerationJobSpec spec = getJobSpec(3, 0);
+    spec.setSegmentIndexCreationParallelism(4);
+
+    TestSegmentGenerationJobRunner runner = new TestSegmentGenerationJobRunner(spec, 0);
+    runner.run();
+
+    // Sequence ids should follow the sorted input file names regardless of the listing order
+    assertEquals(runner._inputFileNames.size(), 3);
+    assertEquals(runner._inputFileNames.get(0), "a.csv");
+    assertEquals(runner._inputFileNames.get(1), "b.csv");
+    assertEquals(runner._inputFileNames.get(2), "c.csv");
+    assertEquals(runner._indexCreationParallelisms.size(), 3);
+    for (int indexCreationParallelism : runner._indexCreationParallelisms.values()) {
+      assertEquals(indexCreationParallelism, 4);
+    }
+    for (int i = 0; i < 3; i++) {
+      assertTrue(new File(OUTPUT_DIR, "segment_" + i + ".tar.gz").exists());
+    }
+  }
+
+  @Test
+  public void testMaxInFlightInputBytes()
+      throws Exception {
+    for (int i = 0; i < 6; i++) {
+      writeInputFile(i + ".csv", 1024);
+    }
+    // Allow at most 2 input files (1KB each) in flight even though there are 6 threads
+    SegmentGenerationJobSpec spec = getJobSpec(6, 2048);
+
+    TestSegmentGenerationJobRunner runner = new TestSegmentGenerationJobRunner(spec, 100);
+    runner.run();
+
+    assertEquals(runner._inputFileNames.size(), 6);
+    assertTrue(runner._maxInFlightInputKBs.get() <= 2, "In-flight input KBs: " + runner._maxInFlightInputKBs.get());
+  }
+
+  @Test(timeOut = 30_000L)
+  public void testInputFileLargerThanMaxInFlightInputBytes()
+      throws Exception {
+    writeInputFile("a.csv", 5 * 1024);
+    writeInputFile("b.csv", 10 * 1024);
+    // Files larger than the budget should be processed one at a time instead of blocking forever
+    SegmentGenerationJobSpec spec = getJobSpec(2, 1024);
+
+    TestSegmentGenerationJobRunner runner = new TestSegmentGenerationJobRunner(spec, 100);
+    runner.run();
+
+    assertEquals(runner._inputFileNames.size(), 2);
+    assertEquals(runner._maxInFlightInputKBs.get(), 10);
+    assertEquals(runner._maxConcurrentTasks.get(), 1);
+    assertTrue(new File(OUTPUT_DIR, "segment_0.tar.gz").exists());
+    assertTrue(new File(OUTPUT_DIR, "segment_1.tar.gz").exists());
+  }
+
+  @Test
+  public void testGetMaxInFlightInputKBs() {
+    // Default to half of the max heap
+    int expectedDefault = (int) Math.min((Runtime.getRuntime().maxMemory() / 2) >> 10, Integer.MAX_VALUE);
+    assertEquals(SegmentGenerationJobRunner.getMaxInFlightInputKBs(0), expectedDefault);
+    assertEquals(SegmentGenerationJobRunner.getMaxInFlightInputKBs(-1), expectedDefault);
+    assertEquals(SegmentGenerationJobRunner.getMaxInFlightInputKBs(1024 * 1024), 1024);
+    assertEquals(SegmentGenerationJobRunner.getMaxInFlightInputKBs(100), 1);
+    assertEquals(SegmentGenerationJobRunner.getMaxInFlightInputKBs(Long.MAX_VALUE), Integer.MAX_VALUE);
+
+    assertEquals(SegmentGenerationJobRunner.getInputKBs(0, 10), 1);
+    assertEquals(SegmentGenerationJobRunner.getInputKBs(1024, 10), 1);
+    assertEquals(SegmentGenerationJobRunner.getInputKBs(1025, 10), 2);
+    assertEquals(SegmentGenerationJobRunner.getInputKBs(1024 * 1024, 10), 10);
+  }
+
+  private static void writeInputFile(String fileName, int numBytes)
+      throws IOException {
+    FileUtils.writeByteArrayToFile(new File(INPUT_DIR, fileName), new byte[numBytes]);
+  }
+
+  private static SegmentGenerationJobSpec getJobSpec(int jobParallelism, long maxInFlightInputBytes)
+      throws IOException {
+    File schemaFile = new File(TEMP_DIR, "schema.json");
+    Schema schema = new Schema.SchemaBuilder().setSchemaName(TABLE_NAME)
+        .addSingleValueDimension("col", FieldSpec.DataType.STRING).build();
+    FileUtils.writeStringToFile(schemaFile, schema.toSingleLineJsonString());
+    File tableConfigFile = new File(TEMP_DIR, "tableConfig.json");
+    FileUtils.writeStringToFile(tableConfigFile,
+        new TableConfigBuilder(TableType.OFFLINE).setTableName(TABLE_NAME).build().toJsonString());
+
+    TableSpec tableSpec = new TableSpec();
+    tableSpec.setTableName(TABLE_NAME);
+    tableSpec.setSchemaURI(schemaFile.toURI().toString());
+    tableSpec.setTableConfigURI(tableConfigFile.toURI().toString());
+
+    SegmentGenerationJobSpec spec = new SegmentGenerationJobSpec();
+    spec.setInputDirURI(INPUT_DIR.toURI().toString());
+    spec.setOutputDirURI(OUTPUT_DIR.toURI().toString());
+    spec.setRecordReaderSpec(new RecordReaderSpec());
+    spec.setTableSpec(tableSpec);
+    spec.setPinotFSSpecs(Collections.emptyList());
+    spec.setSegmentCreationJobParallelism(jobParallelism);
+    spec.setSegmentCreationJobMaxInFlightInputBytes(maxInFlightInputBytes);
+    return spec;
+  }
+
+  /**
+   * Runner that fakes the segment generation, and tracks the tasks and the input size being processed concurrently.
+   */
+  private static class TestSegmentGenerationJobRunner extends SegmentGenerationJobRunner {
+    final Map<Integer, String> _inputFileNames = new ConcurrentHashMap<>();
+    final Map<Integer, Integer> _indexCreationParallelisms = new ConcurrentHashMap<>();
+    final AtomicInteger _inFlightInputKBs = new AtomicInteger();
+    final AtomicInteger _maxInFlightInputKBs = new AtomicInteger();
+    final AtomicInteger _concurrentTasks = new AtomicInteger();
+    final AtomicInteger _maxConcurrentTasks = new AtomicInteger();
+    final long _taskDurationMs;
+
+    TestSegmentGenerationJobRunner(SegmentGenerationJobSpec spec, long taskDurationMs) {
+      super(spec);
+      _taskDurationMs = taskDurationMs;
+    }
+
+    @Override
+    String generateSegment(SegmentGenerationTaskSpec taskSpec)
+        throws Exception {
+      int sequenceId = taskSpec.getSequenceId();
+      File inputFile = new File(taskSpec.getInputFilePath());
+      // Local input file is named as '<sequenceId>-<inputFileName>'
+      _inputFileNames.put(sequenceId, inputFile.getName().substring(inputFile.getName().indexOf('-') + 1));
+      _indexCreationParallelisms.put(sequenceId, taskSpec.getIndexCreationParallelism());
+
+      int inputKBs = (int) ((inputFile.length() + 1023) >> 10);
+      _maxInFlightInputKBs.accumulateAndGet(_inFlightInputKBs.addAndGet(inputKBs), Math::max);
+      _maxConcurrentTasks.accumulateAndGet(_concurrentTasks.incrementAndGet(), Math::max);
+      try {
+        Thread.sleep(_taskDurationMs);
+        String segmentName = "segment_" + sequenceId;
+        FileUtils.writeStringToFile(new File(new File(taskSpec.getOutputDirectoryPath(), segmentName), "data"),
+            segmentName);
+        return segmentName;
+      } finally {
+        _concurrentTasks.decrementAndGet();
+        _inFlightInputKBs.addAndGet(-inputKBs);
+      }
+    }
+  }
+}
@@ -19,42 +19,63 @@
 package org.apache.pinot.plugin.filesystem;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.RandomAccessFile;
 import java.io.UnsupportedEncodingException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.input.BoundedInputStream;
 import org.apache.pinot.spi.env.PinotConfiguration;
 import org.apache.pinot.spi.filesystem.PinotFS;
+import org.apache.pinot.spi.utils.retry.RetryPolicies;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
 import software.amazon.awssdk.auth.credentials.AwsCredentialsProvider;
 import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
 import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.core.exception.SdkException;
 import software.amazon.awssdk.core.sync.RequestBody;
 import software.amazon.awssdk.core.sync.ResponseTransformer;
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.s3.S3ClientBuilder;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompletedMultipartUpload;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
 import software.amazon.awssdk.services.s3.model.CopyObjectRequest;
 import software.amazon.awssdk.services.s3.model.CopyObjectResponse;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
 import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
 import software.amazon.awssdk.services.s3.model.DeleteObjectResponse;
 import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
 import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
 import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
 import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
@@ -65,6 +86,7 @@ import software.amazon.awssdk.services.s3.model.PutObjectRequest;
 import software.amazon.awssdk.services.s3.model.PutObjectResponse;
 import software.amazon.awssdk.services.s3.model.S3Exception;
 import software.amazon.awssdk.services.s3.model.S3Object;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
 
 
 public class S3PinotFS extends PinotFS {
@@ -72,11 +94,32 @@ public class S3PinotFS extends PinotFS {
   public static final String SECRET_KEY = "secretKey";
   public static final String REGION = "region";
   public static final String ENDPOINT = "endpoint";
+  // Files larger than the part size are downloaded with parallel ranged GETs and uploaded with parallel multipart
+  // upload when the transfer parallelism is larger than 1. Note that S3 requires each part except the last one of a
+  // multipart upload to be at least 5MB.
+  public static final String TRANSFER_PART_SIZE_BYTES = "transferPartSizeBytes";
+  public static final String TRANSFER_PARALLELISM = "transferParallelism";
+  public static final String TRANSFER_PART_MAX_ATTEMPTS = "transferPartMaxAttempts";
+  public static final long DEFAULT_TRANSFER_PART_SIZE_BYTES = 64 * 1024 * 1024L;
+  public static final int DEFAULT_TRANSFER_PARALLELISM = 1;
+  public static final int DEFAULT_TRANSFER_PART_MAX_ATTEMPTS = 3;
 
   private static final Logger LOGGER = LoggerFactory.getLogger(S3PinotFS.class);
   private static final String DELIMITER = "/";
   public static final String S3_SCHEME = "s3://";
+  // S3 allows at most 10000 parts in a multipart upload
+  private static final int MAX_NUM_PARTS = 10000;
+  // S3 requires each part except the last one of a multipart upload to be at least 5MB
+  private static final long MIN_TRANSFER_PART_SIZE_BYTES = 5 * 1024 * 1024L;
+  private static final long PART_RETRY_INITIAL_DELAY_MS = 100L;
+  private static final double PART_RETRY_DELAY_SCALE_FACTOR = 2.0;
+  private static final int PART_BUFFER_SIZE = 64 * 1024;
+
   private S3Client _s3Client;
+  private long _transferPartSizeBytes = DEFAULT_TRANSFER_PART_SIZE_BYTES;
+  private int _transferPartMaxAttempts = DEFAULT_TRANSFER_PART_MAX_ATTEMPTS;
+  // Executor for the parallel part transfers, null if parallel transfer is disabled
+  private ExecutorService _transferExecutor;
 
   @Override
   public void init(PinotConfiguration config) {
@@ -108,12 +151,35 @@ public class S3PinotFS extends PinotFS {
     } catch (S3Exception e) {
       throw new RuntimeException("Could not initialize S3PinotFS", e);
     }
+    initTransfer(config);
   }
 
   public void init(S3Client s3Client) {
     _s3Client = s3Client;
   }
 
+  public void init(S3Client s3Client, PinotConfiguration config) {
+    _s3Client = s3Client;
+    initTransfer(config);
+  }
+
+  private void initTransfer(PinotConfiguration config) {
+    _transferPartSizeBytes = config.getProperty(TRANSFER_PART_SIZE_BYTES, DEFAULT_TRANSFER_PART_SIZE_BYTES);
+    Preconditions.checkArgument(_transferPartSizeBytes >= MIN_TRANSFER_PART_SIZE_BYTES,
+        "Invalid transfer part size: %s, must be at least %s bytes", _transferPartSizeBytes,
+        MIN_TRANSFER_PART_SIZE_BYTES);
+    _transferPartMaxAttempts = config.getProperty(TRANSFER_PART_MAX_ATTEMPTS, DEFAULT_TRANSFER_PART_MAX_ATTEMPTS);
+    Preconditions.checkArgument(_transferPartMaxAttempts > 0, "Invalid transfer part max attempts: %s",
+        _transferPartMaxAttempts);
+    int transferParallelism = config.getProperty(TRANSFER_PARALLELISM, DEFAULT_TRANSFER_PARALLELISM);
+    if (transferParallelism > 1) {
+      LOGGER.info("Enabling parallel transfer with parallelism: {}, part size: {} bytes, part max attempts: {}",
+          transferParallelism, _transferPartSizeBytes, _transferPartMaxAttempts);
+      _transferExecutor = Executors.newFixedThreadPool(transferParallelism,
+          new ThreadFactoryBuilder().setNameFormat("s3-transfer-%d").setDaemon(true).build());
+    }
+  }
+
   boolean isNullOrEmpty(String target) {
     return target == null || "".equals(target);
   }
@@ -434,6 +500,13 @@ public class S3PinotFS extends PinotFS {
     URI base = getBase(srcUri);
     FileUtils.forceMkdir(dstFile.getParentFile());
     String prefix = sanitizePath(base.relativize(srcUri).getPath());
+    if (_transferExecutor != null) {
+      long fileSize = length(srcUri);
+      if (fileSize > _transferPartSizeBytes) {
+        parallelDownload(srcUri.getHost(), prefix, fileSize, dstFile);
+        return;
+      }
+    }
     GetObjectRequest getObjectRequest = GetObjectRequest.builder().bucket(srcUri.getHost()).key(prefix).build();
 
     _s3Client.getObject(getObjectRequest, ResponseTransformer.toFile(dstFile));
@@ -445,11 +518,182 @@ public class S3PinotFS extends PinotFS {
     LOGGER.info("Copy {} from local to {}", srcFile.getAbsolutePath(), dstUri);
     URI base = getBase(dstUri);
     String prefix = sanitizePath(base.relativize(dstUri).getPath());
+    if (_transferExecutor != null && srcFile.length() > _transferPartSizeBytes) {
+      multipartUpload(srcFile, dstUri.getHost(), prefix);
+      return;
+    }
     PutObjectRequest putObjectRequest = PutObjectRequest.builder().bucket(dstUri.getHost()).key(prefix).build();
 
     _s3Client.putObject(putObjectRequest, srcFile.toPath());
   }
 
+  /**
+   * Downloads the object with parallel ranged GETs, where each part is written into its own range of the destination
+   * file and retried independently.
+   */
+  private void parallelDownload(String bucket, String key, long fileSize, File dstFile)
+      throws Exception {
+    long partSize = getPartSize(fileSize);
+    int numParts = (int) ((fileSize + partSize - 1) / partSize);
+    LOGGER.info("Downloading s3://{}/{} of size: {} with {} parts", bucket, key, fileSize, numParts);
+    try (RandomAccessFile randomAccessFile = new RandomAccessFile(dstFile, "rw")) {
+      randomAccessFile.setLength(fileSize);
+      FileChannel fileChannel = randomAccessFile.getChannel();
+      List<Callable<Void>> partTasks = new ArrayList<>(numParts);
+      for (int i = 0; i < numParts; i++) {
+        long start = i * partSize;
+        long end = Math.min(start + partSize, fileSize) - 1;
+        GetObjectRequest getObjectRequest =
+            GetObjectRequest.builder().bucket(bucket).key(key).range("bytes=" + start + "-" + end).build();
+        partTasks.add(() -> {
+          attemptPart(() -> downloadPart(getObjectRequest, fileChannel, start, end), getObjectRequest.range());
+          return null;
+        });
+      }
+      runPartTasks(partTasks);
+    } catch (Exception e) {
+      FileUtils.deleteQuietly(dstFile);
+      throw e;
+    }
+  }
+
+  private void downloadPart(GetObjectRequest getObjectRequest, FileChannel fileChannel, long start, long end)
+      throws IOException {
+    try (ResponseInputStream<GetObjectResponse> inputStream = _s3Client.getObject(getObjectRequest)) {
+      byte[] buffer = new byte[PART_BUFFER_SIZE];
+      long position = start;
+      int numBytesRead;
+      while ((numBytesRead = inputStream.read(buffer)) > 0) {
+        ByteBuffer byteBuffer = ByteBuffer.wrap(buffer, 0, numBytesRead);
+        while (byteBuffer.hasRemaining()) {
+          position += fileChannel.write(byteBuffer, position);
+        }
+      }
+      if (position != end + 1) {
+        throw new IOException(
+            String.format("Got %d bytes for range: %s, expected %d", position - start, getObjectRequest.range(),
+                end + 1 - start));
+      }
+    }
+  }
+
+  /**
+   * Uploads the file with parallel multipart upload, where each part is retried independently. The multipart upload is
+   * aborted if any part fails so that the uploaded parts do not linger in the bucket.
+   */
+  private void multipartUpload(File srcFile, String bucket, String key)
+      throws Exception {
+    long fileSize = srcFile.length();
+    long partSize = getPartSize(fileSize);
+    int numParts = (int) ((fileSize + partSize - 1) / partSize);
+    LOGGER.info("Uploading {} of size: {} to s3://{}/{} with {} parts", srcFile, fileSize, bucket, key, numParts);
+    String uploadId = _s3Client
+        .createMultipartUpload(CreateMultipartUploadRequest.builder().bucket(bucket).key(key).build()).uploadId();
+    try {
+      CompletedPart[] completedParts = new CompletedPart[numParts];
+      List<Callable<Void>> partTasks = new ArrayList<>(numParts);
+      for (int i = 0; i < numParts; i++) {
+        int index = i;
+        long start = i * partSize;
+        long length = Math.min(partSize, fileSize - start);
+        UploadPartRequest uploadPartRequest =
+            UploadPartRequest.builder().bucket(bucket).key(key).uploadId(uploadId).partNumber(i + 1)
+                .contentLength(length).build();
+        partTasks.add(() -> {
+          attemptPart(() -> completedParts[index] = uploadPart(uploadPartRequest, srcFile, start, length),
+              "part " + uploadPartRequest.partNumber());
+          return null;
+        });
+      }
+      runPartTasks(partTasks);
+      _s3Client.completeMultipartUpload(
+          CompleteMultipartUploadRequest.builder().bucket(bucket).key(key).uploadId(uploadId)
+              .multipartUpload(CompletedMultipartUpload.builder().parts(completedParts).build()).build());
+    } catch (Exception e) {
+      LOGGER.warn("Aborting multipart upload: {} of s3://{}/{}", uploadId, bucket, key);
+      try {
+        _s3Client.abortMultipartUpload(
+            AbortMultipartUploadRequest.builder().bucket(bucket).key(key).uploadId(uploadId).build());
+      } catch (Exception abortException) {
+        LOGGER.error("Caught exception while aborting multipart upload: {} of s3://{}/{}", uploadId, bucket, key,
+            abortException);
+      }
+      throw e;
+    }
+  }
+
+  private CompletedPart uploadPart(UploadPartRequest uploadPartRequest, File srcFile, long start, long length)
+      throws IOException {
+    try (FileInputStream fileInputStream = new FileInputStream(srcFile)) {
+      fileInputStream.getChannel().position(start);
+      String eTag = _s3Client.uploadPart(uploadPartRequest,
+          RequestBody.fromInputStream(new BoundedInputStream(fileInputStream, length), length)).eTag();
+      return CompletedPart.builder().partNumber(uploadPartRequest.partNumber()).eTag(eTag).build();
+    }
+  }
+
+  /**
+   * Returns the part size for the file, which is enlarged if needed so that the file fits into the max number of parts.
+   */
+  private long getPartSize(long fileSize) {
+    return Math.max(_transferPartSizeBytes, (fileSize + MAX_NUM_PARTS - 1) / MAX_NUM_PARTS);
+  }
+
+  private interface PartTransfer {
+    void transfer()
+        throws IOException;
+  }
+
+  /**
+   * Attempts the part transfer with exponential backoff retry on S3 and IO exceptions.
+   */
+  private void attemptPart(PartTransfer partTransfer, String partDescription)
+      throws Exception {
+    RetryPolicies.exponentialBackoffRetryPolicy(_transferPartMaxAttempts, PART_RETRY_INITIAL_DELAY_MS,
+        PART_RETRY_DELAY_SCALE_FACTOR).attempt(() -> {
+      try {
+        partTransfer.transfer();
+        return true;
+      } catch (SdkException | IOException e) {
+        LOGGER.warn("Caught exception while transferring {}, retrying", partDescription, e);
+        return false;
+      }
+    });
+  }
+
+  /**
+   * Runs the part tasks on the transfer executor and waits for all of them to finish. When any task fails, the pending
+   * tasks are cancelled and the running ones are waited for before the failure is thrown, so that no part is still
+   * being transferred after returning.
+   */
+  private void runPartTasks(List<Callable<Void>> partTasks)
+      throws Exception {
+    List<Future<Void>> futures = new ArrayList<>(partTasks.size());
+    for (Callable<Void> partTask : partTasks) {
+      futures.add(_transferExecutor.submit(partTask));
+    }
+    try {
+      for (Future<Void> future : futures) {
+        future.get();
+      }
+    } catch (Exception e) {
+      for (Future<Void> future : futures) {
+        future.cancel(false);
+      }
+      for (Future<Void> future : futures) {
+        try {
+          future.get();
+        } catch (Exception ignored) {
+          // Already failed or cancelled
+        }
+      }
+      if (e instanceof ExecutionException && e.getCause() instanceof Exception) {
+        throw (Exception) e.getCause();
+      }
+      throw e;
+    }
+  }
+
   @Override
   public boolean isDirectory(URI uri)
       throws IOException {
@@ -524,6 +768,9 @@ public class S3PinotFS extends PinotFS {
   @Override
   public void close()
       throws IOException {
+    if (_transferExecutor != null) {
+      _transferExecutor.shutdownNow();
+    }
     super.close();
   }
 
@@ -27,7 +27,10 @@ import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
+import org.apache.pinot.spi.env.PinotConfiguration;
 import org.testng.Assert;
 import org.testng.annotations.AfterClass;
 import org.testng.annotations.BeforeClass;
@@ -294,6 +297,54 @@ public class S3PinotFSTest {
     fileToDownload.deleteOnExit();
   }
 
+  @Test
+  public void testParallelCopyFromAndToLocal()
+      throws Exception {
+    String fileName = "parallelCopyFile.bin";
+    int partSize = 5 * 1024 * 1024;
+    PinotConfiguration config = new PinotConfiguration();
+    config.setProperty(S3PinotFS.TRANSFER_PART_SIZE_BYTES, partSize);
+    config.setProperty(S3PinotFS.TRANSFER_PARALLELISM, 2);
+    S3PinotFS s3PinotFS = new S3PinotFS();
+    s3PinotFS.init(_s3Client, config);
+
+    File tempDir = new File(FileUtils.getTempDirectory(), "S3PinotFSTest");
+    FileUtils.forceMkdir(tempDir);
+    try {
+      // 2 full parts and a partial part
+      byte[] content = new byte[2 * partSize + 12345];
+      new Random().nextBytes(content);
+      File fileToCopy = new File(tempDir, fileName);
+      FileUtils.writeByteArrayToFile(fileToCopy, content);
+      URI uri = URI.create(String.format(FILE_FORMAT, SCHEME, BUCKET, fileName));
+
+      s3PinotFS.copyFromLocalFile(fileToCopy, uri);
+      HeadObjectResponse headObjectResponse =
+          _s3Client.headObject(S3TestUtils.getHeadObjectRequest(BUCKET, fileName));
+      Assert.assertEquals(headObjectResponse.contentLength(), (Long) fileToCopy.length());
+
+      File fileToDownload = new File(tempDir, "parallelCopyFile_download.bin");
+      s3PinotFS.copyToLocalFile(uri, fileToDownload);
+      Assert.assertEquals(FileUtils.readFileToByteArray(fileToDownload), content);
+    } finally {
+      s3PinotFS.close();
+      FileUtils.deleteQuietly(tempDir);
+    }
+  }
+
+  @Test
+  public void testInvalidTransferPartSize() {
+    PinotConfiguration config = new PinotConfiguration();
+    config.setProperty(S3PinotFS.TRANSFER_PART_SIZE_BYTES, 5 * 1024 * 1024 - 1);
+    S3PinotFS s3PinotFS = new S3PinotFS();
+    try {
+      s3PinotFS.init(_s3Client, config);
+      Assert.fail("Should fail with transfer part size less than 5MB");
+    } catch (IllegalArgumentException e) {
+      // Expected
+    }
+  }
+
   @Test
   public void testOpenFile()
       throws Exception {
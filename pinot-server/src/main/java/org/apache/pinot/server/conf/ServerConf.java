@@ -78,6 +78,21 @@ public class ServerConf {
     return _serverConf.getProperty(Helix.KEY_OF_SERVER_NETTY_PORT, Helix.DEFAULT_SERVER_NETTY_PORT);
   }
 
+  public int getNettyWriteBufferLowWaterMarkBytes() {
+    return _serverConf.getProperty(Server.CONFIG_OF_NETTY_WRITE_BUFFER_LOW_WATER_MARK_BYTES,
+        Server.DEFAULT_NETTY_WRITE_BUFFER_LOW_WATER_MARK_BYTES);
+  }
+
+  public int getNettyWriteBufferHighWaterMarkBytes() {
+    return _serverConf.getProperty(Server.CONFIG_OF_NETTY_WRITE_BUFFER_HIGH_WATER_MARK_BYTES,
+        Server.DEFAULT_NETTY_WRITE_BUFFER_HIGH_WATER_MARK_BYTES);
+  }
+
+  public long getNettyMaxQueuedResponseBytes() {
+    return _serverConf.getProperty(Server.CONFIG_OF_NETTY_MAX_QUEUED_RESPONSE_BYTES,
+        Server.DEFAULT_NETTY_MAX_QUEUED_RESPONSE_BYTES);
+  }
+
   public boolean isEnableGrpcServer() {
     return _serverConf.getProperty(Server.CONFIG_OF_ENABLE_GRPC_SERVER, Server.DEFAULT_ENABLE_GRPC_SERVER);
   }
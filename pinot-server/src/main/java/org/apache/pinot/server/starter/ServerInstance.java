@@ -91,7 +91,9 @@ public class ServerInstance {
 
     int nettyPort = serverConf.getNettyPort();
     LOGGER.info("Initializing Netty query server on port: {}", nettyPort);
-    _nettyQueryServer = new QueryServer(nettyPort, _queryScheduler, _serverMetrics);
+    _nettyQueryServer = new QueryServer(nettyPort, _queryScheduler, _serverMetrics,
+        serverConf.getNettyWriteBufferLowWaterMarkBytes(), serverConf.getNettyWriteBufferHighWaterMarkBytes(),
+        serverConf.getNettyMaxQueuedResponseBytes());
 
     if (serverConf.isEnableGrpcServer()) {
       int grpcPort = serverConf.getGrpcPort();
@@ -25,6 +25,9 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Lock;
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.ThreadSafe;
@@ -35,7 +38,9 @@ import org.apache.helix.ZNRecord;
 import org.apache.helix.store.zk.ZkHelixPropertyStore;
 import org.apache.pinot.common.metadata.ZKMetadataProvider;
 import org.apache.pinot.common.metrics.ServerMetrics;
+import org.apache.pinot.common.metrics.ServerTimer;
 import org.apache.pinot.common.utils.CommonConstants;
+import org.apache.pinot.common.utils.NamedThreadFactory;
 import org.apache.pinot.core.data.manager.InstanceDataManager;
 import org.apache.pinot.core.data.manager.SegmentDataManager;
 import org.apache.pinot.core.data.manager.TableDataManager;
@@ -45,6 +50,7 @@ import org.apache.pinot.core.data.manager.realtime.RealtimeTableDataManager;
 import org.apache.pinot.core.indexsegment.immutable.ImmutableSegment;
 import org.apache.pinot.core.indexsegment.immutable.ImmutableSegmentLoader;
 import org.apache.pinot.core.indexsegment.mutable.MutableSegmentImpl;
+import org.apache.pinot.core.segment.index.column.ColdTierColumnCache;
 import org.apache.pinot.core.segment.index.loader.IndexLoadingConfig;
 import org.apache.pinot.core.segment.index.loader.LoaderUtils;
 import org.apache.pinot.core.segment.index.metadata.SegmentMetadata;
@@ -71,6 +77,9 @@ public class HelixInstanceDataManager implements InstanceDataManager {
   private HelixManager _helixManager;
   private ServerMetrics _serverMetrics;
   private ZkHelixPropertyStore<ZNRecord> _propertyStore;
+  // Consumer executor shared by the consuming segments of all the realtime tables, null if shared consumption is
+  // disabled
+  private ScheduledExecutorService _sharedConsumerExecutor;
 
   @Override
   public synchronized void init(PinotConfiguration config, HelixManager helixManager, ServerMetrics serverMetrics)
@@ -93,7 +102,23 @@ public class HelixInstanceDataManager implements InstanceDataManager {
     }
 
     // Initialize the table data manager provider
-    TableDataManagerProvider.init(_instanceDataManagerConfig);
+    int numSharedConsumerThreads = _instanceDataManagerConfig.getNumSharedConsumerThreads();
+    if (numSharedConsumerThreads > 0) {
+      LOGGER.info("Creating {} consumer threads shared by the realtime tables", numSharedConsumerThreads);
+      _sharedConsumerExecutor = Executors
+          .newScheduledThreadPool(numSharedConsumerThreads, new NamedThreadFactory("realtime-shared-consumer"));
+    }
+    TableDataManagerProvider.init(_instanceDataManagerConfig, _sharedConsumerExecutor);
+
+    // Initialize the cold tier column cache if the cold tier is enabled
+    PinotConfiguration instanceConfig = _instanceDataManagerConfig.getConfig();
+    if (instanceConfig.getProperty(IndexLoadingConfig.COLD_TIER_REMOTE_DIR) != null) {
+      long maxCacheSizeBytes = instanceConfig
+          .getProperty(ColdTierColumnCache.MAX_SIZE_BYTES_KEY, ColdTierColumnCache.DEFAULT_MAX_SIZE_BYTES);
+      int numPrefetchThreads = instanceConfig
+          .getProperty(ColdTierColumnCache.NUM_PREFETCH_THREADS_KEY, ColdTierColumnCache.DEFAULT_NUM_PREFETCH_THREADS);
+      ColdTierColumnCache.init(maxCacheSizeBytes, numPrefetchThreads);
+    }
 
     LOGGER.info("Initialized Helix instance data manager");
   }
@@ -109,6 +134,9 @@ public class HelixInstanceDataManager implements InstanceDataManager {
     for (TableDataManager tableDataManager : _tableDataManagerMap.values()) {
       tableDataManager.shutDown();
     }
+    if (_sharedConsumerExecutor != null) {
+      _sharedConsumerExecutor.shutdownNow();
+    }
     LOGGER.info("Helix instance data manager shut down");
   }
 
@@ -116,11 +144,15 @@ public class HelixInstanceDataManager implements InstanceDataManager {
   public void addOfflineSegment(String offlineTableName, String segmentName, File indexDir)
       throws Exception {
     LOGGER.info("Adding segment: {} to table: {}", segmentName, offlineTableName);
+    long startTimeMs = System.currentTimeMillis();
     TableConfig tableConfig = ZKMetadataProvider.getTableConfig(_propertyStore, offlineTableName);
     Preconditions.checkNotNull(tableConfig);
     _tableDataManagerMap.computeIfAbsent(offlineTableName, k -> createTableDataManager(k, tableConfig))
         .addSegment(indexDir, new IndexLoadingConfig(_instanceDataManagerConfig, tableConfig));
-    LOGGER.info("Added segment: {} to table: {}", segmentName, offlineTableName);
+    long loadTimeMs = System.currentTimeMillis() - startTimeMs;
+    _serverMetrics.addTimedTableValue(offlineTableName, ServerTimer.SEGMENT_LOAD_TIME_MS, loadTimeMs,
+        TimeUnit.MILLISECONDS);
+    LOGGER.info("Added segment: {} to table: {} in {}ms", segmentName, offlineTableName, loadTimeMs);
   }
 
   @Override
@@ -67,6 +67,10 @@ public class HelixInstanceDataManagerConfig implements InstanceDataManagerConfig
   // response times to suffer.
   private static final String MAX_PARALLEL_SEGMENT_BUILDS = "realtime.max.parallel.segment.builds";
 
+  // Key of the number of consumer threads shared by the consuming segments of all the tables that enable shared
+  // consumption. A value of <= 0 disables shared consumption, and each consuming segment consumes with its own thread.
+  private static final String NUM_SHARED_CONSUMER_THREADS = "realtime.shared.consumer.threads";
+
   // Key of whether to enable split commit
   private static final String ENABLE_SPLIT_COMMIT = "enable.split.commit";
   // Key of whether to enable split commit end with segment metadata files.
@@ -194,6 +198,11 @@ public class HelixInstanceDataManagerConfig implements InstanceDataManagerConfig
     return _instanceDataManagerConfiguration.getProperty(MAX_PARALLEL_SEGMENT_BUILDS, 0);
   }
 
+  @Override
+  public int getNumSharedConsumerThreads() {
+    return _instanceDataManagerConfiguration.getProperty(NUM_SHARED_CONSUMER_THREADS, 0);
+  }
+
   @Override
   public String toString() {
     String configString = "";
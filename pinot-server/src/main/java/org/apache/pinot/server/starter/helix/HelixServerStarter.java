@@ -46,6 +46,7 @@ import org.apache.helix.model.builder.HelixConfigScopeBuilder;
 import org.apache.helix.participant.statemachine.StateModelFactory;
 import org.apache.pinot.common.Utils;
 import org.apache.pinot.common.metadata.ZKMetadataProvider;
+import org.apache.pinot.common.metrics.ServerGauge;
 import org.apache.pinot.common.metrics.ServerMeter;
 import org.apache.pinot.common.metrics.ServerMetrics;
 import org.apache.pinot.common.utils.CommonConstants.Helix;
@@ -322,6 +323,16 @@ public class HelixServerStarter implements ServiceStartable {
     // Start the server instance as a pre-connect callback so that it starts after connecting to the ZK in order to
     // access the property store, but before receiving state transitions
     _helixManager.addPreConnectCallback(_serverInstance::start);
+    // Bootstrap the local segments after starting the server instance, but before joining the cluster
+    if (_serverConf.getProperty(Server.CONFIG_OF_STARTUP_ENABLE_SEGMENT_BOOTSTRAP,
+        Server.DEFAULT_STARTUP_ENABLE_SEGMENT_BOOTSTRAP)) {
+      int parallelismPerDisk = _serverConf.getProperty(Server.CONFIG_OF_STARTUP_SEGMENT_BOOTSTRAP_PARALLELISM_PER_DISK,
+          Server.DEFAULT_STARTUP_SEGMENT_BOOTSTRAP_PARALLELISM_PER_DISK);
+      SegmentBootstrapper segmentBootstrapper =
+          new SegmentBootstrapper(_instanceId, _helixManager, instanceDataManager, fetcherAndLoader, serverMetrics,
+              parallelismPerDisk);
+      _helixManager.addPreConnectCallback(segmentBootstrapper::bootstrap);
+    }
 
     LOGGER.info("Connecting Helix manager");
     _helixManager.connect();
@@ -377,7 +388,9 @@ public class HelixServerStarter implements ServiceStartable {
     }
     _helixAdmin.setConfig(_instanceConfigScope,
         Collections.singletonMap(Helix.IS_SHUTDOWN_IN_PROGRESS, Boolean.toString(false)));
-    LOGGER.info("Pinot server ready");
+    long timeToServeMs = System.currentTimeMillis() - startTimeMs;
+    serverMetrics.setValueOfGlobalGauge(ServerGauge.STARTUP_TIME_TO_SERVE_MS, timeToServeMs);
+    LOGGER.info("Pinot server ready in {}ms", timeToServeMs);
 
     // Create metrics for mmap stuff
     serverMetrics.addCallbackGauge("memory.directBufferCount", PinotDataBuffer::getDirectBufferCount);
@@ -0,0 +1,183 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pinot.server.starter.helix;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.helix.HelixManager;
+import org.apache.helix.model.IdealState;
+import org.apache.pinot.common.metrics.ServerGauge;
+import org.apache.pinot.common.metrics.ServerMetrics;
+import org.apache.pinot.common.utils.CommonConstants;
+import org.apache.pinot.common.utils.CommonConstants.Helix.StateModel.SegmentStateModel;
+import org.apache.pinot.common.utils.helix.HelixHelper;
+import org.apache.pinot.core.data.manager.InstanceDataManager;
+import org.apache.pinot.spi.config.table.TableType;
+import org.apache.pinot.spi.utils.builder.TableNameBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * The {@code SegmentBootstrapper} loads the OFFLINE segments already on the local disk in parallel when the server
+ * starts, before the server joins the cluster and receives the state transitions from Helix.
+ * <p>Only the segments assigned to this instance in the ideal state are loaded, with a bounded number of segments
+ * loaded in parallel per disk. The state transitions for the bootstrapped segments become no-op because the segments
+ * are already loaded with the same CRC. Segments failed to bootstrap are handled by the state transitions as usual.
+ */
+public class SegmentBootstrapper {
+  private static final Logger LOGGER = LoggerFactory.getLogger(SegmentBootstrapper.class);
+
+  private final String _instanceId;
+  private final HelixManager _helixManager;
+  private final InstanceDataManager _instanceDataManager;
+  private final SegmentFetcherAndLoader _fetcherAndLoader;
+  private final ServerMetrics _serverMetrics;
+  private final int _parallelismPerDisk;
+  private boolean _bootstrapped;
+
+  public SegmentBootstrapper(String instanceId, HelixManager helixManager, InstanceDataManager instanceDataManager,
+      SegmentFetcherAndLoader fetcherAndLoader, ServerMetrics serverMetrics, int parallelismPerDisk) {
+    _instanceId = instanceId;
+    _helixManager = helixManager;
+    _instanceDataManager = instanceDataManager;
+    _fetcherAndLoader = fetcherAndLoader;
+    _serverMetrics = serverMetrics;
+    _parallelismPerDisk = parallelismPerDisk;
+  }
+
+  /**
+   * Loads the local OFFLINE segments assigned to this instance. This method is called when Helix starts a new ZK
+   * session (after the server instance is started), and can be called multiple times. We only need to bootstrap once,
+   * and simply ignore the following invocations.
+   */
+  public synchronized void bootstrap() {
+    if (_bootstrapped) {
+      return;
+    }
+    _bootstrapped = true;
+
+    long startTimeMs = System.currentTimeMillis();
+    LOGGER.info("Bootstrapping local segments with parallelism: {} per disk", _parallelismPerDisk);
+    Map<FileStore, List<Runnable>> loadTasksPerDisk;
+    try {
+      loadTasksPerDisk = getLoadTasksPerDisk();
+    } catch (Exception e) {
+      LOGGER.error("Caught exception while listing local segments, skipping the segment bootstrap", e);
+      return;
+    }
+
+    AtomicInteger numSegmentsLoaded = new AtomicInteger();
+    AtomicInteger numSegmentsFailed = new AtomicInteger();
+    List<ExecutorService> executorServices = new ArrayList<>(loadTasksPerDisk.size());
+    int diskId = 0;
+    for (Map.Entry<FileStore, List<Runnable>> entry : loadTasksPerDisk.entrySet()) {
+      List<Runnable> loadTasks = entry.getValue();
+      LOGGER.info("Bootstrapping {} segments on disk: {}", loadTasks.size(), entry.getKey());
+      ExecutorService executorService = Executors.newFixedThreadPool(_parallelismPerDisk,
+          new ThreadFactoryBuilder().setNameFormat("segment-bootstrap-" + diskId++ + "-%d").setDaemon(true).build());
+      for (Runnable loadTask : loadTasks) {
+        executorService.submit(() -> {
+          try {
+            loadTask.run();
+            numSegmentsLoaded.getAndIncrement();
+          } catch (Exception e) {
+            // The segment will be loaded again with the state transition
+            LOGGER.error("Caught exception while bootstrapping segment", e);
+            numSegmentsFailed.getAndIncrement();
+          }
+        });
+      }
+      executorService.shutdown();
+      executorServices.add(executorService);
+    }
+    try {
+      for (ExecutorService executorService : executorServices) {
+        executorService.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+      }
+    } catch (InterruptedException e) {
+      LOGGER.warn("Interrupted while bootstrapping segments, stop waiting for the remaining segments");
+      for (ExecutorService executorService : executorServices) {
+        executorService.shutdownNow();
+      }
+      Thread.currentThread().interrupt();
+    }
+
+    long bootstrapTimeMs = System.currentTimeMillis() - startTimeMs;
+    _serverMetrics.setValueOfGlobalGauge(ServerGauge.STARTUP_SEGMENT_BOOTSTRAP_TIME_MS, bootstrapTimeMs);
+    _serverMetrics
+        .setValueOfGlobalGauge(ServerGauge.STARTUP_SEGMENT_BOOTSTRAP_SEGMENTS_LOADED, numSegmentsLoaded.get());
+    _serverMetrics
+        .setValueOfGlobalGauge(ServerGauge.STARTUP_SEGMENT_BOOTSTRAP_SEGMENTS_FAILED, numSegmentsFailed.get());
+    LOGGER.info("Bootstrapped {} segments ({} failed) in {}ms", numSegmentsLoaded.get(), numSegmentsFailed.get(),
+        bootstrapTimeMs);
+  }
+
+  /**
+   * Returns the tasks to load the local OFFLINE segments assigned to this instance, grouped by the disk where the
+   * segments are stored.
+   */
+  private Map<FileStore, List<Runnable>> getLoadTasksPerDisk()
+      throws IOException {
+    Map<FileStore, List<Runnable>> loadTasksPerDisk = new HashMap<>();
+    File[] tableDirs = new File(_instanceDataManager.getSegmentDataDirectory()).listFiles();
+    if (tableDirs == null) {
+      return loadTasksPerDisk;
+    }
+    for (File tableDir : tableDirs) {
+      String tableNameWithType = tableDir.getName();
+      if (!tableDir.isDirectory()
+          || TableNameBuilder.getTableTypeFromTableName(tableNameWithType) != TableType.OFFLINE) {
+        continue;
+      }
+      IdealState idealState = HelixHelper.getTableIdealState(_helixManager, tableNameWithType);
+      if (idealState == null) {
+        LOGGER.info("Failed to find ideal state for table: {}, skipping bootstrapping its segments", tableNameWithType);
+        continue;
+      }
+      FileStore disk = Files.getFileStore(tableDir.toPath());
+      for (String segmentName : idealState.getPartitionSet()) {
+        Map<String, String> instanceStateMap = idealState.getInstanceStateMap(segmentName);
+        if (instanceStateMap == null || !SegmentStateModel.ONLINE.equals(instanceStateMap.get(_instanceId))) {
+          continue;
+        }
+        // NOTE: The segment directory might not exist when restarting during segment reload, which can be recovered
+        // by the fetcher and loader
+        if (!new File(tableDir, segmentName).exists() && !new File(tableDir,
+            segmentName + CommonConstants.Segment.SEGMENT_BACKUP_DIR_SUFFIX).exists()) {
+          continue;
+        }
+        loadTasksPerDisk.computeIfAbsent(disk, k -> new ArrayList<>())
+            .add(() -> _fetcherAndLoader.addOrReplaceOfflineSegment(tableNameWithType, segmentName));
+      }
+    }
+    return loadTasksPerDisk;
+  }
+}
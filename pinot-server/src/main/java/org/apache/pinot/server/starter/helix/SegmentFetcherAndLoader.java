@@ -153,7 +153,8 @@ public class SegmentFetcherAndLoader {
         PinotCrypter crypter = (crypterName != null) ? PinotCrypterFactory.create(crypterName) : null;
 
         // Retry will be done here.
-        String localSegmentDir = downloadSegmentToLocal(uri, crypter, tableNameWithType, segmentName);
+        String localSegmentDir =
+            downloadSegmentToLocal(uri, crypter, newSegmentZKMetadata.getCrc(), tableNameWithType, segmentName);
         SegmentMetadata segmentMetadata = new SegmentMetadataImpl(new File(localSegmentDir));
         _instanceDataManager.addOfflineSegment(tableNameWithType, segmentName, new File(localSegmentDir));
         LOGGER.info("Downloaded segment {} of table {} crc {} from controller", segmentName, tableNameWithType,
@@ -187,56 +188,101 @@ public class SegmentFetcherAndLoader {
     return newCrc != existedCrc;
   }
 
-  private String downloadSegmentToLocal(String uri, PinotCrypter crypter, String tableName, String segmentName)
+  private String downloadSegmentToLocal(String uri, PinotCrypter crypter, long crc, String tableName,
+      String segmentName)
       throws Exception {
     File tempDir = new File(new File(_instanceDataManager.getSegmentFileDirectory(), tableName),
         "tmp-" + segmentName + "-" + UUID.randomUUID());
     FileUtils.forceMkdir(tempDir);
-    File tempDownloadFile = new File(tempDir, segmentName + ENCODED_SUFFIX);
-    File tempTarFile = new File(tempDir, segmentName + TAR_GZ_SUFFIX);
     File tempSegmentDir = new File(tempDir, segmentName);
     try {
-      try {
-        SegmentFetcherFactory.fetchSegmentToLocal(uri, tempDownloadFile);
-        if (crypter != null) {
-          crypter.decrypt(tempDownloadFile, tempTarFile);
-        } else {
-          tempTarFile = tempDownloadFile;
-        }
-        LOGGER.info("Downloaded tarred segment: {} for table: {} from: {} to: {}, file length: {}", segmentName,
-            tableName, uri, tempTarFile, tempTarFile.length());
-      } catch (AttemptsExceededException e) {
-        LOGGER.error("Attempts exceeded when downloading segment: {} for table: {} from: {} to: {}", segmentName,
-            tableName, uri, tempTarFile);
-        _serverMetrics.addMeteredTableValue(tableName, ServerMeter.SEGMENT_DOWNLOAD_FAILURES, 1L);
-        Utils.rethrowException(e);
-        return null;
+      File tempIndexDir;
+      if (crypter == null) {
+        tempIndexDir = downloadAndStreamUntarSegment(uri, crc, tableName, segmentName, tempSegmentDir);
+      } else {
+        tempIndexDir = downloadDecryptAndUntarSegment(uri, crypter, tableName, segmentName, tempDir, tempSegmentDir);
       }
-
-      try {
-        // If an exception is thrown when untarring, it means the tar file is broken OR not found after the retry.
-        // Thus, there's no need to retry again.
-        File tempIndexDir = TarGzCompressionUtils.untar(tempTarFile, tempSegmentDir).get(0);
-        File indexDir = new File(new File(_instanceDataManager.getSegmentDataDirectory(), tableName), segmentName);
-        if (indexDir.exists()) {
-          LOGGER.info("Deleting existing index directory for segment: {} for table: {}", segmentName, tableName);
-          FileUtils.deleteDirectory(indexDir);
-        }
-        FileUtils.moveDirectory(tempIndexDir, indexDir);
-        LOGGER.info("Successfully downloaded segment: {} for table: {} to: {}", segmentName, tableName, indexDir);
-        return indexDir.getAbsolutePath();
-      } catch (Exception e) {
-        LOGGER.error("Exception when untarring segment: {} for table: {} from {} to {}", segmentName, tableName,
-            tempTarFile, tempSegmentDir);
-        _serverMetrics.addMeteredTableValue(tableName, ServerMeter.UNTAR_FAILURES, 1L);
-        Utils.rethrowException(e);
-        return null;
+      File indexDir = new File(new File(_instanceDataManager.getSegmentDataDirectory(), tableName), segmentName);
+      if (indexDir.exists()) {
+        LOGGER.info("Deleting existing index directory for segment: {} for table: {}", segmentName, tableName);
+        FileUtils.deleteDirectory(indexDir);
       }
+      FileUtils.moveDirectory(tempIndexDir, indexDir);
+      LOGGER.info("Successfully downloaded segment: {} for table: {} to: {}", segmentName, tableName, indexDir);
+      return indexDir.getAbsolutePath();
     } finally {
       FileUtils.deleteQuietly(tempDir);
     }
   }
 
+  /**
+   * Downloads the tarred segment and untars it on the fly without storing the tarred segment on the local disk. The
+   * CRC of the gzip data is verified while untarring, and the download is retried if the data is corrupted. When the
+   * local segment tar cache is enabled, the tarred segment goes through the cache instead.
+   * <p>Because each attempt downloads and untars the segment at the same time, a failure after all the attempts
+   * counts as both a download failure and an untar failure. A failure to untar a cached tarball counts as an untar
+   * failure.
+   */
+  private File downloadAndStreamUntarSegment(String uri, long crc, String tableName, String segmentName,
+      File tempSegmentDir)
+      throws Exception {
+    try {
+      File tempIndexDir = SegmentFetcherFactory.fetchUntarSegmentToLocalStreamed(uri, tempSegmentDir, crc);
+      LOGGER.info("Downloaded and untarred segment: {} for table: {} from: {} to: {}", segmentName, tableName, uri,
+          tempIndexDir);
+      return tempIndexDir;
+    } catch (AttemptsExceededException e) {
+      LOGGER.error("Attempts exceeded when downloading and untarring segment: {} for table: {} from: {} to: {}",
+          segmentName, tableName, uri, tempSegmentDir);
+      _serverMetrics.addMeteredTableValue(tableName, ServerMeter.SEGMENT_DOWNLOAD_FAILURES, 1L);
+      _serverMetrics.addMeteredTableValue(tableName, ServerMeter.UNTAR_FAILURES, 1L);
+      Utils.rethrowException(e);
+      return null;
+    } catch (Exception e) {
+      LOGGER.error("Exception when untarring segment: {} for table: {} from: {} to: {}", segmentName, tableName, uri,
+          tempSegmentDir);
+      _serverMetrics.addMeteredTableValue(tableName, ServerMeter.UNTAR_FAILURES, 1L);
+      Utils.rethrowException(e);
+      return null;
+    }
+  }
+
+  /**
+   * Downloads the encrypted tarred segment, decrypts and untars it.
+   * NOTE: The encrypted tarred segment does not go through the local segment tar cache because the cache is keyed by
+   *       the segment CRC, which is the same for the encrypted and the plain tarred segment.
+   */
+  private File downloadDecryptAndUntarSegment(String uri, PinotCrypter crypter, String tableName, String segmentName,
+      File tempDir, File tempSegmentDir)
+      throws Exception {
+    File tempDownloadFile = new File(tempDir, segmentName + ENCODED_SUFFIX);
+    File tempTarFile = new File(tempDir, segmentName + TAR_GZ_SUFFIX);
+    try {
+      SegmentFetcherFactory.fetchSegmentToLocal(uri, tempDownloadFile);
+      crypter.decrypt(tempDownloadFile, tempTarFile);
+      LOGGER.info("Downloaded tarred segment: {} for table: {} from: {} to: {}, file length: {}", segmentName,
+          tableName, uri, tempTarFile, tempTarFile.length());
+    } catch (AttemptsExceededException e) {
+      LOGGER.error("Attempts exceeded when downloading segment: {} for table: {} from: {} to: {}", segmentName,
+          tableName, uri, tempTarFile);
+      _serverMetrics.addMeteredTableValue(tableName, ServerMeter.SEGMENT_DOWNLOAD_FAILURES, 1L);
+      Utils.rethrowException(e);
+      return null;
+    }
+
+    try {
+      // If an exception is thrown when untarring, it means the tar file is broken OR not found after the retry.
+      // Thus, there's no need to retry again.
+      return TarGzCompressionUtils.untar(tempTarFile, tempSegmentDir).get(0);
+    } catch (Exception e) {
+      LOGGER.error("Exception when untarring segment: {} for table: {} from {} to {}", segmentName, tableName,
+          tempTarFile, tempSegmentDir);
+      _serverMetrics.addMeteredTableValue(tableName, ServerMeter.UNTAR_FAILURES, 1L);
+      Utils.rethrowException(e);
+      return null;
+    }
+  }
+
   public String getSegmentLocalDirectory(String tableName, String segmentId) {
     return _instanceDataManager.getSegmentDataDirectory() + "/" + tableName + "/" + segmentId;
   }
@@ -0,0 +1,183 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.pinot.server.starter.helix;
+
+import com.yammer.metrics.core.MetricsRegistry;
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.commons.io.FileUtils;
+import org.apache.helix.HelixDataAccessor;
+import org.apache.helix.HelixManager;
+import org.apache.helix.PropertyKey;
+import org.apache.helix.model.IdealState;
+import org.apache.pinot.common.metrics.ServerGauge;
+import org.apache.pinot.common.metrics.ServerMetrics;
+import org.apache.pinot.common.utils.CommonConstants.Helix.StateModel.SegmentStateModel;
+import org.apache.pinot.core.data.manager.InstanceDataManager;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+
+public class SegmentBootstrapperTest {
+  private static final File TEMP_DIR = new File(FileUtils.getTempDirectory(), "SegmentBootstrapperTest");
+  private static final String INSTANCE_ID = "Server_localhost_8000";
+  private static final String OTHER_INSTANCE_ID = "Server_localhost_9000";
+  private static final String OFFLINE_TABLE_NAME = "testTable_OFFLINE";
+  private static final String REALTIME_TABLE_NAME = "testTable_REALTIME";
+  private static final int NUM_SEGMENTS = 10;
+
+  private HelixManager _helixManager;
+  private HelixDataAccessor _helixDataAccessor;
+  private PropertyKey _offlineIdealStateKey;
+  private InstanceDataManager _instanceDataManager;
+  private SegmentFetcherAndLoader _fetcherAndLoader;
+  private ServerMetrics _serverMetrics;
+  private Set<String> _loadedSegments;
+  private Set<String> _failedSegments;
+
+  @BeforeMethod
+  public void setUp()
+      throws Exception {
+    FileUtils.deleteQuietly(TEMP_DIR);
+
+    // Segments assigned to this instance, where the first segment does not exist on the local disk
+    IdealState offlineIdealState = new IdealState(OFFLINE_TABLE_NAME);
+    File offlineTableDir = new File(TEMP_DIR, OFFLINE_TABLE_NAME);
+    for (int i = 0; i < NUM_SEGMENTS; i++) {
+      String segmentName = getSegmentName(i);
+      offlineIdealState.setPartitionState(segmentName, INSTANCE_ID, SegmentStateModel.ONLINE);
+      if (i > 0) {
+        FileUtils.forceMkdir(new File(offlineTableDir, segmentName));
+      }
+    }
+    // Segment on the local disk but assigned to another instance
+    String otherSegmentName = getSegmentName(NUM_SEGMENTS);
+    offlineIdealState.setPartitionState(otherSegmentName, OTHER_INSTANCE_ID, SegmentStateModel.ONLINE);
+    FileUtils.forceMkdir(new File(offlineTableDir, otherSegmentName));
+    // Segments of the REALTIME table should not be bootstrapped
+    FileUtils.forceMkdir(new File(new File(TEMP_DIR, REALTIME_TABLE_NAME), getSegmentName(1)));
+
+    _helixManager = mock(HelixManager.class);
+    _helixDataAccessor = mock(HelixDataAccessor.class);
+    when(_helixManager.getHelixDataAccessor()).thenReturn(_helixDataAccessor);
+    PropertyKey.Builder keyBuilder = mock(PropertyKey.Builder.class);
+    when(_helixDataAccessor.keyBuilder()).thenReturn(keyBuilder);
+    _offlineIdealStateKey = mock(PropertyKey.class);
+    when(keyBuilder.idealStates(OFFLINE_TABLE_NAME)).thenReturn(_offlineIdealStateKey);
+    when(_helixDataAccessor.getProperty(_offlineIdealStateKey)).thenReturn(offlineIdealState);
+
+    _instanceDataManager = mock(InstanceDataManager.class);
+    when(_instanceDataManager.getSegmentDataDirectory()).thenReturn(TEMP_DIR.getAbsolutePath());
+
+    _loadedSegments = ConcurrentHashMap.newKeySet();
+    _failedSegments = new HashSet<>();
+    _fetcherAndLoader = mock(SegmentFetcherAndLoader.class);
+    doAnswer(invocation -> {
+      String tableNameWithType = invocation.getArgument(0);
+      String segmentName = invocation.getArgument(1);
+      assertEquals(tableNameWithType, OFFLINE_TABLE_NAME);
+      if (_failedSegments.contains(segmentName)) {
+        throw new RuntimeException("Failed to load segment: " + segmentName);
+      }
+      assertTrue(_loadedSegments.add(segmentName));
+      return null;
+    }).when(_fetcherAndLoader).addOrReplaceOfflineSegment(anyString(), anyString());
+
+    _serverMetrics = new ServerMetrics(new MetricsRegistry());
+  }
+
+  @Test
+  public void testBootstrap() {
+    SegmentBootstrapper segmentBootstrapper =
+        new SegmentBootstrapper(INSTANCE_ID, _helixManager, _instanceDataManager, _fetcherAndLoader, _serverMetrics,
+            2);
+    segmentBootstrapper.bootstrap();
+
+    // Only the local segments assigned to this instance should be loaded
+    Set<String> expectedSegments = new HashSet<>();
+    for (int i = 1; i < NUM_SEGMENTS; i++) {
+      expectedSegments.add(getSegmentName(i));
+    }
+    assertEquals(_loadedSegments, expectedSegments);
+    assertEquals(_serverMetrics.getValueOfGlobalGauge(ServerGauge.STARTUP_SEGMENT_BOOTSTRAP_SEGMENTS_LOADED),
+        NUM_SEGMENTS - 1);
+    assertEquals(_serverMetrics.getValueOfGlobalGauge(ServerGauge.STARTUP_SEGMENT_BOOTSTRAP_SEGMENTS_FAILED), 0);
+    assertTrue(_serverMetrics.getValueOfGlobalGauge(ServerGauge.STARTUP_SEGMENT_BOOTSTRAP_TIME_MS) >= 0);
+
+    // Bootstrap should only happen once
+    _loadedSegments.clear();
+    segmentBootstrapper.bootstrap();
+    assertTrue(_loadedSegments.isEmpty());
+  }
+
+  @Test
+  public void testBootstrapWithFailedSegments() {
+    _failedSegments.addAll(Arrays.asList(getSegmentName(2), getSegmentName(5)));
+    SegmentBootstrapper segmentBootstrapper =
+        new SegmentBootstrapper(INSTANCE_ID, _helixManager, _instanceDataManager, _fetcherAndLoader, _serverMetrics,
+            2);
+    segmentBootstrapper.bootstrap();
+
+    // The failed segments should not block the other segments from loading
+    Set<String> expectedSegments = new HashSet<>();
+    for (int i = 1; i < NUM_SEGMENTS; i++) {
+      String segmentName = getSegmentName(i);
+      if (!_failedSegments.contains(segmentName)) {
+        expectedSegments.add(segmentName);
+      }
+    }
+    assertEquals(_loadedSegments, expectedSegments);
+    assertEquals(_serverMetrics.getValueOfGlobalGauge(ServerGauge.STARTUP_SEGMENT_BOOTSTRAP_SEGMENTS_LOADED),
+        NUM_SEGMENTS - 3);
+    assertEquals(_serverMetrics.getValueOfGlobalGauge(ServerGauge.STARTUP_SEGMENT_BOOTSTRAP_SEGMENTS_FAILED), 2);
+  }
+
+  @Test
+  public void testBootstrapWithoutIdealState() {
+    when(_helixDataAccessor.getProperty(_offlineIdealStateKey)).thenReturn(null);
+    SegmentBootstrapper segmentBootstrapper =
+        new SegmentBootstrapper(INSTANCE_ID, _helixManager, _instanceDataManager, _fetcherAndLoader, _serverMetrics,
+            2);
+    segmentBootstrapper.bootstrap();
+
+    assertTrue(_loadedSegments.isEmpty());
+    assertEquals(_serverMetrics.getValueOfGlobalGauge(ServerGauge.STARTUP_SEGMENT_BOOTSTRAP_SEGMENTS_LOADED), 0);
+    assertEquals(_serverMetrics.getValueOfGlobalGauge(ServerGauge.STARTUP_SEGMENT_BOOTSTRAP_SEGMENTS_FAILED), 0);
+  }
+
+  private static String getSegmentName(int segmentId) {
+    return "testTable_" + segmentId;
+  }
+
+  @AfterMethod
+  public void tearDown() {
+    FileUtils.deleteQuietly(TEMP_DIR);
+  }
+}
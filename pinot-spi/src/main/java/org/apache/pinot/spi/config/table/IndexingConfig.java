@@ -46,6 +46,24 @@ public class IndexingConfig extends BaseJsonConfig {
   private SegmentPartitionConfig _segmentPartitionConfig;
   private boolean _aggregateMetrics;
   private boolean _nullHandlingEnabled;
+  // Whether to index the consumed records of a stream message batch together into the consuming segment
+  private boolean _realtimeBatchIndexing;
+  // Number of threads shared by the consuming partitions of the table on a server to decode and transform the consumed
+  // messages, parallel decoding is disabled if it is not larger than 1
+  private int _realtimeDecodeThreads;
+  // Whether the consuming partitions of the table consume on the consumer threads shared by all the tables on a server
+  // (configured on the server), instead of one thread per partition
+  private boolean _realtimeSharedConsumption;
+  // Max number of segments of the table that can be built concurrently in the background on a server while their
+  // partitions prefetch the messages for the next consuming segments (indexed only after the commit), pipelined segment
+  // commit is disabled if it is not positive
+  private int _realtimeMaxPipelinedSegmentBuilds;
+  // Max size in bytes of the messages each partition of the table can prefetch while its completed segment is built and
+  // committed in the background, the server default is used if it is not positive
+  private long _realtimeMaxPrefetchedBytesPerPartition;
+  // Whether the OFFLINE segments of the table are served from the cold tier (configured on the server) instead of the
+  // local disk
+  private boolean _coldTierEnabled;
 
   /**
    * The list of columns for which the variable length dictionary needs to be enabled in offline
@@ -235,4 +253,52 @@ public class IndexingConfig extends BaseJsonConfig {
   public void setNullHandlingEnabled(boolean nullHandlingEnabled) {
     _nullHandlingEnabled = nullHandlingEnabled;
   }
+
+  public boolean isRealtimeBatchIndexing() {
+    return _realtimeBatchIndexing;
+  }
+
+  public void setRealtimeBatchIndexing(boolean realtimeBatchIndexing) {
+    _realtimeBatchIndexing = realtimeBatchIndexing;
+  }
+
+  public int getRealtimeDecodeThreads() {
+    return _realtimeDecodeThreads;
+  }
+
+  public void setRealtimeDecodeThreads(int realtimeDecodeThreads) {
+    _realtimeDecodeThreads = realtimeDecodeThreads;
+  }
+
+  public boolean isRealtimeSharedConsumption() {
+    return _realtimeSharedConsumption;
+  }
+
+  public void setRealtimeSharedConsumption(boolean realtimeSharedConsumption) {
+    _realtimeSharedConsumption = realtimeSharedConsumption;
+  }
+
+  public int getRealtimeMaxPipelinedSegmentBuilds() {
+    return _realtimeMaxPipelinedSegmentBuilds;
+  }
+
+  public void setRealtimeMaxPipelinedSegmentBuilds(int realtimeMaxPipelinedSegmentBuilds) {
+    _realtimeMaxPipelinedSegmentBuilds = realtimeMaxPipelinedSegmentBuilds;
+  }
+
+  public long getRealtimeMaxPrefetchedBytesPerPartition() {
+    return _realtimeMaxPrefetchedBytesPerPartition;
+  }
+
+  public void setRealtimeMaxPrefetchedBytesPerPartition(long realtimeMaxPrefetchedBytesPerPartition) {
+    _realtimeMaxPrefetchedBytesPerPartition = realtimeMaxPrefetchedBytesPerPartition;
+  }
+
+  public boolean isColdTierEnabled() {
+    return _coldTierEnabled;
+  }
+
+  public void setColdTierEnabled(boolean coldTierEnabled) {
+    _coldTierEnabled = coldTierEnabled;
+  }
 }
@@ -20,7 +20,9 @@ package org.apache.pinot.spi.config.table;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonPropertyDescription;
 import com.google.common.base.Preconditions;
+import javax.annotation.Nullable;
 import org.apache.pinot.spi.config.BaseJsonConfig;
 
 
@@ -32,14 +34,37 @@ public class UpsertConfig extends BaseJsonConfig {
 
   private final Mode _mode;
 
+  @JsonPropertyDescription("Whether to keep the primary key index off-heap (keyed by primary key hash)")
+  private final boolean _offHeapPrimaryKeyIndex;
+
+  @JsonPropertyDescription("Whether to persist the valid doc ids of the segments on graceful shutdown and use them on "
+      + "the next load")
+  private final boolean _enableValidDocIdsSnapshot;
+
+  public UpsertConfig(Mode mode) {
+    this(mode, null, null);
+  }
+
   @JsonCreator
-  public UpsertConfig(@JsonProperty(value = "mode", required = true) Mode mode) {
+  public UpsertConfig(@JsonProperty(value = "mode", required = true) Mode mode,
+      @JsonProperty("offHeapPrimaryKeyIndex") @Nullable Boolean offHeapPrimaryKeyIndex,
+      @JsonProperty("enableValidDocIdsSnapshot") @Nullable Boolean enableValidDocIdsSnapshot) {
     Preconditions.checkArgument(mode != null, "Upsert mode must be configured");
     Preconditions.checkArgument(mode != Mode.PARTIAL, "Partial upsert mode is not supported");
     _mode = mode;
+    _offHeapPrimaryKeyIndex = offHeapPrimaryKeyIndex != null && offHeapPrimaryKeyIndex;
+    _enableValidDocIdsSnapshot = enableValidDocIdsSnapshot != null && enableValidDocIdsSnapshot;
   }
 
   public Mode getMode() {
     return _mode;
   }
+
+  public boolean isOffHeapPrimaryKeyIndex() {
+    return _offHeapPrimaryKeyIndex;
+  }
+
+  public boolean isEnableValidDocIdsSnapshot() {
+    return _enableValidDocIdsSnapshot;
+  }
 }
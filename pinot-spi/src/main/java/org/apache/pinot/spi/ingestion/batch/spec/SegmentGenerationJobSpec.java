@@ -76,6 +76,18 @@ public class SegmentGenerationJobSpec implements Serializable {
    */
   private int _segmentCreationJobParallelism;
 
+  /**
+   * Max total size of the input files processed concurrently by the segment creation job, which is used as a proxy of
+   * the memory used by the concurrent segment creation tasks. An input file larger than the limit is processed alone.
+   * Defaults to half of the max heap size when not set.
+   */
+  private long _segmentCreationJobMaxInFlightInputBytes;
+
+  /**
+   * Number of threads to create the column indexes within each segment creation task. Defaults to 1.
+   */
+  private int _segmentIndexCreationParallelism;
+
   /**
    * Should overwrite output segments if existed.
    */
@@ -247,6 +259,20 @@ public class SegmentGenerationJobSpec implements Serializable {
   public void setSegmentCreationJobParallelism(int segmentCreationJobParallelism) {
     _segmentCreationJobParallelism = segmentCreationJobParallelism;
   }
-}
 
+  public long getSegmentCreationJobMaxInFlightInputBytes() {
+    return _segmentCreationJobMaxInFlightInputBytes;
+  }
+
+  public void setSegmentCreationJobMaxInFlightInputBytes(long segmentCreationJobMaxInFlightInputBytes) {
+    _segmentCreationJobMaxInFlightInputBytes = segmentCreationJobMaxInFlightInputBytes;
+  }
 
+  public int getSegmentIndexCreationParallelism() {
+    return _segmentIndexCreationParallelism;
+  }
+
+  public void setSegmentIndexCreationParallelism(int segmentIndexCreationParallelism) {
+    _segmentIndexCreationParallelism = segmentIndexCreationParallelism;
+  }
+}
@@ -64,6 +64,11 @@ public class SegmentGenerationTaskSpec implements Serializable {
    */
   private int _sequenceId;
 
+  /**
+   * Number of threads to create the column indexes, 0 or 1 to create the column indexes on the task thread
+   */
+  private int _indexCreationParallelism;
+
   public JsonNode getTableConfig() {
     return _tableConfig;
   }
@@ -119,4 +124,12 @@ public class SegmentGenerationTaskSpec implements Serializable {
   public void setSequenceId(int sequenceId) {
     _sequenceId = sequenceId;
   }
+
+  public int getIndexCreationParallelism() {
+    return _indexCreationParallelism;
+  }
+
+  public void setIndexCreationParallelism(int indexCreationParallelism) {
+    _indexCreationParallelism = indexCreationParallelism;
+  }
 }